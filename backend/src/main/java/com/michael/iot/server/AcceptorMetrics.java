@@ -0,0 +1,72 @@
+package com.michael.iot.server;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个接入线程（监听Channel）的接入统计
+ * 安装在监听Channel的pipeline中，每接入一个连接计数一次。
+ */
+public class AcceptorMetrics extends ChannelInboundHandlerAdapter {
+    private final int index;
+    private volatile long accepted;
+    private volatile String thread = "";
+    // 上次计算速率时的快照
+    private long lastAccepted;
+    private long lastNanos = System.nanoTime();
+
+    public AcceptorMetrics(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        ctx.executor().execute(() -> thread = Thread.currentThread().getName());
+        ctx.fireChannelRegistered();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 只在所属接入线程中写入
+        accepted++;
+        ctx.fireChannelRead(msg);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 累计接入的连接数
+     */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * 接入线程名称
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * 自上次调用以来的每秒接入数，供定期统计使用
+     */
+    public synchronized double sampleRate() {
+        long now = System.nanoTime();
+        long current = accepted;
+        double seconds = (now - lastNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        double rate = seconds <= 0 ? 0 : (current - lastAccepted) / seconds;
+        lastAccepted = current;
+        lastNanos = now;
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return "acceptor-" + index + "[" + thread + "] accepted=" + accepted;
+    }
+}
@@ -0,0 +1,95 @@
+package com.michael.iot.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按设备类型配置的确认策略
+ * 心跳和数据（含批量数据）分别配置，未单独配置的设备类型使用默认策略，错误响应始终发送。
+ */
+public class AckPolicies {
+    private volatile AckPolicy defaultHeartbeatPolicy = AckPolicy.ALWAYS;
+    private volatile AckPolicy defaultDataPolicy = AckPolicy.ALWAYS;
+    private final Map<String, AckPolicy> heartbeatPolicies = new ConcurrentHashMap<>();
+    private final Map<String, AckPolicy> dataPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * 获取设备类型的心跳确认策略
+     */
+    public AckPolicy heartbeatPolicy(String deviceType) {
+        return deviceType == null ? defaultHeartbeatPolicy
+                : heartbeatPolicies.getOrDefault(deviceType, defaultHeartbeatPolicy);
+    }
+
+    /**
+     * 获取设备类型的数据确认策略
+     */
+    public AckPolicy dataPolicy(String deviceType) {
+        return deviceType == null ? defaultDataPolicy
+                : dataPolicies.getOrDefault(deviceType, defaultDataPolicy);
+    }
+
+    public void setDefaultHeartbeatPolicy(AckPolicy policy) {
+        this.defaultHeartbeatPolicy = policy;
+    }
+
+    public void setDefaultDataPolicy(AckPolicy policy) {
+        this.defaultDataPolicy = policy;
+    }
+
+    public void setHeartbeatPolicy(String deviceType, AckPolicy policy) {
+        heartbeatPolicies.put(deviceType, policy);
+    }
+
+    public void setDataPolicy(String deviceType, AckPolicy policy) {
+        dataPolicies.put(deviceType, policy);
+    }
+
+    /**
+     * 解析配置，格式为逗号分隔的 [默认策略,]设备类型=策略，例如 "always,传感器=every:10,摄像头=none"
+     * @param heartbeatSpec 心跳确认策略配置，可为null
+     * @param dataSpec 数据确认策略配置，可为null
+     */
+    public static AckPolicies parse(String heartbeatSpec, String dataSpec) {
+        AckPolicies policies = new AckPolicies();
+        parseInto(heartbeatSpec, true, policies);
+        parseInto(dataSpec, false, policies);
+        return policies;
+    }
+
+    private static void parseInto(String spec, boolean heartbeat, AckPolicies policies) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : spec.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                AckPolicy policy = AckPolicy.parse(entry);
+                if (heartbeat) {
+                    policies.setDefaultHeartbeatPolicy(policy);
+                } else {
+                    policies.setDefaultDataPolicy(policy);
+                }
+            } else {
+                String deviceType = entry.substring(0, eq).trim();
+                AckPolicy policy = AckPolicy.parse(entry.substring(eq + 1));
+                if (heartbeat) {
+                    policies.setHeartbeatPolicy(deviceType, policy);
+                } else {
+                    policies.setDataPolicy(deviceType, policy);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AckPolicies{" +
+                "heartbeat=" + defaultHeartbeatPolicy + heartbeatPolicies +
+                ", data=" + defaultDataPolicy + dataPolicies +
+                '}';
+    }
+}
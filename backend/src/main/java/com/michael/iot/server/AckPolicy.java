@@ -0,0 +1,83 @@
+package com.michael.iot.server;
+
+/**
+ * 确认策略
+ * ALWAYS 每条消息都确认；EVERY_N 每N条确认一次；NONE 从不确认（QoS 0）
+ */
+public final class AckPolicy {
+
+    public enum Mode {
+        ALWAYS,
+        EVERY_N,
+        NONE
+    }
+
+    public static final AckPolicy ALWAYS = new AckPolicy(Mode.ALWAYS, 1);
+    public static final AckPolicy NONE = new AckPolicy(Mode.NONE, 0);
+
+    private final Mode mode;
+    private final int interval;
+
+    private AckPolicy(Mode mode, int interval) {
+        this.mode = mode;
+        this.interval = interval;
+    }
+
+    /**
+     * 每N条消息确认一次
+     */
+    public static AckPolicy everyN(int n) {
+        if (n <= 1) {
+            return ALWAYS;
+        }
+        return new AckPolicy(Mode.EVERY_N, n);
+    }
+
+    /**
+     * 判断第sequence条消息（从1开始）是否需要确认
+     */
+    public boolean shouldAck(long sequence) {
+        switch (mode) {
+            case ALWAYS:
+                return true;
+            case EVERY_N:
+                return sequence % interval == 0;
+            default:
+                return false;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * 解析策略配置：always、none 或 every:N
+     */
+    public static AckPolicy parse(String spec) {
+        String value = spec.trim().toLowerCase();
+        if ("always".equals(value)) {
+            return ALWAYS;
+        }
+        if ("none".equals(value) || "qos0".equals(value)) {
+            return NONE;
+        }
+        if (value.startsWith("every:")) {
+            try {
+                return everyN(Integer.parseInt(value.substring("every:".length()).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("确认策略格式错误: " + spec, e);
+            }
+        }
+        throw new IllegalArgumentException("未知的确认策略: " + spec + "，可选值: always、none、every:N");
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.EVERY_N ? "every:" + interval : mode.name().toLowerCase();
+    }
+}
@@ -0,0 +1,285 @@
+package com.michael.iot.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接准入控制
+ *
+ * 位于每个连接pipeline的最前面，连接建立时依次检查全局接入令牌桶、来源IP令牌桶和待注册连接数上限。
+ * 被拒绝的连接不会进入业务处理器，也不会收到欢迎消息：协议识别后只回复一条
+ * RETRY_AFTER（携带带抖动的重试等待毫秒数）随即关闭，若设备迟迟不发送数据则超时关闭。
+ * 已注册设备的连接不经过这些检查，因此重连风暴期间不受影响。
+ * 回环地址和配置的可信地址（如NAT网关、本机批量模拟器）不受来源IP令牌桶限制，仍受全局速率和待注册上限约束。
+ */
+@ChannelHandler.Sharable
+public class AdmissionController extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    // 已准入但尚未完成注册的连接上保存所属的准入控制器
+    private static final AttributeKey<AdmissionController> PENDING = AttributeKey.valueOf("iot.admission.pending");
+    // 被拒绝的连接等待首个字节的最长时间
+    private static final long REJECT_CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private final double acceptRate;
+    private final int acceptBurst;
+    private final double perIpRate;
+    private final int perIpBurst;
+    private final int maxPendingRegistrations;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+    private final Set<String> trustedAddresses;
+
+    private final TokenBucket acceptBucket;
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingRegistrations = new AtomicInteger();
+
+    // 统计
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedByRate = new LongAdder();
+    private final LongAdder rejectedByIp = new LongAdder();
+    private final LongAdder rejectedByPending = new LongAdder();
+
+    /**
+     * @param trustedAddresses 不受来源IP令牌桶限制的地址（InetAddress.getHostAddress()形式）
+     */
+    public AdmissionController(double acceptRate, int acceptBurst, double perIpRate, int perIpBurst,
+                               int maxPendingRegistrations, long retryBaseMillis, long retryMaxMillis,
+                               Set<String> trustedAddresses) {
+        if (maxPendingRegistrations <= 0) {
+            throw new IllegalArgumentException("待注册连接上限必须大于0: " + maxPendingRegistrations);
+        }
+        if (retryBaseMillis <= 0 || retryMaxMillis < retryBaseMillis) {
+            throw new IllegalArgumentException("重试等待配置非法: base=" + retryBaseMillis + ", max=" + retryMaxMillis);
+        }
+        this.acceptRate = acceptRate;
+        this.acceptBurst = acceptBurst;
+        this.perIpRate = perIpRate;
+        this.perIpBurst = perIpBurst;
+        this.maxPendingRegistrations = maxPendingRegistrations;
+        this.retryBaseMillis = retryBaseMillis;
+        this.retryMaxMillis = retryMaxMillis;
+        this.trustedAddresses = Set.copyOf(trustedAddresses);
+        this.acceptBucket = new TokenBucket(acceptRate, acceptBurst, System.nanoTime());
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        long retryAfter = admit(ctx.channel());
+        if (retryAfter == 0) {
+            ctx.fireChannelActive();
+            return;
+        }
+        reject(ctx, retryAfter);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 注册前断开的连接释放待注册名额
+        registrationCompleted(ctx.channel());
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 设备注册成功（或连接在注册前关闭）后释放待注册名额
+     */
+    public static void registrationCompleted(Channel channel) {
+        AdmissionController controller = channel.attr(PENDING).getAndSet(null);
+        if (controller != null) {
+            controller.pendingRegistrations.decrementAndGet();
+        }
+    }
+
+    /**
+     * 检查是否准入
+     * @return 0表示准入，否则为建议的重试等待毫秒数（未加抖动）
+     */
+    private long admit(Channel channel) {
+        long now = System.nanoTime();
+
+        // 先检查待注册上限，避免被拒绝的连接消耗令牌
+        if (pendingRegistrations.incrementAndGet() > maxPendingRegistrations) {
+            pendingRegistrations.decrementAndGet();
+            rejectedByPending.increment();
+            return retryBaseMillis;
+        }
+
+        long wait = acceptBucket.tryAcquire(now);
+        if (wait > 0) {
+            pendingRegistrations.decrementAndGet();
+            rejectedByRate.increment();
+            return Math.max(retryBaseMillis, TimeUnit.NANOSECONDS.toMillis(wait));
+        }
+
+        InetAddress address = ((InetSocketAddress) channel.remoteAddress()).getAddress();
+        String ip = address.getHostAddress();
+        if (!address.isLoopbackAddress() && !trustedAddresses.contains(ip)) {
+            TokenBucket ipBucket = ipBuckets.computeIfAbsent(ip, key -> new TokenBucket(perIpRate, perIpBurst, now));
+            wait = ipBucket.tryAcquire(now);
+            if (wait > 0) {
+                pendingRegistrations.decrementAndGet();
+                rejectedByIp.increment();
+                return Math.max(retryBaseMillis, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+        }
+
+        channel.attr(PENDING).set(this);
+        admitted.increment();
+        return 0;
+    }
+
+    /**
+     * 解析逗号分隔的地址列表，主机名在启动时解析一次
+     */
+    public static Set<String> parseAddresses(String value) {
+        Set<String> addresses = new HashSet<>();
+        if (value == null) {
+            return addresses;
+        }
+        for (String item : value.split(",")) {
+            String host = item.trim();
+            if (host.isEmpty()) {
+                continue;
+            }
+            try {
+                for (InetAddress address : InetAddress.getAllByName(host)) {
+                    addresses.add(address.getHostAddress());
+                }
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("可信地址无法解析: " + host, e);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * 拒绝连接：移除后续的业务处理器，协议识别后回复重试等待时间并关闭
+     */
+    private void reject(ChannelHandlerContext ctx, long retryAfter) {
+        long jittered = withJitter(retryAfter);
+        ChannelPipeline pipeline = ctx.pipeline();
+        IoTDeviceHandler handler = pipeline.get(IoTDeviceHandler.class);
+        if (handler != null) {
+            pipeline.remove(handler);
+        }
+        pipeline.addLast(new RejectHandler(jittered));
+        ctx.executor().schedule(() -> {
+            if (ctx.channel().isActive()) {
+                ctx.close();
+            }
+        }, REJECT_CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        logger.debug("拒绝连接: {}，{}ms后重试", ctx.channel().remoteAddress(), jittered);
+    }
+
+    /**
+     * 在[delay, 2*delay)内随机取值并限制在最大等待时间内，使被拒绝的设备错开重连
+     */
+    private long withJitter(long delay) {
+        long base = Math.min(delay, retryMaxMillis);
+        long jittered = base + ThreadLocalRandom.current().nextLong(base);
+        return Math.min(jittered, retryMaxMillis);
+    }
+
+    /**
+     * 回收长时间未使用的来源IP令牌桶
+     */
+    public void sweep() {
+        long now = System.nanoTime();
+        ipBuckets.entrySet().removeIf(entry -> entry.getValue().isFull(now));
+    }
+
+    /**
+     * 当前待注册的连接数
+     */
+    public int getPendingRegistrations() {
+        return pendingRegistrations.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * 因全局接入速率被拒绝的连接数
+     */
+    public long getRejectedByRate() {
+        return rejectedByRate.sum();
+    }
+
+    /**
+     * 因来源IP接入速率被拒绝的连接数
+     */
+    public long getRejectedByIp() {
+        return rejectedByIp.sum();
+    }
+
+    /**
+     * 因待注册连接数达到上限被拒绝的连接数
+     */
+    public long getRejectedByPending() {
+        return rejectedByPending.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "admitted=" + getAdmitted() +
+                ", rejectedByRate=" + getRejectedByRate() +
+                ", rejectedByIp=" + getRejectedByIp() +
+                ", rejectedByPending=" + getRejectedByPending() +
+                ", pending=" + getPendingRegistrations() + "/" + maxPendingRegistrations +
+                ", trackedIps=" + ipBuckets.size() +
+                ", acceptRate=" + acceptRate + "/" + acceptBurst +
+                ", perIpRate=" + perIpRate + "/" + perIpBurst +
+                ", trustedAddresses=" + trustedAddresses +
+                '}';
+    }
+
+    /**
+     * 被拒绝连接的末端处理器，丢弃设备发来的命令，按识别出的协议回复重试等待时间后关闭
+     */
+    static final class RejectHandler extends ChannelInboundHandlerAdapter {
+        private final long retryAfterMillis;
+
+        RejectHandler(long retryAfterMillis) {
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof DeviceProtocol) {
+                ctx.writeAndFlush(DeviceResponse.retryAfter(retryAfterMillis))
+                        .addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            // 命令对象由解码器复用和释放，这里直接丢弃
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.michael.iot.server;
+
+import java.util.List;
+
+/**
+ * 告警规则
+ * 对某一设备类型（"*"表示所有类型）的读数求值条件表达式，连续满足指定次数时触发告警，
+ * 触发后条件第一次不满足时告警恢复。只有携带了条件所引用字段的读数才参与计数。
+ */
+public class AlertRule {
+    public static final String ANY_TYPE = "*";
+
+    private final String id;
+    private final String name;
+    private final String deviceType;
+    private final RuleCondition condition;
+    private final int consecutive;
+    private final List<String> fields;
+
+    /**
+     * @param deviceType 设备类型，"*"表示所有类型
+     * @param consecutive 连续满足多少次读数后触发
+     */
+    public AlertRule(String id, String name, String deviceType, RuleCondition condition, int consecutive) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("规则ID不能为空");
+        }
+        if (consecutive < 1) {
+            throw new IllegalArgumentException("规则 " + id + " 的连续次数非法: " + consecutive);
+        }
+        this.condition = condition;
+        this.fields = condition.getFields();
+        if (fields.isEmpty() || fields.size() > SensorSchema.MAX_FIELDS) {
+            throw new IllegalArgumentException("规则 " + id + " 的条件必须引用1到" + SensorSchema.MAX_FIELDS + "个字段");
+        }
+        this.id = id;
+        this.name = name == null || name.isEmpty() ? id : name;
+        this.deviceType = deviceType == null || deviceType.isEmpty() ? ANY_TYPE : deviceType;
+        this.consecutive = consecutive;
+    }
+
+    /**
+     * 解析一行规则定义，格式为 规则ID|设备类型|条件|连续次数|规则名称，连续次数和规则名称可以省略
+     * 例如 high-temp|传感器|temperature > 28|3|温度过高
+     */
+    public static AlertRule parse(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("规则定义格式错误，应为 规则ID|设备类型|条件|连续次数|规则名称: " + line);
+        }
+        int consecutive = parts.length >= 4 && !parts[3].trim().isEmpty() ? Integer.parseInt(parts[3].trim()) : 1;
+        String name = parts.length >= 5 ? parts[4].trim() : null;
+        return new AlertRule(parts[0].trim(), name, parts[1].trim(), RuleCondition.parse(parts[2]), consecutive);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public RuleCondition getCondition() {
+        return condition;
+    }
+
+    public int getConsecutive() {
+        return consecutive;
+    }
+
+    /**
+     * 条件引用的字段名
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public boolean appliesToAllTypes() {
+        return ANY_TYPE.equals(deviceType);
+    }
+
+    @Override
+    public String toString() {
+        return "AlertRule{" +
+                "id='" + id + '\'' +
+                ", name='" + name + '\'' +
+                ", deviceType='" + deviceType + '\'' +
+                ", condition=" + condition +
+                ", consecutive=" + consecutive +
+                '}';
+    }
+}
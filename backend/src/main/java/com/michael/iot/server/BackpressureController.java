@@ -0,0 +1,196 @@
+package com.michael.iot.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备读取背压控制
+ *
+ * 统计每个设备、每个事件循环已发布到接入队列但尚未被监听器处理完的事件数。
+ * 任一计数超过高水位时暂停对应设备连接的自动读取，降到低水位以下后恢复；
+ * 连接出站缓冲超过写高水位（设备不读取响应）时同样暂停读取。
+ * 暂停、恢复只在连接所属的事件循环中执行，消费线程只负责递减计数并提交恢复任务。
+ */
+public class BackpressureController {
+    private final int deviceHighWatermark;
+    private final int deviceLowWatermark;
+    private final int loopHighWatermark;
+    private final int loopLowWatermark;
+
+    // 事件循环 -> 该循环上的待处理计数
+    private final Map<EventLoop, LoopState> loops = new ConcurrentHashMap<>();
+
+    // 统计
+    private final LongAdder devicePauses = new LongAdder();
+    private final LongAdder loopPauses = new LongAdder();
+    private final LongAdder writabilityPauses = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+    private final LongAdder pausedNanos = new LongAdder();
+    private final AtomicInteger pausedChannels = new AtomicInteger();
+
+    public BackpressureController(int deviceHighWatermark, int deviceLowWatermark,
+                                  int loopHighWatermark, int loopLowWatermark) {
+        if (deviceLowWatermark < 0 || deviceHighWatermark <= deviceLowWatermark) {
+            throw new IllegalArgumentException("设备水位配置非法: high=" + deviceHighWatermark + ", low=" + deviceLowWatermark);
+        }
+        if (loopLowWatermark < 0 || loopHighWatermark <= loopLowWatermark) {
+            throw new IllegalArgumentException("事件循环水位配置非法: high=" + loopHighWatermark + ", low=" + loopLowWatermark);
+        }
+        this.deviceHighWatermark = deviceHighWatermark;
+        this.deviceLowWatermark = deviceLowWatermark;
+        this.loopHighWatermark = loopHighWatermark;
+        this.loopLowWatermark = loopLowWatermark;
+    }
+
+    /**
+     * 为新连接创建流控对象，需在连接注册到事件循环之后调用
+     */
+    public DeviceFlowControl register(Channel channel) {
+        LoopState loop = loops.computeIfAbsent(channel.eventLoop(), LoopState::new);
+        return new DeviceFlowControl(this, loop, channel);
+    }
+
+    public int getDeviceHighWatermark() {
+        return deviceHighWatermark;
+    }
+
+    public int getDeviceLowWatermark() {
+        return deviceLowWatermark;
+    }
+
+    public int getLoopHighWatermark() {
+        return loopHighWatermark;
+    }
+
+    public int getLoopLowWatermark() {
+        return loopLowWatermark;
+    }
+
+    /**
+     * 因单设备待处理事件过多而暂停读取的次数
+     */
+    public long getDevicePauses() {
+        return devicePauses.sum();
+    }
+
+    /**
+     * 因事件循环待处理事件过多而暂停读取的次数
+     */
+    public long getLoopPauses() {
+        return loopPauses.sum();
+    }
+
+    /**
+     * 因出站缓冲超过写高水位而暂停读取的次数
+     */
+    public long getWritabilityPauses() {
+        return writabilityPauses.sum();
+    }
+
+    public long getResumes() {
+        return resumes.sum();
+    }
+
+    /**
+     * 所有连接累计暂停读取的时长（毫秒）
+     */
+    public long getPausedMillis() {
+        return pausedNanos.sum() / 1_000_000;
+    }
+
+    /**
+     * 当前处于暂停读取状态的连接数
+     */
+    public int getPausedChannels() {
+        return pausedChannels.get();
+    }
+
+    void recordPause(int reason) {
+        switch (reason) {
+            case DeviceFlowControl.REASON_DEVICE:
+                devicePauses.increment();
+                break;
+            case DeviceFlowControl.REASON_LOOP:
+                loopPauses.increment();
+                break;
+            case DeviceFlowControl.REASON_WRITABILITY:
+                writabilityPauses.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    void channelPaused() {
+        pausedChannels.incrementAndGet();
+    }
+
+    void channelResumed(long pausedForNanos) {
+        pausedChannels.decrementAndGet();
+        resumes.increment();
+        pausedNanos.add(pausedForNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "BackpressureController{" +
+                "devicePauses=" + getDevicePauses() +
+                ", loopPauses=" + getLoopPauses() +
+                ", writabilityPauses=" + getWritabilityPauses() +
+                ", resumes=" + getResumes() +
+                ", pausedChannels=" + getPausedChannels() +
+                ", pausedMillis=" + getPausedMillis() +
+                ", watermarks=device " + deviceLowWatermark + "/" + deviceHighWatermark +
+                ", loop " + loopLowWatermark + "/" + loopHighWatermark +
+                '}';
+    }
+
+    /**
+     * 单个事件循环的待处理计数，以及因循环水位被暂停的连接
+     */
+    final class LoopState {
+        final EventLoop eventLoop;
+        final AtomicInteger pending = new AtomicInteger();
+        // 只在eventLoop线程中访问
+        final List<DeviceFlowControl> pausedByLoop = new ArrayList<>();
+        private final Runnable resumeTask = this::resumeAll;
+
+        LoopState(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        /**
+         * 在事件循环线程中调用
+         */
+        boolean increment() {
+            return pending.incrementAndGet() >= loopHighWatermark;
+        }
+
+        /**
+         * 可在任意线程中调用，降到低水位时提交恢复任务
+         */
+        void decrement() {
+            if (pending.decrementAndGet() == loopLowWatermark) {
+                eventLoop.execute(resumeTask);
+            }
+        }
+
+        private void resumeAll() {
+            if (pending.get() > loopLowWatermark || pausedByLoop.isEmpty()) {
+                return;
+            }
+            List<DeviceFlowControl> paused = new ArrayList<>(pausedByLoop);
+            pausedByLoop.clear();
+            for (DeviceFlowControl flow : paused) {
+                flow.clearReason(DeviceFlowControl.REASON_LOOP);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制协议命令解码器
+ * 位于VarintFrameDecoder之后，把每一帧解析为可复用的BinaryDeviceCommand交给业务处理器。
+ * 每个连接需要一个独立的实例，字段表随连接保存。
+ */
+public class BinaryCommandDecoder extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryCommandDecoder.class);
+
+    private final BinaryDeviceCommand command = new BinaryDeviceCommand();
+    private final String[] keys = new String[BinaryProtocol.MAX_KEYS];
+    private int keyCount;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        ByteBuf frame = (ByteBuf) msg;
+        try {
+            try {
+                decode(frame);
+            } catch (CorruptedFrameException | IndexOutOfBoundsException e) {
+                logger.debug("二进制帧格式错误: {}", e.getMessage());
+                ctx.writeAndFlush(DeviceResponse.error("二进制帧格式错误: " + e.getMessage()));
+                return;
+            }
+            ctx.fireChannelRead(command);
+        } finally {
+            command.clear();
+            frame.release();
+        }
+    }
+
+    /**
+     * 把一帧解析到可复用的命令对象中
+     * @param frame 不含长度前缀的帧，解析会移动其readerIndex
+     * @return 解析结果，在下一次解析前有效
+     * @throws CorruptedFrameException 帧格式错误
+     */
+    public BinaryDeviceCommand decode(ByteBuf frame) {
+        byte frameType = frame.readByte();
+        switch (frameType) {
+            case BinaryProtocol.REGISTER:
+                command.reset(CommandType.REGISTER, CommandType.REGISTER.getVerb());
+                command.addField(BinaryProtocol.readString(frame));
+                command.addField(BinaryProtocol.readString(frame));
+                command.addField(BinaryProtocol.readString(frame));
+                break;
+            case BinaryProtocol.HEARTBEAT:
+                // 二进制心跳不携带设备ID，保留空字段以保持与文本协议相同的字段布局
+                command.reset(CommandType.HEARTBEAT, CommandType.HEARTBEAT.getVerb());
+                command.addField("");
+                break;
+            case BinaryProtocol.DATA:
+                command.reset(CommandType.DATA, CommandType.DATA.getVerb());
+                command.addField("");
+                readReadings(frame);
+                break;
+            case BinaryProtocol.DATA_BATCH:
+                command.reset(CommandType.DATA_BATCH, CommandType.DATA_BATCH.getVerb());
+                command.addField("");
+                command.setBatch(readBatch(frame));
+                break;
+            case BinaryProtocol.PONG:
+                command.reset(CommandType.PONG, CommandType.PONG.getVerb());
+                command.addField(BinaryProtocol.readString(frame));
+                break;
+            case BinaryProtocol.RESUME:
+                command.reset(CommandType.RESUME, CommandType.RESUME.getVerb());
+                command.addField(BinaryProtocol.readString(frame));
+                command.addField(BinaryProtocol.readString(frame));
+                break;
+            default:
+                command.reset(CommandType.UNKNOWN, String.format("0x%02X", frameType & 0xFF));
+                command.addField("");
+                break;
+        }
+        return command;
+    }
+
+    private void readReadings(ByteBuf frame) {
+        int count = BinaryProtocol.readVarint(frame);
+        for (int i = 0; i < count; i++) {
+            String key = readKey(frame);
+            command.addReading(key, frame.readDouble());
+        }
+    }
+
+    private DeviceDataBatch readBatch(ByteBuf frame) {
+        int count = BinaryProtocol.readVarint(frame);
+        if (count <= 0 || count > frame.readableBytes()) {
+            throw new CorruptedFrameException("批量数据条数非法: " + count);
+        }
+        DeviceDataBatch batch = new DeviceDataBatch(count);
+        long timestamp = frame.readLong();
+        for (int i = 0; i < count; i++) {
+            timestamp += BinaryProtocol.readZigZagVarLong(frame);
+            int entry = command.startEntry();
+            readReadings(frame);
+            batch.add(timestamp, command.renderEntry(entry));
+        }
+        return batch;
+    }
+
+    /**
+     * 读取字段引用，新字段名会追加到本连接的字段表
+     */
+    private String readKey(ByteBuf frame) {
+        int ref = BinaryProtocol.readVarint(frame);
+        if ((ref & 1) == 0) {
+            int index = ref >>> 1;
+            if (index >= keyCount) {
+                throw new CorruptedFrameException("字段下标不存在: " + index);
+            }
+            return keys[index];
+        }
+
+        int length = ref >>> 1;
+        if (length > frame.readableBytes()) {
+            throw new CorruptedFrameException("字段名长度非法: " + length);
+        }
+        if (keyCount == keys.length) {
+            throw new CorruptedFrameException("字段表已满: " + keys.length);
+        }
+        String key = frame.toString(frame.readerIndex(), length, StandardCharsets.UTF_8);
+        frame.skipBytes(length);
+        keys[keyCount++] = key;
+        return key;
+    }
+}
@@ -0,0 +1,216 @@
+package com.michael.iot.server;
+
+import java.util.Arrays;
+
+/**
+ * 二进制协议设备命令
+ * 字段布局与文本协议一致，DATA命令的读数以字段名和double数组保存，
+ * 只有调用getPayload()时才渲染为JSON文本。
+ */
+public class BinaryDeviceCommand extends DeviceCommand {
+    private static final int MAX_FIELDS = 4;
+
+    private final String[] fields = new String[MAX_FIELDS];
+    private int fieldCount;
+    private CommandType type = CommandType.UNKNOWN;
+    private String[] readingKeys = new String[8];
+    private double[] readingValues = new double[8];
+    private int readingCount;
+    // 批量数据每个条目的第一条读数下标
+    private int[] entryStarts = new int[8];
+    private int entryCount;
+    private DeviceDataBatch batch;
+
+    /**
+     * 开始填充一条新命令，动词字段取命令类型名称
+     */
+    void reset(CommandType type, String verb) {
+        clear();
+        this.type = type;
+        fields[0] = verb;
+        fieldCount = 1;
+    }
+
+    /**
+     * 追加一个参数字段
+     */
+    void addField(String value) {
+        fields[fieldCount++] = value;
+    }
+
+    /**
+     * 追加一个读数，字段名引用连接字段表中的字符串，不产生新对象
+     */
+    void addReading(String key, double value) {
+        if (readingCount == readingKeys.length) {
+            readingKeys = Arrays.copyOf(readingKeys, readingCount * 2);
+            readingValues = Arrays.copyOf(readingValues, readingCount * 2);
+        }
+        readingKeys[readingCount] = key;
+        readingValues[readingCount] = value;
+        readingCount++;
+    }
+
+    @Override
+    public CommandType getType() {
+        return type;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String getVerb() {
+        return fields[0];
+    }
+
+    @Override
+    public String field(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("字段下标越界: " + index + ", 字段数: " + fieldCount);
+        }
+        return fields[index];
+    }
+
+    @Override
+    public boolean fieldEquals(int index, String value) {
+        return value.equals(field(index));
+    }
+
+    /**
+     * 开始批量数据的下一个条目，之后追加的读数属于该条目
+     * @return 条目下标
+     */
+    int startEntry() {
+        if (entryCount == entryStarts.length) {
+            entryStarts = Arrays.copyOf(entryStarts, entryCount * 2);
+        }
+        entryStarts[entryCount] = readingCount;
+        return entryCount++;
+    }
+
+    /**
+     * 把读数渲染为与文本协议相同的JSON对象，例如 {"temperature":23.5,"humidity":55.2}
+     */
+    @Override
+    public String getPayload() {
+        if (type != CommandType.DATA) {
+            return null;
+        }
+        return renderReadings(0, readingCount);
+    }
+
+    /**
+     * 渲染批量数据中一个条目的读数
+     */
+    String renderEntry(int entry) {
+        return renderReadings(entryStarts[entry], entryEnd(entry));
+    }
+
+    private int entryEnd(int entry) {
+        return entry + 1 < entryCount ? entryStarts[entry + 1] : readingCount;
+    }
+
+    private String renderReadings(int from, int to) {
+        StringBuilder json = new StringBuilder(16 + (to - from) * 24);
+        json.append('{');
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append('"').append(readingKeys[i]).append("\":");
+            double value = readingValues[i];
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                json.append("null");
+            } else {
+                json.append(value);
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * 读数已经按字段名和double解码，逐个按字段名写入即可
+     */
+    @Override
+    public int extractReading(SensorExtractor extractor, String deviceType, long timestamp, SensorReading reading) {
+        if (type != CommandType.DATA) {
+            return 0;
+        }
+        return extractReadings(extractor, deviceType, timestamp, reading, 0, readingCount);
+    }
+
+    @Override
+    public int extractBatchReading(SensorExtractor extractor, String deviceType, int entry, long timestamp,
+                                   SensorReading reading) {
+        if (type != CommandType.DATA_BATCH || entry < 0 || entry >= entryCount) {
+            return 0;
+        }
+        return extractReadings(extractor, deviceType, timestamp, reading, entryStarts[entry], entryEnd(entry));
+    }
+
+    private int extractReadings(SensorExtractor extractor, String deviceType, long timestamp, SensorReading reading,
+                                int from, int to) {
+        extractor.reset(reading, deviceType, timestamp);
+        for (int i = from; i < to; i++) {
+            double value = readingValues[i];
+            if (!Double.isNaN(value)) {
+                extractor.put(reading, deviceType, readingKeys[i], value);
+            }
+        }
+        return reading.getFieldCount();
+    }
+
+    @Override
+    public DeviceDataBatch getBatch() {
+        return batch;
+    }
+
+    void setBatch(DeviceDataBatch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * 清空当前读数和批量条目
+     */
+    void clearReadings() {
+        Arrays.fill(readingKeys, 0, readingCount, null);
+        readingCount = 0;
+        entryCount = 0;
+    }
+
+    /**
+     * 获取读数个数
+     */
+    public int getReadingCount() {
+        return readingCount;
+    }
+
+    public String getReadingKey(int index) {
+        return readingKeys[index];
+    }
+
+    public double getReadingValue(int index) {
+        return readingValues[index];
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(fields, 0, fieldCount, null);
+        clearReadings();
+        fieldCount = 0;
+        batch = null;
+        type = CommandType.UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryDeviceCommand{" +
+                "type=" + type +
+                ", fields=" + Arrays.toString(Arrays.copyOf(fields, fieldCount)) +
+                ", readings=" + readingCount +
+                '}';
+    }
+}
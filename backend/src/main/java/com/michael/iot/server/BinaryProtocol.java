@@ -0,0 +1,157 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑二进制设备协议
+ *
+ * 连接建立后设备先发送一个字节的前导码 MAGIC，之后每一帧为：
+ * <pre>
+ *   varint 帧长度 | 1字节 帧类型 | 帧内容
+ * </pre>
+ * 字符串编码为 varint长度 + UTF-8字节。DATA帧内容为 varint读数个数，之后每个读数为
+ * varint字段引用 + 8字节大端double。字段引用最低位为1时表示新字段名，高位为名称长度，
+ * 随后是名称的UTF-8字节，并追加到本连接的字段表中；最低位为0时高位为字段表下标。
+ * 这样同一字段名在每个连接上只传输一次。
+ * DATA_BATCH帧内容为 varint条数 + 8字节基准时间戳，之后每条为 zigzag varlong
+ * 相对上一条的时间增量 + 与DATA帧相同的读数列表。
+ * RESUME帧内容为设备ID和会话令牌两个字符串，SESSION、RESUMED帧分别携带令牌和设备ID；
+ * 恢复成功后先回复RESUMED，再回复携带新令牌的SESSION，旧令牌随即失效。
+ * REDIRECT帧携带设备应改连的 主机:端口，之后服务器关闭连接。
+ */
+public final class BinaryProtocol {
+    /** 二进制协议前导码，文本协议的首字节不可能是该值 */
+    public static final int MAGIC = 0xB1;
+    /** 单帧最大长度 */
+    public static final int MAX_FRAME_LENGTH = 65536;
+    /** 每个连接的字段表最大容量 */
+    public static final int MAX_KEYS = 64;
+
+    // 设备 -> 服务器
+    public static final byte REGISTER = 0x01;
+    public static final byte HEARTBEAT = 0x02;
+    public static final byte DATA = 0x03;
+    public static final byte PONG = 0x04;
+    public static final byte DATA_BATCH = 0x05;
+    public static final byte RESUME = 0x06;
+
+    // 服务器 -> 设备
+    public static final byte REGISTERED = (byte) 0x81;
+    public static final byte HEARTBEAT_OK = (byte) 0x82;
+    public static final byte DATA_RECEIVED = (byte) 0x83;
+    public static final byte PING = (byte) 0x84;
+    public static final byte DATA_BATCH_RECEIVED = (byte) 0x85;
+    public static final byte RETRY_AFTER = (byte) 0x86;
+    public static final byte SESSION = (byte) 0x87;
+    public static final byte RESUMED = (byte) 0x88;
+    public static final byte REDIRECT = (byte) 0x89;
+    public static final byte ERROR = (byte) 0xFF;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * 写入无符号varint
+     */
+    public static void writeVarint(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    /**
+     * 计算varint编码后的字节数
+     */
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * 读取无符号varint
+     * @throws CorruptedFrameException 数据不完整或超过5个字节
+     */
+    public static int readVarint(ByteBuf buf) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buf.isReadable()) {
+                throw new CorruptedFrameException("varint不完整");
+            }
+            byte b = buf.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("varint过长");
+    }
+
+    /**
+     * 写入zigzag编码的有符号varlong
+     */
+    public static void writeZigZagVarLong(ByteBuf buf, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buf.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buf.writeByte((int) zigzag);
+    }
+
+    /**
+     * 读取zigzag编码的有符号varlong
+     */
+    public static long readZigZagVarLong(ByteBuf buf) {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            if (!buf.isReadable()) {
+                throw new CorruptedFrameException("varlong不完整");
+            }
+            byte b = buf.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (result >>> 1) ^ -(result & 1);
+            }
+        }
+        throw new CorruptedFrameException("varlong过长");
+    }
+
+    /**
+     * 写入字符串
+     */
+    public static void writeString(ByteBuf buf, String value) {
+        writeVarint(buf, ByteBufUtil.utf8Bytes(value));
+        buf.writeCharSequence(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取字符串
+     */
+    public static String readString(ByteBuf buf) {
+        int length = readVarint(buf);
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new CorruptedFrameException("字符串长度非法: " + length);
+        }
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+
+    /**
+     * 写入帧长度前缀，body为帧类型加帧内容
+     */
+    public static void writeFrame(ByteBuf out, ByteBuf body) {
+        writeVarint(out, body.readableBytes());
+        out.writeBytes(body);
+    }
+}
@@ -0,0 +1,95 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制协议响应编码器
+ * 固定响应复用预编码的缓冲区（写出时取由对象池回收的retainedDuplicate()），
+ * 其余响应按 varint长度 + 类型 + 字符串参数 编码
+ */
+@ChannelHandler.Sharable
+public class BinaryResponseEncoder extends MessageToMessageEncoder<DeviceResponse> {
+    public static final BinaryResponseEncoder INSTANCE = new BinaryResponseEncoder();
+
+    private final Map<DeviceResponse.Code, ByteBuf> encoded = new EnumMap<>(DeviceResponse.Code.class);
+
+    private BinaryResponseEncoder() {
+        encoded.put(DeviceResponse.Code.HEARTBEAT_OK, fixedFrame(BinaryProtocol.HEARTBEAT_OK));
+        encoded.put(DeviceResponse.Code.DATA_RECEIVED, fixedFrame(BinaryProtocol.DATA_RECEIVED));
+        encoded.put(DeviceResponse.Code.PING, fixedFrame(BinaryProtocol.PING));
+    }
+
+    private static ByteBuf fixedFrame(byte type) {
+        return PooledByteBufAllocator.DEFAULT.directBuffer(2).writeByte(1).writeByte(type);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, DeviceResponse response, List<Object> out) throws Exception {
+        ByteBuf shared = encoded.get(response.getCode());
+        if (shared != null) {
+            out.add(shared.retainedDuplicate());
+            return;
+        }
+
+        if (response.getCode() == DeviceResponse.Code.DATA_BATCH_RECEIVED) {
+            out.add(countFrame(ctx, BinaryProtocol.DATA_BATCH_RECEIVED, response.getCount()));
+            return;
+        }
+        if (response.getCode() == DeviceResponse.Code.RETRY_AFTER) {
+            out.add(countFrame(ctx, BinaryProtocol.RETRY_AFTER, response.getCount()));
+            return;
+        }
+
+        byte type;
+        switch (response.getCode()) {
+            case REGISTERED:
+                type = BinaryProtocol.REGISTERED;
+                break;
+            case SESSION:
+                type = BinaryProtocol.SESSION;
+                break;
+            case RESUMED:
+                type = BinaryProtocol.RESUMED;
+                break;
+            case REDIRECT:
+                type = BinaryProtocol.REDIRECT;
+                break;
+            case ERROR:
+                type = BinaryProtocol.ERROR;
+                break;
+            default:
+                throw new EncoderException("二进制协议不支持的响应: " + response.getCode());
+        }
+
+        String argument = response.getArgument();
+        int argumentLength = ByteBufUtil.utf8Bytes(argument);
+        int bodyLength = 1 + BinaryProtocol.varintSize(argumentLength) + argumentLength;
+        ByteBuf buf = ctx.alloc().buffer(BinaryProtocol.varintSize(bodyLength) + bodyLength);
+        BinaryProtocol.writeVarint(buf, bodyLength);
+        buf.writeByte(type);
+        BinaryProtocol.writeString(buf, argument);
+        out.add(buf);
+    }
+
+    /**
+     * 编码只携带一个varint数值的帧
+     */
+    private static ByteBuf countFrame(ChannelHandlerContext ctx, byte type, int count) {
+        int bodyLength = 1 + BinaryProtocol.varintSize(count);
+        ByteBuf buf = ctx.alloc().buffer(1 + bodyLength);
+        BinaryProtocol.writeVarint(buf, bodyLength);
+        buf.writeByte(type);
+        BinaryProtocol.writeVarint(buf, count);
+        return buf;
+    }
+}
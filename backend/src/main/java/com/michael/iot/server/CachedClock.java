@@ -0,0 +1,38 @@
+package com.michael.iot.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 毫秒精度的缓存时钟
+ * 由一个守护线程每毫秒刷新一次当前时间，热路径上读取时间只是一次volatile读，
+ * 适合心跳、数据上报时间这类只需要毫秒精度的时间戳；需要精确计时的地方仍应使用System.nanoTime()。
+ */
+public final class CachedClock {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        Thread ticker = new Thread(CachedClock::tick, "iot-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private CachedClock() {
+    }
+
+    /**
+     * 当前时间（毫秒），与System.currentTimeMillis()的误差在一个刻度左右
+     */
+    public static long currentTimeMillis() {
+        return now;
+    }
+
+    private static void tick() {
+        while (true) {
+            now = System.currentTimeMillis();
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+}
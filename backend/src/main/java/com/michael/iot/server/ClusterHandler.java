@@ -0,0 +1,106 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 集群节点连接处理器
+ * 本节点发起的连接（peer不为null）上发送在线状态和查询，接收查询结果；
+ * 其他节点发起的连接上先收到HELLO确定对方身份，之后接收在线状态并回复查询。
+ * 所有回调都在集群通信线程上执行。
+ */
+public class ClusterHandler extends SimpleChannelInboundHandler<ByteBuf> {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterHandler.class);
+
+    private final ClusterNode node;
+    private final ClusterNode.Peer peer;
+    // 对方节点ID，发起方在创建时已知，接收方在HELLO后得到
+    private String peerId;
+
+    public ClusterHandler(ClusterNode node, ClusterNode.Peer peer) {
+        this.node = node;
+        this.peer = peer;
+        this.peerId = peer != null ? peer.getMember().getId() : null;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (peer != null) {
+            node.outboundActive(peer, ctx.channel());
+        }
+        super.channelActive(ctx);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+        byte type = frame.readByte();
+        if (type == ClusterProtocol.HELLO) {
+            if (peer == null && peerId == null) {
+                String id = BinaryProtocol.readString(frame);
+                if (node.inboundHello(id, ctx.channel())) {
+                    peerId = id;
+                }
+            }
+            return;
+        }
+        if (peerId == null) {
+            throw new CorruptedFrameException("集群连接未发送HELLO");
+        }
+        switch (type) {
+            case ClusterProtocol.PING:
+                ctx.writeAndFlush(ClusterNode.controlFrame(ctx.alloc(), ClusterProtocol.PONG));
+                break;
+            case ClusterProtocol.PONG:
+                break;
+            case ClusterProtocol.PRESENCE:
+                node.applyPresence(peerId, frame);
+                break;
+            case ClusterProtocol.QUERY_DEVICES:
+            case ClusterProtocol.QUERY_COUNTS:
+                node.serveQuery(ctx.channel(), type, frame);
+                break;
+            case ClusterProtocol.DEVICES_RESULT:
+            case ClusterProtocol.COUNTS_RESULT:
+                node.completeRequest(peerId, type, frame);
+                break;
+            default:
+                throw new CorruptedFrameException("未知的集群帧类型: " + type);
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            if (((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+                logger.warn("集群节点 {} 读超时，关闭连接", peerId);
+                ctx.close();
+            } else if (peer != null) {
+                ctx.writeAndFlush(ClusterNode.controlFrame(ctx.alloc(), ClusterProtocol.PING));
+            }
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (peer != null) {
+            node.outboundInactive(peer, ctx.channel());
+        } else if (peerId != null) {
+            node.inboundInactive(peerId, ctx.channel());
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.warn("集群节点 {} 连接异常: {}", peerId != null ? peerId : ctx.channel().remoteAddress(), cause.toString());
+        ctx.close();
+    }
+}
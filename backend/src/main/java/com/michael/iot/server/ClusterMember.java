@@ -0,0 +1,88 @@
+package com.michael.iot.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 集群成员
+ * 成员列表静态配置，格式为 节点ID=主机:集群端口:设备端口，多个成员以逗号分隔，例如
+ * node1=10.0.0.1:7000:8888,node2=10.0.0.2:7000:8888
+ * 集群端口用于节点之间交换在线状态和查询，设备端口是重定向设备时告知的接入地址。
+ */
+public final class ClusterMember {
+    private final String id;
+    private final String host;
+    private final int clusterPort;
+    private final int devicePort;
+
+    public ClusterMember(String id, String host, int clusterPort, int devicePort) {
+        this.id = id;
+        this.host = host;
+        this.clusterPort = clusterPort;
+        this.devicePort = devicePort;
+    }
+
+    /**
+     * 解析成员列表
+     * @throws IllegalArgumentException 格式错误或节点ID重复
+     */
+    public static List<ClusterMember> parseList(String value) {
+        List<ClusterMember> members = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        if (value == null) {
+            return members;
+        }
+        for (String entry : value.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            String[] address = equals > 0 ? entry.substring(equals + 1).split(":") : new String[0];
+            if (address.length != 3) {
+                throw new IllegalArgumentException("集群成员格式错误，应为 节点ID=主机:集群端口:设备端口: " + entry);
+            }
+            String id = entry.substring(0, equals).trim();
+            try {
+                members.add(new ClusterMember(id, address[0].trim(),
+                        Integer.parseInt(address[1].trim()), Integer.parseInt(address[2].trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("集群成员端口无效: " + entry, e);
+            }
+            if (!ids.add(id)) {
+                throw new IllegalArgumentException("集群成员ID重复: " + id);
+            }
+        }
+        return members;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    public int getDevicePort() {
+        return devicePort;
+    }
+
+    /**
+     * 设备接入地址，重定向响应中携带
+     */
+    public String getDeviceAddress() {
+        return host + ":" + devicePort;
+    }
+
+    @Override
+    public String toString() {
+        return id + "=" + host + ":" + clusterPort + ":" + devicePort;
+    }
+}
@@ -0,0 +1,816 @@
+package com.michael.iot.server;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 集群节点
+ * 成员静态配置，节点之间两两建立连接。一致性哈希环只包含本节点和当前连通的节点，
+ * 设备注册时若归属其他节点则被重定向过去；成员变化后，本节点上不再归属自己的在线设备也被重定向，
+ * 节点失联时它的设备重连后自然落到其余节点上。
+ * 各节点把本地设备的上下线合并后定期发给其他节点（同一设备在一个周期内只发送最新状态），
+ * 连接建立时先发送一次全量，据此每个节点都持有全集群的在线状态副本，用于向前端推送设备列表和状态变化。
+ * 设备计数和分页查询则分发到所有连通的节点，各节点只计入在线的设备和归属自己的离线设备，
+ * 再由发起查询的节点合并；超时或断开的节点记入结果的unavailableNodes。
+ * 网络事件、副本更新和环的重建都在单个集群通信线程上进行。
+ */
+public class ClusterNode {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterNode.class);
+    private static final int PING_INTERVAL_SECONDS = 1;
+    private static final int PEER_TIMEOUT_SECONDS = 5;
+
+    private final DeviceManager deviceManager;
+    private final ServerConfig config;
+    private final ClusterMember self;
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+    // 其他节点的在线状态副本，按节点ID，只由集群通信线程写入
+    private final Map<String, Map<String, DeviceInfo>> views = new ConcurrentHashMap<>();
+    // 其他节点发起的连接，按节点ID
+    private final Map<String, Channel> inbound = new ConcurrentHashMap<>();
+    // 待发送的本地状态变化，同一设备只保留一项，发送时读取最新状态
+    private final Map<String, DeviceInfo> pendingPresence = new ConcurrentHashMap<>();
+    private final Map<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final List<ClusterPresenceListener> presenceListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    private volatile ConsistentHashRing ring;
+    private volatile boolean running;
+    private EventLoopGroup group;
+    private Channel serverChannel;
+
+    private final LongAdder presenceSent = new LongAdder();
+    private final LongAdder presenceReceived = new LongAdder();
+    private final LongAdder queriesSent = new LongAdder();
+    private final LongAdder queriesServed = new LongAdder();
+    private final LongAdder partialResults = new LongAdder();
+    private final LongAdder redirects = new LongAdder();
+    private final LongAdder rebalanced = new LongAdder();
+
+    /**
+     * @throws IllegalArgumentException 成员列表格式错误或不包含本节点
+     */
+    public ClusterNode(DeviceManager deviceManager, ServerConfig config) {
+        this.deviceManager = deviceManager;
+        this.config = config;
+        ClusterMember local = null;
+        for (ClusterMember member : ClusterMember.parseList(config.getClusterMembers())) {
+            if (member.getId().equals(config.getClusterNodeId())) {
+                local = member;
+            } else {
+                peers.put(member.getId(), new Peer(member));
+            }
+        }
+        if (local == null) {
+            throw new IllegalArgumentException("集群成员列表中没有本节点: " + config.getClusterNodeId());
+        }
+        this.self = local;
+        this.ring = new ConsistentHashRing(Collections.singletonList(self), config.getClusterVirtualNodes());
+
+        // 只同步稳定状态，过渡状态稍后会变为在线或离线
+        ListenerOptions options = ListenerOptions.sync();
+        options.setName("cluster");
+        deviceManager.addStatusListener((device, oldStatus, newStatus) -> {
+            if (!newStatus.isTransient()) {
+                pendingPresence.put(device.getDeviceId(), device);
+            }
+        }, options);
+    }
+
+    /**
+     * 监听集群端口并连接其他节点
+     */
+    public synchronized void start() throws InterruptedException {
+        if (running) {
+            return;
+        }
+        running = true;
+        group = config.getTransport().newEventLoopGroup(1, "iot-cluster");
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(group)
+                .channel(config.getTransport().serverChannelClass())
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new IdleStateHandler(PEER_TIMEOUT_SECONDS, 0, 0));
+                        ch.pipeline().addLast(new VarintFrameDecoder(ClusterProtocol.MAX_FRAME_LENGTH));
+                        ch.pipeline().addLast(new ClusterHandler(ClusterNode.this, null));
+                    }
+                })
+                .childOption(ChannelOption.TCP_NODELAY, true);
+        serverChannel = bootstrap.bind(self.getClusterPort()).sync().channel();
+        for (Peer peer : peers.values()) {
+            connect(peer);
+        }
+        int flushMillis = Math.max(1, config.getClusterPresenceFlushMillis());
+        group.scheduleAtFixedRate(this::flushPresence, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        logger.info("集群节点启动成功: {}，集群端口: {}，其他成员: {}", self.getId(), self.getClusterPort(), peers.keySet());
+    }
+
+    /**
+     * 关闭集群连接，未完成的查询以部分结果返回
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (Peer peer : peers.values()) {
+            Channel channel = peer.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        for (PendingRequest request : pendingRequests.values()) {
+            request.expire();
+        }
+        group.shutdownGracefully();
+        logger.info("集群节点已关闭: {}", self.getId());
+    }
+
+    private void connect(Peer peer) {
+        if (!running) {
+            return;
+        }
+        ClusterMember member = peer.getMember();
+        new Bootstrap().group(group)
+                .channel(config.getTransport().socketChannelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.max(1000, config.getClusterReconnectMillis()))
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new IdleStateHandler(PEER_TIMEOUT_SECONDS, PING_INTERVAL_SECONDS, 0));
+                        ch.pipeline().addLast(new VarintFrameDecoder(ClusterProtocol.MAX_FRAME_LENGTH));
+                        ch.pipeline().addLast(new ClusterHandler(ClusterNode.this, peer));
+                    }
+                })
+                .connect(member.getHost(), member.getClusterPort())
+                .addListener((ChannelFutureListener) future -> {
+                    if (!future.isSuccess()) {
+                        logger.debug("连接集群节点 {} 失败: {}", member, future.cause().toString());
+                        scheduleReconnect(peer);
+                    }
+                });
+    }
+
+    private void scheduleReconnect(Peer peer) {
+        if (running) {
+            group.schedule(() -> connect(peer), config.getClusterReconnectMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ---------------------------------------------------------------- 连接与成员
+
+    /**
+     * 本节点发起的连接建立：表明身份并发送全量在线状态，随后把对方加入哈希环
+     */
+    void outboundActive(Peer peer, Channel channel) {
+        peer.channel = channel;
+        ByteBuf hello = channel.alloc().buffer();
+        hello.writeByte(ClusterProtocol.HELLO);
+        BinaryProtocol.writeString(hello, self.getId());
+        channel.write(ClusterProtocol.frame(channel.alloc(), hello));
+        sendSnapshot(channel);
+        logger.info("已连接集群节点: {}", peer.getMember());
+        rebuildRing();
+    }
+
+    void outboundInactive(Peer peer, Channel channel) {
+        if (peer.channel != channel) {
+            return;
+        }
+        peer.channel = null;
+        logger.info("与集群节点 {} 的连接断开", peer.getMember().getId());
+        rebuildRing();
+        for (PendingRequest request : pendingRequests.values()) {
+            request.lost(peer.getMember().getId());
+        }
+        scheduleReconnect(peer);
+    }
+
+    /**
+     * 其他节点发起的连接表明身份
+     * @return 是否为已知成员，未知成员的连接被关闭
+     */
+    boolean inboundHello(String peerId, Channel channel) {
+        if (!peers.containsKey(peerId)) {
+            logger.warn("拒绝未知集群节点的连接: {} {}", peerId, channel.remoteAddress());
+            channel.close();
+            return false;
+        }
+        Channel previous = inbound.put(peerId, channel);
+        if (previous != null && previous != channel) {
+            previous.close();
+        }
+        views.computeIfAbsent(peerId, id -> new ConcurrentHashMap<>());
+        return true;
+    }
+
+    /**
+     * 对方发起的连接断开，丢弃它的在线状态副本；它的设备重连到其他节点后会重新出现
+     */
+    void inboundInactive(String peerId, Channel channel) {
+        if (!inbound.remove(peerId, channel)) {
+            return;
+        }
+        Map<String, DeviceInfo> view = views.remove(peerId);
+        if (view != null && !view.isEmpty()) {
+            notifyViewChange(peerId);
+        }
+    }
+
+    /**
+     * 按当前连通的节点重建哈希环，成员有变化时重定向不再归属本节点的在线设备
+     */
+    private void rebuildRing() {
+        List<ClusterMember> members = new ArrayList<>();
+        members.add(self);
+        for (Peer peer : peers.values()) {
+            if (peer.isConnected()) {
+                members.add(peer.getMember());
+            }
+        }
+        ConsistentHashRing current = ring;
+        if (sameMembers(current, members)) {
+            return;
+        }
+        ConsistentHashRing next = new ConsistentHashRing(members, config.getClusterVirtualNodes());
+        ring = next;
+        logger.info("集群成员变化: {}", next);
+        if (config.isClusterRebalance()) {
+            rebalance(next);
+        }
+    }
+
+    private static boolean sameMembers(ConsistentHashRing ring, List<ClusterMember> members) {
+        if (ring.getMembers().size() != members.size()) {
+            return false;
+        }
+        for (ClusterMember member : members) {
+            if (!ring.contains(member.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebalance(ConsistentHashRing ring) {
+        int moved = 0;
+        for (DeviceInfo device : deviceManager.getOnlineDevices()) {
+            ClusterMember owner = ring.owner(device.getDeviceId());
+            if (owner == self) {
+                continue;
+            }
+            Channel channel = deviceManager.getDeviceChannel(device.getDeviceId());
+            if (channel != null && channel.isActive()) {
+                channel.writeAndFlush(DeviceResponse.redirect(owner.getDeviceAddress()))
+                        .addListener(ChannelFutureListener.CLOSE);
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            rebalanced.add(moved);
+            logger.info("成员变化后重定向 {} 台设备到新的归属节点", moved);
+        }
+    }
+
+    /**
+     * 设备的归属节点
+     */
+    public ClusterMember ownerOf(String deviceId) {
+        return ring.owner(deviceId);
+    }
+
+    /**
+     * 设备注册时检查归属
+     * @return 设备归属其他节点时返回该节点，应把设备重定向过去；归属本节点时返回null
+     */
+    public ClusterMember redirectTarget(String deviceId) {
+        ClusterMember owner = ring.owner(deviceId);
+        if (owner == self) {
+            return null;
+        }
+        redirects.increment();
+        return owner;
+    }
+
+    // ---------------------------------------------------------------- 在线状态同步
+
+    /**
+     * 把合并后的本地状态变化发给所有连通的节点
+     */
+    private void flushPresence() {
+        if (pendingPresence.isEmpty()) {
+            return;
+        }
+        List<DeviceInfo> changed = new ArrayList<>();
+        for (Iterator<DeviceInfo> it = pendingPresence.values().iterator(); it.hasNext(); ) {
+            DeviceInfo device = it.next();
+            // 仍处于过渡状态的留到下一轮
+            if (!device.getStatus().isTransient()) {
+                it.remove();
+                changed.add(device);
+            }
+        }
+        List<Channel> channels = connectedChannels();
+        if (channels.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < changed.size(); from += ClusterProtocol.MAX_PRESENCE_ENTRIES) {
+            List<DeviceInfo> chunk = changed.subList(from, Math.min(changed.size(), from + ClusterProtocol.MAX_PRESENCE_ENTRIES));
+            ByteBuf frame = presenceFrame(channels.get(0).alloc(), chunk, false);
+            for (Channel channel : channels) {
+                channel.writeAndFlush(frame.retainedDuplicate());
+            }
+            frame.release();
+        }
+        presenceSent.add((long) changed.size() * channels.size());
+    }
+
+    /**
+     * 连接建立后发送本地全部设备的状态，第一帧要求对方先清空旧副本
+     */
+    private void sendSnapshot(Channel channel) {
+        List<DeviceInfo> chunk = new ArrayList<>(ClusterProtocol.MAX_PRESENCE_ENTRIES);
+        boolean first = true;
+        for (DeviceInfo device : deviceManager.getAllDevices()) {
+            if (device.getStatus().isTransient()) {
+                continue;
+            }
+            chunk.add(device);
+            if (chunk.size() == ClusterProtocol.MAX_PRESENCE_ENTRIES) {
+                channel.write(presenceFrame(channel.alloc(), chunk, first));
+                presenceSent.add(chunk.size());
+                chunk.clear();
+                first = false;
+            }
+        }
+        if (first || !chunk.isEmpty()) {
+            channel.write(presenceFrame(channel.alloc(), chunk, first));
+            presenceSent.add(chunk.size());
+        }
+        channel.flush();
+    }
+
+    private static ByteBuf presenceFrame(ByteBufAllocator alloc, List<DeviceInfo> devices, boolean reset) {
+        ByteBuf body = alloc.buffer(16 + devices.size() * 64);
+        body.writeByte(ClusterProtocol.PRESENCE);
+        body.writeByte(reset ? ClusterProtocol.PRESENCE_RESET : 0);
+        BinaryProtocol.writeVarint(body, devices.size());
+        for (DeviceInfo device : devices) {
+            ClusterProtocol.writeDevice(body, device, false);
+        }
+        return ClusterProtocol.frame(alloc, body);
+    }
+
+    /**
+     * 应用其他节点发来的状态，全量同步只通知副本变化，增量还按合并后的状态通知状态变化
+     */
+    void applyPresence(String peerId, ByteBuf frame) {
+        boolean reset = (frame.readByte() & ClusterProtocol.PRESENCE_RESET) != 0;
+        int count = BinaryProtocol.readVarint(frame);
+        Map<String, DeviceInfo> view = views.computeIfAbsent(peerId, id -> new ConcurrentHashMap<>());
+        if (reset) {
+            view.clear();
+        }
+        for (int i = 0; i < count; i++) {
+            DeviceInfo device = ClusterProtocol.readDevice(frame, false);
+            if (reset) {
+                view.put(device.getDeviceId(), device);
+                continue;
+            }
+            DeviceInfo before = merged(device.getDeviceId());
+            view.put(device.getDeviceId(), device);
+            DeviceInfo after = merged(device.getDeviceId());
+            DeviceStatus oldStatus = before != null ? before.getStatus() : DeviceStatus.OFFLINE;
+            if (after.getStatus() != oldStatus) {
+                for (ClusterPresenceListener listener : presenceListeners) {
+                    try {
+                        listener.onRemoteStatusChange(peerId, after, oldStatus, after.getStatus());
+                    } catch (Exception e) {
+                        logger.error("集群在线状态监听器执行失败", e);
+                    }
+                }
+            }
+        }
+        presenceReceived.add(count);
+        notifyViewChange(peerId);
+    }
+
+    private void notifyViewChange(String peerId) {
+        for (ClusterPresenceListener listener : presenceListeners) {
+            try {
+                listener.onViewChange(peerId);
+            } catch (Exception e) {
+                logger.error("集群在线状态监听器执行失败", e);
+            }
+        }
+    }
+
+    public void addPresenceListener(ClusterPresenceListener listener) {
+        presenceListeners.add(listener);
+    }
+
+    public void removePresenceListener(ClusterPresenceListener listener) {
+        presenceListeners.remove(listener);
+    }
+
+    /**
+     * 合并本地注册表和各节点副本后的设备信息，都没有时返回null
+     */
+    private DeviceInfo merged(String deviceId) {
+        DeviceInfo best = deviceManager.getDevice(deviceId);
+        for (Map<String, DeviceInfo> view : views.values()) {
+            DeviceInfo device = view.get(deviceId);
+            if (device != null) {
+                best = best == null ? device : preferred(best, device);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 同一设备在多个节点上都有记录时（例如迁移后原节点留下的离线记录），
+     * 在线的优先，否则取最近一次上线或下线较晚的
+     */
+    private static DeviceInfo preferred(DeviceInfo a, DeviceInfo b) {
+        boolean aOnline = a.getStatus() == DeviceStatus.ONLINE;
+        if (aOnline != (b.getStatus() == DeviceStatus.ONLINE)) {
+            return aOnline ? a : b;
+        }
+        long aTime = Math.max(a.getConnectTimeMillis(), a.getDisconnectTimeMillis());
+        long bTime = Math.max(b.getConnectTimeMillis(), b.getDisconnectTimeMillis());
+        return bTime > aTime ? b : a;
+    }
+
+    /**
+     * 设备是否在其他节点上在线，本地的离线通知据此判断是否只是迁移
+     */
+    public boolean isOnlineElsewhere(String deviceId) {
+        for (Map<String, DeviceInfo> view : views.values()) {
+            DeviceInfo device = view.get(deviceId);
+            if (device != null && device.getStatus() == DeviceStatus.ONLINE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------- 分发查询
+
+    /**
+     * 本节点是否计入这台设备：在线（注册时已确认归属本节点）的设备都计入；
+     * 离线设备只在归属本节点、或归属节点上没有它的记录时计入，避免迁移后原节点的旧记录重复计数
+     */
+    boolean isCounted(DeviceInfo device) {
+        if (device.getStatus() != DeviceStatus.OFFLINE) {
+            return true;
+        }
+        ClusterMember owner = ring.owner(device.getDeviceId());
+        if (owner == self) {
+            return true;
+        }
+        Map<String, DeviceInfo> view = views.get(owner.getId());
+        return view == null || !view.containsKey(device.getDeviceId());
+    }
+
+    /**
+     * 全集群分页查询
+     * 每个节点返回各自排序后游标之后的一页，合并去重后按同样的顺序取前limit条；
+     * 游标由排序值和设备ID组成，与节点无关，下一页仍分发到所有节点
+     * @throws IllegalArgumentException 游标无效
+     */
+    public CompletableFuture<DeviceQueryResult> queryDevices(DeviceQuery query) {
+        query.decodeCursor();
+        PendingRequest request = scatter(ClusterProtocol.QUERY_DEVICES, body -> ClusterProtocol.writeQuery(body, query));
+        query.setFilter(this::isCounted);
+        DeviceQueryResult local = deviceManager.queryDevices(query);
+        return request.future.thenApply(completed -> {
+            List<DeviceQueryResult> results = new ArrayList<>();
+            results.add(local);
+            for (Object result : completed.results.values()) {
+                results.add((DeviceQueryResult) result);
+            }
+            return mergePages(query, results, completed.unavailableNodes());
+        });
+    }
+
+    private static DeviceQueryResult mergePages(DeviceQuery query, List<DeviceQueryResult> results,
+                                                List<String> unavailableNodes) {
+        Map<String, DeviceInfo> devices = new HashMap<>();
+        boolean more = false;
+        long total = 0;
+        for (DeviceQueryResult result : results) {
+            for (DeviceInfo device : result.getDevices()) {
+                devices.merge(device.getDeviceId(), device, ClusterNode::preferred);
+            }
+            more |= result.hasMore();
+            total = total < 0 || result.getTotal() < 0 ? -1 : total + result.getTotal();
+        }
+        List<DeviceInfo> page = new ArrayList<>(devices.values());
+        page.sort(query.comparator());
+        if (page.size() > query.getLimit()) {
+            page = new ArrayList<>(page.subList(0, query.getLimit()));
+            more = true;
+        }
+        String nextCursor = more && !page.isEmpty() ? query.cursorAfter(page.get(page.size() - 1)) : null;
+        return new DeviceQueryResult(page, nextCursor, total, unavailableNodes);
+    }
+
+    /**
+     * 全集群设备计数，各节点分别统计后相加
+     */
+    public CompletableFuture<DeviceCounts> countDevices() {
+        PendingRequest request = scatter(ClusterProtocol.QUERY_COUNTS, body -> { });
+        DeviceCounts local = countLocal();
+        return request.future.thenApply(completed -> {
+            DeviceCounts counts = new DeviceCounts();
+            counts.add(local);
+            counts.addNode(self.getId());
+            completed.results.forEach((nodeId, result) -> {
+                counts.add((DeviceCounts) result);
+                counts.addNode(nodeId);
+            });
+            completed.unavailableNodes().forEach(counts::addUnavailableNode);
+            return counts;
+        });
+    }
+
+    /**
+     * 本节点计入的设备数，只有本节点在环上时所有设备都归属本节点，直接取索引计数
+     */
+    private DeviceCounts countLocal() {
+        if (ring.getMembers().size() == 1) {
+            return DeviceCounts.of(deviceManager);
+        }
+        DeviceCounts counts = new DeviceCounts();
+        for (DeviceInfo device : deviceManager.getAllDevices()) {
+            if (isCounted(device)) {
+                counts.count(device);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 把请求发给所有连通的节点，超时后以已收到的结果完成
+     */
+    private PendingRequest scatter(byte type, Consumer<ByteBuf> writer) {
+        Map<String, Channel> targets = new LinkedHashMap<>();
+        for (Peer peer : peers.values()) {
+            Channel channel = peer.channel;
+            if (channel != null && channel.isActive()) {
+                targets.put(peer.getMember().getId(), channel);
+            }
+        }
+        long requestId = requestIds.incrementAndGet();
+        PendingRequest request = new PendingRequest(targets.keySet());
+        if (targets.isEmpty()) {
+            request.complete();
+            return request;
+        }
+        pendingRequests.put(requestId, request);
+        request.future.whenComplete((completed, error) -> pendingRequests.remove(requestId));
+        targets.forEach((peerId, channel) -> {
+            ByteBuf body = channel.alloc().buffer();
+            body.writeByte(type);
+            BinaryProtocol.writeZigZagVarLong(body, requestId);
+            writer.accept(body);
+            channel.writeAndFlush(ClusterProtocol.frame(channel.alloc(), body)).addListener(future -> {
+                if (!future.isSuccess()) {
+                    request.lost(peerId);
+                }
+            });
+        });
+        request.timeout = group.schedule(request::expire, config.getClusterQueryTimeoutMillis(), TimeUnit.MILLISECONDS);
+        queriesSent.increment();
+        return request;
+    }
+
+    /**
+     * 在其他节点发起的连接上回复查询，只统计本节点计入的设备
+     */
+    void serveQuery(Channel channel, byte type, ByteBuf frame) {
+        long requestId = BinaryProtocol.readZigZagVarLong(frame);
+        ByteBuf body = channel.alloc().buffer();
+        if (type == ClusterProtocol.QUERY_DEVICES) {
+            DeviceQuery query = ClusterProtocol.readQuery(frame);
+            query.setFilter(this::isCounted);
+            DeviceQueryResult result;
+            try {
+                result = deviceManager.queryDevices(query);
+            } catch (IllegalArgumentException e) {
+                result = new DeviceQueryResult(Collections.emptyList(), null, 0);
+            }
+            body.writeByte(ClusterProtocol.DEVICES_RESULT);
+            BinaryProtocol.writeZigZagVarLong(body, requestId);
+            body.writeBoolean(result.hasMore());
+            BinaryProtocol.writeZigZagVarLong(body, result.getTotal());
+            BinaryProtocol.writeVarint(body, result.getDevices().size());
+            for (DeviceInfo device : result.getDevices()) {
+                ClusterProtocol.writeDevice(body, device, true);
+            }
+        } else {
+            body.writeByte(ClusterProtocol.COUNTS_RESULT);
+            BinaryProtocol.writeZigZagVarLong(body, requestId);
+            ClusterProtocol.writeCounts(body, countLocal());
+        }
+        channel.writeAndFlush(ClusterProtocol.frame(channel.alloc(), body));
+        queriesServed.increment();
+    }
+
+    /**
+     * 收到查询结果，请求已超时完成时丢弃
+     */
+    void completeRequest(String peerId, byte type, ByteBuf frame) {
+        PendingRequest request = pendingRequests.get(BinaryProtocol.readZigZagVarLong(frame));
+        if (request == null) {
+            return;
+        }
+        Object result;
+        if (type == ClusterProtocol.DEVICES_RESULT) {
+            boolean more = frame.readBoolean();
+            long total = BinaryProtocol.readZigZagVarLong(frame);
+            int count = BinaryProtocol.readVarint(frame);
+            List<DeviceInfo> devices = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                devices.add(ClusterProtocol.readDevice(frame, true));
+            }
+            // 对方的游标只用来表示还有更多，合并后重新生成
+            result = new DeviceQueryResult(devices, more ? "" : null, total);
+        } else {
+            result = ClusterProtocol.readCounts(frame);
+        }
+        request.answer(peerId, result);
+    }
+
+    /**
+     * 无内容的控制帧
+     */
+    static ByteBuf controlFrame(ByteBufAllocator alloc, byte type) {
+        ByteBuf frame = alloc.buffer(2);
+        BinaryProtocol.writeVarint(frame, 1);
+        frame.writeByte(type);
+        return frame;
+    }
+
+    private List<Channel> connectedChannels() {
+        List<Channel> channels = new ArrayList<>(peers.size());
+        for (Peer peer : peers.values()) {
+            Channel channel = peer.channel;
+            if (channel != null && channel.isActive()) {
+                channels.add(channel);
+            }
+        }
+        return channels;
+    }
+
+    public ClusterMember getSelf() {
+        return self;
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * 其他节点同步过来的设备数
+     */
+    public int getRemoteDeviceCount() {
+        int count = 0;
+        for (Map<String, DeviceInfo> view : views.values()) {
+            count += view.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterNode{" +
+                "self=" + self.getId() +
+                ", ring=" + ring +
+                ", connected=" + connectedChannels().size() + "/" + peers.size() +
+                ", remoteDevices=" + getRemoteDeviceCount() +
+                ", presenceSent=" + presenceSent.sum() +
+                ", presenceReceived=" + presenceReceived.sum() +
+                ", queriesSent=" + queriesSent.sum() +
+                ", queriesServed=" + queriesServed.sum() +
+                ", partialResults=" + partialResults.sum() +
+                ", redirects=" + redirects.sum() +
+                ", rebalanced=" + rebalanced.sum() +
+                '}';
+    }
+
+    /**
+     * 集群中的其他节点及本节点发往它的连接
+     */
+    static final class Peer {
+        private final ClusterMember member;
+        private volatile Channel channel;
+
+        Peer(ClusterMember member) {
+            this.member = member;
+        }
+
+        ClusterMember getMember() {
+            return member;
+        }
+
+        boolean isConnected() {
+            Channel current = channel;
+            return current != null && current.isActive();
+        }
+    }
+
+    /**
+     * 等待各节点回复的分发请求
+     */
+    private final class PendingRequest {
+        private final Set<String> waiting;
+        private final Map<String, Object> results = new LinkedHashMap<>();
+        private final Set<String> unavailable = new HashSet<>();
+        private final CompletableFuture<PendingRequest> future = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> timeout;
+
+        PendingRequest(Set<String> targets) {
+            this.waiting = new HashSet<>(targets);
+        }
+
+        synchronized void answer(String peerId, Object result) {
+            if (waiting.remove(peerId)) {
+                results.put(peerId, result);
+                completeIfDone();
+            }
+        }
+
+        synchronized void lost(String peerId) {
+            if (waiting.remove(peerId)) {
+                unavailable.add(peerId);
+                completeIfDone();
+            }
+        }
+
+        synchronized void expire() {
+            if (!waiting.isEmpty()) {
+                unavailable.addAll(waiting);
+                waiting.clear();
+                complete();
+            }
+        }
+
+        private void completeIfDone() {
+            if (waiting.isEmpty()) {
+                complete();
+            }
+        }
+
+        void complete() {
+            ScheduledFuture<?> scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            if (!unavailable.isEmpty()) {
+                partialResults.increment();
+                logger.warn("集群查询未收到节点 {} 的结果，返回部分结果", unavailable);
+            }
+            future.complete(this);
+        }
+
+        synchronized List<String> unavailableNodes() {
+            List<String> nodes = new ArrayList<>(unavailable);
+            Collections.sort(nodes);
+            return nodes;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.michael.iot.server;
+
+/**
+ * 集群在线状态监听器，接收其他节点同步过来的设备状态变化
+ * 回调在集群通信线程上执行，实现应尽快返回。
+ */
+public interface ClusterPresenceListener {
+
+    /**
+     * 其他节点上的设备状态变化
+     * 只在与本节点及其他节点的副本合并后的状态发生变化时回调，
+     * 例如设备从一个节点迁移到另一个节点时不会先报离线再报在线。
+     * @param nodeId 发来变化的节点
+     * @param device 合并后的设备信息
+     */
+    void onRemoteStatusChange(String nodeId, DeviceInfo device, DeviceStatus oldStatus, DeviceStatus newStatus);
+
+    /**
+     * 某个节点的在线状态副本有了变化，每收到一帧状态或节点断开时回调一次
+     * 调用频率与状态帧相同，实现只应标记变化，由自己的定时任务合并处理。
+     */
+    default void onViewChange(String nodeId) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 集群节点之间的通信协议
+ * 每个节点主动连接其他所有节点，在自己发起的连接上发送在线状态和查询请求，对方在同一连接上回复查询结果。
+ * 帧格式与设备二进制协议相同：varint帧长度 | 1字节帧类型 | 帧内容，数值使用varint / zigzag varlong，
+ * 字符串为 varint长度 + UTF-8字节，可为null的字符串长度加1、0表示null。
+ * <pre>
+ *   HELLO          节点ID
+ *   PING / PONG    无内容，发起方定期发送PING，双方据读空闲判断对方失联
+ *   PRESENCE       1字节标志（RESET：先清空发送方的全部在线状态，用于连接建立后的全量同步）
+ *                  varint条数，之后每条为设备信息（不含最新数据）
+ *   QUERY_DEVICES  请求ID，查询条件（状态、类型、名称前缀、IP、排序键、方向、条数、游标）
+ *   QUERY_COUNTS   请求ID
+ *   DEVICES_RESULT 请求ID，1字节是否还有更多，总数（-1表示未知），varint条数，之后每条为设备信息（含最新数据）
+ *   COUNTS_RESULT  请求ID，总数，各状态设备数，varint类型数，之后每条为类型名和设备数
+ * </pre>
+ */
+public final class ClusterProtocol {
+    /** 单帧最大长度，一页查询结果最多1000台设备 */
+    public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+    /** 一个PRESENCE帧最多携带的设备数 */
+    public static final int MAX_PRESENCE_ENTRIES = 512;
+
+    public static final byte HELLO = 0x01;
+    public static final byte PING = 0x02;
+    public static final byte PONG = 0x03;
+    public static final byte PRESENCE = 0x04;
+    public static final byte QUERY_DEVICES = 0x05;
+    public static final byte QUERY_COUNTS = 0x06;
+    public static final byte DEVICES_RESULT = 0x07;
+    public static final byte COUNTS_RESULT = 0x08;
+
+    public static final int PRESENCE_RESET = 0x01;
+
+    private static final DeviceStatus[] STATUSES = DeviceStatus.values();
+    private static final DeviceQuery.SortKey[] SORT_KEYS = DeviceQuery.SortKey.values();
+
+    private ClusterProtocol() {
+    }
+
+    /**
+     * 为帧内容加上长度前缀，并释放body
+     */
+    public static ByteBuf frame(ByteBufAllocator alloc, ByteBuf body) {
+        try {
+            ByteBuf frame = alloc.buffer(BinaryProtocol.varintSize(body.readableBytes()) + body.readableBytes());
+            BinaryProtocol.writeFrame(frame, body);
+            return frame;
+        } finally {
+            body.release();
+        }
+    }
+
+    /**
+     * 写入设备信息
+     * @param withData 是否包含最新数据，在线状态同步不需要
+     */
+    static void writeDevice(ByteBuf buf, DeviceInfo device, boolean withData) {
+        BinaryProtocol.writeString(buf, device.getDeviceId());
+        writeNullableString(buf, device.getDeviceName());
+        writeNullableString(buf, device.getDeviceType());
+        buf.writeByte(device.getStatus().ordinal());
+        writeNullableString(buf, device.getIpAddress());
+        BinaryProtocol.writeVarint(buf, device.getPort());
+        BinaryProtocol.writeZigZagVarLong(buf, device.getConnectTimeMillis());
+        BinaryProtocol.writeZigZagVarLong(buf, device.getDisconnectTimeMillis());
+        BinaryProtocol.writeZigZagVarLong(buf, device.getLastHeartbeatMillis());
+        if (withData) {
+            BinaryProtocol.writeZigZagVarLong(buf, device.getLastDataTimeMillis());
+            writeNullableString(buf, device.getLastData());
+        }
+    }
+
+    /**
+     * 读取设备信息，得到的对象只是其他节点上设备的副本
+     */
+    static DeviceInfo readDevice(ByteBuf buf, boolean withData) {
+        DeviceInfo device = new DeviceInfo(BinaryProtocol.readString(buf), readNullableString(buf), readNullableString(buf));
+        device.setStatus(readStatus(buf));
+        device.setIpAddress(readNullableString(buf));
+        device.setPort(BinaryProtocol.readVarint(buf));
+        device.setConnectTimeMillis(BinaryProtocol.readZigZagVarLong(buf));
+        device.setDisconnectTimeMillis(BinaryProtocol.readZigZagVarLong(buf));
+        device.setLastHeartbeatMillis(BinaryProtocol.readZigZagVarLong(buf));
+        if (withData) {
+            device.setLastDataTimeMillis(BinaryProtocol.readZigZagVarLong(buf));
+            device.setLastData(readNullableString(buf));
+        }
+        return device;
+    }
+
+    /**
+     * 写入查询条件，附加过滤条件由接收方按自己的归属设置
+     */
+    static void writeQuery(ByteBuf buf, DeviceQuery query) {
+        buf.writeByte(query.getStatus() == null ? -1 : query.getStatus().ordinal());
+        writeNullableString(buf, query.getDeviceType());
+        writeNullableString(buf, query.getNamePrefix());
+        writeNullableString(buf, query.getIpAddress());
+        buf.writeByte(query.getSortBy().ordinal());
+        buf.writeBoolean(query.isDescending());
+        BinaryProtocol.writeVarint(buf, query.getLimit());
+        writeNullableString(buf, query.getCursor());
+    }
+
+    static DeviceQuery readQuery(ByteBuf buf) {
+        DeviceQuery query = new DeviceQuery();
+        byte status = buf.readByte();
+        query.setStatus(status < 0 ? null : status(status));
+        query.setDeviceType(readNullableString(buf));
+        query.setNamePrefix(readNullableString(buf));
+        query.setIpAddress(readNullableString(buf));
+        int sortBy = buf.readUnsignedByte();
+        if (sortBy >= SORT_KEYS.length) {
+            throw new CorruptedFrameException("排序键非法: " + sortBy);
+        }
+        query.setSortBy(SORT_KEYS[sortBy]);
+        query.setDescending(buf.readBoolean());
+        query.setLimit(BinaryProtocol.readVarint(buf));
+        query.setCursor(readNullableString(buf));
+        return query;
+    }
+
+    static void writeCounts(ByteBuf buf, DeviceCounts counts) {
+        BinaryProtocol.writeZigZagVarLong(buf, counts.getTotal());
+        BinaryProtocol.writeVarint(buf, STATUSES.length);
+        for (DeviceStatus status : STATUSES) {
+            BinaryProtocol.writeZigZagVarLong(buf, counts.getCount(status));
+        }
+        BinaryProtocol.writeVarint(buf, counts.getTypeCounts().size());
+        counts.getTypeCounts().forEach((type, count) -> {
+            BinaryProtocol.writeString(buf, type);
+            BinaryProtocol.writeZigZagVarLong(buf, count);
+        });
+    }
+
+    static DeviceCounts readCounts(ByteBuf buf) {
+        DeviceCounts counts = new DeviceCounts();
+        counts.addTotal(BinaryProtocol.readZigZagVarLong(buf));
+        int statuses = BinaryProtocol.readVarint(buf);
+        for (int i = 0; i < statuses; i++) {
+            long count = BinaryProtocol.readZigZagVarLong(buf);
+            // 对方版本较新、状态更多时忽略不认识的状态
+            if (i < STATUSES.length) {
+                counts.addStatusCount(STATUSES[i], count);
+            }
+        }
+        int types = BinaryProtocol.readVarint(buf);
+        for (int i = 0; i < types; i++) {
+            counts.addTypeCount(BinaryProtocol.readString(buf), BinaryProtocol.readZigZagVarLong(buf));
+        }
+        return counts;
+    }
+
+    static void writeNullableString(ByteBuf buf, String value) {
+        if (value == null) {
+            BinaryProtocol.writeVarint(buf, 0);
+            return;
+        }
+        BinaryProtocol.writeVarint(buf, ByteBufUtil.utf8Bytes(value) + 1);
+        buf.writeCharSequence(value, StandardCharsets.UTF_8);
+    }
+
+    static String readNullableString(ByteBuf buf) {
+        int length = BinaryProtocol.readVarint(buf) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buf.readableBytes()) {
+            throw new CorruptedFrameException("字符串长度非法: " + length);
+        }
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+
+    private static DeviceStatus readStatus(ByteBuf buf) {
+        return status(buf.readByte());
+    }
+
+    private static DeviceStatus status(int ordinal) {
+        if (ordinal < 0 || ordinal >= STATUSES.length) {
+            throw new CorruptedFrameException("设备状态非法: " + ordinal);
+        }
+        return STATUSES[ordinal];
+    }
+}
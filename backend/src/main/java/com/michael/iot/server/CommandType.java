@@ -0,0 +1,60 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 设备命令类型
+ */
+public enum CommandType {
+    REGISTER("REGISTER"),
+    HEARTBEAT("HEARTBEAT"),
+    DATA("DATA"),
+    DATA_BATCH("DATA_BATCH"),
+    PONG("PONG"),
+    RESUME("RESUME"),
+    UNKNOWN("");
+
+    private static final CommandType[] KNOWN = {REGISTER, HEARTBEAT, DATA, DATA_BATCH, PONG, RESUME};
+
+    private final String verb;
+    private final byte[] verbBytes;
+
+    CommandType(String verb) {
+        this.verb = verb;
+        this.verbBytes = verb.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public String getVerb() {
+        return verb;
+    }
+
+    /**
+     * 在ByteBuf中原地匹配命令动词，不产生任何对象
+     * @param buf 消息帧
+     * @param start 动词起始下标
+     * @param length 动词长度
+     * @return 匹配到的命令类型，未匹配返回UNKNOWN
+     */
+    public static CommandType match(ByteBuf buf, int start, int length) {
+        for (CommandType type : KNOWN) {
+            if (type.matches(buf, start, length)) {
+                return type;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private boolean matches(ByteBuf buf, int start, int length) {
+        if (length != verbBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf.getByte(start + i) != verbBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
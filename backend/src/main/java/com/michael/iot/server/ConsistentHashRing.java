@@ -0,0 +1,106 @@
+package com.michael.iot.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 一致性哈希环，决定设备归属的集群节点
+ * 每个节点按 节点ID#序号 在环上放置若干虚拟节点，设备ID哈希后顺时针找到的第一个虚拟节点即其归属。
+ * 节点加入或离开时只有落在其虚拟节点区间内的设备改变归属，约为设备总数除以节点数。
+ * 环创建后不可变，成员变化时整体替换，查找只读两个有序数组，不需要加锁。
+ */
+public final class ConsistentHashRing {
+    private final List<ClusterMember> members;
+    private final long[] points;     // 虚拟节点哈希，升序
+    private final int[] owners;      // 对应的成员下标
+
+    public ConsistentHashRing(Collection<ClusterMember> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("哈希环至少需要一个节点");
+        }
+        int replicas = Math.max(1, virtualNodes);
+        this.members = new ArrayList<>(members);
+        // 哈希相同时按节点ID排序，成员相同的环在各节点上完全一致，与成员的排列顺序无关
+        int total = this.members.size() * replicas;
+        long[] hashes = new long[total];
+        int[] memberIndexes = new int[total];
+        Integer[] order = new Integer[total];
+        for (int m = 0; m < this.members.size(); m++) {
+            String id = this.members.get(m).getId();
+            for (int r = 0; r < replicas; r++) {
+                int slot = m * replicas + r;
+                hashes[slot] = hash(id + "#" + r);
+                memberIndexes[slot] = m;
+                order[slot] = slot;
+            }
+        }
+        Arrays.sort(order, (a, b) -> {
+            int result = Long.compare(hashes[a], hashes[b]);
+            return result != 0 ? result : this.members.get(memberIndexes[a]).getId()
+                    .compareTo(this.members.get(memberIndexes[b]).getId());
+        });
+        this.points = new long[total];
+        this.owners = new int[total];
+        for (int i = 0; i < total; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = memberIndexes[order[i]];
+        }
+    }
+
+    /**
+     * 设备的归属节点
+     */
+    public ClusterMember owner(String deviceId) {
+        int index = Arrays.binarySearch(points, hash(deviceId));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0;
+            }
+        }
+        return members.get(owners[index]);
+    }
+
+    public List<ClusterMember> getMembers() {
+        return members;
+    }
+
+    public boolean contains(String memberId) {
+        for (ClusterMember member : members) {
+            if (member.getId().equals(memberId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 64位FNV-1a哈希再经murmur3的fmix64打散，相近的设备ID也能均匀分布在环上
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ConsistentHashRing{members=[");
+        for (int i = 0; i < members.size(); i++) {
+            if (i > 0) builder.append(',');
+            builder.append(members.get(i).getId());
+        }
+        return builder.append("], virtualNodes=").append(points.length).append('}').toString();
+    }
+}
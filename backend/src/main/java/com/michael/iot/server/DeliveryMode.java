@@ -0,0 +1,17 @@
+package com.michael.iot.server;
+
+/**
+ * 监听器回调的执行方式
+ */
+public enum DeliveryMode {
+    SYNC,            // 在分发线程（接入队列消费线程或调用线程）上直接回调
+    EXECUTOR,        // 放入监听器自己的有界队列，由专用线程池回调
+    VIRTUAL_THREAD;  // 同EXECUTOR，但由虚拟线程回调，运行时不支持虚拟线程时退化为EXECUTOR
+
+    public static DeliveryMode parse(String value, DeliveryMode defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,78 @@
+package com.michael.iot.server;
+
+import java.util.List;
+
+/**
+ * 一次告警触发或恢复
+ * 创建后不再修改，监听器可以跨线程持有。
+ */
+public class DeviceAlert {
+
+    /**
+     * 告警状态
+     */
+    public enum State {
+        FIRING,     // 条件连续满足达到指定次数
+        RESOLVED    // 已触发的告警条件不再满足
+    }
+
+    private final AlertRule rule;
+    private final State state;
+    private final DeviceInfo device;
+    private final long readingTime;
+    private final List<String> fields;
+    private final double[] values;
+
+    /**
+     * @param readingTime 触发告警的读数的采集时间
+     * @param values 与fields一一对应的字段值，读数未携带的字段为NaN
+     */
+    public DeviceAlert(AlertRule rule, State state, DeviceInfo device, long readingTime, double[] values) {
+        this.rule = rule;
+        this.state = state;
+        this.device = device;
+        this.readingTime = readingTime;
+        this.fields = rule.getFields();
+        this.values = values;
+    }
+
+    public AlertRule getRule() {
+        return rule;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public DeviceInfo getDevice() {
+        return device;
+    }
+
+    public long getReadingTime() {
+        return readingTime;
+    }
+
+    /**
+     * 规则条件引用的字段
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("DeviceAlert{")
+                .append("rule=").append(rule.getId())
+                .append(", state=").append(state)
+                .append(", deviceId=").append(device.getDeviceId())
+                .append(", readingTime=").append(readingTime);
+        for (int i = 0; i < fields.size(); i++) {
+            text.append(", ").append(fields.get(i)).append('=').append(values[i]);
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,12 @@
+package com.michael.iot.server;
+
+/**
+ * 设备告警监听器接口
+ */
+public interface DeviceAlertListener {
+    /**
+     * 告警触发或恢复回调
+     * @param alert 告警
+     */
+    void onAlert(DeviceAlert alert);
+}
@@ -0,0 +1,70 @@
+package com.michael.iot.server;
+
+/**
+ * 设备命令
+ * 由协议解码器产生并交给IoTDeviceHandler处理，不同协议的命令保持相同的字段布局：
+ * 下标0为命令动词，之后依次为各个参数（例如REGISTER为 设备ID、设备名称、设备类型）。
+ * 同一个连接上的命令对象会被重复使用，因此处理器不能在channelRead返回之后继续持有它。
+ */
+public abstract class DeviceCommand {
+
+    /**
+     * 获取命令类型
+     */
+    public abstract CommandType getType();
+
+    /**
+     * 获取字段数量（包含命令动词）
+     */
+    public abstract int getFieldCount();
+
+    /**
+     * 获取命令动词原文
+     */
+    public abstract String getVerb();
+
+    /**
+     * 获取指定字段
+     * @param index 字段下标，0为命令动词
+     */
+    public abstract String field(int index);
+
+    /**
+     * 比较字段内容，实现应尽量避免为比较而创建字符串
+     * @param index 字段下标
+     * @param value 期望值
+     */
+    public abstract boolean fieldEquals(int index, String value);
+
+    /**
+     * 获取DATA命令的数据内容
+     * @return 数据内容，非数据命令返回null
+     */
+    public abstract String getPayload();
+
+    /**
+     * 获取DATA_BATCH命令携带的批量数据
+     * @return 批量数据，非批量命令或格式错误时返回null
+     */
+    public abstract DeviceDataBatch getBatch();
+
+    /**
+     * 按设备类型的数据模式把DATA命令的数值字段提取到读数中，实现应直接读取消息帧而不解码数据内容
+     * @return 提取出的字段数，非数据命令返回0
+     */
+    public abstract int extractReading(SensorExtractor extractor, String deviceType, long timestamp,
+                                       SensorReading reading);
+
+    /**
+     * 提取DATA_BATCH命令中第entry条数据的读数，调用前应先通过getBatch()校验格式
+     * @param timestamp 该条数据的采集时间
+     * @return 提取出的字段数
+     */
+    public abstract int extractBatchReading(SensorExtractor extractor, String deviceType, int entry, long timestamp,
+                                            SensorReading reading);
+
+    /**
+     * 释放命令持有的消息帧引用，准备下一次复用
+     */
+    public abstract void clear();
+}
@@ -0,0 +1,114 @@
+package com.michael.iot.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 设备计数：总数、各状态和各设备类型的设备数
+ * 集群模式下由各节点分别统计后相加，unavailableNodes记录超时或断开而未计入的节点。
+ */
+public class DeviceCounts {
+    private long total;
+    private final long[] statusCounts = new long[DeviceStatus.values().length];
+    private final Map<String, Long> typeCounts = new TreeMap<>();
+    private final List<String> nodes = new ArrayList<>();
+    private final List<String> unavailableNodes = new ArrayList<>();
+
+    /**
+     * 单个节点上的设备计数，直接取自索引
+     */
+    public static DeviceCounts of(DeviceManager deviceManager) {
+        DeviceCounts counts = new DeviceCounts();
+        counts.total = deviceManager.getTotalDeviceCount();
+        for (DeviceStatus status : DeviceStatus.values()) {
+            counts.statusCounts[status.ordinal()] = deviceManager.getDeviceCount(status);
+        }
+        counts.typeCounts.putAll(deviceManager.getDeviceTypeCounts());
+        return counts;
+    }
+
+    /**
+     * 计入一台设备
+     */
+    void count(DeviceInfo device) {
+        total++;
+        statusCounts[device.getStatus().ordinal()]++;
+        typeCounts.merge(String.valueOf(device.getDeviceType()), 1L, Long::sum);
+    }
+
+    void addStatusCount(DeviceStatus status, long count) {
+        statusCounts[status.ordinal()] += count;
+    }
+
+    void addTypeCount(String deviceType, long count) {
+        typeCounts.merge(deviceType, count, Long::sum);
+    }
+
+    void addTotal(long count) {
+        total += count;
+    }
+
+    /**
+     * 合并另一个节点的计数
+     */
+    void add(DeviceCounts other) {
+        total += other.total;
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] += other.statusCounts[i];
+        }
+        other.typeCounts.forEach(this::addTypeCount);
+    }
+
+    void addNode(String nodeId) {
+        nodes.add(nodeId);
+    }
+
+    void addUnavailableNode(String nodeId) {
+        unavailableNodes.add(nodeId);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getCount(DeviceStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    public Map<String, Long> getTypeCounts() {
+        return Collections.unmodifiableMap(typeCounts);
+    }
+
+    /**
+     * 参与计数的节点，单机模式下为空
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 未能计入的节点，不为空时计数只覆盖部分设备
+     */
+    public List<String> getUnavailableNodes() {
+        return unavailableNodes;
+    }
+
+    public boolean isPartial() {
+        return !unavailableNodes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceCounts{" +
+                "total=" + total +
+                ", online=" + getCount(DeviceStatus.ONLINE) +
+                ", offline=" + getCount(DeviceStatus.OFFLINE) +
+                ", types=" + typeCounts +
+                ", nodes=" + nodes +
+                ", unavailableNodes=" + unavailableNodes +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.michael.iot.server;
+
+import java.util.Arrays;
+
+/**
+ * 一批带时间戳的设备数据
+ * 由DATA_BATCH命令产生，作为一个整体交给DeviceDataListener.onDataBatch处理。
+ * 构建完成后不再修改，监听器可以安全地跨线程持有。
+ */
+public class DeviceDataBatch {
+    private long[] timestamps;
+    private String[] payloads;
+    private int size;
+
+    public DeviceDataBatch(int expectedSize) {
+        int capacity = Math.max(expectedSize, 1);
+        this.timestamps = new long[capacity];
+        this.payloads = new String[capacity];
+    }
+
+    /**
+     * 追加一条数据
+     * @param timestamp 采集时间（毫秒时间戳）
+     * @param payload 数据内容
+     */
+    void add(long timestamp, String payload) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            payloads = Arrays.copyOf(payloads, size * 2);
+        }
+        timestamps[size] = timestamp;
+        payloads[size] = payload;
+        size++;
+    }
+
+    /**
+     * 数据条数
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public String getPayload(int index) {
+        checkIndex(index);
+        return payloads[index];
+    }
+
+    /**
+     * 获取采集时间最新的一条数据的下标
+     */
+    public int getLatestIndex() {
+        int latest = 0;
+        for (int i = 1; i < size; i++) {
+            if (timestamps[i] >= timestamps[latest]) {
+                latest = i;
+            }
+        }
+        return latest;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("数据下标越界: " + index + ", 数据条数: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceDataBatch{size=" + size + '}';
+    }
+}
@@ -10,6 +10,18 @@ public interface DeviceDataListener {
      * @param data 更新的数据
      */
     void onDataUpdate(DeviceInfo device, String data);
+
+    /**
+     * 设备批量数据回调，一批数据只回调一次
+     * 默认逐条转交给onDataUpdate，需要整批处理的监听器可以覆盖此方法
+     * @param device 设备信息
+     * @param batch 批量数据
+     */
+    default void onDataBatch(DeviceInfo device, DeviceDataBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            onDataUpdate(device, batch.getPayload(i));
+        }
+    }
 }
 
 
@@ -0,0 +1,119 @@
+package com.michael.iot.server;
+
+import io.netty.channel.Channel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个设备连接的读取流控
+ * 每个暂停原因占一位，所有原因都解除后才恢复自动读取。
+ * 除onProcessed()外的方法都只能在连接所属的事件循环中调用。
+ */
+public class DeviceFlowControl {
+    static final int REASON_DEVICE = 1;
+    static final int REASON_LOOP = 1 << 1;
+    static final int REASON_WRITABILITY = 1 << 2;
+
+    private final BackpressureController controller;
+    private final BackpressureController.LoopState loop;
+    private final Channel channel;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Runnable resumeTask = () -> clearReason(REASON_DEVICE);
+    private int reasons;
+    private long pausedAt;
+    private boolean closed;
+
+    DeviceFlowControl(BackpressureController controller, BackpressureController.LoopState loop, Channel channel) {
+        this.controller = controller;
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    /**
+     * 事件已发布到接入队列
+     */
+    void onPublished() {
+        boolean loopOverflow = loop.increment();
+        if (pending.incrementAndGet() >= controller.getDeviceHighWatermark()) {
+            setReason(REASON_DEVICE);
+        }
+        if (loopOverflow && (reasons & REASON_LOOP) == 0 && !closed) {
+            loop.pausedByLoop.add(this);
+            setReason(REASON_LOOP);
+        }
+    }
+
+    /**
+     * 监听器已处理完一个事件，由接入队列消费线程调用
+     */
+    void onProcessed() {
+        if (pending.decrementAndGet() == controller.getDeviceLowWatermark()) {
+            channel.eventLoop().execute(resumeTask);
+        }
+        loop.decrement();
+    }
+
+    /**
+     * 连接可写状态变化
+     */
+    public void writabilityChanged() {
+        if (channel.isWritable()) {
+            clearReason(REASON_WRITABILITY);
+        } else {
+            setReason(REASON_WRITABILITY);
+        }
+    }
+
+    /**
+     * 连接关闭，释放暂停状态
+     */
+    public void close() {
+        closed = true;
+        loop.pausedByLoop.remove(this);
+        if (reasons != 0) {
+            reasons = 0;
+            controller.channelResumed(System.nanoTime() - pausedAt);
+        }
+    }
+
+    void setReason(int reason) {
+        if ((reasons & reason) != 0 || closed) {
+            return;
+        }
+        controller.recordPause(reason);
+        if (reasons == 0) {
+            pausedAt = System.nanoTime();
+            controller.channelPaused();
+            channel.config().setAutoRead(false);
+        }
+        reasons |= reason;
+    }
+
+    void clearReason(int reason) {
+        if ((reasons & reason) == 0 || closed) {
+            return;
+        }
+        if (reason == REASON_DEVICE && pending.get() > controller.getDeviceLowWatermark()) {
+            return;
+        }
+        reasons &= ~reason;
+        if (reasons == 0) {
+            controller.channelResumed(System.nanoTime() - pausedAt);
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * 已发布但尚未处理完的事件数
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * 当前是否暂停读取
+     */
+    public boolean isPaused() {
+        return reasons != 0;
+    }
+}
@@ -0,0 +1,223 @@
+package com.michael.iot.server;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备状态与类型索引
+ * 在每次状态或类型变化时增量维护计数和设备ID集合，统计查询为O(1)，
+ * 按状态或类型列出设备的开销只与结果数量成正比。
+ * 另外维护按设备ID、按"名称\0设备ID"、按"接入时间\0设备ID"排序的有序索引和按IP的索引，供分页查询使用。
+ * 最后心跳时间每次心跳都会变化，不维护有序索引。
+ * 同一设备的变更需由调用方串行化（DeviceManager按DeviceInfo加锁）。
+ */
+public class DeviceIndex {
+    private final Map<DeviceStatus, LongAdder> statusCounts = new EnumMap<>(DeviceStatus.class);
+    private final Map<DeviceStatus, Set<String>> statusIndex = new EnumMap<>(DeviceStatus.class);
+    private final Map<String, LongAdder> typeCounts = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> typeIndex = new ConcurrentHashMap<>();
+    private final NavigableSet<String> idIndex = new ConcurrentSkipListSet<>();
+    private final NavigableSet<String> nameIndex = new ConcurrentSkipListSet<>();
+    private final NavigableSet<String> connectTimeIndex = new ConcurrentSkipListSet<>();
+    private final Map<String, Set<String>> ipIndex = new ConcurrentHashMap<>();
+
+    public DeviceIndex() {
+        // EnumMap只在构造时写入，之后只读，可以被多线程安全读取
+        for (DeviceStatus status : DeviceStatus.values()) {
+            statusCounts.put(status, new LongAdder());
+            statusIndex.put(status, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * 登记新设备
+     */
+    public void add(String deviceId, String deviceName, String deviceType, DeviceStatus status, long connectTime) {
+        idIndex.add(deviceId);
+        nameIndex.add(nameKey(deviceName, deviceId));
+        connectTimeIndex.add(connectTimeKey(connectTime, deviceId));
+        statusIndex.get(status).add(deviceId);
+        statusCounts.get(status).increment();
+        addType(deviceId, deviceType);
+    }
+
+    /**
+     * 把设备在状态索引中的位置同步为其当前状态
+     * 状态转换由CAS完成，不同线程上的转换可能乱序到达这里，因此不按新旧状态做差量，
+     * 而是直接以当前状态为准；调用方需要按设备串行调用。
+     */
+    public void statusObserved(String deviceId, DeviceStatus current) {
+        // 先加入新集合再移出旧集合，并发列表查询最多短暂看到同一设备出现在两个状态中
+        if (statusIndex.get(current).add(deviceId)) {
+            statusCounts.get(current).increment();
+        }
+        for (DeviceStatus status : DeviceStatus.values()) {
+            if (status != current && statusIndex.get(status).remove(deviceId)) {
+                statusCounts.get(status).decrement();
+            }
+        }
+    }
+
+    /**
+     * 设备类型变化（设备以新类型重新注册）
+     */
+    public void typeChanged(String deviceId, String oldType, String newType) {
+        if (typeKey(oldType).equals(typeKey(newType))) {
+            return;
+        }
+        addType(deviceId, newType);
+        Set<String> ids = typeIndex.get(typeKey(oldType));
+        if (ids != null) {
+            ids.remove(deviceId);
+        }
+        LongAdder count = typeCounts.get(typeKey(oldType));
+        if (count != null) {
+            count.decrement();
+        }
+    }
+
+    /**
+     * 设备名称变化
+     */
+    public void nameChanged(String deviceId, String oldName, String newName) {
+        String oldKey = nameKey(oldName, deviceId);
+        String newKey = nameKey(newName, deviceId);
+        if (!oldKey.equals(newKey)) {
+            nameIndex.add(newKey);
+            nameIndex.remove(oldKey);
+        }
+    }
+
+    /**
+     * 设备接入时间变化，只在设备上线或恢复时发生
+     */
+    public void connectTimeChanged(String deviceId, long oldTime, long newTime) {
+        if (oldTime != newTime) {
+            connectTimeIndex.add(connectTimeKey(newTime, deviceId));
+            connectTimeIndex.remove(connectTimeKey(oldTime, deviceId));
+        }
+    }
+
+    /**
+     * 设备IP地址变化
+     */
+    public void ipChanged(String deviceId, String oldIp, String newIp) {
+        if (newIp != null && newIp.equals(oldIp)) {
+            return;
+        }
+        if (newIp != null) {
+            ipIndex.computeIfAbsent(newIp, k -> ConcurrentHashMap.newKeySet()).add(deviceId);
+        }
+        if (oldIp != null) {
+            Set<String> ids = ipIndex.get(oldIp);
+            if (ids != null) {
+                ids.remove(deviceId);
+            }
+        }
+    }
+
+    /**
+     * 名称索引的键，名称在前、设备ID在后，以\0分隔，按字符串排序即为按名称再按ID排序
+     */
+    static String nameKey(String deviceName, String deviceId) {
+        return (deviceName == null ? "" : deviceName) + '\0' + deviceId;
+    }
+
+    /**
+     * 接入时间索引的键，时间翻转符号位后按16位定长十六进制编码，按字符串排序即为按时间再按ID排序
+     */
+    static String connectTimeKey(long connectTime, String deviceId) {
+        String hex = Long.toHexString(connectTime ^ Long.MIN_VALUE);
+        return "0000000000000000".substring(hex.length()) + hex + '\0' + deviceId;
+    }
+
+    private void addType(String deviceId, String deviceType) {
+        String key = typeKey(deviceType);
+        typeIndex.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(deviceId);
+        typeCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static String typeKey(String deviceType) {
+        return deviceType == null ? "" : deviceType;
+    }
+
+    /**
+     * 指定状态的设备数
+     */
+    public long count(DeviceStatus status) {
+        return statusCounts.get(status).sum();
+    }
+
+    /**
+     * 指定类型的设备数
+     */
+    public long countByType(String deviceType) {
+        LongAdder count = typeCounts.get(typeKey(deviceType));
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * 各设备类型的设备数
+     */
+    public Map<String, Long> typeCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        typeCounts.forEach((type, count) -> {
+            long value = count.sum();
+            if (value > 0) {
+                result.put(type, value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 指定状态的设备ID，只读视图
+     */
+    public Set<String> idsByStatus(DeviceStatus status) {
+        return Collections.unmodifiableSet(statusIndex.get(status));
+    }
+
+    /**
+     * 指定IP地址的设备ID，只读视图
+     */
+    public Set<String> idsByIp(String ipAddress) {
+        Set<String> ids = ipIndex.get(ipAddress);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * 按设备ID排序的全部设备ID
+     */
+    public NavigableSet<String> orderedIds() {
+        return Collections.unmodifiableNavigableSet(idIndex);
+    }
+
+    /**
+     * 按名称再按设备ID排序的名称索引键，见nameKey()
+     */
+    public NavigableSet<String> orderedNameKeys() {
+        return Collections.unmodifiableNavigableSet(nameIndex);
+    }
+
+    /**
+     * 按接入时间再按设备ID排序的接入时间索引键，见connectTimeKey()
+     */
+    public NavigableSet<String> orderedConnectTimeKeys() {
+        return Collections.unmodifiableNavigableSet(connectTimeIndex);
+    }
+
+    /**
+     * 指定类型的设备ID，只读视图
+     */
+    public Set<String> idsByType(String deviceType) {
+        Set<String> ids = typeIndex.get(typeKey(deviceType));
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+}
@@ -1,28 +1,51 @@
 package com.michael.iot.server;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * 物联网设备信息
+ * 为支持百万级设备常驻内存，采用紧凑表示：
+ * 时间保存为毫秒时间戳（0表示未设置），设备类型和名称经字典去重，
+ * IPv4地址压缩为int，最新数据保存为UTF-8字节。
+ * 原有的LocalDateTime、String取值方法按需转换，不缓存转换结果。
+ * 其他存储引擎（如OffHeapDeviceRegistry）以子类视图的方式覆盖基本类型的存取方法。
  */
 public class DeviceInfo {
+    private static final AtomicLongFieldUpdater<DeviceInfo> STATE =
+            AtomicLongFieldUpdater.newUpdater(DeviceInfo.class, "state");
+    private static final AtomicLongFieldUpdater<DeviceInfo> MESSAGE_COUNT =
+            AtomicLongFieldUpdater.newUpdater(DeviceInfo.class, "messageCount");
+
     private String deviceId;           // 设备ID
-    private String deviceName;         // 设备名称
-    private String deviceType;         // 设备类型
-    private String ipAddress;          // IP地址
+    private String deviceName;         // 设备名称，经字典去重
+    private String deviceType;         // 设备类型，经字典去重
+    private int ipv4;                  // IPv4地址
+    private String ipAddress;          // 非IPv4格式的地址，为IPv4时为null
     private int port;                  // 端口
-    private DeviceStatus status;       // 设备状态
-    private LocalDateTime lastHeartbeat; // 最后心跳时间
-    private LocalDateTime connectTime;   // 连接时间
-    private LocalDateTime disconnectTime; // 断开时间
-    private String lastData;             // 最新上报的数据
-    private LocalDateTime lastDataTime;  // 数据上报时间
+    private volatile long state;       // 状态机字：会话纪元和设备状态，见DeviceState
+    private volatile long lastHeartbeat;   // 最后心跳时间
+    private long connectTime;          // 连接时间
+    private long disconnectTime;       // 断开时间
+    private byte[] lastData;           // 最新上报的数据
+    private long lastDataTime;         // 数据上报时间
+    private volatile long messageCount;    // 收到的心跳和数据消息数
 
     public DeviceInfo(String deviceId, String deviceName, String deviceType) {
         this.deviceId = deviceId;
-        this.deviceName = deviceName;
-        this.deviceType = deviceType;
-        this.status = DeviceStatus.OFFLINE;
+        this.deviceName = StringDictionary.DEVICE_NAMES.intern(deviceName);
+        this.deviceType = StringDictionary.DEVICE_TYPES.intern(deviceType);
+        this.state = DeviceState.INITIAL;
+    }
+
+    /**
+     * 供其他存储引擎的视图对象使用，字段由子类自行保存
+     */
+    DeviceInfo(String deviceId) {
+        this.deviceId = deviceId;
     }
 
     // Getters and Setters
@@ -39,7 +62,7 @@ public class DeviceInfo {
     }
 
     public void setDeviceName(String deviceName) {
-        this.deviceName = deviceName;
+        this.deviceName = StringDictionary.DEVICE_NAMES.intern(deviceName);
     }
 
     public String getDeviceType() {
@@ -47,15 +70,70 @@ public class DeviceInfo {
     }
 
     public void setDeviceType(String deviceType) {
-        this.deviceType = deviceType;
+        this.deviceType = StringDictionary.DEVICE_TYPES.intern(deviceType);
     }
 
     public String getIpAddress() {
-        return ipAddress;
+        if (ipAddress != null || ipv4 == 0) {
+            return ipAddress;
+        }
+        return formatIpv4(ipv4);
+    }
+
+    static String formatIpv4(int ipv4) {
+        return (ipv4 >>> 24) + "." + ((ipv4 >>> 16) & 0xFF) + "." + ((ipv4 >>> 8) & 0xFF) + "." + (ipv4 & 0xFF);
     }
 
     public void setIpAddress(String ipAddress) {
-        this.ipAddress = ipAddress;
+        int packed = packIpv4(ipAddress);
+        if (packed != 0) {
+            this.ipv4 = packed;
+            this.ipAddress = null;
+        } else {
+            this.ipv4 = 0;
+            this.ipAddress = ipAddress;
+        }
+    }
+
+    /**
+     * 把点分十进制的IPv4地址压缩为int，不是IPv4地址（或为0.0.0.0）时返回0
+     */
+    static int packIpv4(String address) {
+        if (address == null) {
+            return 0;
+        }
+        int length = address.length();
+        if (length < 7 || length > 15) {
+            return 0;
+        }
+        int result = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // 不接受前导零，保证转换回字符串后与原值相同
+                if (digits > 0 && octet == 0) {
+                    return 0;
+                }
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return 0;
+                }
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                result = (result << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return 0;
+            }
+        }
+        if (dots != 3 || digits == 0) {
+            return 0;
+        }
+        return (result << 8) | octet;
     }
 
     public int getPort() {
@@ -67,64 +145,146 @@ public class DeviceInfo {
     }
 
     public DeviceStatus getStatus() {
-        return status;
+        return DeviceState.status(getState());
     }
 
+    /**
+     * 直接设置状态并保留纪元，不经过状态机校验，只用于初始化数据和测试工具；
+     * 连接上下线由DeviceManager通过compareAndSetState推进
+     */
     public void setStatus(DeviceStatus status) {
-        this.status = status;
+        long current;
+        do {
+            current = getState();
+        } while (!compareAndSetState(current, DeviceState.pack(status, DeviceState.epoch(current))));
+    }
+
+    /**
+     * 状态机字，由DeviceState解析
+     */
+    public long getState() {
+        return state;
+    }
+
+    public boolean compareAndSetState(long expected, long next) {
+        return STATE.compareAndSet(this, expected, next);
     }
 
     public LocalDateTime getLastHeartbeat() {
-        return lastHeartbeat;
+        return toLocalDateTime(getLastHeartbeatMillis());
     }
 
     public void setLastHeartbeat(LocalDateTime lastHeartbeat) {
+        setLastHeartbeatMillis(toMillis(lastHeartbeat));
+    }
+
+    /**
+     * 最后心跳时间（毫秒时间戳），未设置时为0
+     */
+    public long getLastHeartbeatMillis() {
+        return lastHeartbeat;
+    }
+
+    public void setLastHeartbeatMillis(long lastHeartbeat) {
         this.lastHeartbeat = lastHeartbeat;
     }
 
+    /**
+     * 记录一次心跳：更新最后心跳时间并计入消息数，不产生任何对象
+     */
+    public void recordHeartbeat(long nowMillis) {
+        setLastHeartbeatMillis(nowMillis);
+        incrementMessageCount();
+    }
+
     public LocalDateTime getConnectTime() {
-        return connectTime;
+        return toLocalDateTime(getConnectTimeMillis());
     }
 
     public void setConnectTime(LocalDateTime connectTime) {
+        setConnectTimeMillis(toMillis(connectTime));
+    }
+
+    public long getConnectTimeMillis() {
+        return connectTime;
+    }
+
+    public void setConnectTimeMillis(long connectTime) {
         this.connectTime = connectTime;
     }
 
     public LocalDateTime getDisconnectTime() {
-        return disconnectTime;
+        return toLocalDateTime(getDisconnectTimeMillis());
     }
 
     public void setDisconnectTime(LocalDateTime disconnectTime) {
+        setDisconnectTimeMillis(toMillis(disconnectTime));
+    }
+
+    public long getDisconnectTimeMillis() {
+        return disconnectTime;
+    }
+
+    public void setDisconnectTimeMillis(long disconnectTime) {
         this.disconnectTime = disconnectTime;
     }
 
     public String getLastData() {
-        return lastData;
+        byte[] data = lastData;
+        return data == null ? null : new String(data, StandardCharsets.UTF_8);
     }
 
     public void setLastData(String lastData) {
-        this.lastData = lastData;
+        this.lastData = lastData == null ? null : lastData.getBytes(StandardCharsets.UTF_8);
     }
 
     public LocalDateTime getLastDataTime() {
-        return lastDataTime;
+        return toLocalDateTime(getLastDataTimeMillis());
     }
 
     public void setLastDataTime(LocalDateTime lastDataTime) {
+        setLastDataTimeMillis(toMillis(lastDataTime));
+    }
+
+    public long getLastDataTimeMillis() {
+        return lastDataTime;
+    }
+
+    public void setLastDataTimeMillis(long lastDataTime) {
         this.lastDataTime = lastDataTime;
     }
 
+    /**
+     * 收到的心跳和数据消息数
+     * 通常只由设备连接所属的事件循环递增，会话恢复时新旧连接可能短暂并存，因此原子递增
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void incrementMessageCount() {
+        MESSAGE_COUNT.incrementAndGet(this);
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return millis == 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? 0 : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     @Override
     public String toString() {
         return "DeviceInfo{" +
-                "deviceId='" + deviceId + '\'' +
-                ", deviceName='" + deviceName + '\'' +
-                ", deviceType='" + deviceType + '\'' +
-                ", ipAddress='" + ipAddress + '\'' +
-                ", port=" + port +
-                ", status=" + status +
-                ", lastHeartbeat=" + lastHeartbeat +
-                ", connectTime=" + connectTime +
+                "deviceId='" + getDeviceId() + '\'' +
+                ", deviceName='" + getDeviceName() + '\'' +
+                ", deviceType='" + getDeviceType() + '\'' +
+                ", ipAddress='" + getIpAddress() + '\'' +
+                ", port=" + getPort() +
+                ", status=" + getStatus() +
+                ", lastHeartbeat=" + getLastHeartbeat() +
+                ", connectTime=" + getConnectTime() +
                 '}';
     }
 }
@@ -0,0 +1,180 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 设备变更日志
+ * 只追加写入内存映射的定长分段文件，每条记录为 长度(4) + CRC32(4) + DeviceRecord编码，长度为0表示分段结束。
+ * 写入只落到页缓存，进程崩溃不丢数据；分段切换和关闭时强制刷盘。
+ * 每次启动都从新的分段开始写，旧分段在下一次快照后删除。
+ */
+public class DeviceJournal {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceJournal.class);
+
+    static final String PREFIX = "journal-";
+    static final String SUFFIX = ".log";
+    private static final int MAGIC = 0x494F544A;        // "IOTJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    // 四个字符串各自最长65534字节，再加上定长字段
+    private static final int MAX_RECORD_BYTES = 4 * (2 + 0xFFFE) + 64;
+    // 新分段必须能放下一条最长的记录，否则切换分段后仍然写不下
+    static final int MIN_SEGMENT_BYTES = HEADER_BYTES + RECORD_HEADER_BYTES + MAX_RECORD_BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long sequence;
+    private long appended;
+
+    /**
+     * @param segmentBytes 分段大小，不小于MIN_SEGMENT_BYTES
+     * @param firstSequence 第一个分段的序号，必须大于目录中已有的所有分段
+     */
+    public DeviceJournal(Path directory, int segmentBytes, long firstSequence) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("日志分段过小: " + segmentBytes + "，至少 " + MIN_SEGMENT_BYTES + " 字节");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        openSegment(firstSequence);
+    }
+
+    /**
+     * 追加一条设备记录
+     */
+    public synchronized void append(DeviceInfo device) throws IOException {
+        if (segment == null) {
+            throw new IOException("变更日志已关闭");
+        }
+        scratch.clear();
+        int length = DeviceRecord.encode(device, scratch);
+        if (segment.remaining() < RECORD_HEADER_BYTES + length) {
+            roll();
+        }
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        segment.putInt(length);
+        segment.putInt((int) crc.getValue());
+        segment.put(scratch.array(), 0, length);
+        appended++;
+    }
+
+    /**
+     * 切换到新分段
+     * @return 新分段的序号，之前的记录都在序号更小的分段中
+     */
+    public synchronized long roll() throws IOException {
+        closeSegment();
+        openSegment(sequence + 1);
+        return sequence;
+    }
+
+    public synchronized void close() throws IOException {
+        closeSegment();
+    }
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    private void openSegment(long newSequence) throws IOException {
+        Path file = directory.resolve(fileName(newSequence));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        sequence = newSequence;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        segment.force();
+        channel.close();
+        segment = null;
+        channel = null;
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    /**
+     * 按序号升序列出目录中的文件
+     */
+    static List<Path> list(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingLong(file -> sequenceOf(file, prefix, suffix)));
+        return files;
+    }
+
+    static long sequenceOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * 顺序读取一个分段，遇到分段结束或校验失败的记录（崩溃时未写完）即停止
+     * @param consumer 接收解码后的记录，记录对象会被复用
+     * @return 读取的记录数
+     */
+    static long replay(Path file, Consumer<DeviceRecord> consumer) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("忽略无法识别的日志分段: {}", file);
+                return 0;
+            }
+            DeviceRecord record = new DeviceRecord();
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("日志分段 {} 在偏移 {} 处校验失败，忽略之后的记录", file, buffer.position() - RECORD_HEADER_BYTES);
+                    break;
+                }
+                if (record.decode(body)) {
+                    consumer.accept(record);
+                    count++;
+                }
+                buffer.position(buffer.position() + length);
+            }
+        }
+        return count;
+    }
+}
@@ -1,65 +1,278 @@
 package com.michael.iot.server;
 
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.FastThreadLocal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
 
 /**
  * 设备管理器
+ * 设备注册表、会话和索引只在连接、注册和断开时写入；数据上报路径上的计数和接入队列通道按事件循环分片，
+ * 每个Netty事件循环只写自己的DeviceShard，全局统计在查询时合并各分片。分片减少的是事件循环之间的争用，
+ * 接入队列的所有通道仍由一个消费线程分发监听器。
+ * 不带分片的通知方法供事件循环以外的线程调用，计数进入共享计数器，事件进入接入队列的共享多生产者队列，
+ * 不会为调用线程创建分片，分片数始终不超过事件循环数。
  */
 public class DeviceManager {
     private static final Logger logger = LoggerFactory.getLogger(DeviceManager.class);
     
     // 设备ID -> 设备信息
-    private final Map<String, DeviceInfo> devices = new ConcurrentHashMap<>();
-    // 设备ID -> Netty Channel
-    private final Map<String, Channel> deviceChannels = new ConcurrentHashMap<>();
-    // 设备状态变更监听器
-    private final List<DeviceStatusListener> statusListeners = new ArrayList<>();
-    // 设备数据更新监听器
-    private final List<DeviceDataListener> dataListeners = new ArrayList<>();
+    private final DeviceRegistry devices;
+    // 设备ID -> 当前会话（连接、纪元和恢复令牌）
+    private final Map<String, DeviceSession> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom tokenRandom = new SecureRandom();
+    // 断开的会话保留多久，超过后令牌失效，会话被回收
+    private volatile long sessionTtlMillis = 10 * 60 * 1000L;
+    // 按状态、类型增量维护的计数和索引
+    private final DeviceIndex index = new DeviceIndex();
+    // 因非法或纪元过期而被拒绝的状态转换次数
+    private final LongAdder rejectedTransitions = new LongAdder();
+    // 分页查询扫描有序索引超过上限、改为Top-K选择的次数
+    private final LongAdder scanFallbacks = new LongAdder();
+    // 设备状态变更和数据更新监听器
+    private final ListenerDispatcher listeners = new ListenerDispatcher();
+    // 按设备类型的数据模式，接入时据此把数据解析为读数
+    private final SchemaRegistry schemas = new SchemaRegistry();
+    private final SensorExtractor extractor = new SensorExtractor(schemas);
+    // 事件接入队列，为空时监听器在调用线程上同步执行
+    private volatile IngestRingBuffer ingestQueue;
+    // 每个事件循环一个分片，由shardFor在事件循环线程上创建
+    private final List<DeviceShard> shards = new CopyOnWriteArrayList<>();
+    private final FastThreadLocal<DeviceShard> loopShard = new FastThreadLocal<>();
+    // 事件循环以外的线程通知的数据事件计数
+    private final LongAdder externalDataEvents = new LongAdder();
+    private final LongAdder externalBatchEvents = new LongAdder();
+    private final LongAdder externalReadings = new LongAdder();
+
+    public DeviceManager() {
+        this(new HeapDeviceRegistry());
+    }
+
+    public DeviceManager(DeviceRegistry registry) {
+        this.devices = registry;
+    }
 
     /**
      * 设备上线
+     * 已知设备复用原有的DeviceInfo并签发新的会话令牌，旧连接若仍未断开则被关闭。
+     * @return 新会话
+     */
+    public DeviceSession deviceOnline(String deviceId, String deviceName, String deviceType,
+                                      String ipAddress, int port, Channel channel) {
+        DeviceInfo deviceInfo = devices.getOrCreate(deviceId, deviceName, deviceType,
+                created -> index.add(deviceId, deviceName, deviceType, created.getStatus(),
+                        created.getConnectTimeMillis()));
+        return bind(deviceInfo, deviceName, deviceType, ipAddress, port, channel, null, newToken());
+    }
+
+    /**
+     * 凭会话令牌恢复设备会话，无需重新注册
+     * 令牌只能使用一次：恢复成功后签发新令牌，旧令牌立即失效；断开超过保留时间的会话不能恢复。
+     * @return 新会话（携带新令牌），令牌无效或已过期时返回null
+     */
+    public DeviceSession resumeSession(String deviceId, String token, String ipAddress, int port, Channel channel) {
+        DeviceSession current = sessions.get(deviceId);
+        if (current == null) {
+            return null;
+        }
+        return bind(current.getDevice(), null, null, ipAddress, port, channel, token, newToken());
+    }
+
+    /**
+     * 以新纪元把设备绑定到连接上，替换会话是原子的
+     * 设备经 CONNECTING 进入 ONLINE；期间若有纪元更新的会话接管或本连接已断开，后续转换会被拒绝。
+     * @param deviceName 新的设备名称，为null时保持不变
+     * @param deviceType 新的设备类型，为null时保持不变
+     * @param expectedToken 恢复会话时出示的令牌，与替换前的会话在同一原子操作内校验，为null表示注册不校验
+     * @return 新会话，令牌校验失败时返回null
      */
-    public void deviceOnline(String deviceId, String deviceName, String deviceType, 
-                           String ipAddress, int port, Channel channel) {
-        DeviceInfo deviceInfo = new DeviceInfo(deviceId, deviceName, deviceType);
-        deviceInfo.setIpAddress(ipAddress);
-        deviceInfo.setPort(port);
-        deviceInfo.setStatus(DeviceStatus.ONLINE);
-        deviceInfo.setConnectTime(LocalDateTime.now());
-        deviceInfo.setLastHeartbeat(LocalDateTime.now());
+    private DeviceSession bind(DeviceInfo deviceInfo, String deviceName, String deviceType,
+                               String ipAddress, int port, Channel channel, String expectedToken, String token) {
+        String deviceId = deviceInfo.getDeviceId();
+        long nowMillis = CachedClock.currentTimeMillis();
+        DeviceSession[] previous = new DeviceSession[1];
+        DeviceSession session = sessions.compute(deviceId, (id, old) -> {
+            previous[0] = old;
+            if (expectedToken != null && (old == null || old.getDevice() != deviceInfo
+                    || old.isExpired(nowMillis, sessionTtlMillis) || !tokenEquals(old.getToken(), expectedToken))) {
+                return old;
+            }
+            // 没有会话时从设备当前纪元继续递增，持久化恢复的设备纪元不会回退
+            long last = old == null ? DeviceState.epoch(deviceInfo.getState()) : old.getEpoch();
+            return new DeviceSession(deviceInfo, channel, last + 1, token);
+        });
+        if (session == null || session == previous[0]) {
+            return null;
+        }
+        long epoch = session.getEpoch();
 
-        devices.put(deviceId, deviceInfo);
-        deviceChannels.put(deviceId, channel);
+        if (transition(deviceInfo, DeviceStatus.CONNECTING, epoch)) {
+            long now = CachedClock.currentTimeMillis();
+            synchronized (devices.lockFor(deviceInfo)) {
+                // 加锁期间纪元未变才写入，避免被已接管的旧会话覆盖
+                if (DeviceState.epoch(deviceInfo.getState()) == epoch) {
+                    if (deviceName != null) {
+                        index.nameChanged(deviceId, deviceInfo.getDeviceName(), deviceName);
+                        deviceInfo.setDeviceName(deviceName);
+                    }
+                    if (deviceType != null) {
+                        index.typeChanged(deviceId, deviceInfo.getDeviceType(), deviceType);
+                        deviceInfo.setDeviceType(deviceType);
+                    }
+                    index.ipChanged(deviceId, deviceInfo.getIpAddress(), ipAddress);
+                    deviceInfo.setIpAddress(ipAddress);
+                    deviceInfo.setPort(port);
+                    index.connectTimeChanged(deviceId, deviceInfo.getConnectTimeMillis(), now);
+                    deviceInfo.setConnectTimeMillis(now);
+                    deviceInfo.setLastHeartbeatMillis(now);
+                }
+            }
+            transition(deviceInfo, DeviceStatus.ONLINE, epoch);
+        }
 
-        logger.info("设备上线: {}", deviceInfo);
-        notifyStatusChange(deviceInfo, DeviceStatus.OFFLINE, DeviceStatus.ONLINE);
+        // 设备在旧连接被检测到断开之前就重连了，关闭旧连接，其下线通知会因纪元过期被忽略
+        Channel oldChannel = previous[0] == null ? null : previous[0].getChannel();
+        if (oldChannel != null && oldChannel != channel) {
+            oldChannel.close();
+        }
+
+        logger.info("设备上线: {}，会话纪元: {}", deviceInfo, epoch);
+        return session;
     }
 
     /**
      * 设备下线
      */
     public void deviceOffline(String deviceId) {
-        DeviceInfo deviceInfo = devices.get(deviceId);
-        if (deviceInfo != null) {
-            DeviceStatus oldStatus = deviceInfo.getStatus();
-            deviceInfo.setStatus(DeviceStatus.OFFLINE);
-            deviceInfo.setDisconnectTime(LocalDateTime.now());
+        DeviceSession session = sessions.get(deviceId);
+        if (session != null) {
+            deviceOffline(deviceId, session.getEpoch());
+        }
+    }
 
-            deviceChannels.remove(deviceId);
+    /**
+     * 设备下线，只有纪元与当前会话一致时才生效，旧连接迟到的断开事件会被忽略
+     * 设备经 DISCONNECTING 进入 OFFLINE。
+     * @return 是否真正下线
+     */
+    public boolean deviceOffline(String deviceId, long epoch) {
+        DeviceSession[] detached = new DeviceSession[1];
+        sessions.computeIfPresent(deviceId, (id, session) -> {
+            if (session.getEpoch() != epoch || session.getChannel() == null) {
+                return session;
+            }
+            detached[0] = session.detach(CachedClock.currentTimeMillis());
+            return detached[0];
+        });
+        DeviceSession current = detached[0];
+        if (current == null) {
+            logger.debug("忽略过期的下线通知: {}，纪元: {}", deviceId, epoch);
+            return false;
+        }
 
-            logger.info("设备下线: {}", deviceInfo);
-            notifyStatusChange(deviceInfo, oldStatus, DeviceStatus.OFFLINE);
+        DeviceInfo deviceInfo = current.getDevice();
+        if (!transition(deviceInfo, DeviceStatus.DISCONNECTING, epoch)) {
+            return false;
         }
+        deviceInfo.setDisconnectTimeMillis(CachedClock.currentTimeMillis());
+        transition(deviceInfo, DeviceStatus.OFFLINE, epoch);
+
+        logger.info("设备下线: {}", deviceInfo);
+        return true;
+    }
+
+    /**
+     * 以CAS推进设备状态机，转换成功时同步状态索引并通知一次监听器
+     * 不同连接上的转换可能并发发生，监听器收到的每个事件都带有该次转换确切的新旧状态。
+     * @return 转换是否生效，非法转换或纪元过期时返回false
+     */
+    private boolean transition(DeviceInfo deviceInfo, DeviceStatus next, long epoch) {
+        long current;
+        do {
+            current = deviceInfo.getState();
+            if (!DeviceState.isAllowed(current, next, epoch)) {
+                rejectedTransitions.increment();
+                logger.debug("拒绝设备状态转换: {}，{}(纪元{}) -> {}(纪元{})", deviceInfo.getDeviceId(),
+                        DeviceState.status(current), DeviceState.epoch(current), next, epoch);
+                return false;
+            }
+        } while (!deviceInfo.compareAndSetState(current, DeviceState.pack(next, epoch)));
+
+        syncStatusIndex(deviceInfo);
+        notifyStatusChange(deviceInfo, DeviceState.status(current), next);
+        return true;
+    }
+
+    /**
+     * 状态索引涉及多个集合，无法随状态字一起原子更新，按设备加锁后以当前状态为准同步
+     */
+    private void syncStatusIndex(DeviceInfo deviceInfo) {
+        synchronized (devices.lockFor(deviceInfo)) {
+            index.statusObserved(deviceInfo.getDeviceId(), deviceInfo.getStatus());
+        }
+    }
+
+    /**
+     * 从持久化记录恢复设备，只在设备接入之前由恢复线程调用，不通知监听器
+     * 设备恢复为离线状态并保留记录中的纪元；记录不是离线状态时（进程未正常停止）以最后心跳作为断开时间。
+     */
+    void restoreDevice(DeviceRecord record) {
+        String deviceId = record.getDeviceId();
+        DeviceInfo deviceInfo = devices.getOrCreate(deviceId, record.getDeviceName(), record.getDeviceType(),
+                created -> index.add(deviceId, record.getDeviceName(), record.getDeviceType(), created.getStatus(),
+                        created.getConnectTimeMillis()));
+        synchronized (devices.lockFor(deviceInfo)) {
+            index.nameChanged(deviceId, deviceInfo.getDeviceName(), record.getDeviceName());
+            deviceInfo.setDeviceName(record.getDeviceName());
+            index.typeChanged(deviceId, deviceInfo.getDeviceType(), record.getDeviceType());
+            deviceInfo.setDeviceType(record.getDeviceType());
+            index.ipChanged(deviceId, deviceInfo.getIpAddress(), record.getIpAddress());
+            deviceInfo.setIpAddress(record.getIpAddress());
+            deviceInfo.setPort(record.getPort());
+            index.connectTimeChanged(deviceId, deviceInfo.getConnectTimeMillis(), record.getConnectTime());
+            deviceInfo.setConnectTimeMillis(record.getConnectTime());
+            deviceInfo.setLastHeartbeatMillis(record.getLastHeartbeat());
+            deviceInfo.setDisconnectTimeMillis(DeviceState.status(record.getState()) == DeviceStatus.OFFLINE
+                    ? record.getDisconnectTime() : Math.max(record.getLastHeartbeat(), record.getConnectTime()));
+            long offline = DeviceState.pack(DeviceStatus.OFFLINE, DeviceState.epoch(record.getState()));
+            long current;
+            do {
+                current = deviceInfo.getState();
+            } while (!deviceInfo.compareAndSetState(current, offline));
+            index.statusObserved(deviceId, DeviceStatus.OFFLINE);
+        }
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[16];
+        tokenRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static boolean tokenEquals(String expected, String actual) {
+        if (expected == null || actual == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+                actual.getBytes(StandardCharsets.US_ASCII));
     }
 
     /**
@@ -68,7 +281,7 @@ public class DeviceManager {
     public void updateHeartbeat(String deviceId) {
         DeviceInfo deviceInfo = devices.get(deviceId);
         if (deviceInfo != null) {
-            deviceInfo.setLastHeartbeat(LocalDateTime.now());
+            deviceInfo.recordHeartbeat(CachedClock.currentTimeMillis());
         }
     }
 
@@ -76,25 +289,228 @@ public class DeviceManager {
      * 获取所有设备
      */
     public List<DeviceInfo> getAllDevices() {
-        return new ArrayList<>(devices.values());
+        return devices.snapshot();
     }
 
     /**
      * 获取在线设备
      */
     public List<DeviceInfo> getOnlineDevices() {
-        return devices.values().stream()
-                .filter(device -> device.getStatus() == DeviceStatus.ONLINE)
-                .collect(Collectors.toList());
+        return getDevicesByStatus(DeviceStatus.ONLINE);
     }
 
     /**
      * 获取离线设备
      */
     public List<DeviceInfo> getOfflineDevices() {
-        return devices.values().stream()
-                .filter(device -> device.getStatus() == DeviceStatus.OFFLINE)
-                .collect(Collectors.toList());
+        return getDevicesByStatus(DeviceStatus.OFFLINE);
+    }
+
+    /**
+     * 获取指定状态的设备，开销与结果数量成正比
+     */
+    public List<DeviceInfo> getDevicesByStatus(DeviceStatus status) {
+        return lookup(index.idsByStatus(status));
+    }
+
+    /**
+     * 获取指定类型的设备，开销与结果数量成正比
+     */
+    public List<DeviceInfo> getDevicesByType(String deviceType) {
+        return lookup(index.idsByType(deviceType));
+    }
+
+    private List<DeviceInfo> lookup(Set<String> deviceIds) {
+        List<DeviceInfo> result = new ArrayList<>(deviceIds.size());
+        for (String deviceId : deviceIds) {
+            DeviceInfo deviceInfo = devices.get(deviceId);
+            if (deviceInfo != null) {
+                result.add(deviceInfo);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 分页查询设备
+     * 按设备ID、名称或接入时间排序时，记B = sqrt(limit·N)，C为状态、类型、IP条件中最小的索引集合（或名称前缀范围）：
+     * C不超过B时遍历它并用一页大小的堆做Top-K选择，开销O(B·log limit)；
+     * 否则沿排序键的有序索引从游标位置向后扫描并过滤，匹配比例为p时约扫描limit/p个设备即取满一页，
+     * 匹配均匀分布在排序键上时平均不超过B。匹配集中在有序索引末端时扫描会远超平均值，
+     * 因此扫描的设备数超过|C|（名称前缀范围为4B）后放弃扫描，改为对C做Top-K选择，
+     * 一页的最坏开销为O(|C|·log limit)，C很大时接近O(N·log limit)。
+     * 按最后心跳排序没有有序索引，需要遍历全部候选设备（无条件时为全部设备）做Top-K选择，开销为O(N·log limit)，
+     * 与页大小无关，设备数很大时应配合过滤条件使用。
+     * @throws IllegalArgumentException 游标无效
+     */
+    public DeviceQueryResult queryDevices(DeviceQuery query) {
+        DeviceQuery.Cursor after = query.decodeCursor();
+
+        Set<String> candidates = null;
+        int conditions = 0;
+        if (query.getStatus() != null) {
+            candidates = index.idsByStatus(query.getStatus());
+            conditions++;
+        }
+        if (query.getDeviceType() != null) {
+            candidates = smaller(candidates, index.idsByType(query.getDeviceType()));
+            conditions++;
+        }
+        if (query.getIpAddress() != null) {
+            candidates = smaller(candidates, index.idsByIp(query.getIpAddress()));
+            conditions++;
+        }
+        String prefix = query.getNamePrefix();
+        DeviceQuery.SortKey sortBy = query.getSortBy();
+        if (sortBy == DeviceQuery.SortKey.LAST_HEARTBEAT) {
+            return selectPage(query, after, candidates != null ? candidates
+                    : prefix != null ? nameRange(prefix) : index.orderedIds());
+        }
+
+        long budget = (long) Math.sqrt((double) query.getLimit() * Math.max(1, devices.size()));
+        if (candidates != null && candidates.size() <= budget) {
+            return selectPage(query, after, candidates);
+        }
+        if (candidates == null && prefix != null && sortBy != DeviceQuery.SortKey.DEVICE_NAME) {
+            NavigableSet<String> range = nameRange(prefix);
+            if (sizeAtMost(range, budget)) {
+                return selectPage(query, after, range);
+            }
+        }
+
+        // 只有单个索引条件时总数即为该集合大小，条件更多时总数未知
+        long total = -1;
+        if (prefix == null && query.getFilter() == null) {
+            total = conditions == 0 ? devices.size() : conditions == 1 ? candidates.size() : -1;
+        }
+        // 扫描超过对候选集合做Top-K的开销时改为Top-K；只有附加过滤条件时没有候选集合，不设上限
+        long maxScanned = candidates != null ? candidates.size() : prefix != null ? 4 * budget : Long.MAX_VALUE;
+        DeviceQueryResult result;
+        switch (sortBy) {
+            case DEVICE_NAME:
+                result = scanPage(query, after, prefix != null ? nameRange(prefix) : index.orderedNameKeys(),
+                        after == null ? null : DeviceIndex.nameKey(after.value, after.deviceId), total, maxScanned);
+                break;
+            case CONNECT_TIME:
+                result = scanPage(query, after, index.orderedConnectTimeKeys(),
+                        after == null ? null : DeviceIndex.connectTimeKey((Long) after.key, after.deviceId), total,
+                        maxScanned);
+                break;
+            default:
+                result = scanPage(query, after, index.orderedIds(), after == null ? null : after.deviceId, total,
+                        maxScanned);
+                break;
+        }
+        if (result != null) {
+            return result;
+        }
+        scanFallbacks.increment();
+        return selectPage(query, after, candidates != null ? candidates : nameRange(prefix));
+    }
+
+    private static Set<String> smaller(Set<String> current, Set<String> other) {
+        return current == null || other.size() < current.size() ? other : current;
+    }
+
+    /**
+     * 名称以prefix开头的名称索引键
+     */
+    private NavigableSet<String> nameRange(String prefix) {
+        return index.orderedNameKeys().subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * 有序集合的元素数是否不超过max，最多遍历max+1个元素
+     */
+    private static boolean sizeAtMost(NavigableSet<String> keys, long max) {
+        long count = 0;
+        for (Iterator<String> it = keys.iterator(); it.hasNext(); it.next()) {
+            if (++count > max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 沿有序索引扫描并过滤，键为设备ID、名称索引键或接入时间索引键
+     * @param total 结果总数，-1表示未知
+     * @param maxScanned 最多扫描的键数
+     * @return 一页结果，扫描的键数超过上限时返回null
+     */
+    private DeviceQueryResult scanPage(DeviceQuery query, DeviceQuery.Cursor after,
+                                       NavigableSet<String> keys, String afterKey, long total, long maxScanned) {
+        if (query.isDescending()) {
+            keys = keys.descendingSet();
+        }
+        if (afterKey != null) {
+            keys = keys.tailSet(afterKey, false);
+        }
+        List<DeviceInfo> page = new ArrayList<>(query.getLimit());
+        boolean more = false;
+        long scanned = 0;
+        for (String key : keys) {
+            if (++scanned > maxScanned) {
+                return null;
+            }
+            DeviceInfo deviceInfo = devices.get(deviceIdOf(key));
+            if (deviceInfo == null || !query.matches(deviceInfo)
+                    || (after != null && !query.isAfterCursor(deviceInfo, after))) {
+                continue;
+            }
+            if (page.size() == query.getLimit()) {
+                more = true;
+                break;
+            }
+            page.add(deviceInfo);
+        }
+        return new DeviceQueryResult(page, more ? query.cursorAfter(page.get(page.size() - 1)) : null, total);
+    }
+
+    /**
+     * 遍历候选集合，过滤后用大小为limit的堆选出游标之后的一页
+     * 候选可以是设备ID，也可以是名称索引键
+     */
+    private DeviceQueryResult selectPage(DeviceQuery query, DeviceQuery.Cursor after, Collection<String> candidates) {
+        Comparator<DeviceInfo> order = query.comparator();
+        int limit = query.getLimit();
+        // 堆顶为当前页中排序最靠后的设备
+        PriorityQueue<DeviceInfo> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        long total = 0;
+        boolean more = false;
+        for (String key : candidates) {
+            DeviceInfo deviceInfo = devices.get(deviceIdOf(key));
+            if (deviceInfo == null || !query.matches(deviceInfo)) {
+                continue;
+            }
+            total++;
+            if (after != null && !query.isAfterCursor(deviceInfo, after)) {
+                continue;
+            }
+            heap.add(deviceInfo);
+            if (heap.size() > limit) {
+                heap.poll();
+                more = true;
+            }
+        }
+        List<DeviceInfo> page = new ArrayList<>(heap);
+        page.sort(order);
+        return new DeviceQueryResult(page, more ? query.cursorAfter(page.get(page.size() - 1)) : null, total);
+    }
+
+    /**
+     * 名称或接入时间索引键中取出设备ID，普通设备ID原样返回
+     */
+    private static String deviceIdOf(String key) {
+        int separator = key.lastIndexOf('\0');
+        return separator < 0 ? key : key.substring(separator + 1);
+    }
+
+    /**
+     * 分页查询放弃扫描有序索引、改为对候选集合做Top-K选择的次数
+     */
+    public long getQueryScanFallbacks() {
+        return scanFallbacks.sum();
     }
 
     /**
@@ -104,65 +520,378 @@ public class DeviceManager {
         return devices.get(deviceId);
     }
 
+    /**
+     * 回收断开超过保留时间的会话，其令牌随之失效
+     * 设备之后重新注册时纪元从设备状态中的纪元继续递增。
+     * @return 回收的会话数
+     */
+    public int expireSessions() {
+        long now = CachedClock.currentTimeMillis();
+        long ttl = sessionTtlMillis;
+        int expired = 0;
+        for (DeviceSession session : sessions.values()) {
+            // 按值删除，期间被重新绑定的会话不受影响
+            if (session.isExpired(now, ttl) && sessions.remove(session.getDevice().getDeviceId(), session)) {
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.debug("回收过期会话: {}", expired);
+        }
+        return expired;
+    }
+
+    public long getSessionTtlMillis() {
+        return sessionTtlMillis;
+    }
+
+    public void setSessionTtlMillis(long sessionTtlMillis) {
+        if (sessionTtlMillis <= 0) {
+            throw new IllegalArgumentException("会话保留时间必须大于0: " + sessionTtlMillis);
+        }
+        this.sessionTtlMillis = sessionTtlMillis;
+    }
+
+    /**
+     * 当前保留的会话数，包括已断开但未过期的会话
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
     /**
      * 根据设备ID获取Channel
      */
     public Channel getDeviceChannel(String deviceId) {
-        return deviceChannels.get(deviceId);
+        DeviceSession session = sessions.get(deviceId);
+        return session == null ? null : session.getChannel();
+    }
+
+    /**
+     * 根据设备ID获取当前会话
+     */
+    public DeviceSession getSession(String deviceId) {
+        return sessions.get(deviceId);
     }
 
     /**
-     * 添加状态监听器
+     * 添加状态监听器，在分发线程上同步回调
      */
     public void addStatusListener(DeviceStatusListener listener) {
-        statusListeners.add(listener);
+        addStatusListener(listener, ListenerOptions.sync());
+    }
+
+    /**
+     * 添加状态监听器，按注册参数同步或异步回调
+     * @return 监听器的回调通道，可读取排队和丢弃统计
+     */
+    public ListenerEndpoint addStatusListener(DeviceStatusListener listener, ListenerOptions options) {
+        return listeners.addStatusListener(listener, options);
     }
 
     /**
      * 移除状态监听器
      */
     public void removeStatusListener(DeviceStatusListener listener) {
-        statusListeners.remove(listener);
+        listeners.removeStatusListener(listener);
     }
 
     /**
-     * 添加数据监听器
+     * 添加数据监听器，在分发线程上同步回调
      */
     public void addDataListener(DeviceDataListener listener) {
-        dataListeners.add(listener);
+        addDataListener(listener, ListenerOptions.sync());
+    }
+
+    /**
+     * 添加数据监听器，按注册参数同步或异步回调
+     */
+    public void addDataListener(DeviceDataListener listener, ListenerOptions options) {
+        listeners.addDataListener(listener, options);
     }
 
     /**
      * 移除数据监听器
      */
     public void removeDataListener(DeviceDataListener listener) {
-        dataListeners.remove(listener);
+        listeners.removeDataListener(listener);
+    }
+
+    /**
+     * 添加读数监听器，在分发线程上同步回调
+     */
+    public void addReadingListener(SensorReadingListener listener) {
+        addReadingListener(listener, ListenerOptions.sync());
+    }
+
+    /**
+     * 添加读数监听器，按注册参数同步或异步回调
+     */
+    public void addReadingListener(SensorReadingListener listener, ListenerOptions options) {
+        listeners.addReadingListener(listener, options);
+    }
+
+    /**
+     * 移除读数监听器
+     */
+    public void removeReadingListener(SensorReadingListener listener) {
+        listeners.removeReadingListener(listener);
+    }
+
+    public boolean hasReadingListeners() {
+        return listeners.hasReadingListeners();
+    }
+
+    public SchemaRegistry getSchemaRegistry() {
+        return schemas;
+    }
+
+    public SensorExtractor getSensorExtractor() {
+        return extractor;
+    }
+
+    /**
+     * 获取因非法或纪元过期而被拒绝的状态转换次数
+     */
+    public long getRejectedTransitions() {
+        return rejectedTransitions.sum();
+    }
+
+    /**
+     * 获取各监听器的排队深度、回调和丢弃计数
+     */
+    public List<ListenerEndpoint> getListenerStats() {
+        return listeners.getListenerStats();
+    }
+
+    /**
+     * 事件循环的分片，第一次调用时创建，只能在该事件循环线程上调用
+     */
+    public DeviceShard shardFor(EventLoop eventLoop) {
+        if (!eventLoop.inEventLoop()) {
+            throw new IllegalStateException("只能在所属事件循环上获取分片: " + Thread.currentThread().getName());
+        }
+        DeviceShard shard = loopShard.get();
+        if (shard == null) {
+            shard = newShard();
+            loopShard.set(shard);
+        }
+        return shard;
+    }
+
+    private synchronized DeviceShard newShard() {
+        DeviceShard shard = new DeviceShard(shards.size(), Thread.currentThread());
+        shards.add(shard);
+        logger.debug("创建设备管理分片: {}", shard);
+        return shard;
+    }
+
+    /**
+     * 获取各分片的统计
+     */
+    public List<DeviceShard> getShards() {
+        return new ArrayList<>(shards);
+    }
+
+    /**
+     * 累计的单条数据事件数，合并各分片计数
+     */
+    public long getDataEventCount() {
+        long count = externalDataEvents.sum();
+        for (DeviceShard shard : shards) {
+            count += shard.getDataEvents();
+        }
+        return count;
+    }
+
+    /**
+     * 累计的批量数据事件数，合并各分片计数
+     */
+    public long getBatchEventCount() {
+        long count = externalBatchEvents.sum();
+        for (DeviceShard shard : shards) {
+            count += shard.getBatchEvents();
+        }
+        return count;
+    }
+
+    /**
+     * 累计解析出的读数条数，合并各分片计数
+     */
+    public long getReadingCount() {
+        long count = externalReadings.sum();
+        for (DeviceShard shard : shards) {
+            count += shard.getReadings();
+        }
+        return count;
+    }
+
+    /**
+     * 启用事件接入队列，之后监听器改由独立的消费线程回调
+     */
+    public synchronized void startIngestQueue(int capacity, int batchSize,
+                                              WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        startIngestQueue(capacity, capacity, batchSize, waitStrategy, overflowPolicy, true);
+    }
+
+    /**
+     * 启用事件接入队列，数据事件按分片进入各I/O线程专用的通道
+     * @param laneCapacity 每个分片数据通道的容量
+     * @param sharded 为false时数据事件与状态事件共用一个多生产者队列
+     */
+    public synchronized void startIngestQueue(int capacity, int laneCapacity, int batchSize,
+                                              WaitStrategy waitStrategy, OverflowPolicy overflowPolicy,
+                                              boolean sharded) {
+        if (ingestQueue != null) {
+            throw new IllegalStateException("事件接入队列已启动");
+        }
+        IngestRingBuffer queue = new IngestRingBuffer(this, capacity, laneCapacity, batchSize,
+                waitStrategy, overflowPolicy, sharded);
+        queue.start();
+        ingestQueue = queue;
+    }
+
+    /**
+     * 获取事件接入队列，未启用时返回null
+     */
+    public IngestRingBuffer getIngestQueue() {
+        return ingestQueue;
+    }
+
+    /**
+     * 停止事件接入队列和异步监听器，队列中剩余的事件会先分发完
+     */
+    public synchronized void shutdown() {
+        IngestRingBuffer queue = ingestQueue;
+        if (queue != null) {
+            ingestQueue = null;
+            queue.shutdown();
+        }
+        listeners.shutdown();
     }
 
     /**
      * 通知状态变更
      */
     private void notifyStatusChange(DeviceInfo device, DeviceStatus oldStatus, DeviceStatus newStatus) {
-        for (DeviceStatusListener listener : statusListeners) {
-            try {
-                listener.onStatusChange(device, oldStatus, newStatus);
-            } catch (Exception e) {
-                logger.error("通知设备状态变更失败", e);
-            }
+        IngestRingBuffer queue = ingestQueue;
+        if (queue != null && queue.publishStatus(device, oldStatus, newStatus)) {
+            return;
         }
+        dispatchStatusChange(device, oldStatus, newStatus);
     }
 
     /**
      * 通知数据更新
      */
     public void notifyDataUpdate(DeviceInfo device, String data) {
-        for (DeviceDataListener listener : dataListeners) {
-            try {
-                listener.onDataUpdate(device, data);
-            } catch (Exception e) {
-                logger.error("通知设备数据更新失败", e);
-            }
+        notifyDataUpdate(device, data, null);
+    }
+
+    /**
+     * 通知数据更新，事件在接入队列中待处理期间计入设备连接的背压水位
+     */
+    public void notifyDataUpdate(DeviceInfo device, String data, DeviceFlowControl flow) {
+        notifyDataUpdate(device, data, null, flow);
+    }
+
+    /**
+     * 通知数据更新，同时把接入时解析出的读数交给读数监听器
+     * 可由任意线程调用，事件进入接入队列的共享队列；事件循环上应使用带分片的方法。
+     * @param readings 解析出的读数，调用返回后即可复用，为null表示没有读数
+     */
+    public void notifyDataUpdate(DeviceInfo device, String data, SensorReadings readings, DeviceFlowControl flow) {
+        notifyDataUpdate(null, device, data, readings, flow);
+    }
+
+    /**
+     * 通知数据更新，计入事件循环的分片并进入其专用的接入通道，只能由分片所属的事件循环调用
+     * @param shard shardFor得到的分片，为null时按事件循环以外的线程处理
+     */
+    public void notifyDataUpdate(DeviceShard shard, DeviceInfo device, String data, SensorReadings readings,
+                                 DeviceFlowControl flow) {
+        if (shard != null) {
+            shard.recordData(readings);
+        } else {
+            externalDataEvents.increment();
+            recordExternalReadings(readings);
+        }
+        IngestRingBuffer queue = ingestQueue;
+        if (queue != null && queue.publishData(shard, device, data, readings, flow)) {
+            return;
+        }
+        dispatchDataUpdate(device, data);
+        if (readings != null) {
+            dispatchReadings(device, readings);
+        }
+    }
+
+    /**
+     * 通知批量数据更新，每个监听器对整批数据只回调一次
+     */
+    public void notifyDataUpdate(DeviceInfo device, DeviceDataBatch batch) {
+        notifyDataUpdate(device, batch, null);
+    }
+
+    /**
+     * 通知批量数据更新，事件在接入队列中待处理期间计入设备连接的背压水位
+     */
+    public void notifyDataUpdate(DeviceInfo device, DeviceDataBatch batch, DeviceFlowControl flow) {
+        notifyDataUpdate(device, batch, null, flow);
+    }
+
+    /**
+     * 通知批量数据更新，同时把接入时解析出的读数交给读数监听器
+     * 可由任意线程调用，事件进入接入队列的共享队列；事件循环上应使用带分片的方法。
+     * @param readings 解析出的读数，调用返回后即可复用，为null表示没有读数
+     */
+    public void notifyDataUpdate(DeviceInfo device, DeviceDataBatch batch, SensorReadings readings,
+                                 DeviceFlowControl flow) {
+        notifyDataUpdate(null, device, batch, readings, flow);
+    }
+
+    /**
+     * 通知批量数据更新，计入事件循环的分片并进入其专用的接入通道，只能由分片所属的事件循环调用
+     * @param shard shardFor得到的分片，为null时按事件循环以外的线程处理
+     */
+    public void notifyDataUpdate(DeviceShard shard, DeviceInfo device, DeviceDataBatch batch, SensorReadings readings,
+                                 DeviceFlowControl flow) {
+        if (shard != null) {
+            shard.recordBatch(batch, readings);
+        } else {
+            externalBatchEvents.increment();
+            recordExternalReadings(readings);
         }
+        IngestRingBuffer queue = ingestQueue;
+        if (queue != null && queue.publishBatch(shard, device, batch, readings, flow)) {
+            return;
+        }
+        dispatchDataUpdate(device, batch);
+        if (readings != null) {
+            dispatchReadings(device, readings);
+        }
+    }
+
+    private void recordExternalReadings(SensorReadings readings) {
+        if (readings != null) {
+            externalReadings.add(readings.size());
+        }
+    }
+
+    void dispatchStatusChange(DeviceInfo device, DeviceStatus oldStatus, DeviceStatus newStatus) {
+        listeners.dispatchStatusChange(device, oldStatus, newStatus);
+    }
+
+    void dispatchDataUpdate(DeviceInfo device, String data) {
+        listeners.dispatchDataUpdate(device, data);
+    }
+
+    void dispatchDataUpdate(DeviceInfo device, DeviceDataBatch batch) {
+        listeners.dispatchDataUpdate(device, batch);
+    }
+
+    void dispatchReadings(DeviceInfo device, SensorReadings readings) {
+        listeners.dispatchReadings(device, readings);
     }
 
     /**
@@ -176,17 +905,34 @@ public class DeviceManager {
      * 获取在线设备数量
      */
     public int getOnlineDeviceCount() {
-        return (int) devices.values().stream()
-                .filter(device -> device.getStatus() == DeviceStatus.ONLINE)
-                .count();
+        return (int) index.count(DeviceStatus.ONLINE);
     }
 
     /**
      * 获取离线设备数量
      */
     public int getOfflineDeviceCount() {
-        return (int) devices.values().stream()
-                .filter(device -> device.getStatus() == DeviceStatus.OFFLINE)
-                .count();
+        return (int) index.count(DeviceStatus.OFFLINE);
+    }
+
+    /**
+     * 获取指定状态的设备数量
+     */
+    public long getDeviceCount(DeviceStatus status) {
+        return index.count(status);
+    }
+
+    /**
+     * 获取指定类型的设备数量
+     */
+    public long getDeviceCountByType(String deviceType) {
+        return index.countByType(deviceType);
+    }
+
+    /**
+     * 获取各设备类型的设备数量
+     */
+    public Map<String, Long> getDeviceTypeCounts() {
+        return index.typeCounts();
     }
 }
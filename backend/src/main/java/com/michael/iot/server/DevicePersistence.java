@@ -0,0 +1,240 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备注册表持久化
+ * 设备状态转换以完整记录的形式追加到变更日志，定期把整个注册表写成快照并删除快照之前的日志分段。
+ * 重启时先把快照之后的日志归并为每个设备最新的一条记录，再并行读取快照分区、并行应用日志记录，
+ * 同一设备的记录按状态机版本取最新者，与读取顺序无关。
+ * 恢复的设备一律为离线状态，纪元保持不变，设备重连后纪元继续递增。
+ */
+public class DevicePersistence {
+    private static final Logger logger = LoggerFactory.getLogger(DevicePersistence.class);
+
+    private final DeviceManager deviceManager;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int snapshotPartitions;
+    private final int recoveryThreads;
+    private final LongAdder appendFailures = new LongAdder();
+    private volatile DeviceJournal journal;
+    private volatile ListenerEndpoint endpoint;
+    private long snapshotSequence = -1;
+    private long droppedAtSnapshot;  // 上一次快照开始时日志通道已丢弃的记录数
+
+    public DevicePersistence(DeviceManager deviceManager, ServerConfig config) {
+        this.deviceManager = deviceManager;
+        this.directory = Path.of(config.getPersistenceDir());
+        this.segmentBytes = config.getPersistenceSegmentBytes();
+        this.snapshotPartitions = config.getSnapshotPartitions();
+        this.recoveryThreads = config.getRecoveryThreads() > 0
+                ? config.getRecoveryThreads() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 从快照和日志恢复设备注册表，必须在设备接入之前调用
+     * @return 恢复的设备数
+     */
+    public synchronized int recover() throws Exception {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        List<Path> snapshots = DeviceJournal.list(directory, DeviceSnapshot.PREFIX, DeviceSnapshot.SUFFIX);
+        List<Path> segments = DeviceJournal.list(directory, DeviceJournal.PREFIX, DeviceJournal.SUFFIX);
+        Path snapshot = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+        long fromSequence = snapshot == null ? 0 : DeviceJournal.sequenceOf(snapshot, DeviceSnapshot.PREFIX, DeviceSnapshot.SUFFIX);
+
+        // 日志尾部归并为每个设备版本最新的一条
+        Map<String, DeviceRecord> tail = new ConcurrentHashMap<>();
+        long tailRecords = 0;
+        long lastSequence = fromSequence;
+        for (Path segment : segments) {
+            long sequence = DeviceJournal.sequenceOf(segment, DeviceJournal.PREFIX, DeviceJournal.SUFFIX);
+            lastSequence = Math.max(lastSequence, sequence);
+            if (sequence >= fromSequence) {
+                tailRecords += DeviceJournal.replay(segment, record -> tail.merge(record.getDeviceId(), record.copy(),
+                        (old, next) -> next.getVersion() >= old.getVersion() ? next : old));
+            }
+        }
+
+        AtomicInteger restored = new AtomicInteger();
+        long snapshotRecords = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(recoveryThreads, recoveryThreads());
+        try {
+            if (snapshot != null) {
+                // 日志中有同样新或更新记录的设备留给下一步处理
+                snapshotRecords = DeviceSnapshot.read(snapshot, executor, record -> {
+                    DeviceRecord newer = tail.get(record.getDeviceId());
+                    if (newer == null || newer.getVersion() < record.getVersion()) {
+                        if (newer != null) {
+                            tail.remove(record.getDeviceId(), newer);
+                        }
+                        deviceManager.restoreDevice(record);
+                        restored.incrementAndGet();
+                    }
+                });
+            }
+            applyTail(new ArrayList<>(tail.values()), executor, restored);
+        } finally {
+            executor.shutdown();
+        }
+
+        journal = new DeviceJournal(directory, segmentBytes, lastSequence + 1);
+        snapshotSequence = fromSequence;
+        logger.info("设备注册表恢复完成: {} 个设备，快照 {} 条，日志 {} 条，耗时 {} ms", restored.get(),
+                snapshotRecords, tailRecords, (System.nanoTime() - start) / 1_000_000);
+        return restored.get();
+    }
+
+    private void applyTail(List<DeviceRecord> records, ExecutorService executor, AtomicInteger restored) throws Exception {
+        int tasks = Math.min(recoveryThreads, Math.max(1, records.size()));
+        List<Future<?>> futures = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            int from = (int) ((long) records.size() * t / tasks);
+            int to = (int) ((long) records.size() * (t + 1) / tasks);
+            futures.add(executor.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    deviceManager.restoreDevice(records.get(i));
+                    restored.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * 开始记录设备状态转换，须在recover之后调用
+     * 日志由单独的监听器通道写入，不占用I/O线程；排队满时丢弃并计数，不阻塞发布方，
+     * 丢弃的转换由snapshotIfDropped提前写出的快照补上。
+     */
+    public void start() {
+        if (journal == null) {
+            throw new IllegalStateException("须先调用recover()");
+        }
+        ListenerOptions options = ListenerOptions.executor(1, 65536);
+        options.setName("journal");
+        options.setOverflowPolicy(OverflowPolicy.DROP);
+        endpoint = deviceManager.addStatusListener((device, oldStatus, newStatus) -> {
+            if (!newStatus.isTransient()) {
+                append(device);
+            }
+        }, options);
+    }
+
+    /**
+     * 上一次快照之后日志通道丢弃过记录时立即写一次快照
+     * 快照读取的是丢弃之后的注册表，被丢弃的转换都已反映在其中，恢复时按版本取最新者。
+     */
+    public synchronized void snapshotIfDropped() throws IOException {
+        ListenerEndpoint current = endpoint;
+        if (journal == null || current == null || current.getDropped() == droppedAtSnapshot) {
+            return;
+        }
+        logger.warn("设备变更日志排队已满，丢弃 {} 条记录，提前写快照", current.getDropped() - droppedAtSnapshot);
+        snapshot();
+    }
+
+    private void append(DeviceInfo device) {
+        try {
+            DeviceJournal current = journal;
+            if (current != null) {
+                current.append(device);
+            }
+        } catch (IOException e) {
+            appendFailures.increment();
+            logger.error("写入设备变更日志失败: {}", device.getDeviceId(), e);
+        }
+    }
+
+    /**
+     * 写入快照并删除快照之前的日志分段和旧快照
+     * 先切换日志分段再读取注册表，切换之后的转换都会出现在新分段中，因此快照与其后的日志合起来不会漏掉变更。
+     */
+    public synchronized void snapshot() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        ListenerEndpoint current = endpoint;
+        // 切换分段之前读取，此后丢弃的记录留给下一次快照
+        long dropped = current == null ? 0 : current.getDropped();
+        long sequence = journal.roll();
+        int written = DeviceSnapshot.write(directory, sequence, deviceManager.getAllDevices(), snapshotPartitions);
+        snapshotSequence = sequence;
+        droppedAtSnapshot = dropped;
+        for (Path segment : DeviceJournal.list(directory, DeviceJournal.PREFIX, DeviceJournal.SUFFIX)) {
+            if (DeviceJournal.sequenceOf(segment, DeviceJournal.PREFIX, DeviceJournal.SUFFIX) < sequence) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        for (Path old : DeviceJournal.list(directory, DeviceSnapshot.PREFIX, DeviceSnapshot.SUFFIX)) {
+            if (DeviceJournal.sequenceOf(old, DeviceSnapshot.PREFIX, DeviceSnapshot.SUFFIX) < sequence) {
+                Files.deleteIfExists(old);
+            }
+        }
+        logger.info("设备注册表快照完成: {} 个设备，序号 {}，耗时 {} ms", written, sequence,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 写入最终快照并关闭日志，须在设备管理器的监听器停止之后调用
+     */
+    public synchronized void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        snapshot();
+        journal.close();
+        journal = null;
+    }
+
+    public long getAppendFailures() {
+        return appendFailures.sum();
+    }
+
+    /**
+     * 日志通道排队已满而丢弃的记录数，丢弃的转换由之后的快照补上
+     */
+    public long getDropped() {
+        ListenerEndpoint current = endpoint;
+        return current == null ? 0 : current.getDropped();
+    }
+
+    @Override
+    public String toString() {
+        DeviceJournal current = journal;
+        return "DevicePersistence{" +
+                "directory=" + directory +
+                ", snapshotSequence=" + snapshotSequence +
+                ", appended=" + (current == null ? 0 : current.getAppended()) +
+                ", appendFailures=" + appendFailures.sum() +
+                ", dropped=" + getDropped() +
+                '}';
+    }
+
+    private static ThreadFactory recoveryThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "iot-recovery-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
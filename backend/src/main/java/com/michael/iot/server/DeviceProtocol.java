@@ -0,0 +1,20 @@
+package com.michael.iot.server;
+
+/**
+ * 设备通信协议
+ * 由ProtocolDetector根据首字节识别，并作为用户事件通知业务处理器
+ */
+public enum DeviceProtocol {
+    TEXT("文本协议"),
+    BINARY("二进制协议");
+
+    private final String description;
+
+    DeviceProtocol(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
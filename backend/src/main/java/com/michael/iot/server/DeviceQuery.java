@@ -0,0 +1,260 @@
+package com.michael.iot.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * 设备查询条件
+ * 支持按状态、类型、名称前缀和IP地址过滤，按稳定的排序键排序（相同值再按设备ID排序），
+ * 以游标分页：游标记录上一页最后一条的排序值和设备ID，下一页从其后开始。
+ */
+public class DeviceQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * 排序键
+     */
+    public enum SortKey {
+        DEVICE_ID,
+        DEVICE_NAME,
+        CONNECT_TIME,
+        /** 没有有序索引，每页都要遍历全部候选设备，见DeviceManager.queryDevices */
+        LAST_HEARTBEAT;
+
+        /**
+         * 设备的排序值，时间为毫秒时间戳，未设置时为0即最早
+         */
+        @SuppressWarnings("rawtypes")
+        Comparable keyOf(DeviceInfo device) {
+            switch (this) {
+                case DEVICE_NAME:
+                    return device.getDeviceName() == null ? "" : device.getDeviceName();
+                case CONNECT_TIME:
+                    return device.getConnectTimeMillis();
+                case LAST_HEARTBEAT:
+                    return device.getLastHeartbeatMillis();
+                default:
+                    return device.getDeviceId();
+            }
+        }
+
+        /**
+         * 解析游标中保存的排序值
+         */
+        @SuppressWarnings("rawtypes")
+        Comparable parseKey(String value) {
+            if (this == CONNECT_TIME || this == LAST_HEARTBEAT) {
+                return Long.parseLong(value);
+            }
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        int compare(DeviceInfo a, DeviceInfo b) {
+            return keyOf(a).compareTo(keyOf(b));
+        }
+
+        public static SortKey parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return DEVICE_ID;
+            }
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private DeviceStatus status;       // 设备状态
+    private String deviceType;         // 设备类型
+    private String namePrefix;         // 设备名称前缀
+    private String ipAddress;          // IP地址，精确匹配
+    private SortKey sortBy = SortKey.DEVICE_ID;
+    private boolean descending;
+    private int limit = DEFAULT_LIMIT;
+    private String cursor;             // 上一页返回的游标，为空表示第一页
+    private Predicate<DeviceInfo> filter;  // 附加过滤条件，集群模式下用于排除不由本节点计入的设备
+
+    /**
+     * 设备是否满足全部过滤条件
+     */
+    public boolean matches(DeviceInfo device) {
+        if (status != null && device.getStatus() != status) {
+            return false;
+        }
+        if (deviceType != null && !deviceType.equals(device.getDeviceType())) {
+            return false;
+        }
+        if (namePrefix != null && (device.getDeviceName() == null || !device.getDeviceName().startsWith(namePrefix))) {
+            return false;
+        }
+        if (ipAddress != null && !ipAddress.equals(device.getIpAddress())) {
+            return false;
+        }
+        return filter == null || filter.test(device);
+    }
+
+    /**
+     * 按排序键和方向比较两个设备，排序值相同时按设备ID
+     */
+    public Comparator<DeviceInfo> comparator() {
+        Comparator<DeviceInfo> comparator = (a, b) -> {
+            int result = sortBy.compare(a, b);
+            return result != 0 ? result : a.getDeviceId().compareTo(b.getDeviceId());
+        };
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * 设备是否位于游标之后
+     */
+    @SuppressWarnings("unchecked")
+    boolean isAfterCursor(DeviceInfo device, Cursor after) {
+        int result = sortBy.keyOf(device).compareTo(after.key);
+        if (result == 0) {
+            result = device.getDeviceId().compareTo(after.deviceId);
+        }
+        return descending ? result < 0 : result > 0;
+    }
+
+    /**
+     * 生成指向该设备之后的游标
+     */
+    String cursorAfter(DeviceInfo device) {
+        String raw = sortBy.name() + '\0' + sortBy.keyOf(device) + '\0' + device.getDeviceId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标
+     * @return 没有游标时返回null
+     * @throws IllegalArgumentException 游标无效或与排序键不匹配
+     */
+    Cursor decodeCursor() {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的游标", e);
+        }
+        String[] parts = raw.split("\0", -1);
+        if (parts.length != 3 || !sortBy.name().equals(parts[0])) {
+            throw new IllegalArgumentException("游标与排序方式不匹配");
+        }
+        try {
+            return new Cursor(parts[1], sortBy.parseKey(parts[1]), parts[2]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的游标", e);
+        }
+    }
+
+    /**
+     * 解析后的游标：上一页最后一条的排序值和设备ID
+     */
+    static final class Cursor {
+        final String value;
+        @SuppressWarnings("rawtypes")
+        final Comparable key;
+        final String deviceId;
+
+        @SuppressWarnings("rawtypes")
+        Cursor(String value, Comparable key, String deviceId) {
+            this.value = value;
+            this.key = key;
+            this.deviceId = deviceId;
+        }
+    }
+
+    // Getters and Setters
+    public DeviceStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(DeviceStatus status) {
+        this.status = status;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public void setDeviceType(String deviceType) {
+        this.deviceType = deviceType;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public void setIpAddress(String ipAddress) {
+        this.ipAddress = ipAddress;
+    }
+
+    public SortKey getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(SortKey sortBy) {
+        this.sortBy = sortBy == null ? SortKey.DEVICE_ID : sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 设置每页条数，限制在1到MAX_LIMIT之间
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(1, Math.min(MAX_LIMIT, limit));
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    Predicate<DeviceInfo> getFilter() {
+        return filter;
+    }
+
+    void setFilter(Predicate<DeviceInfo> filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceQuery{" +
+                "status=" + status +
+                ", deviceType='" + deviceType + '\'' +
+                ", namePrefix='" + namePrefix + '\'' +
+                ", ipAddress='" + ipAddress + '\'' +
+                ", sortBy=" + sortBy +
+                ", descending=" + descending +
+                ", limit=" + limit +
+                ", cursor='" + cursor + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.michael.iot.server;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 设备查询结果，只包含请求的一页
+ */
+public class DeviceQueryResult {
+    private final List<DeviceInfo> devices;
+    private final String nextCursor;
+    private final long total;
+    private final List<String> unavailableNodes;
+
+    /**
+     * @param nextCursor 下一页游标，没有更多数据时为null
+     * @param total 满足条件的设备总数，无法由索引直接得到时为-1
+     */
+    public DeviceQueryResult(List<DeviceInfo> devices, String nextCursor, long total) {
+        this(devices, nextCursor, total, Collections.emptyList());
+    }
+
+    /**
+     * @param unavailableNodes 集群查询中超时或断开而未返回结果的节点
+     */
+    public DeviceQueryResult(List<DeviceInfo> devices, String nextCursor, long total, List<String> unavailableNodes) {
+        this.devices = devices;
+        this.nextCursor = nextCursor;
+        this.total = total;
+        this.unavailableNodes = unavailableNodes;
+    }
+
+    public List<DeviceInfo> getDevices() {
+        return devices;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public List<String> getUnavailableNodes() {
+        return unavailableNodes;
+    }
+
+    /**
+     * 是否只包含部分节点的结果
+     */
+    public boolean isPartial() {
+        return !unavailableNodes.isEmpty();
+    }
+}
@@ -0,0 +1,155 @@
+package com.michael.iot.server;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 持久化的设备记录，日志和快照共用同一种编码
+ * 每条记录保存设备在写入时刻的完整信息，恢复时同一设备只需保留版本最新的一条。
+ * 编码: 类型(1) 状态机字(8) 设备ID 名称 类型 IP地址(各为 2字节长度 + UTF-8) 端口(4) 连接时间(8) 断开时间(8) 最后心跳(8)
+ * 解码后的对象可以复用，各恢复线程各自持有一个。
+ */
+public class DeviceRecord {
+    static final byte TYPE_DEVICE = 1;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private long state;
+    private String deviceId;
+    private String deviceName;
+    private String deviceType;
+    private String ipAddress;
+    private int port;
+    private long connectTime;
+    private long disconnectTime;
+    private long lastHeartbeat;
+
+    /**
+     * 编码设备当前信息，先读状态机字再读其他字段，字段只会比版本更新
+     * @return 编码后的字节数，缓冲区不足时返回-1且不改变缓冲区位置
+     */
+    static int encode(DeviceInfo device, ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            buffer.put(TYPE_DEVICE);
+            buffer.putLong(device.getState());
+            putString(buffer, device.getDeviceId());
+            putString(buffer, device.getDeviceName());
+            putString(buffer, device.getDeviceType());
+            putString(buffer, device.getIpAddress());
+            buffer.putInt(device.getPort());
+            buffer.putLong(device.getConnectTimeMillis());
+            buffer.putLong(device.getDisconnectTimeMillis());
+            buffer.putLong(device.getLastHeartbeatMillis());
+            return buffer.position() - start;
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            return -1;
+        }
+    }
+
+    /**
+     * 从缓冲区当前位置解码一条记录
+     * @return 是否为可识别的设备记录
+     */
+    boolean decode(ByteBuffer buffer) {
+        if (buffer.get() != TYPE_DEVICE) {
+            return false;
+        }
+        state = buffer.getLong();
+        deviceId = getString(buffer);
+        deviceName = getString(buffer);
+        deviceType = getString(buffer);
+        ipAddress = getString(buffer);
+        port = buffer.getInt();
+        connectTime = buffer.getLong();
+        disconnectTime = buffer.getLong();
+        lastHeartbeat = buffer.getLong();
+        return deviceId != null;
+    }
+
+    DeviceRecord copy() {
+        DeviceRecord copy = new DeviceRecord();
+        copy.state = state;
+        copy.deviceId = deviceId;
+        copy.deviceName = deviceName;
+        copy.deviceType = deviceType;
+        copy.ipAddress = ipAddress;
+        copy.port = port;
+        copy.connectTime = connectTime;
+        copy.disconnectTime = disconnectTime;
+        copy.lastHeartbeat = lastHeartbeat;
+        return copy;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("字符串过长: " + bytes.length);
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录版本，同一设备版本越大越新，见DeviceState.version
+     */
+    public long getVersion() {
+        return DeviceState.version(state);
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    public long getDisconnectTime() {
+        return disconnectTime;
+    }
+
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+}
@@ -0,0 +1,38 @@
+package com.michael.iot.server;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 设备信息存储引擎
+ * DeviceManager通过该接口保存设备，调用方看到的仍然是DeviceInfo。
+ */
+public interface DeviceRegistry {
+
+    /**
+     * 按设备ID查找设备
+     * @return 设备不存在时返回null
+     */
+    DeviceInfo get(String deviceId);
+
+    /**
+     * 查找设备，不存在时创建
+     * @param onCreate 仅在本次调用新建设备时回调一次，回调完成前其他线程看不到该设备
+     */
+    DeviceInfo getOrCreate(String deviceId, String deviceName, String deviceType, Consumer<DeviceInfo> onCreate);
+
+    /**
+     * 设备总数
+     */
+    int size();
+
+    /**
+     * 当前全部设备的快照
+     */
+    List<DeviceInfo> snapshot();
+
+    /**
+     * 修改同一设备多个字段时使用的锁对象
+     */
+    Object lockFor(DeviceInfo device);
+}
@@ -0,0 +1,124 @@
+package com.michael.iot.server;
+
+/**
+ * 服务器发往设备的响应
+ * 由业务处理器写出，再由协议对应的编码器（TextResponseEncoder / BinaryResponseEncoder）编码。
+ * 固定内容的响应使用共享常量，编码器会为它们复用预先编码好的缓冲区。
+ */
+public final class DeviceResponse {
+
+    /**
+     * 响应类型
+     */
+    public enum Code {
+        WELCOME,
+        REGISTERED,
+        SESSION,
+        RESUMED,
+        HEARTBEAT_OK,
+        DATA_RECEIVED,
+        DATA_BATCH_RECEIVED,
+        PING,
+        RETRY_AFTER,
+        REDIRECT,
+        ERROR
+    }
+
+    public static final DeviceResponse WELCOME = new DeviceResponse(Code.WELCOME, "欢迎连接到物联网服务器！请发送设备注册信息。", null, 0, true);
+    public static final DeviceResponse HEARTBEAT_OK = new DeviceResponse(Code.HEARTBEAT_OK, "HEARTBEAT_OK", null, 0, true);
+    public static final DeviceResponse DATA_RECEIVED = new DeviceResponse(Code.DATA_RECEIVED, "DATA_RECEIVED", null, 0, true);
+    public static final DeviceResponse PING = new DeviceResponse(Code.PING, "PING", null, 0, true);
+
+    private final Code code;
+    private final String text;       // 文本协议下的内容（不含换行）
+    private final String argument;   // 二进制协议携带的字符串参数
+    private final int count;         // 二进制协议携带的数值参数
+    private final boolean shared;
+
+    private DeviceResponse(Code code, String text, String argument, int count, boolean shared) {
+        this.code = code;
+        this.text = text;
+        this.argument = argument;
+        this.count = count;
+        this.shared = shared;
+    }
+
+    /**
+     * 注册成功响应
+     */
+    public static DeviceResponse registered(String deviceId) {
+        return new DeviceResponse(Code.REGISTERED, "注册成功！设备ID: " + deviceId, deviceId, 0, false);
+    }
+
+    /**
+     * 会话令牌，注册成功后发送，设备重连时凭它恢复会话
+     */
+    public static DeviceResponse session(String token) {
+        return new DeviceResponse(Code.SESSION, "SESSION|" + token, token, 0, false);
+    }
+
+    /**
+     * 会话恢复成功响应
+     */
+    public static DeviceResponse resumed(String deviceId) {
+        return new DeviceResponse(Code.RESUMED, "RESUMED|" + deviceId, deviceId, 0, false);
+    }
+
+    /**
+     * 批量数据确认，一批数据只确认一次
+     * @param count 本批数据条数
+     */
+    public static DeviceResponse batchReceived(int count) {
+        return new DeviceResponse(Code.DATA_BATCH_RECEIVED, "DATA_BATCH_RECEIVED|" + count, null, count, false);
+    }
+
+    /**
+     * 拒绝接入响应，设备应在指定毫秒数后重连
+     */
+    public static DeviceResponse retryAfter(long millis) {
+        int value = (int) Math.min(Integer.MAX_VALUE, Math.max(0, millis));
+        return new DeviceResponse(Code.RETRY_AFTER, "RETRY_AFTER|" + value, null, value, false);
+    }
+
+    /**
+     * 重定向响应，集群模式下设备连到了不归属它的节点，应改连address（主机:端口）后重新注册
+     */
+    public static DeviceResponse redirect(String address) {
+        return new DeviceResponse(Code.REDIRECT, "REDIRECT|" + address, address, 0, false);
+    }
+
+    /**
+     * 错误响应
+     */
+    public static DeviceResponse error(String message) {
+        return new DeviceResponse(Code.ERROR, message, message, 0, false);
+    }
+
+    public Code getCode() {
+        return code;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getArgument() {
+        return argument;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 是否为可以复用预编码缓冲区的固定响应
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceResponse{" + code + ", '" + text + "'}";
+    }
+}
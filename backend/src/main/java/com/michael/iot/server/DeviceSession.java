@@ -0,0 +1,67 @@
+package com.michael.iot.server;
+
+import io.netty.channel.Channel;
+
+/**
+ * 设备会话
+ * 记录设备当前绑定的连接、会话纪元和恢复令牌。每次注册或恢复都会生成纪元加一的新会话对象，
+ * 旧连接断开时携带的纪元与当前会话不一致，其下线通知会被忽略。
+ * 令牌只能使用一次，每次恢复都会签发新令牌；断开后的会话超过保留时间即被回收，令牌随之失效。
+ */
+public final class DeviceSession {
+    private final DeviceInfo device;
+    private final Channel channel;
+    private final long epoch;
+    private final String token;
+    // 连接断开的时间，绑定连接期间为0
+    private final long detachedAtMillis;
+
+    DeviceSession(DeviceInfo device, Channel channel, long epoch, String token) {
+        this(device, channel, epoch, token, 0);
+    }
+
+    private DeviceSession(DeviceInfo device, Channel channel, long epoch, String token, long detachedAtMillis) {
+        this.device = device;
+        this.channel = channel;
+        this.epoch = epoch;
+        this.token = token;
+        this.detachedAtMillis = detachedAtMillis;
+    }
+
+    /**
+     * 连接断开后保留令牌的会话，设备可在保留时间内凭令牌恢复
+     */
+    DeviceSession detach(long nowMillis) {
+        return new DeviceSession(device, null, epoch, token, nowMillis);
+    }
+
+    /**
+     * 连接已断开且超过保留时间
+     */
+    boolean isExpired(long nowMillis, long ttlMillis) {
+        return channel == null && nowMillis - detachedAtMillis > ttlMillis;
+    }
+
+    public DeviceInfo getDevice() {
+        return device;
+    }
+
+    /**
+     * 当前绑定的连接，设备离线时为null
+     */
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getDetachedAtMillis() {
+        return detachedAtMillis;
+    }
+}
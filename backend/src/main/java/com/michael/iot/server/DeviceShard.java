@@ -0,0 +1,100 @@
+package com.michael.iot.server;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 设备管理器的事件循环分片
+ * 每个Netty事件循环在第一个连接建立时通过DeviceManager.shardFor得到自己的分片，此后只由该线程写入；
+ * 其他线程不会得到分片，其数据事件计入设备管理器的共享计数。
+ * 一个连接始终由同一个事件循环服务，因此某个设备的数据事件只会落在一个分片上。
+ * 计数只有一个写线程，以lazySet发布，不需要CAS，也不与其他事件循环争用缓存行；
+ * 全局统计在查询时才把各分片的计数相加。接入队列中与之对应的是该线程专用的单生产者数据通道。
+ */
+public final class DeviceShard {
+    private static final AtomicLongFieldUpdater<DeviceShard> DATA_EVENTS =
+            AtomicLongFieldUpdater.newUpdater(DeviceShard.class, "dataEvents");
+    private static final AtomicLongFieldUpdater<DeviceShard> BATCH_EVENTS =
+            AtomicLongFieldUpdater.newUpdater(DeviceShard.class, "batchEvents");
+    private static final AtomicLongFieldUpdater<DeviceShard> BATCH_ENTRIES =
+            AtomicLongFieldUpdater.newUpdater(DeviceShard.class, "batchEntries");
+    private static final AtomicLongFieldUpdater<DeviceShard> READINGS =
+            AtomicLongFieldUpdater.newUpdater(DeviceShard.class, "readings");
+
+    private final int id;
+    private final Thread owner;
+
+    private volatile long dataEvents;      // 单条数据事件数
+    private volatile long batchEvents;     // 批量数据事件数
+    private volatile long batchEntries;    // 批量数据包含的条目数
+    private volatile long readings;        // 解析出的读数条数
+
+    // 接入队列中本分片的数据通道，只由所属线程读写
+    IngestRingBuffer.Lane ingestLane;
+
+    DeviceShard(int id, Thread owner) {
+        this.id = id;
+        this.owner = owner;
+    }
+
+    /**
+     * 记录一条单条数据事件，只能由所属线程调用
+     */
+    void recordData(SensorReadings parsed) {
+        DATA_EVENTS.lazySet(this, dataEvents + 1);
+        recordReadings(parsed);
+    }
+
+    /**
+     * 记录一条批量数据事件，只能由所属线程调用
+     */
+    void recordBatch(DeviceDataBatch batch, SensorReadings parsed) {
+        BATCH_EVENTS.lazySet(this, batchEvents + 1);
+        BATCH_ENTRIES.lazySet(this, batchEntries + batch.size());
+        recordReadings(parsed);
+    }
+
+    private void recordReadings(SensorReadings parsed) {
+        if (parsed != null) {
+            READINGS.lazySet(this, readings + parsed.size());
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 所属线程名，通常是事件循环线程
+     */
+    public String getThreadName() {
+        return owner.getName();
+    }
+
+    public long getDataEvents() {
+        return dataEvents;
+    }
+
+    public long getBatchEvents() {
+        return batchEvents;
+    }
+
+    public long getBatchEntries() {
+        return batchEntries;
+    }
+
+    public long getReadings() {
+        return readings;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceShard{" +
+                "id=" + id +
+                ", thread=" + owner.getName() +
+                ", dataEvents=" + dataEvents +
+                ", batchEvents=" + batchEvents +
+                ", batchEntries=" + batchEntries +
+                ", readings=" + readings +
+                '}';
+    }
+}
@@ -0,0 +1,166 @@
+package com.michael.iot.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 设备注册表快照
+ * 文件头之后是若干分区，每个分区是一段连续的 长度(4) + DeviceRecord编码，分区各自带校验，恢复时可并行读取。
+ * 快照先写临时文件再原子改名，文件存在即完整。
+ * 文件头: 魔数(4) 版本(4) 分区数(4)，随后每个分区 偏移(8) 长度(4) 记录数(4) CRC32(4)
+ */
+public class DeviceSnapshot {
+    static final String PREFIX = "snapshot-";
+    static final String SUFFIX = ".dat";
+    private static final int MAGIC = 0x494F5453;        // "IOTS"
+    private static final int VERSION = 1;
+    private static final int PARTITION_ENTRY_BYTES = 20;
+    private static final int BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private DeviceSnapshot() {
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    /**
+     * 写入快照
+     * @param sequence 快照序号，等于写快照前切换出的日志分段序号，恢复时只需重放该序号及之后的分段
+     * @return 写入的设备数
+     */
+    static int write(Path directory, long sequence, List<DeviceInfo> devices, int partitions) throws IOException {
+        partitions = Math.max(1, Math.min(partitions, Math.max(1, devices.size())));
+        Path target = directory.resolve(fileName(sequence));
+        Path temp = directory.resolve(fileName(sequence) + ".tmp");
+        int headerBytes = 12 + partitions * PARTITION_ENTRY_BYTES;
+        long[] offsets = new long[partitions];
+        int[] lengths = new int[partitions];
+        int[] counts = new int[partitions];
+        int[] checksums = new int[partitions];
+        int written = 0;
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            CRC32 crc = new CRC32();
+            long position = headerBytes;
+            channel.position(position);
+            int size = devices.size();
+            for (int p = 0; p < partitions; p++) {
+                int from = (int) ((long) size * p / partitions);
+                int to = (int) ((long) size * (p + 1) / partitions);
+                offsets[p] = position;
+                crc.reset();
+                long length = 0;
+                for (int i = from; i < to; i++) {
+                    int start = buffer.position();
+                    int encoded = buffer.remaining() > 4 ? DeviceRecord.encode(devices.get(i), buffer.position(start + 4)) : -1;
+                    if (encoded < 0) {
+                        buffer.position(start);
+                        length += flush(channel, buffer, crc);
+                        start = 0;
+                        encoded = DeviceRecord.encode(devices.get(i), buffer.position(4));
+                    }
+                    buffer.putInt(start, encoded);
+                    counts[p]++;
+                    written++;
+                }
+                length += flush(channel, buffer, crc);
+                lengths[p] = (int) length;
+                checksums[p] = (int) crc.getValue();
+                position += length;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(headerBytes);
+            header.putInt(MAGIC).putInt(VERSION).putInt(partitions);
+            for (int p = 0; p < partitions; p++) {
+                header.putLong(offsets[p]).putInt(lengths[p]).putInt(counts[p]).putInt(checksums[p]);
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return written;
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        crc.update(buffer.array(), 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return length;
+    }
+
+    /**
+     * 并行读取快照，每个分区由一个任务读取并校验，记录交给consumer
+     * consumer会被多个线程并发调用，每个线程传入各自复用的记录对象。
+     * @return 读取的记录数
+     */
+    static long read(Path file, ExecutorService executor, Consumer<DeviceRecord> consumer) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                throw new IOException("无法识别的快照文件: " + file);
+            }
+            int partitions = mapped.getInt();
+            List<Future<Integer>> futures = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                long offset = mapped.getLong();
+                int length = mapped.getInt();
+                int count = mapped.getInt();
+                int checksum = mapped.getInt();
+                ByteBuffer partition = mapped.duplicate();
+                partition.position((int) offset).limit((int) offset + length);
+                ByteBuffer slice = partition.slice();
+                int index = p;
+                futures.add(executor.submit(() -> readPartition(file, index, slice, count, checksum, consumer)));
+            }
+            long total = 0;
+            for (Future<Integer> future : futures) {
+                total += future.get();
+            }
+            return total;
+        }
+    }
+
+    private static int readPartition(Path file, int index, ByteBuffer partition, int count, int checksum,
+                                     Consumer<DeviceRecord> consumer) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(partition.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("快照 " + file + " 的分区 " + index + " 校验失败");
+        }
+        DeviceRecord record = new DeviceRecord();
+        int read = 0;
+        while (read < count) {
+            int length = partition.getInt();
+            ByteBuffer body = partition.slice();
+            body.limit(length);
+            if (record.decode(body)) {
+                consumer.accept(record);
+            }
+            partition.position(partition.position() + length);
+            read++;
+        }
+        return read;
+    }
+}
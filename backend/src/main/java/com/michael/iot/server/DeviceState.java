@@ -0,0 +1,83 @@
+package com.michael.iot.server;
+
+/**
+ * 设备状态机字
+ * 设备状态和会话纪元打包在一个long中（纪元 << 8 | 状态序号），状态转换通过对整个字做CAS完成，
+ * 转换是否合法由当前状态、目标状态和纪元共同决定：
+ * <pre>
+ *   OFFLINE / ONLINE / CONNECTING / DISCONNECTING --(更新的纪元)--> CONNECTING
+ *   CONNECTING    --(同一纪元)--> ONLINE 或 DISCONNECTING
+ *   ONLINE        --(同一纪元)--> DISCONNECTING
+ *   DISCONNECTING --(同一纪元)--> OFFLINE
+ * </pre>
+ * 进入CONNECTING必须携带比当前更新的纪元，其余转换只能由持有当前纪元的会话发起，
+ * 因此旧连接迟到的上线或下线操作都会被拒绝。
+ */
+public final class DeviceState {
+    private static final int STATUS_BITS = 8;
+    private static final long STATUS_MASK = (1L << STATUS_BITS) - 1;
+    private static final DeviceStatus[] STATUSES = DeviceStatus.values();
+
+    /**
+     * 新设备的初始状态：离线，纪元0
+     */
+    public static final long INITIAL = pack(DeviceStatus.OFFLINE, 0);
+
+    private DeviceState() {
+    }
+
+    public static long pack(DeviceStatus status, long epoch) {
+        return (epoch << STATUS_BITS) | status.ordinal();
+    }
+
+    public static DeviceStatus status(long state) {
+        return STATUSES[(int) (state & STATUS_MASK)];
+    }
+
+    public static long epoch(long state) {
+        return state >>> STATUS_BITS;
+    }
+
+    /**
+     * 状态机字的单调版本：纪元优先，同一纪元内按 CONNECTING、ONLINE、DISCONNECTING、OFFLINE 的先后递增，
+     * 用于持久化恢复时判断同一设备的两条记录孰新孰旧
+     */
+    public static long version(long state) {
+        long rank;
+        switch (status(state)) {
+            case CONNECTING:
+                rank = 0;
+                break;
+            case ONLINE:
+                rank = 1;
+                break;
+            case DISCONNECTING:
+                rank = 2;
+                break;
+            default:
+                rank = 3;
+                break;
+        }
+        return (epoch(state) << 2) | rank;
+    }
+
+    /**
+     * 判断由纪元为epoch的会话把设备从state转换到next是否合法
+     */
+    public static boolean isAllowed(long state, DeviceStatus next, long epoch) {
+        DeviceStatus current = status(state);
+        long currentEpoch = epoch(state);
+        switch (next) {
+            case CONNECTING:
+                return epoch > currentEpoch;
+            case ONLINE:
+                return current == DeviceStatus.CONNECTING && epoch == currentEpoch;
+            case DISCONNECTING:
+                return (current == DeviceStatus.CONNECTING || current == DeviceStatus.ONLINE) && epoch == currentEpoch;
+            case OFFLINE:
+                return current == DeviceStatus.DISCONNECTING && epoch == currentEpoch;
+            default:
+                return false;
+        }
+    }
+}
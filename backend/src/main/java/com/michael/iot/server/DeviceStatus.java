@@ -18,6 +18,13 @@ public enum DeviceStatus {
     public String getDescription() {
         return description;
     }
+
+    /**
+     * 是否为上下线过程中的过渡状态
+     */
+    public boolean isTransient() {
+        return this == CONNECTING || this == DISCONNECTING;
+    }
 }
 
 
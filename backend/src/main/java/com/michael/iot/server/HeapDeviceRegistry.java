@@ -0,0 +1,43 @@
+package com.michael.iot.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 堆内设备存储，每个设备一个DeviceInfo对象
+ */
+public class HeapDeviceRegistry implements DeviceRegistry {
+    private final Map<String, DeviceInfo> devices = new ConcurrentHashMap<>();
+
+    @Override
+    public DeviceInfo get(String deviceId) {
+        return devices.get(deviceId);
+    }
+
+    @Override
+    public DeviceInfo getOrCreate(String deviceId, String deviceName, String deviceType, Consumer<DeviceInfo> onCreate) {
+        return devices.computeIfAbsent(deviceId, id -> {
+            DeviceInfo created = new DeviceInfo(id, deviceName, deviceType);
+            onCreate.accept(created);
+            return created;
+        });
+    }
+
+    @Override
+    public int size() {
+        return devices.size();
+    }
+
+    @Override
+    public List<DeviceInfo> snapshot() {
+        return new ArrayList<>(devices.values());
+    }
+
+    @Override
+    public Object lockFor(DeviceInfo device) {
+        return device;
+    }
+}
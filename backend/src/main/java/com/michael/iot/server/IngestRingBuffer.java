@@ -0,0 +1,737 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 设备事件接入队列
+ *
+ * 多个I/O线程生产、单个消费线程批量消费的有界环形队列，把监听器回调从Netty事件循环中剥离出来。
+ * 状态变更事件进入多生产者共享的环形队列，生产者通过CAS领取序号、填充槽位后按序号发布；
+ * 数据事件进入生产线程所属分片（DeviceShard）专用的单生产者通道，领取序号不需要CAS，
+ * 各事件循环不再争用同一个序号和相邻的槽位。关闭分片（sharded=false）时数据事件也进入共享队列，
+ * 事件循环以外的线程发布的数据事件（不带分片）同样进入共享队列，不会新增通道。
+ * 槽位在创建时全部预分配并循环复用，消费者每轮先处理共享队列，再依次处理各通道，每批最多处理batchSize个事件。
+ * 所有通道仍由同一个消费线程分发，分片只消除生产者之间的争用，端到端吞吐量受消费线程限制，不随I/O线程数增长
+ * （见ShardScalingBenchmark）。
+ *
+ * 同一设备的事件总是由同一个I/O线程产生，因此单设备内的数据事件顺序保持不变。数据事件记下发布时
+ * 共享队列已领取的序号，消费者先处理完这之前的状态事件再分发它，设备上线通知不会晚于之后的数据。
+ * 状态变更事件不受溢出策略影响，队列满时总是等待，避免丢失上下线通知。
+ */
+public class IngestRingBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(IngestRingBuffer.class);
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // claim()的特殊返回值
+    private static final long DROPPED = -1;
+    private static final long CALLER_RUNS = -2;
+
+    private final DeviceManager deviceManager;
+    private final IngestEvent[] slots;
+    private final int mask;
+    private final int laneCapacity;
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean sharded;
+    // 各分片的数据通道，写时复制
+    private volatile Lane[] lanes = new Lane[0];
+
+    // 槽位下标 -> 该槽位最近一次发布的序号
+    private final AtomicLongArray published;
+    // 生产者已领取的最大序号
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // 消费者已处理完的最大序号，只由消费线程写入
+    private volatile long consumed = -1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile boolean consumerWaiting;
+
+    private final Thread consumerThread;
+    private volatile boolean running;
+
+    // 统计
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder callerRunsCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private volatile long batchCount;
+    private final LatencyStats queueLatency = new LatencyStats();
+    private final LatencyStats dispatchLatency = new LatencyStats();
+
+    /**
+     * @param capacity 队列容量，向上取整为2的幂
+     * @param batchSize 每批最多消费的事件数
+     */
+    public IngestRingBuffer(DeviceManager deviceManager, int capacity, int batchSize,
+                            WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        this(deviceManager, capacity, capacity, batchSize, waitStrategy, overflowPolicy, true);
+    }
+
+    /**
+     * @param capacity 共享队列容量，向上取整为2的幂
+     * @param laneCapacity 每个分片数据通道的容量，向上取整为2的幂
+     * @param batchSize 每批最多消费的事件数
+     * @param sharded 数据事件是否进入各分片的通道，否则与状态事件共用共享队列
+     */
+    public IngestRingBuffer(DeviceManager deviceManager, int capacity, int laneCapacity, int batchSize,
+                            WaitStrategy waitStrategy, OverflowPolicy overflowPolicy, boolean sharded) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("接入队列容量非法: " + capacity);
+        }
+        if (laneCapacity < 2 || laneCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("接入队列通道容量非法: " + laneCapacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("接入队列批大小非法: " + batchSize);
+        }
+        int size = ceilingPowerOfTwo(capacity);
+        this.deviceManager = deviceManager;
+        this.slots = newSlots(size);
+        this.mask = size - 1;
+        this.laneCapacity = ceilingPowerOfTwo(laneCapacity);
+        this.batchSize = batchSize;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.sharded = sharded;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.consumerThread = new Thread(this::consumeLoop, "iot-ingest");
+        this.consumerThread.setDaemon(true);
+    }
+
+    private static int ceilingPowerOfTwo(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static IngestEvent[] newSlots(int size) {
+        IngestEvent[] events = new IngestEvent[size];
+        for (int i = 0; i < size; i++) {
+            events[i] = new IngestEvent();
+        }
+        return events;
+    }
+
+    /**
+     * 启动消费线程
+     */
+    public void start() {
+        running = true;
+        consumerThread.start();
+        logger.info("设备事件接入队列已启动，容量: {}, 分片通道容量: {}, 批大小: {}, 等待策略: {}, 溢出策略: {}",
+                slots.length, sharded ? String.valueOf(laneCapacity) : "未分片", batchSize, waitStrategy, overflowPolicy);
+    }
+
+    /**
+     * 停止消费线程，已发布的事件会先处理完
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        signalConsumer();
+        LockSupport.unpark(consumerThread);
+        try {
+            consumerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("设备事件接入队列已停止，{}", this);
+    }
+
+    /**
+     * 发布状态变更事件，队列满时等待
+     * @return false表示队列已停止，需要调用方同步通知
+     */
+    public boolean publishStatus(DeviceInfo device, DeviceStatus oldStatus, DeviceStatus newStatus) {
+        long sequence = claim(OverflowPolicy.BLOCK);
+        if (sequence < 0) {
+            return false;
+        }
+        IngestEvent event = slots[(int) (sequence & mask)];
+        event.type = IngestEvent.Type.STATUS;
+        event.device = device;
+        event.oldStatus = oldStatus;
+        event.newStatus = newStatus;
+        publish(sequence, event);
+        return true;
+    }
+
+    /**
+     * 发布单条数据事件
+     * @param flow 设备连接的流控对象，可以为null
+     * @return false表示队列已满且溢出策略为CALLER_RUNS，需要调用方同步通知
+     */
+    public boolean publishData(DeviceInfo device, String data, DeviceFlowControl flow) {
+        return publishData(device, data, null, flow);
+    }
+
+    /**
+     * 发布单条数据事件，读数复制到槽位中预分配的读数对象，可由任意线程调用，事件进入共享队列
+     * @param readings 解析出的读数，可以为null
+     * @param flow 设备连接的流控对象，可以为null
+     * @return false表示队列已满且溢出策略为CALLER_RUNS，需要调用方同步通知
+     */
+    public boolean publishData(DeviceInfo device, String data, SensorReadings readings, DeviceFlowControl flow) {
+        return publishData(null, device, data, readings, flow);
+    }
+
+    /**
+     * 发布单条数据事件到分片的数据通道，只能由分片所属线程调用
+     * @param shard 为null时进入共享队列
+     */
+    boolean publishData(DeviceShard shard, DeviceInfo device, String data, SensorReadings readings,
+                        DeviceFlowControl flow) {
+        Lane lane = sharded && shard != null ? lane(shard) : null;
+        long sequence = lane != null ? claim(lane) : claim(overflowPolicy);
+        if (sequence < 0) {
+            return sequence == DROPPED;
+        }
+        IngestEvent event = lane != null ? lane.slots[(int) (sequence & lane.mask)] : slots[(int) (sequence & mask)];
+        event.type = IngestEvent.Type.DATA;
+        event.device = device;
+        event.data = data;
+        event.setReadings(readings);
+        event.flow = flow;
+        if (lane != null) {
+            publish(lane, sequence, event);
+        } else {
+            publish(sequence, event);
+        }
+        return true;
+    }
+
+    /**
+     * 发布批量数据事件
+     * @param flow 设备连接的流控对象，可以为null
+     * @return false表示队列已满且溢出策略为CALLER_RUNS，需要调用方同步通知
+     */
+    public boolean publishBatch(DeviceInfo device, DeviceDataBatch batch, DeviceFlowControl flow) {
+        return publishBatch(device, batch, null, flow);
+    }
+
+    /**
+     * 发布批量数据事件，读数复制到槽位中预分配的读数对象，可由任意线程调用，事件进入共享队列
+     * @param readings 解析出的读数，可以为null
+     * @param flow 设备连接的流控对象，可以为null
+     * @return false表示队列已满且溢出策略为CALLER_RUNS，需要调用方同步通知
+     */
+    public boolean publishBatch(DeviceInfo device, DeviceDataBatch batch, SensorReadings readings,
+                                DeviceFlowControl flow) {
+        return publishBatch(null, device, batch, readings, flow);
+    }
+
+    /**
+     * 发布批量数据事件到分片的数据通道，只能由分片所属线程调用
+     * @param shard 为null时进入共享队列
+     */
+    boolean publishBatch(DeviceShard shard, DeviceInfo device, DeviceDataBatch batch, SensorReadings readings,
+                         DeviceFlowControl flow) {
+        Lane lane = sharded && shard != null ? lane(shard) : null;
+        long sequence = lane != null ? claim(lane) : claim(overflowPolicy);
+        if (sequence < 0) {
+            return sequence == DROPPED;
+        }
+        IngestEvent event = lane != null ? lane.slots[(int) (sequence & lane.mask)] : slots[(int) (sequence & mask)];
+        event.type = IngestEvent.Type.DATA_BATCH;
+        event.device = device;
+        event.batch = batch;
+        event.setReadings(readings);
+        event.flow = flow;
+        if (lane != null) {
+            publish(lane, sequence, event);
+        } else {
+            publish(sequence, event);
+        }
+        return true;
+    }
+
+    /**
+     * 分片在本队列中的数据通道，第一次发布时创建
+     */
+    private Lane lane(DeviceShard shard) {
+        Lane lane = shard.ingestLane;
+        if (lane == null || lane.ring != this) {
+            lane = new Lane(this, laneCapacity);
+            synchronized (this) {
+                Lane[] current = lanes;
+                Lane[] grown = Arrays.copyOf(current, current.length + 1);
+                grown[current.length] = lane;
+                lanes = grown;
+            }
+            shard.ingestLane = lane;
+        }
+        return lane;
+    }
+
+    /**
+     * 领取一个序号，队列满时按溢出策略处理
+     */
+    private long claim(OverflowPolicy policy) {
+        int waits = 0;
+        while (true) {
+            long current = claimed.get();
+            long next = current + 1;
+            if (next - slots.length > consumed) {
+                if (policy == OverflowPolicy.DROP) {
+                    droppedCount.increment();
+                    return DROPPED;
+                }
+                if (policy == OverflowPolicy.CALLER_RUNS) {
+                    callerRunsCount.increment();
+                    return CALLER_RUNS;
+                }
+                if (waits++ == 0) {
+                    blockedCount.increment();
+                }
+                if (!running) {
+                    // 消费线程已停止，不能再等待空位，交还调用方同步执行
+                    callerRunsCount.increment();
+                    return CALLER_RUNS;
+                }
+                if (waits < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                }
+                continue;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 在分片通道中领取一个序号，只有所属线程领取，不需要CAS；队列满时按溢出策略处理
+     */
+    private long claim(Lane lane) {
+        long next = lane.claimed + 1;
+        if (next - lane.slots.length > lane.consumedCache) {
+            int waits = 0;
+            while (next - lane.slots.length > (lane.consumedCache = lane.consumed)) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    Lane.DROPPED_COUNT.lazySet(lane, lane.droppedCount + 1);
+                    return DROPPED;
+                }
+                if (overflowPolicy == OverflowPolicy.CALLER_RUNS || !running) {
+                    // 消费线程已停止时不能再等待空位，交还调用方同步执行
+                    Lane.CALLER_RUNS_COUNT.lazySet(lane, lane.callerRunsCount + 1);
+                    return CALLER_RUNS;
+                }
+                if (waits++ == 0) {
+                    Lane.BLOCKED_COUNT.lazySet(lane, lane.blockedCount + 1);
+                }
+                if (waits < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                }
+            }
+        }
+        lane.claimed = next;
+        return next;
+    }
+
+    private void publish(long sequence, IngestEvent event) {
+        if (event.flow != null) {
+            // 计数必须在发布前增加，否则消费线程可能先于计数完成处理
+            event.flow.onPublished();
+        }
+        event.enqueueNanos = System.nanoTime();
+        event.statusFence = -1;
+        published.lazySet((int) (sequence & mask), sequence);
+        publishedCount.increment();
+        if (waitStrategy == WaitStrategy.BLOCKING && consumerWaiting) {
+            signalConsumer();
+        }
+    }
+
+    private void publish(Lane lane, long sequence, IngestEvent event) {
+        if (event.flow != null) {
+            event.flow.onPublished();
+        }
+        event.enqueueNanos = System.nanoTime();
+        // 此前领取的状态事件要先于本事件分发
+        event.statusFence = claimed.get();
+        Lane.PUBLISHED.lazySet(lane, sequence);
+        Lane.PUBLISHED_COUNT.lazySet(lane, lane.publishedCount + 1);
+        if (waitStrategy == WaitStrategy.BLOCKING && consumerWaiting) {
+            signalConsumer();
+        }
+    }
+
+    private void signalConsumer() {
+        lock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void consumeLoop() {
+        int idle = 0;
+        while (true) {
+            int drained = drainShared(batchSize, Long.MAX_VALUE);
+            for (Lane lane : lanes) {
+                drained += drainLane(lane);
+            }
+
+            if (drained > 0) {
+                batchCount++;
+                idle = 0;
+            } else if (!running && !hasPending()) {
+                // 已停止且没有未处理的事件
+                return;
+            } else {
+                idle = await(idle);
+            }
+        }
+    }
+
+    /**
+     * 按序号处理共享队列中已发布的事件
+     * @param upTo 最多处理到的序号
+     */
+    private int drainShared(int limit, long upTo) {
+        long next = consumed + 1;
+        int drained = 0;
+        while (drained < limit && next <= upTo) {
+            int index = (int) (next & mask);
+            if (published.get(index) != next) {
+                break;
+            }
+            process(slots[index]);
+            next++;
+            drained++;
+        }
+        if (drained > 0) {
+            consumed = next - 1;
+        }
+        return drained;
+    }
+
+    /**
+     * 处理一个分片通道中已发布的事件，先补齐每个事件发布前领取的状态事件
+     */
+    private int drainLane(Lane lane) {
+        long next = lane.consumed + 1;
+        long available = lane.published;
+        int drained = 0;
+        int sharedDrained = 0;
+        while (drained < batchSize && next <= available) {
+            IngestEvent event = lane.slots[(int) (next & lane.mask)];
+            if (event.statusFence > consumed) {
+                sharedDrained += drainShared(Integer.MAX_VALUE, event.statusFence);
+                if (event.statusFence > consumed) {
+                    // 状态事件已领取序号但还没有发布，下一轮再处理这个通道
+                    break;
+                }
+            }
+            process(event);
+            next++;
+            drained++;
+        }
+        if (drained > 0) {
+            lane.consumed = next - 1;
+        }
+        return drained + sharedDrained;
+    }
+
+    private void process(IngestEvent event) {
+        long start = System.nanoTime();
+        queueLatency.record(start - event.enqueueNanos);
+        dispatch(event);
+        dispatchLatency.record(System.nanoTime() - start);
+        if (event.flow != null) {
+            event.flow.onProcessed();
+        }
+        event.clear();
+    }
+
+    /**
+     * 是否还有已领取但未处理的事件
+     */
+    private boolean hasPending() {
+        if (claimed.get() > consumed) {
+            return true;
+        }
+        for (Lane lane : lanes) {
+            if (lane.published > lane.consumed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dispatch(IngestEvent event) {
+        try {
+            switch (event.type) {
+                case STATUS:
+                    deviceManager.dispatchStatusChange(event.device, event.oldStatus, event.newStatus);
+                    break;
+                case DATA:
+                    deviceManager.dispatchDataUpdate(event.device, event.data);
+                    break;
+                case DATA_BATCH:
+                    deviceManager.dispatchDataUpdate(event.device, event.batch);
+                    break;
+                default:
+                    break;
+            }
+            if (event.hasReadings) {
+                deviceManager.dispatchReadings(event.device, event.readings);
+            }
+        } catch (Throwable t) {
+            logger.error("接入队列分发事件失败", t);
+        }
+    }
+
+    /**
+     * 队列为空时按等待策略等待
+     * @return 更新后的空闲计数
+     */
+    private int await(int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                break;
+            case YIELDING:
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                break;
+            case SLEEPING:
+                if (idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                }
+                break;
+            case BLOCKING:
+                lock.lock();
+                try {
+                    consumerWaiting = true;
+                    if (running && !hasPending()) {
+                        notEmpty.awaitNanos(BLOCK_TIMEOUT_NANOS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    consumerWaiting = false;
+                    lock.unlock();
+                }
+                break;
+            default:
+                break;
+        }
+        return idle == Integer.MAX_VALUE ? idle : idle + 1;
+    }
+
+    /**
+     * 队列中等待消费的事件数，包括各分片通道
+     */
+    public int size() {
+        long size = Math.max(0, claimed.get() - consumed);
+        for (Lane lane : lanes) {
+            size += Math.max(0, lane.published - lane.consumed);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * 共享队列容量
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * 每个分片数据通道的容量
+     */
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * 已创建的分片数据通道数
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    // 以下统计在查询时合并共享队列和各分片通道的计数
+
+    public long getPublishedCount() {
+        long count = publishedCount.sum();
+        for (Lane lane : lanes) {
+            count += lane.publishedCount;
+        }
+        return count;
+    }
+
+    public long getDroppedCount() {
+        long count = droppedCount.sum();
+        for (Lane lane : lanes) {
+            count += lane.droppedCount;
+        }
+        return count;
+    }
+
+    public long getCallerRunsCount() {
+        long count = callerRunsCount.sum();
+        for (Lane lane : lanes) {
+            count += lane.callerRunsCount;
+        }
+        return count;
+    }
+
+    /**
+     * 生产者因队列满而等待的次数
+     */
+    public long getBlockedCount() {
+        long count = blockedCount.sum();
+        for (Lane lane : lanes) {
+            count += lane.blockedCount;
+        }
+        return count;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * 事件从发布到开始分发的排队延迟
+     */
+    public LatencyStats getQueueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * 监听器分发耗时
+     */
+    public LatencyStats getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestRingBuffer{" +
+                "size=" + size() + "/" + slots.length +
+                ", lanes=" + (sharded ? lanes.length + "x" + laneCapacity : "off") +
+                ", published=" + getPublishedCount() +
+                ", dropped=" + getDroppedCount() +
+                ", callerRuns=" + getCallerRunsCount() +
+                ", blocked=" + getBlockedCount() +
+                ", batches=" + batchCount +
+                ", queue=[" + queueLatency + "]" +
+                ", dispatch=[" + dispatchLatency + "]" +
+                '}';
+    }
+
+    /**
+     * 一个分片的单生产者数据通道
+     * 序号和计数只由分片所属线程写入，消费位置只由消费线程写入，均以lazySet或volatile写发布。
+     */
+    static final class Lane {
+        static final AtomicLongFieldUpdater<Lane> PUBLISHED =
+                AtomicLongFieldUpdater.newUpdater(Lane.class, "published");
+        static final AtomicLongFieldUpdater<Lane> PUBLISHED_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Lane.class, "publishedCount");
+        static final AtomicLongFieldUpdater<Lane> DROPPED_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Lane.class, "droppedCount");
+        static final AtomicLongFieldUpdater<Lane> CALLER_RUNS_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Lane.class, "callerRunsCount");
+        static final AtomicLongFieldUpdater<Lane> BLOCKED_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Lane.class, "blockedCount");
+
+        final IngestRingBuffer ring;
+        final IngestEvent[] slots;
+        final int mask;
+        // 生产者已领取的最大序号和最近读到的消费位置，只由生产线程访问
+        long claimed = -1;
+        long consumedCache = -1;
+        // 生产者已发布的最大序号
+        volatile long published = -1;
+        // 消费者已处理完的最大序号
+        volatile long consumed = -1;
+        volatile long publishedCount;
+        volatile long droppedCount;
+        volatile long callerRunsCount;
+        volatile long blockedCount;
+
+        Lane(IngestRingBuffer ring, int capacity) {
+            this.ring = ring;
+            this.slots = newSlots(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+
+    /**
+     * 预分配的队列槽位
+     */
+    static final class IngestEvent {
+        enum Type { STATUS, DATA, DATA_BATCH }
+
+        Type type;
+        DeviceInfo device;
+        DeviceStatus oldStatus;
+        DeviceStatus newStatus;
+        String data;
+        DeviceDataBatch batch;
+        // 读数随槽位复用，只在容量不足时分配
+        final SensorReadings readings = new SensorReadings();
+        boolean hasReadings;
+        DeviceFlowControl flow;
+        long enqueueNanos;
+        // 分片通道中的事件发布时共享队列已领取的最大序号，共享队列中的事件为-1
+        long statusFence;
+
+        void setReadings(SensorReadings source) {
+            hasReadings = source != null && source.size() > 0;
+            if (hasReadings) {
+                readings.copyFrom(source);
+            }
+        }
+
+        void clear() {
+            type = null;
+            device = null;
+            oldStatus = null;
+            newStatus = null;
+            data = null;
+            batch = null;
+            readings.clear();
+            hasReadings = false;
+            flow = null;
+        }
+    }
+}
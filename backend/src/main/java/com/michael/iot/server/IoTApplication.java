@@ -1,7 +1,9 @@
 package com.michael.iot.server;
 
+import io.netty.channel.EventLoopGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.nio.file.Path;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -17,12 +19,169 @@ public class IoTApplication {
     private final WebSocketServer webSocketServer;
     private final DeviceManager deviceManager;
     private final ScheduledExecutorService scheduler;
+    private DevicePersistence persistence;
+    private TimeSeriesStore timeSeriesStore;
+    private RollupEngine rollupEngine;
+    private RuleEngine ruleEngine;
+    private ClusterNode cluster;
+    private EventLoopGroup sharedBossGroup;
+    private EventLoopGroup sharedWorkerGroup;
 
     public IoTApplication(int tcpPort, int wsPort) {
-        this.deviceManager = new DeviceManager();
-        this.tcpServer = new IoTNettyServer(tcpPort, deviceManager);
-        this.webSocketServer = new WebSocketServer(wsPort, deviceManager);
+        this(tcpPort, wsPort, ServerConfig.fromSystemProperties());
+    }
+
+    public IoTApplication(int tcpPort, int wsPort, ServerConfig config) {
+        this.deviceManager = new DeviceManager(config.getRegistryEngine().newRegistry(config));
+        // 设备类型的数据模式，接入时据此把数据解析为读数
+        deviceManager.getSchemaRegistry().setLearning(config.isSchemaLearning());
+        deviceManager.getSchemaRegistry().configure(config.getSchemaDefinitions());
+        deviceManager.setSessionTtlMillis(config.getSessionTtlMillis());
+        this.tcpServer = new IoTNettyServer(tcpPort, deviceManager, config);
+        this.webSocketServer = new WebSocketServer(wsPort, deviceManager, config);
         this.scheduler = Executors.newScheduledThreadPool(1);
+
+        // 共享模式下TCP和WebSocket使用同一组事件循环，减少线程数和上下文切换
+        if (config.isSharedEventLoops()) {
+            TransportType transport = config.getTransport();
+            sharedBossGroup = transport.newEventLoopGroup(
+                    config.getEffectiveTcpBossThreads() + config.getWsBossThreads(), "iot-boss");
+            sharedWorkerGroup = transport.newEventLoopGroup(config.getTcpWorkerThreads(), "iot-worker");
+            tcpServer.useEventLoopGroups(sharedBossGroup, sharedWorkerGroup);
+            webSocketServer.useEventLoopGroups(sharedBossGroup, sharedWorkerGroup);
+        }
+
+        // 监听器回调移出I/O线程，并定期输出接入队列和背压统计
+        if (config.isIngestEnabled()) {
+            deviceManager.startIngestQueue(config.getIngestCapacity(), config.getIngestLaneCapacity(),
+                    config.getIngestBatchSize(), config.getIngestWaitStrategy(), config.getIngestOverflowPolicy(),
+                    config.isIngestSharded());
+            scheduler.scheduleAtFixedRate(() -> {
+                IngestRingBuffer queue = deviceManager.getIngestQueue();
+                if (queue != null) {
+                    logger.info("接入队列统计: {}", queue);
+                }
+                BackpressureController backpressure = tcpServer.getBackpressure();
+                if (backpressure != null) {
+                    logger.info("背压统计: {}", backpressure);
+                }
+            }, 60, 60, TimeUnit.SECONDS);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            logger.info("存活检测统计: {}", tcpServer.getLiveness());
+            for (AcceptorMetrics acceptor : tcpServer.getAcceptorMetrics()) {
+                logger.info("接入线程统计: {}，接入速率: {}/s", acceptor, String.format("%.1f", acceptor.sampleRate()));
+            }
+            if (tcpServer.getAdmission() != null) {
+                logger.info("准入统计: {}", tcpServer.getAdmission());
+            }
+            logger.info("被拒绝的设备状态转换: {}", deviceManager.getRejectedTransitions());
+            logger.info("设备分页查询改为Top-K选择的次数: {}", deviceManager.getQueryScanFallbacks());
+            logger.info("会话数: {}", deviceManager.getSessionCount());
+            logger.info("数据事件: {}，批量数据事件: {}，读数: {}", deviceManager.getDataEventCount(),
+                    deviceManager.getBatchEventCount(), deviceManager.getReadingCount());
+            for (DeviceShard shard : deviceManager.getShards()) {
+                logger.info("分片统计: {}", shard);
+            }
+            logger.info("设备数据模式: {}", deviceManager.getSchemaRegistry());
+            logger.info("设备类型字典: {}，设备名称字典: {}", StringDictionary.DEVICE_TYPES, StringDictionary.DEVICE_NAMES);
+            for (ListenerEndpoint listener : deviceManager.getListenerStats()) {
+                logger.info("监听器统计: {}", listener);
+            }
+        }, 60, 60, TimeUnit.SECONDS);
+        // 回收断开超过保留时间的会话，令牌随之失效
+        long sessionSweepMillis = Math.min(config.getSessionTtlMillis(), 60_000);
+        scheduler.scheduleAtFixedRate(deviceManager::expireSessions,
+                sessionSweepMillis, sessionSweepMillis, TimeUnit.MILLISECONDS);
+        // 设备接入之前先从快照和变更日志恢复注册表
+        if (config.isPersistenceEnabled()) {
+            persistence = new DevicePersistence(deviceManager, config);
+            try {
+                persistence.recover();
+            } catch (Exception e) {
+                throw new IllegalStateException("设备注册表恢复失败", e);
+            }
+            persistence.start();
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    persistence.snapshot();
+                } catch (Exception e) {
+                    logger.error("设备注册表快照失败", e);
+                }
+                logger.info("持久化统计: {}", persistence);
+            }, config.getSnapshotIntervalSeconds(), config.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+            // 日志通道丢弃记录后不等快照间隔，尽快用快照补上
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    persistence.snapshotIfDropped();
+                } catch (Exception e) {
+                    logger.error("设备注册表快照失败", e);
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+        // 设备上报的数值指标写入时序存储，同一设备的数据在同一通道内按序写入
+        if (config.isTsdbEnabled()) {
+            try {
+                timeSeriesStore = new TimeSeriesStore(config);
+            } catch (Exception e) {
+                throw new IllegalStateException("时序存储打开失败", e);
+            }
+            ListenerOptions options = ListenerOptions.executor(config.getTsdbListenerLanes(), 65536);
+            options.setName("tsdb");
+            options.setOverflowPolicy(OverflowPolicy.BLOCK);
+            deviceManager.addReadingListener(timeSeriesStore, options);
+            webSocketServer.useTimeSeriesStore(timeSeriesStore);
+            scheduler.scheduleAtFixedRate(() -> {
+                timeSeriesStore.expire(System.currentTimeMillis());
+                logger.info("时序存储统计: {}", timeSeriesStore);
+            }, 60, 60, TimeUnit.SECONDS);
+        }
+        // 按分钟和小时预聚合数值指标，定时关闭到期的窗口
+        if (config.isRollupEnabled()) {
+            rollupEngine = new RollupEngine(config);
+            ListenerOptions options = ListenerOptions.executor(config.getRollupListenerLanes(), 65536);
+            options.setName("rollup");
+            options.setOverflowPolicy(OverflowPolicy.BLOCK);
+            deviceManager.addReadingListener(rollupEngine, options);
+            webSocketServer.useRollupEngine(rollupEngine);
+            int interval = config.getRollupCloseIntervalSeconds();
+            scheduler.scheduleAtFixedRate(() -> rollupEngine.closeWindows(System.currentTimeMillis()),
+                    interval, interval, TimeUnit.SECONDS);
+            scheduler.scheduleAtFixedRate(() -> logger.info("预聚合统计: {}", rollupEngine), 60, 60, TimeUnit.SECONDS);
+        }
+        // 告警规则在接入路径上同步求值，读数不需要复制
+        if (config.isRulesEnabled()) {
+            ruleEngine = new RuleEngine();
+            if (!config.getRulesFile().trim().isEmpty()) {
+                try {
+                    ruleEngine.loadRules(Path.of(config.getRulesFile().trim()));
+                } catch (Exception e) {
+                    throw new IllegalStateException("告警规则加载失败", e);
+                }
+            }
+            ListenerOptions options = ListenerOptions.sync();
+            options.setName("rules");
+            deviceManager.addReadingListener(ruleEngine, options);
+            webSocketServer.useRuleEngine(ruleEngine);
+            scheduler.scheduleAtFixedRate(() -> {
+                logger.info("告警规则统计: {}", ruleEngine);
+                for (ListenerEndpoint listener : ruleEngine.getListenerStats()) {
+                    logger.info("告警监听器统计: {}", listener);
+                }
+            }, 60, 60, TimeUnit.SECONDS);
+        }
+        // 集群模式下按一致性哈希划分设备归属，各节点同步在线状态，查询分发到所有节点
+        if (config.isClusterEnabled()) {
+            cluster = new ClusterNode(deviceManager, config);
+            if (cluster.getSelf().getDevicePort() != tcpPort) {
+                logger.warn("集群成员配置的设备端口 {} 与实际监听端口 {} 不一致，重定向到本节点的设备将无法接入",
+                        cluster.getSelf().getDevicePort(), tcpPort);
+            }
+            tcpServer.useCluster(cluster);
+            webSocketServer.useCluster(cluster);
+            scheduler.scheduleAtFixedRate(() -> logger.info("集群统计: {}", cluster), 60, 60, TimeUnit.SECONDS);
+        }
+        logger.info("服务器配置: {}", config);
     }
 
     /**
@@ -31,6 +190,17 @@ public class IoTApplication {
     public void start() {
         try {
             logger.info("启动物联网应用...");
+
+            // 本节点开始接入设备后才加入集群，其他节点据此把设备重定向过来
+            if (cluster != null) {
+                tcpServer.getBoundFuture().thenRun(() -> {
+                    try {
+                        cluster.start();
+                    } catch (Exception e) {
+                        logger.error("集群节点启动失败", e);
+                    }
+                });
+            }
             
             // 启动WebSocket服务器（在后台线程中运行）
             Thread wsThread = new Thread(() -> {
@@ -65,6 +235,29 @@ public class IoTApplication {
         logger.info("停止物联网应用...");
         tcpServer.shutdown();
         webSocketServer.shutdown();
+        if (cluster != null) {
+            cluster.shutdown();
+        }
+        deviceManager.shutdown();
+        if (ruleEngine != null) {
+            ruleEngine.shutdown();
+        }
+        if (persistence != null) {
+            try {
+                persistence.close();
+            } catch (Exception e) {
+                logger.error("关闭设备注册表持久化失败", e);
+            }
+        }
+        if (timeSeriesStore != null) {
+            timeSeriesStore.close();
+        }
+        if (sharedBossGroup != null) {
+            sharedBossGroup.shutdownGracefully();
+        }
+        if (sharedWorkerGroup != null) {
+            sharedWorkerGroup.shutdownGracefully();
+        }
         scheduler.shutdown();
     }
 
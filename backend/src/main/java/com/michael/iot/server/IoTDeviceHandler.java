@@ -1,26 +1,76 @@
 package com.michael.iot.server;
 
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.handler.timeout.IdleState;
-import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.concurrent.FastThreadLocal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.time.LocalDateTime;
 
 /**
  * 物联网设备处理器
  */
 public class IoTDeviceHandler extends ChannelInboundHandlerAdapter {
     private static final Logger logger = LoggerFactory.getLogger(IoTDeviceHandler.class);
+    // 每个I/O线程一份可复用的读数，通知返回后即可用于下一条消息
+    private static final FastThreadLocal<SensorReadings> READINGS = new FastThreadLocal<SensorReadings>() {
+        @Override
+        protected SensorReadings initialValue() {
+            return new SensorReadings();
+        }
+    };
     
     private final DeviceManager deviceManager;
+    private final AckPolicies ackPolicies;
+    private final BackpressureController backpressure;
+    private final LivenessEngine liveness;
+    private final ClusterNode cluster;
+    private DeviceFlowControl flowControl;
+    // 连接所在事件循环的分片，数据事件计入该分片并进入其专用的接入通道
+    private DeviceShard shard;
+    private LivenessEntry livenessEntry;
     private String deviceId;
+    // 注册后直接持有设备信息，心跳和数据上报不再按ID查找
+    private DeviceInfo device;
+    // 当前会话纪元，断开时用于忽略过期的下线通知
+    private long sessionEpoch;
+    // 注册后按设备类型确定的确认策略及计数
+    private AckPolicy heartbeatAck;
+    private AckPolicy dataAck;
+    private long heartbeatCount;
+    private long dataCount;
 
     public IoTDeviceHandler(DeviceManager deviceManager) {
+        this(deviceManager, new AckPolicies());
+    }
+
+    public IoTDeviceHandler(DeviceManager deviceManager, AckPolicies ackPolicies) {
+        this(deviceManager, ackPolicies, null, null);
+    }
+
+    /**
+     * @param backpressure 读取背压控制，为null时不做流控
+     * @param liveness 存活检测引擎，为null时不做超时检测
+     */
+    public IoTDeviceHandler(DeviceManager deviceManager, AckPolicies ackPolicies,
+                            BackpressureController backpressure, LivenessEngine liveness) {
+        this(deviceManager, ackPolicies, backpressure, liveness, null);
+    }
+
+    /**
+     * @param cluster 集群节点，为null时不检查设备归属
+     */
+    public IoTDeviceHandler(DeviceManager deviceManager, AckPolicies ackPolicies,
+                            BackpressureController backpressure, LivenessEngine liveness, ClusterNode cluster) {
         this.deviceManager = deviceManager;
+        this.ackPolicies = ackPolicies;
+        this.backpressure = backpressure;
+        this.liveness = liveness;
+        this.cluster = cluster;
+        this.heartbeatAck = ackPolicies.heartbeatPolicy(null);
+        this.dataAck = ackPolicies.dataPolicy(null);
     }
 
     @Override
@@ -28,157 +78,317 @@ public class IoTDeviceHandler extends ChannelInboundHandlerAdapter {
         InetSocketAddress address = (InetSocketAddress) ctx.channel().remoteAddress();
         String ipAddress = address.getAddress().getHostAddress();
         int port = address.getPort();
+        if (backpressure != null) {
+            flowControl = backpressure.register(ctx.channel());
+        }
+        if (liveness != null) {
+            livenessEntry = liveness.register(ctx.channel());
+        }
+        shard = deviceManager.shardFor(ctx.channel().eventLoop());
         
         logger.info("新设备连接: {}:{}", ipAddress, port);
-        
-        // 发送欢迎消息
-        ctx.writeAndFlush("欢迎连接到物联网服务器！请发送设备注册信息。\n");
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        String message = (String) msg;
-        logger.info("收到消息: {}", message);
+        DeviceCommand command = (DeviceCommand) msg;
+        if (livenessEntry != null) {
+            livenessEntry.touch();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("收到消息: {}", command);
+        }
 
-        // 解析消息
-        String[] parts = message.trim().split("\\|");
-        if (parts.length < 2) {
-            ctx.writeAndFlush("消息格式错误，请使用: 命令|参数1|参数2...\n");
+        if (command.getFieldCount() < 2) {
+            ctx.writeAndFlush(DeviceResponse.error("消息格式错误，请使用: 命令|参数1|参数2..."));
             return;
         }
 
-        String command = parts[0];
-        switch (command) {
-            case "REGISTER":
-                handleRegister(ctx, parts);
+        switch (command.getType()) {
+            case REGISTER:
+                handleRegister(ctx, command);
                 break;
-            case "HEARTBEAT":
-                handleHeartbeat(ctx, parts);
+            case HEARTBEAT:
+                handleHeartbeat(ctx, command);
                 break;
-            case "DATA":
-                handleData(ctx, parts);
+            case DATA:
+                handleData(ctx, command);
                 break;
-            case "PONG":
-                handlePong(ctx, parts);
+            case DATA_BATCH:
+                handleDataBatch(ctx, command);
+                break;
+            case PONG:
+                handlePong(ctx, command);
+                break;
+            case RESUME:
+                handleResume(ctx, command);
                 break;
             default:
-                ctx.writeAndFlush("未知命令: " + command + "\n");
+                ctx.writeAndFlush(DeviceResponse.error("未知命令: " + command.getVerb()));
         }
     }
 
     /**
      * 处理设备注册
      */
-    private void handleRegister(ChannelHandlerContext ctx, String[] parts) {
-        if (parts.length < 4) {
-            ctx.writeAndFlush("注册格式错误: REGISTER|设备ID|设备名称|设备类型\n");
+    private void handleRegister(ChannelHandlerContext ctx, DeviceCommand command) {
+        if (command.getFieldCount() < 4) {
+            ctx.writeAndFlush(DeviceResponse.error("注册格式错误: REGISTER|设备ID|设备名称|设备类型"));
+            return;
+        }
+        // 一个连接只绑定一个设备，否则先注册的设备会因连接不再指向它而永远停留在在线状态
+        if (this.deviceId != null) {
+            ctx.writeAndFlush(DeviceResponse.error("设备已注册: " + this.deviceId));
             return;
         }
 
-        String deviceId = parts[1];
-        String deviceName = parts[2];
-        String deviceType = parts[3];
+        String deviceId = command.field(1);
+        String deviceName = command.field(2);
+        String deviceType = command.field(3);
+        if (redirectIfRemote(ctx, deviceId)) {
+            return;
+        }
 
         InetSocketAddress address = (InetSocketAddress) ctx.channel().remoteAddress();
         String ipAddress = address.getAddress().getHostAddress();
         int port = address.getPort();
 
         // 注册设备
-        deviceManager.deviceOnline(deviceId, deviceName, deviceType, ipAddress, port, ctx.channel());
-        this.deviceId = deviceId;
+        DeviceSession session = deviceManager.deviceOnline(deviceId, deviceName, deviceType, ipAddress, port, ctx.channel());
+        bindSession(ctx, session);
 
-        ctx.writeAndFlush("注册成功！设备ID: " + deviceId + "\n");
+        ctx.write(DeviceResponse.registered(deviceId));
+        ctx.writeAndFlush(DeviceResponse.session(session.getToken()));
         logger.info("设备注册成功: {}", deviceId);
     }
 
+    /**
+     * 处理会话恢复，凭注册时签发的令牌跳过完整注册
+     */
+    private void handleResume(ChannelHandlerContext ctx, DeviceCommand command) {
+        if (command.getFieldCount() < 3) {
+            ctx.writeAndFlush(DeviceResponse.error("恢复格式错误: RESUME|设备ID|会话令牌"));
+            return;
+        }
+        if (deviceId != null) {
+            ctx.writeAndFlush(DeviceResponse.error("设备已注册: " + deviceId));
+            return;
+        }
+
+        if (redirectIfRemote(ctx, command.field(1))) {
+            return;
+        }
+
+        InetSocketAddress address = (InetSocketAddress) ctx.channel().remoteAddress();
+        DeviceSession session = deviceManager.resumeSession(command.field(1), command.field(2),
+                address.getAddress().getHostAddress(), address.getPort(), ctx.channel());
+        if (session == null) {
+            ctx.writeAndFlush(DeviceResponse.error("会话无效，请重新注册"));
+            return;
+        }
+        bindSession(ctx, session);
+
+        // 旧令牌已失效，设备下次恢复需使用新令牌
+        ctx.write(DeviceResponse.resumed(deviceId));
+        ctx.writeAndFlush(DeviceResponse.session(session.getToken()));
+        logger.info("设备会话恢复成功: {}，纪元: {}", deviceId, sessionEpoch);
+    }
+
+    /**
+     * 集群模式下设备归属其他节点时回复重定向并关闭连接
+     * @return 是否已重定向
+     */
+    private boolean redirectIfRemote(ChannelHandlerContext ctx, String deviceId) {
+        ClusterMember owner = cluster != null ? cluster.redirectTarget(deviceId) : null;
+        if (owner == null) {
+            return false;
+        }
+        AdmissionController.registrationCompleted(ctx.channel());
+        ctx.writeAndFlush(DeviceResponse.redirect(owner.getDeviceAddress())).addListener(ChannelFutureListener.CLOSE);
+        logger.info("设备 {} 归属集群节点 {}，已重定向", deviceId, owner.getId());
+        return true;
+    }
+
+    /**
+     * 注册或恢复成功后绑定会话，并按设备类型切换确认和存活检测策略
+     */
+    private void bindSession(ChannelHandlerContext ctx, DeviceSession session) {
+        AdmissionController.registrationCompleted(ctx.channel());
+        DeviceInfo deviceInfo = session.getDevice();
+        String deviceType = deviceInfo.getDeviceType();
+        this.deviceId = deviceInfo.getDeviceId();
+        this.device = deviceInfo;
+        this.sessionEpoch = session.getEpoch();
+        this.heartbeatAck = ackPolicies.heartbeatPolicy(deviceType);
+        this.dataAck = ackPolicies.dataPolicy(deviceType);
+        if (livenessEntry != null) {
+            livenessEntry.bind(deviceId, liveness.policy(deviceType));
+        }
+    }
+
     /**
      * 处理心跳
+     * 直接更新所持有的设备信息，时间取自缓存时钟，确认复用预编码缓冲区且不创建写入Promise，
+     * 整个处理过程不产生新对象。
      */
-    private void handleHeartbeat(ChannelHandlerContext ctx, String[] parts) {
-        if (deviceId == null) {
-            ctx.writeAndFlush("请先注册设备\n");
+    private void handleHeartbeat(ChannelHandlerContext ctx, DeviceCommand command) {
+        if (device == null) {
+            ctx.writeAndFlush(DeviceResponse.error("请先注册设备"));
             return;
         }
 
-        deviceManager.updateHeartbeat(deviceId);
-        ctx.writeAndFlush("HEARTBEAT_OK\n");
+        device.recordHeartbeat(CachedClock.currentTimeMillis());
+        if (heartbeatAck.shouldAck(++heartbeatCount)) {
+            ctx.writeAndFlush(DeviceResponse.HEARTBEAT_OK, ctx.voidPromise());
+        }
         logger.debug("收到设备心跳: {}", deviceId);
     }
 
     /**
      * 处理数据上报
      */
-    private void handleData(ChannelHandlerContext ctx, String[] parts) {
+    private void handleData(ChannelHandlerContext ctx, DeviceCommand command) {
         if (deviceId == null) {
-            ctx.writeAndFlush("请先注册设备\n");
+            ctx.writeAndFlush(DeviceResponse.error("请先注册设备"));
             return;
         }
 
-        if (parts.length < 2) {
-            ctx.writeAndFlush("数据格式错误: DATA|数据内容\n");
+        if (command.getFieldCount() < 2) {
+            ctx.writeAndFlush(DeviceResponse.error("数据格式错误: DATA|数据内容"));
             return;
         }
 
-        String data = parts[1];
-        logger.info("收到设备数据: {} -> {}", deviceId, data);
+        String data = command.getPayload();
+        logger.debug("收到设备数据: {} -> {}", deviceId, data);
         
         // 保存设备数据
-        DeviceInfo deviceInfo = deviceManager.getDevice(deviceId);
-        if (deviceInfo != null) {
-            deviceInfo.setLastData(data);
-            deviceInfo.setLastDataTime(LocalDateTime.now());
-            
-            // 通知数据更新
-            deviceManager.notifyDataUpdate(deviceInfo, data);
-        }
+        long now = CachedClock.currentTimeMillis();
+        device.setLastData(data);
+        device.setLastDataTimeMillis(now);
+        device.incrementMessageCount();
+
+        // 通知数据更新，消息帧释放之前按数据模式解析出读数
+        deviceManager.notifyDataUpdate(shard, device, data, extractReadings(command, null, now), flowControl);
         
         // 这里可以添加数据处理逻辑
-        ctx.writeAndFlush("DATA_RECEIVED\n");
+        if (dataAck.shouldAck(++dataCount)) {
+            ctx.writeAndFlush(DeviceResponse.DATA_RECEIVED);
+        }
+    }
+
+    /**
+     * 处理批量数据上报，整批数据只通知一次监听器、只确认一次
+     */
+    private void handleDataBatch(ChannelHandlerContext ctx, DeviceCommand command) {
+        if (deviceId == null) {
+            ctx.writeAndFlush(DeviceResponse.error("请先注册设备"));
+            return;
+        }
+
+        DeviceDataBatch batch = command.getBatch();
+        if (batch == null || batch.size() == 0) {
+            ctx.writeAndFlush(DeviceResponse.error("批量数据格式错误: DATA_BATCH|时间戳|数据|时间戳|数据..."));
+            return;
+        }
+        logger.debug("收到设备批量数据: {} -> {}条", deviceId, batch.size());
+
+        // 最新数据取采集时间最新的一条
+        int latest = batch.getLatestIndex();
+        device.setLastData(batch.getPayload(latest));
+        device.setLastDataTimeMillis(batch.getTimestamp(latest));
+        device.incrementMessageCount();
+
+        deviceManager.notifyDataUpdate(shard, device, batch, extractReadings(command, batch, 0), flowControl);
+
+        // 一批数据按一条数据计入确认策略
+        if (dataAck.shouldAck(++dataCount)) {
+            ctx.writeAndFlush(DeviceResponse.batchReceived(batch.size()));
+        }
+    }
+
+    /**
+     * 按设备类型的数据模式把数据内容直接从消息帧解析为读数，没有读数监听器时跳过
+     * @param batch 批量数据，单条数据时为null
+     * @param timestamp 单条数据的接收时间，批量数据使用各条目的采集时间
+     * @return 本线程复用的读数，没有解析出字段时返回null
+     */
+    private SensorReadings extractReadings(DeviceCommand command, DeviceDataBatch batch, long timestamp) {
+        if (!deviceManager.hasReadingListeners()) {
+            return null;
+        }
+        SensorExtractor extractor = deviceManager.getSensorExtractor();
+        String deviceType = device.getDeviceType();
+        SensorReadings readings = READINGS.get();
+        readings.clear();
+        int entries = batch == null ? 1 : batch.size();
+        for (int i = 0; i < entries; i++) {
+            int fields = batch == null
+                    ? command.extractReading(extractor, deviceType, timestamp, readings.add())
+                    : command.extractBatchReading(extractor, deviceType, i, batch.getTimestamp(i), readings.add());
+            if (fields == 0) {
+                readings.removeLast();
+            }
+        }
+        return readings.size() == 0 ? null : readings;
     }
 
     /**
      * 处理PONG响应
      */
-    private void handlePong(ChannelHandlerContext ctx, String[] parts) {
+    private void handlePong(ChannelHandlerContext ctx, DeviceCommand command) {
         if (deviceId == null) {
-            ctx.writeAndFlush("请先注册设备\n");
+            ctx.writeAndFlush(DeviceResponse.error("请先注册设备"));
             return;
         }
 
-        if (parts.length < 2) {
-            ctx.writeAndFlush("PONG格式错误: PONG|设备ID\n");
+        if (command.getFieldCount() < 2) {
+            ctx.writeAndFlush(DeviceResponse.error("PONG格式错误: PONG|设备ID"));
             return;
         }
 
-        String pongDeviceId = parts[1];
-        if (!deviceId.equals(pongDeviceId)) {
-            ctx.writeAndFlush("设备ID不匹配\n");
+        if (!command.fieldEquals(1, deviceId)) {
+            ctx.writeAndFlush(DeviceResponse.error("设备ID不匹配"));
             return;
         }
 
         logger.debug("收到设备PONG响应: {}", deviceId);
         // 更新心跳时间
-        deviceManager.updateHeartbeat(deviceId);
+        device.recordHeartbeat(CachedClock.currentTimeMillis());
+    }
+
+    /**
+     * 出站缓冲超过写高水位说明设备没有及时读取响应，此时暂停读取该设备
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (flowControl != null) {
+            flowControl.writabilityChanged();
+        }
+        ctx.fireChannelWritabilityChanged();
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (flowControl != null) {
+            flowControl.close();
+        }
+        if (livenessEntry != null) {
+            livenessEntry.cancel();
+        }
         if (deviceId != null) {
-            deviceManager.deviceOffline(deviceId);
+            deviceManager.deviceOffline(deviceId, sessionEpoch);
             logger.info("设备断开连接: {}", deviceId);
         }
     }
 
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-        if (evt instanceof IdleStateEvent) {
-            IdleStateEvent event = (IdleStateEvent) evt;
-            if (event.state() == IdleState.READER_IDLE) {
-                logger.warn("设备心跳超时: {}", deviceId);
-                ctx.close();
-            } else if (event.state() == IdleState.WRITER_IDLE) {
-                // 发送心跳检测
-                ctx.writeAndFlush("PING\n");
+        if (evt instanceof DeviceProtocol) {
+            DeviceProtocol protocol = (DeviceProtocol) evt;
+            logger.debug("设备使用{}: {}", protocol.getDescription(), ctx.channel().remoteAddress());
+            // 文本设备发送欢迎消息，二进制设备省去这一步
+            if (protocol == DeviceProtocol.TEXT) {
+                ctx.writeAndFlush(DeviceResponse.WELCOME);
             }
         }
     }
@@ -187,7 +397,7 @@ public class IoTDeviceHandler extends ChannelInboundHandlerAdapter {
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.error("设备连接异常: {}", cause.getMessage(), cause);
         if (deviceId != null) {
-            deviceManager.deviceOffline(deviceId);
+            deviceManager.deviceOffline(deviceId, sessionEpoch);
         }
         ctx.close();
     }
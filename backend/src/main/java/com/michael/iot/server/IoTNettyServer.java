@@ -2,15 +2,17 @@ package com.michael.iot.server;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -21,74 +23,202 @@ public class IoTNettyServer {
     
     private final int port;
     private final DeviceManager deviceManager;
+    private final ServerConfig config;
+    private final BackpressureController backpressure;
+    private final LivenessEngine liveness;
+    private final AdmissionController admission;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private Channel serverChannel;
+    private boolean ownsEventLoops = true;
+    private volatile ClusterNode cluster;
+    private final CompletableFuture<Void> bound = new CompletableFuture<>();
+    private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
+    private final List<AcceptorMetrics> acceptorMetrics = new CopyOnWriteArrayList<>();
 
     public IoTNettyServer(int port, DeviceManager deviceManager) {
+        this(port, deviceManager, new ServerConfig());
+    }
+
+    public IoTNettyServer(int port, DeviceManager deviceManager, ServerConfig config) {
         this.port = port;
         this.deviceManager = deviceManager;
+        this.config = config;
+        this.backpressure = config.isBackpressureEnabled()
+                ? new BackpressureController(config.getDeviceHighWatermark(), config.getDeviceLowWatermark(),
+                        config.getLoopHighWatermark(), config.getLoopLowWatermark())
+                : null;
+        this.liveness = new LivenessEngine(config.getLivenessPolicies(), config.getLivenessTickMillis());
+        this.admission = config.isAdmissionEnabled()
+                ? new AdmissionController(config.getAcceptRate(), config.getAcceptBurst(),
+                        config.getPerIpAcceptRate(), config.getPerIpAcceptBurst(), config.getMaxPendingRegistrations(),
+                        config.getRetryBaseMillis(), config.getRetryMaxMillis(),
+                        AdmissionController.parseAddresses(config.getTrustedAddresses()))
+                : null;
     }
 
     /**
      * 启动服务器
      */
     public void start() throws Exception {
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        if (bossGroup == null) {
+            TransportType transport = config.getTransport();
+            bossGroup = transport.newEventLoopGroup(config.getEffectiveTcpBossThreads(), "iot-tcp-boss");
+            workerGroup = transport.newEventLoopGroup(config.getTcpWorkerThreads(), "iot-tcp-worker");
+            ownsEventLoops = true;
+        }
 
+        int acceptors = acceptorCount();
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(config.getTransport().serverChannelClass())
+                    .handler(new ChannelInitializer<ServerChannel>() {
+                        @Override
+                        protected void initChannel(ServerChannel ch) throws Exception {
+                            // 每个监听Channel各自统计接入数
+                            AcceptorMetrics metrics = new AcceptorMetrics(acceptorMetrics.size());
+                            acceptorMetrics.add(metrics);
+                            ch.pipeline().addLast(metrics);
+                        }
+                    })
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) throws Exception {
                             ChannelPipeline pipeline = ch.pipeline();
-                            
-                            // 空闲状态检测
-                            pipeline.addLast(new IdleStateHandler(60, 30, 0, TimeUnit.SECONDS));
-                            
-                            // 编解码器
-                            pipeline.addLast(new StringDecoder());
-                            pipeline.addLast(new StringEncoder());
+
+                            // 连接准入控制，重连风暴时拒绝超出速率的新连接
+                            if (admission != null) {
+                                pipeline.addLast(admission);
+                            }
+
+                            // 合并同一轮读事件中产生的flush，减少系统调用
+                            pipeline.addLast(new FlushConsolidationHandler(config.getFlushConsolidationLimit(), true));
+
+                            // 编解码器：根据首字节识别文本或二进制协议后安装
+                            pipeline.addLast(new ProtocolDetector());
                             
                             // 业务处理器
-                            pipeline.addLast(new IoTDeviceHandler(deviceManager));
+                            pipeline.addLast(new IoTDeviceHandler(deviceManager, config.getAckPolicies(), backpressure, liveness,
+                                    cluster));
                         }
                     })
-                    .option(ChannelOption.SO_BACKLOG, 128)
-                    .childOption(ChannelOption.SO_KEEPALIVE, true);
+                    .option(ChannelOption.SO_BACKLOG, config.getTcpBacklog())
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                            config.getWriteBufferLowWatermark(), config.getWriteBufferHighWatermark()));
+
+            if (acceptors > 1) {
+                // 多个监听Channel绑定同一端口，由内核在它们之间分配新连接；
+                // 每次bind都注册到boss组的下一个事件循环，即各自独占一个接入线程
+                bootstrap.option(UnixChannelOption.SO_REUSEPORT, true);
+            }
 
             // 绑定端口并启动服务器
-            ChannelFuture future = bootstrap.bind(port).sync();
-            serverChannel = future.channel();
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels.add(bootstrap.bind(port).sync().channel());
+            }
+            if (admission != null) {
+                // 定期回收空闲的来源IP令牌桶
+                workerGroup.next().scheduleAtFixedRate(admission::sweep, 10, 10, TimeUnit.SECONDS);
+            }
             
-            logger.info("物联网TCP服务器启动成功，监听端口: {}", port);
+            logger.info("物联网TCP服务器启动成功，监听端口: {}，传输: {}，接入线程: {}", port, config.getTransport(), acceptors);
+            bound.complete(null);
             
             // 等待服务器关闭
-            serverChannel.closeFuture().sync();
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
         } finally {
             shutdown();
         }
     }
 
+    /**
+     * 实际使用的监听Channel数，传输不支持SO_REUSEPORT时退化为1
+     */
+    private int acceptorCount() {
+        int acceptors = config.getTcpReusePortAcceptors();
+        if (acceptors <= 1) {
+            return 1;
+        }
+        if (!config.getTransport().supportsReusePort()) {
+            logger.warn("传输{}不支持SO_REUSEPORT，只绑定一个监听Channel", config.getTransport());
+            return 1;
+        }
+        return acceptors;
+    }
+
+    /**
+     * 使用外部创建的事件循环组（共享模式），关闭服务器时不会关闭这些事件循环组
+     */
+    public void useEventLoopGroups(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+        this.ownsEventLoops = false;
+    }
+
+    /**
+     * 端口绑定完成、开始接入设备时完成，回调在启动线程上执行
+     */
+    public CompletableFuture<Void> getBoundFuture() {
+        return bound;
+    }
+
+    /**
+     * 集群模式下注册时检查设备归属，归属其他节点的设备被重定向过去
+     */
+    public void useCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
     /**
      * 关闭服务器
      */
     public void shutdown() {
-        if (serverChannel != null) {
+        for (Channel serverChannel : serverChannels) {
             serverChannel.close();
         }
-        if (bossGroup != null) {
-            bossGroup.shutdownGracefully();
-        }
-        if (workerGroup != null) {
-            workerGroup.shutdownGracefully();
+        liveness.shutdown();
+        if (ownsEventLoops) {
+            if (bossGroup != null) {
+                bossGroup.shutdownGracefully();
+            }
+            if (workerGroup != null) {
+                workerGroup.shutdownGracefully();
+            }
         }
         logger.info("物联网TCP服务器已关闭");
     }
 
+    /**
+     * 获取各接入线程的接入统计
+     */
+    public List<AcceptorMetrics> getAcceptorMetrics() {
+        return Collections.unmodifiableList(new ArrayList<>(acceptorMetrics));
+    }
+
+    /**
+     * 获取读取背压控制，未启用时返回null
+     */
+    public BackpressureController getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * 获取存活检测引擎
+     */
+    public LivenessEngine getLiveness() {
+        return liveness;
+    }
+
+    /**
+     * 获取连接准入控制，未启用时返回null
+     */
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
     /**
      * 获取设备管理器
      */
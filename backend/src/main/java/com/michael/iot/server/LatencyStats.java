@@ -0,0 +1,70 @@
+package com.michael.iot.server;
+
+/**
+ * 延迟统计
+ * 按2的幂分桶记录纳秒级延迟，只允许单个线程写入，其他线程读取到的是近似值。
+ */
+public class LatencyStats {
+    private static final int BUCKETS = 40;
+
+    private final long[] buckets = new long[BUCKETS];
+    private volatile long count;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+
+    /**
+     * 记录一次延迟
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+        buckets[bucket]++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getAverageNanos() {
+        long n = count;
+        return n == 0 ? 0 : totalNanos / n;
+    }
+
+    /**
+     * 估算百分位延迟，返回所在桶的上界（不超过最大值）
+     * @param percentile 0到100之间
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = count;
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return i == 0 ? 0 : Math.min((1L << i) - 1, maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, avg=%.1fus, p50=%.1fus, p99=%.1fus, max=%.1fus",
+                getCount(), getAverageNanos() / 1000.0, getPercentileNanos(50) / 1000.0,
+                getPercentileNanos(99) / 1000.0, getMaxNanos() / 1000.0);
+    }
+}
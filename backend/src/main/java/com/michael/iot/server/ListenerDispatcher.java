@@ -0,0 +1,126 @@
+package com.michael.iot.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 设备事件监听器分发
+ * 注册表采用写时复制，分发时无锁遍历，可在运行中随时增删监听器；
+ * 每个监听器按注册参数同步回调或投递到各自的有界异步通道，慢监听器不会拖慢其他监听器。
+ */
+public class ListenerDispatcher {
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final List<ListenerEndpoint> statusEndpoints = new CopyOnWriteArrayList<>();
+    private final List<ListenerEndpoint> dataEndpoints = new CopyOnWriteArrayList<>();
+    private final List<ListenerEndpoint> readingEndpoints = new CopyOnWriteArrayList<>();
+
+    public ListenerEndpoint addStatusListener(DeviceStatusListener listener, ListenerOptions options) {
+        ListenerEndpoint endpoint = new ListenerEndpoint(listener, options);
+        statusEndpoints.add(endpoint);
+        return endpoint;
+    }
+
+    public void removeStatusListener(DeviceStatusListener listener) {
+        remove(statusEndpoints, listener);
+    }
+
+    public void addDataListener(DeviceDataListener listener, ListenerOptions options) {
+        dataEndpoints.add(new ListenerEndpoint(listener, options));
+    }
+
+    public void removeDataListener(DeviceDataListener listener) {
+        remove(dataEndpoints, listener);
+    }
+
+    public void addReadingListener(SensorReadingListener listener, ListenerOptions options) {
+        readingEndpoints.add(new ListenerEndpoint(listener, options));
+    }
+
+    public void removeReadingListener(SensorReadingListener listener) {
+        remove(readingEndpoints, listener);
+    }
+
+    /**
+     * 是否有读数监听器，没有时接入线程可以跳过数据解析
+     */
+    public boolean hasReadingListeners() {
+        return !readingEndpoints.isEmpty();
+    }
+
+    /**
+     * 按注册身份移除，被移除监听器已排队的事件仍会回调完
+     */
+    private static void remove(List<ListenerEndpoint> endpoints, Object listener) {
+        for (ListenerEndpoint endpoint : endpoints) {
+            if (endpoint.getListener() == listener && endpoints.remove(endpoint)) {
+                endpoint.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+                return;
+            }
+        }
+    }
+
+    public void dispatchStatusChange(DeviceInfo device, DeviceStatus oldStatus, DeviceStatus newStatus) {
+        String deviceId = device.getDeviceId();
+        for (ListenerEndpoint endpoint : statusEndpoints) {
+            DeviceStatusListener listener = (DeviceStatusListener) endpoint.getListener();
+            endpoint.submit(deviceId, () -> listener.onStatusChange(device, oldStatus, newStatus));
+        }
+    }
+
+    public void dispatchDataUpdate(DeviceInfo device, String data) {
+        String deviceId = device.getDeviceId();
+        for (ListenerEndpoint endpoint : dataEndpoints) {
+            DeviceDataListener listener = (DeviceDataListener) endpoint.getListener();
+            endpoint.submit(deviceId, () -> listener.onDataUpdate(device, data));
+        }
+    }
+
+    public void dispatchDataUpdate(DeviceInfo device, DeviceDataBatch batch) {
+        String deviceId = device.getDeviceId();
+        for (ListenerEndpoint endpoint : dataEndpoints) {
+            DeviceDataListener listener = (DeviceDataListener) endpoint.getListener();
+            endpoint.submit(deviceId, () -> listener.onDataBatch(device, batch));
+        }
+    }
+
+    /**
+     * 读数对象会被调用方复用，同步监听器直接使用，异步监听器共用一份副本
+     */
+    public void dispatchReadings(DeviceInfo device, SensorReadings readings) {
+        String deviceId = device.getDeviceId();
+        SensorReadings copy = null;
+        for (ListenerEndpoint endpoint : readingEndpoints) {
+            SensorReadingListener listener = (SensorReadingListener) endpoint.getListener();
+            if (endpoint.getMode() == DeliveryMode.SYNC) {
+                endpoint.submit(deviceId, () -> listener.onReadings(device, readings));
+                continue;
+            }
+            if (copy == null) {
+                copy = readings.copy();
+            }
+            SensorReadings owned = copy;
+            endpoint.submit(deviceId, () -> listener.onReadings(device, owned));
+        }
+    }
+
+    /**
+     * 所有已注册监听器的回调统计
+     */
+    public List<ListenerEndpoint> getListenerStats() {
+        List<ListenerEndpoint> stats = new ArrayList<>(statusEndpoints);
+        stats.addAll(dataEndpoints);
+        stats.addAll(readingEndpoints);
+        return stats;
+    }
+
+    /**
+     * 等待各异步通道中已排队的事件回调完成，并关闭自行创建的执行器
+     */
+    public void shutdown() {
+        for (ListenerEndpoint endpoint : getListenerStats()) {
+            endpoint.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+}
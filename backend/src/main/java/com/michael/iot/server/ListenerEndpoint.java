@@ -0,0 +1,302 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个已注册的监听器及其回调通道
+ * 同步模式直接在分发线程上回调；异步模式下每个设备固定散列到一个串行通道，
+ * 通道有界，由执行器逐个取出事件回调，同一设备的事件不会并发也不会乱序。
+ */
+public class ListenerEndpoint {
+    private static final Logger logger = LoggerFactory.getLogger(ListenerEndpoint.class);
+    private static final int DRAIN_LIMIT = 64;
+
+    private final Object listener;
+    private final String name;
+    private final ListenerOptions options;
+    private final DeliveryMode mode;
+    private final Lane[] lanes;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private volatile boolean closed;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    ListenerEndpoint(Object listener, ListenerOptions options) {
+        this.listener = listener;
+        this.options = options;
+        this.name = options.getName() != null ? options.getName() : listener.getClass().getSimpleName();
+        if (options.getMode() == DeliveryMode.SYNC) {
+            this.mode = DeliveryMode.SYNC;
+            this.lanes = null;
+            this.executor = null;
+            this.ownedExecutor = null;
+            return;
+        }
+
+        ExecutorService created = null;
+        DeliveryMode actualMode = options.getMode();
+        if (options.getExecutor() != null) {
+            this.executor = options.getExecutor();
+        } else {
+            if (actualMode == DeliveryMode.VIRTUAL_THREAD) {
+                created = newVirtualThreadExecutor();
+                if (created == null) {
+                    logger.warn("当前运行时不支持虚拟线程，监听器 {} 改用专用线程池回调", name);
+                    actualMode = DeliveryMode.EXECUTOR;
+                }
+            }
+            if (created == null) {
+                created = Executors.newFixedThreadPool(options.getThreads(), namedThreads("iot-listener-" + name));
+            }
+            this.executor = created;
+        }
+        this.mode = actualMode;
+        this.ownedExecutor = created;
+        int laneCapacity = Math.max(1, options.getQueueCapacity() / options.getLanes());
+        this.lanes = new Lane[options.getLanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(laneCapacity);
+        }
+    }
+
+    /**
+     * 通过反射创建每任务一个虚拟线程的执行器，运行时低于Java 21时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    Object getListener() {
+        return listener;
+    }
+
+    /**
+     * 投递一个事件，同一deviceId的事件按投递顺序回调
+     */
+    void submit(String deviceId, Runnable event) {
+        if (lanes == null) {
+            deliver(event);
+            return;
+        }
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+        Lane lane = lanes[(deviceId.hashCode() & Integer.MAX_VALUE) % lanes.length];
+        if (lane.queue.offer(event)) {
+            lane.schedule();
+            return;
+        }
+        switch (options.getOverflowPolicy()) {
+            case CALLER_RUNS:
+                // 先在调用线程上按序回调通道中已排队的事件，再回调新事件；通道正被执行器排空时退化为等待
+                if (lane.runInCaller(event)) {
+                    break;
+                }
+                put(lane, event);
+                break;
+            case BLOCK:
+                put(lane, event);
+                break;
+            default:
+                dropped.increment();
+                break;
+        }
+    }
+
+    private void put(Lane lane, Runnable event) {
+        try {
+            lane.queue.put(event);
+            lane.schedule();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.increment();
+        }
+    }
+
+    private void deliver(Runnable event) {
+        try {
+            event.run();
+            delivered.increment();
+        } catch (Exception e) {
+            failures.increment();
+            logger.error("监听器 {} 处理事件失败", name, e);
+        }
+    }
+
+    /**
+     * 停止接收新事件，等待已排队的事件回调完成后关闭自行创建的执行器
+     */
+    void shutdown(long timeoutMillis) {
+        if (lanes == null) {
+            return;
+        }
+        closed = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (getQueueDepth() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+        int remaining = getQueueDepth();
+        if (remaining > 0) {
+            logger.warn("监听器 {} 关闭时仍有 {} 个事件未回调", name, remaining);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 实际使用的回调方式
+     */
+    public DeliveryMode getMode() {
+        return mode;
+    }
+
+    /**
+     * 当前排队中的事件数
+     */
+    public int getQueueDepth() {
+        if (lanes == null) {
+            return 0;
+        }
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * 因队列已满或监听器已关闭而丢弃的事件数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerEndpoint{" +
+                "name='" + name + '\'' +
+                ", mode=" + (lanes == null ? DeliveryMode.SYNC : mode + "/" + lanes.length + "lanes") +
+                ", queueDepth=" + getQueueDepth() +
+                ", delivered=" + getDelivered() +
+                ", dropped=" + getDropped() +
+                ", failures=" + getFailures() +
+                '}';
+    }
+
+    /**
+     * 串行通道：任一时刻最多一个排空任务在执行器中运行
+     */
+    private final class Lane implements Runnable {
+        final ArrayBlockingQueue<Runnable> queue;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Lane(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    int lost = queue.size();
+                    queue.clear();
+                    dropped.add(lost);
+                    logger.warn("监听器 {} 的执行器拒绝任务，丢弃 {} 个事件", name, lost);
+                }
+            }
+        }
+
+        /**
+         * 取得通道的排空权后，在调用线程上回调此刻已排队的事件和新事件
+         * 排空权被执行器中的排空任务持有时返回false，不回调任何事件
+         */
+        boolean runInCaller(Runnable event) {
+            if (!scheduled.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                for (int pending = queue.size(); pending > 0; pending--) {
+                    Runnable queued = queue.poll();
+                    if (queued == null) {
+                        break;
+                    }
+                    deliver(queued);
+                }
+                deliver(event);
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_LIMIT; i++) {
+                Runnable event = queue.poll();
+                if (event == null) {
+                    break;
+                }
+                deliver(event);
+            }
+            scheduled.set(false);
+            // 排空期间新到的事件，或因批量上限未处理完的事件
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.michael.iot.server;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 监听器注册参数
+ * 异步回调时，设备按ID散列到固定的串行通道上，同一设备的事件按发布顺序回调；
+ * 所有通道共享queueCapacity个排队位置，通道满时按溢出策略处理。
+ */
+public class ListenerOptions {
+    private String name;                                   // 统计和线程名中使用的名称
+    private DeliveryMode mode = DeliveryMode.SYNC;         // 回调方式
+    private int lanes = 16;                                // 串行通道数，决定最大并行度
+    private int threads = 0;                               // EXECUTOR模式的线程数，0表示与通道数相同
+    private int queueCapacity = 16384;                     // 所有通道合计的排队事件上限
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;  // 通道满时的处理策略
+    private Executor executor;                             // 外部提供的执行器，为空时按模式自行创建
+
+    public static ListenerOptions sync() {
+        return new ListenerOptions();
+    }
+
+    public static ListenerOptions executor(int lanes, int queueCapacity) {
+        ListenerOptions options = new ListenerOptions();
+        options.setMode(DeliveryMode.EXECUTOR);
+        options.setLanes(lanes);
+        options.setQueueCapacity(queueCapacity);
+        return options;
+    }
+
+    public static ListenerOptions virtualThreads(int lanes, int queueCapacity) {
+        ListenerOptions options = executor(lanes, queueCapacity);
+        options.setMode(DeliveryMode.VIRTUAL_THREAD);
+        return options;
+    }
+
+    // Getters and Setters
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public DeliveryMode getMode() {
+        return mode;
+    }
+
+    public void setMode(DeliveryMode mode) {
+        this.mode = mode;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("串行通道数必须大于0: " + lanes);
+        }
+        this.lanes = lanes;
+    }
+
+    public int getThreads() {
+        return threads > 0 ? threads : lanes;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("监听器队列容量必须大于0: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 使用外部执行器回调，关闭时不会关闭该执行器
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public String toString() {
+        return mode == DeliveryMode.SYNC ? "SYNC" : mode + "(lanes=" + lanes + ", queue=" + queueCapacity + ", overflow=" + overflowPolicy + ")";
+    }
+}
@@ -0,0 +1,220 @@
+package com.michael.iot.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备存活检测引擎，替代每个连接各自的IdleStateHandler定时器
+ *
+ * 每个事件循环一个哈希时间轮，整个事件循环只有一个周期任务。连接以侵入式链表节点挂在槽位上，
+ * 设备活动只更新最后活动刻度，不产生定时任务也不移动节点；槽位到期时再惰性地重新挂到新的截止刻度。
+ * 同一刻度内需要PING的连接在一次遍历中统一写出。
+ */
+public class LivenessEngine {
+    private static final Logger logger = LoggerFactory.getLogger(LivenessEngine.class);
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final LivenessPolicies policies;
+    private final long tickMillis;
+    private final Map<EventLoop, Wheel> wheels = new ConcurrentHashMap<>();
+
+    // 统计
+    private final AtomicInteger entries = new AtomicInteger();
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param tickMillis 时间轮刻度，即超时检测的精度
+     */
+    public LivenessEngine(LivenessPolicies policies, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("时间轮刻度必须大于0: " + tickMillis);
+        }
+        this.policies = policies;
+        this.tickMillis = tickMillis;
+        if (TimeUnit.SECONDS.toMillis(policies.minReadTimeoutSeconds()) < tickMillis * 2) {
+            logger.warn("时间轮刻度{}ms相对最短读超时{}s过粗", tickMillis, policies.minReadTimeoutSeconds());
+        }
+    }
+
+    /**
+     * 登记新连接，使用默认策略，需在连接所属的事件循环中调用
+     */
+    public LivenessEntry register(Channel channel) {
+        Wheel wheel = wheels.computeIfAbsent(channel.eventLoop(), Wheel::new);
+        LivenessEntry entry = new LivenessEntry(channel, wheel, policies.policy(null));
+        wheel.schedule(entry, entry.nextDeadline());
+        entries.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * 获取设备类型对应的策略
+     */
+    public LivenessPolicy policy(String deviceType) {
+        return policies.policy(deviceType);
+    }
+
+    /**
+     * 停止所有时间轮
+     */
+    public void shutdown() {
+        for (Wheel wheel : wheels.values()) {
+            wheel.future.cancel(false);
+        }
+        wheels.clear();
+    }
+
+    /**
+     * 当前登记的连接数
+     */
+    public int getEntries() {
+        return entries.get();
+    }
+
+    public long getPingsSent() {
+        return pingsSent.sum();
+    }
+
+    /**
+     * 因读超时被断开的连接数
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 槽位到期检查的总次数
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LivenessEngine{" +
+                "wheels=" + wheels.size() +
+                ", entries=" + getEntries() +
+                ", pingsSent=" + getPingsSent() +
+                ", timeouts=" + getTimeouts() +
+                ", expirations=" + getExpirations() +
+                ", tickMillis=" + tickMillis +
+                '}';
+    }
+
+    /**
+     * 单个事件循环的时间轮，只在该事件循环线程中访问
+     */
+    final class Wheel implements Runnable {
+        private final LivenessEntry[] buckets = new LivenessEntry[WHEEL_SIZE];
+        private final List<Channel> pending = new ArrayList<>();
+        private final ScheduledFuture<?> future;
+        private long tick;
+
+        Wheel(EventLoop eventLoop) {
+            this.future = eventLoop.scheduleAtFixedRate(this, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+
+        long currentTick() {
+            return tick;
+        }
+
+        long toTicks(long millis) {
+            return Math.max(1, (millis + tickMillis - 1) / tickMillis);
+        }
+
+        void schedule(LivenessEntry entry, long deadlineTick) {
+            long delay = Math.max(1, deadlineTick - tick);
+            int index = (int) ((tick + delay) & (WHEEL_SIZE - 1));
+            entry.rounds = (delay - 1) / WHEEL_SIZE;
+            entry.bucket = index;
+            entry.prev = null;
+            entry.next = buckets[index];
+            if (entry.next != null) {
+                entry.next.prev = entry;
+            }
+            buckets[index] = entry;
+        }
+
+        void reschedule(LivenessEntry entry) {
+            unlink(entry);
+            schedule(entry, entry.nextDeadline());
+        }
+
+        void remove(LivenessEntry entry) {
+            if (entry.bucket >= 0) {
+                unlink(entry);
+                entries.decrementAndGet();
+            }
+        }
+
+        private void unlink(LivenessEntry entry) {
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                buckets[entry.bucket] = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = -1;
+        }
+
+        @Override
+        public void run() {
+            tick++;
+            LivenessEntry entry = buckets[(int) (tick & (WHEEL_SIZE - 1))];
+            while (entry != null) {
+                LivenessEntry next = entry.next;
+                if (entry.rounds > 0) {
+                    entry.rounds--;
+                } else {
+                    unlink(entry);
+                    expire(entry);
+                }
+                entry = next;
+            }
+
+            // 本刻度需要PING的连接统一写出
+            if (!pending.isEmpty()) {
+                for (Channel channel : pending) {
+                    channel.writeAndFlush(DeviceResponse.PING, channel.voidPromise());
+                }
+                pingsSent.add(pending.size());
+                pending.clear();
+            }
+        }
+
+        private void expire(LivenessEntry entry) {
+            expirations.increment();
+            long idle = tick - entry.lastSeenTick;
+            if (idle >= entry.readTimeoutTicks) {
+                entries.decrementAndGet();
+                timeouts.increment();
+                logger.warn("设备心跳超时: {}", entry.deviceId != null ? entry.deviceId : entry.channel.remoteAddress());
+                entry.channel.close();
+                return;
+            }
+            if (entry.pingIntervalTicks > 0 && !entry.pinged && idle >= entry.pingIntervalTicks) {
+                entry.pinged = true;
+                pending.add(entry.channel);
+            }
+            schedule(entry, entry.nextDeadline());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.michael.iot.server;
+
+import io.netty.channel.Channel;
+
+/**
+ * 时间轮中的单个连接
+ * 收到数据时只记录当前刻度，不移动时间轮中的位置；到期时再根据最后活动刻度重新计算截止时间。
+ * 所有方法都只能在连接所属的事件循环中调用。
+ */
+public class LivenessEntry {
+    final Channel channel;
+    final LivenessEngine.Wheel wheel;
+    String deviceId;
+    long readTimeoutTicks;
+    long pingIntervalTicks;
+    long lastSeenTick;
+    boolean pinged;
+
+    // 时间轮槽位中的双向链表
+    LivenessEntry prev;
+    LivenessEntry next;
+    int bucket = -1;
+    long rounds;
+
+    LivenessEntry(Channel channel, LivenessEngine.Wheel wheel, LivenessPolicy policy) {
+        this.channel = channel;
+        this.wheel = wheel;
+        this.lastSeenTick = wheel.currentTick();
+        applyPolicy(policy);
+    }
+
+    /**
+     * 记录一次设备活动
+     */
+    public void touch() {
+        lastSeenTick = wheel.currentTick();
+        pinged = false;
+    }
+
+    /**
+     * 设备注册后按设备类型切换策略
+     */
+    public void bind(String deviceId, LivenessPolicy policy) {
+        this.deviceId = deviceId;
+        applyPolicy(policy);
+        if (bucket >= 0) {
+            wheel.reschedule(this);
+        }
+    }
+
+    /**
+     * 连接关闭时移出时间轮
+     */
+    public void cancel() {
+        wheel.remove(this);
+    }
+
+    private void applyPolicy(LivenessPolicy policy) {
+        readTimeoutTicks = wheel.toTicks(policy.readTimeoutMillis());
+        pingIntervalTicks = policy.getPingIntervalSeconds() == 0 ? 0 : wheel.toTicks(policy.pingIntervalMillis());
+    }
+
+    /**
+     * 下一次需要检查的刻度
+     */
+    long nextDeadline() {
+        if (pingIntervalTicks > 0 && !pinged) {
+            return lastSeenTick + pingIntervalTicks;
+        }
+        return lastSeenTick + readTimeoutTicks;
+    }
+}
@@ -0,0 +1,65 @@
+package com.michael.iot.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按设备类型配置的存活检测策略，未单独配置的设备类型和尚未注册的连接使用默认策略
+ */
+public class LivenessPolicies {
+    private volatile LivenessPolicy defaultPolicy = LivenessPolicy.DEFAULT;
+    private final Map<String, LivenessPolicy> policies = new ConcurrentHashMap<>();
+
+    /**
+     * 获取设备类型的存活检测策略
+     */
+    public LivenessPolicy policy(String deviceType) {
+        return deviceType == null ? defaultPolicy : policies.getOrDefault(deviceType, defaultPolicy);
+    }
+
+    public void setDefaultPolicy(LivenessPolicy policy) {
+        this.defaultPolicy = policy;
+    }
+
+    public void setPolicy(String deviceType, LivenessPolicy policy) {
+        policies.put(deviceType, policy);
+    }
+
+    /**
+     * 所有策略中最短的读超时，用于校验时间轮精度
+     */
+    public int minReadTimeoutSeconds() {
+        int min = defaultPolicy.getReadTimeoutSeconds();
+        for (LivenessPolicy policy : policies.values()) {
+            min = Math.min(min, policy.getReadTimeoutSeconds());
+        }
+        return min;
+    }
+
+    /**
+     * 解析配置，格式为逗号分隔的 [默认策略,]设备类型=策略，例如 "60/30,传感器=300/120,摄像头=20/10"
+     */
+    public static LivenessPolicies parse(String spec) {
+        LivenessPolicies policies = new LivenessPolicies();
+        if (spec == null || spec.trim().isEmpty()) {
+            return policies;
+        }
+        for (String entry : spec.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                policies.setDefaultPolicy(LivenessPolicy.parse(entry));
+            } else {
+                policies.setPolicy(entry.substring(0, eq).trim(), LivenessPolicy.parse(entry.substring(eq + 1)));
+            }
+        }
+        return policies;
+    }
+
+    @Override
+    public String toString() {
+        return "LivenessPolicies{default=" + defaultPolicy + ", " + policies + '}';
+    }
+}
@@ -0,0 +1,67 @@
+package com.michael.iot.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存活检测策略
+ * 设备静默超过pingInterval时发送一次PING，静默超过readTimeout时断开连接。
+ */
+public final class LivenessPolicy {
+    public static final LivenessPolicy DEFAULT = new LivenessPolicy(60, 30);
+
+    private final int readTimeoutSeconds;
+    private final int pingIntervalSeconds;
+
+    /**
+     * @param readTimeoutSeconds 读超时秒数
+     * @param pingIntervalSeconds PING间隔秒数，0表示不发送PING
+     */
+    public LivenessPolicy(int readTimeoutSeconds, int pingIntervalSeconds) {
+        if (readTimeoutSeconds <= 0) {
+            throw new IllegalArgumentException("读超时必须大于0: " + readTimeoutSeconds);
+        }
+        if (pingIntervalSeconds < 0 || pingIntervalSeconds >= readTimeoutSeconds) {
+            throw new IllegalArgumentException("PING间隔必须小于读超时: " + pingIntervalSeconds);
+        }
+        this.readTimeoutSeconds = readTimeoutSeconds;
+        this.pingIntervalSeconds = pingIntervalSeconds;
+    }
+
+    public int getReadTimeoutSeconds() {
+        return readTimeoutSeconds;
+    }
+
+    public int getPingIntervalSeconds() {
+        return pingIntervalSeconds;
+    }
+
+    long readTimeoutMillis() {
+        return TimeUnit.SECONDS.toMillis(readTimeoutSeconds);
+    }
+
+    long pingIntervalMillis() {
+        return TimeUnit.SECONDS.toMillis(pingIntervalSeconds);
+    }
+
+    /**
+     * 解析策略，格式为 "读超时秒数/PING间隔秒数"，例如 "60/30"；只写读超时时不发送PING
+     */
+    public static LivenessPolicy parse(String spec) {
+        String value = spec.trim();
+        try {
+            int slash = value.indexOf('/');
+            if (slash < 0) {
+                return new LivenessPolicy(Integer.parseInt(value), 0);
+            }
+            return new LivenessPolicy(Integer.parseInt(value.substring(0, slash).trim()),
+                    Integer.parseInt(value.substring(slash + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的存活检测策略: " + spec, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return readTimeoutSeconds + "/" + pingIntervalSeconds;
+    }
+}
@@ -0,0 +1,161 @@
+package com.michael.iot.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 堆外设备记录的DeviceInfo视图
+ * 不保存任何字段，所有读写都直接作用于OffHeapDeviceRegistry中的记录。
+ */
+class OffHeapDeviceInfo extends DeviceInfo {
+    private final OffHeapDeviceRegistry registry;
+    final int slot;
+
+    OffHeapDeviceInfo(OffHeapDeviceRegistry registry, int slot, String deviceId) {
+        super(deviceId);
+        this.registry = registry;
+        this.slot = slot;
+    }
+
+    @Override
+    public void setDeviceId(String deviceId) {
+        throw new UnsupportedOperationException("堆外设备记录的设备ID不可修改");
+    }
+
+    @Override
+    public String getDeviceName() {
+        return registry.getString(slot, OffHeapDeviceRegistry.NAME_REF);
+    }
+
+    @Override
+    public void setDeviceName(String deviceName) {
+        registry.setString(slot, OffHeapDeviceRegistry.NAME_REF, deviceName);
+    }
+
+    @Override
+    public String getDeviceType() {
+        return registry.getType(slot);
+    }
+
+    @Override
+    public void setDeviceType(String deviceType) {
+        registry.setType(slot, deviceType);
+    }
+
+    @Override
+    public String getIpAddress() {
+        return registry.getIpAddress(slot);
+    }
+
+    @Override
+    public void setIpAddress(String ipAddress) {
+        registry.setIpAddress(slot, ipAddress);
+    }
+
+    @Override
+    public int getPort() {
+        return registry.getInt(slot, OffHeapDeviceRegistry.PORT);
+    }
+
+    @Override
+    public void setPort(int port) {
+        registry.putInt(slot, OffHeapDeviceRegistry.PORT, port);
+    }
+
+    @Override
+    public DeviceStatus getStatus() {
+        return registry.getStatus(slot);
+    }
+
+    @Override
+    public void setStatus(DeviceStatus status) {
+        registry.setStatus(slot, status);
+    }
+
+    @Override
+    public long getState() {
+        return registry.getLongVolatile(slot, OffHeapDeviceRegistry.STATUS);
+    }
+
+    @Override
+    public boolean compareAndSetState(long expected, long next) {
+        return registry.compareAndSetLong(slot, OffHeapDeviceRegistry.STATUS, expected, next);
+    }
+
+    @Override
+    public long getLastHeartbeatMillis() {
+        return registry.getLongVolatile(slot, OffHeapDeviceRegistry.LAST_HEARTBEAT);
+    }
+
+    @Override
+    public void setLastHeartbeatMillis(long lastHeartbeat) {
+        registry.putLongVolatile(slot, OffHeapDeviceRegistry.LAST_HEARTBEAT, lastHeartbeat);
+    }
+
+    @Override
+    public long getConnectTimeMillis() {
+        return registry.getLong(slot, OffHeapDeviceRegistry.CONNECT_TIME);
+    }
+
+    @Override
+    public void setConnectTimeMillis(long connectTime) {
+        registry.putLong(slot, OffHeapDeviceRegistry.CONNECT_TIME, connectTime);
+    }
+
+    @Override
+    public long getDisconnectTimeMillis() {
+        return registry.getLong(slot, OffHeapDeviceRegistry.DISCONNECT_TIME);
+    }
+
+    @Override
+    public void setDisconnectTimeMillis(long disconnectTime) {
+        registry.putLong(slot, OffHeapDeviceRegistry.DISCONNECT_TIME, disconnectTime);
+    }
+
+    @Override
+    public long getLastDataTimeMillis() {
+        return registry.getLong(slot, OffHeapDeviceRegistry.LAST_DATA_TIME);
+    }
+
+    @Override
+    public void setLastDataTimeMillis(long lastDataTime) {
+        registry.putLong(slot, OffHeapDeviceRegistry.LAST_DATA_TIME, lastDataTime);
+    }
+
+    @Override
+    public String getLastData() {
+        byte[] data = registry.getReading(slot);
+        return data == null ? null : new String(data, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void setLastData(String lastData) {
+        registry.setReading(slot, lastData == null ? null : lastData.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public long getMessageCount() {
+        return registry.getLongVolatile(slot, OffHeapDeviceRegistry.MESSAGE_COUNT);
+    }
+
+    @Override
+    public void incrementMessageCount() {
+        registry.getAndAddLong(slot, OffHeapDeviceRegistry.MESSAGE_COUNT, 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OffHeapDeviceInfo)) {
+            return false;
+        }
+        OffHeapDeviceInfo other = (OffHeapDeviceInfo) o;
+        return registry == other.registry && slot == other.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return slot;
+    }
+}
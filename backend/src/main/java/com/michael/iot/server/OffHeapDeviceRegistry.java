@@ -0,0 +1,522 @@
+package com.michael.iot.server;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * 堆外设备存储
+ *
+ * 每个设备占一条定长记录，按块保存在堆外直接内存中：状态、时间戳、消息计数、
+ * IPv4地址、端口和一个定长的最新读数槽位。设备ID、名称和非IPv4地址等变长字符串
+ * 追加写入堆外字符串区，记录中只保存一个打包的引用（块号、偏移、长度）。
+ * 设备ID到记录槽位的映射是基本类型数组上的开放寻址哈希表，查找使用StampedLock乐观读。
+ * 存储本身在堆上只剩哈希表的两个int数组和少量字典，对象数与设备数无关。
+ * 这只针对存储引擎：DeviceManager仍为每个设备在堆上保存DeviceSession（连同它引用的视图对象）
+ * 和DeviceIndex中的若干索引条目，整个设备管理器的GC对象数仍与设备数成正比，
+ * 堆外存储减少的是每个设备的常数部分，实际效果见RegistryGcBenchmark。
+ *
+ * DeviceManager拿到的是按槽位读写记录的DeviceInfo视图对象，视图是临时对象，
+ * 同一设备的两个视图不是同一个对象，但equals()相等。
+ * 设备不会被删除，名称或IP变化时旧字符串不回收（只在真正变化时追加）。
+ */
+public class OffHeapDeviceRegistry implements DeviceRegistry {
+    // 记录字段偏移
+    static final int STATUS = 0;              // 状态机字，见DeviceState
+    static final int ID_REF = 8;
+    static final int NAME_REF = 16;
+    static final int IP_REF = 24;
+    static final int ID_HASH = 32;
+    static final int TYPE_CODE = 36;
+    static final int IPV4 = 40;
+    static final int PORT = 44;
+    static final int LAST_HEARTBEAT = 48;
+    static final int CONNECT_TIME = 56;
+    static final int DISCONNECT_TIME = 64;
+    static final int LAST_DATA_TIME = 72;
+    static final int MESSAGE_COUNT = 80;
+    static final int READING_VERSION = 88;
+    static final int READING_LENGTH = 92;
+    static final int READING = 96;
+
+    static final long NULL_REF = -1;
+    private static final int NULL_LENGTH = -1;
+    private static final int OVERFLOW_LENGTH = -2;
+    private static final int RETRY = -2;
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int LOCK_STRIPES = 1024;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int readingBytes;
+    private final int recordSize;
+    private final StringArena arena = new StringArena();
+    private final StampedLock lock = new StampedLock();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // 超出读数槽位长度的最新数据放在堆内
+    private final Map<Integer, byte[]> overflowReadings = new ConcurrentHashMap<>();
+    // 设备类型字典，类型数量很少
+    private final Map<String, Integer> typeCodes = new ConcurrentHashMap<>();
+    private volatile String[] typeNames = new String[0];
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile SlotTable table;
+    // 已发布的记录数，写锁内递增
+    private volatile int size;
+
+    /**
+     * @param initialCapacity 预计设备数，决定哈希表初始大小
+     * @param readingBytes 最新读数槽位的字节数，更长的数据放在堆内
+     */
+    public OffHeapDeviceRegistry(int initialCapacity, int readingBytes) {
+        if (readingBytes < 0) {
+            throw new IllegalArgumentException("读数槽位长度非法: " + readingBytes);
+        }
+        this.readingBytes = readingBytes;
+        this.recordSize = (READING + readingBytes + 7) & ~7;
+        this.table = new SlotTable(tableCapacity(Math.max(16, initialCapacity)));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static int tableCapacity(int devices) {
+        // 负载因子不超过0.5
+        return Integer.highestOneBit(devices * 2 - 1) << 1;
+    }
+
+    @Override
+    public DeviceInfo get(String deviceId) {
+        int slot = find(deviceId, hash(deviceId));
+        return slot < 0 ? null : new OffHeapDeviceInfo(this, slot, deviceId);
+    }
+
+    @Override
+    public DeviceInfo getOrCreate(String deviceId, String deviceName, String deviceType, Consumer<DeviceInfo> onCreate) {
+        int hash = hash(deviceId);
+        int slot = find(deviceId, hash);
+        if (slot >= 0) {
+            return new OffHeapDeviceInfo(this, slot, deviceId);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            slot = probe(deviceId, hash);
+            if (slot >= 0) {
+                return new OffHeapDeviceInfo(this, slot, deviceId);
+            }
+            slot = size;
+            initRecord(slot, deviceId, hash);
+            OffHeapDeviceInfo created = new OffHeapDeviceInfo(this, slot, deviceId);
+            created.setDeviceName(deviceName);
+            created.setDeviceType(deviceType);
+            onCreate.accept(created);
+            insert(hash, slot);
+            size = slot + 1;
+            return created;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<DeviceInfo> snapshot() {
+        int count = size;
+        List<DeviceInfo> result = new ArrayList<>(count);
+        for (int slot = 0; slot < count; slot++) {
+            result.add(new OffHeapDeviceInfo(this, slot, arena.readString(getLong(slot, ID_REF))));
+        }
+        return result;
+    }
+
+    @Override
+    public Object lockFor(DeviceInfo device) {
+        return locks[((OffHeapDeviceInfo) device).slot & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 已占用的堆外内存字节数（记录块和字符串区）
+     */
+    public long getOffHeapBytes() {
+        return (long) chunks.length * CHUNK_RECORDS * recordSize + arena.allocatedBytes();
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    // ---- 哈希表 ----
+
+    private static int hash(String deviceId) {
+        int h = deviceId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(String deviceId, int hash) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int slot = probe(deviceId, hash);
+            if (slot != RETRY && lock.validate(stamp)) {
+                return slot;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return probe(deviceId, hash);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 线性探测查找设备槽位
+     * 乐观读期间可能读到尚未发布的槽位，此时返回RETRY，由调用方加读锁重试
+     * @return 槽位号，不存在时返回-1
+     */
+    private int probe(String deviceId, int hash) {
+        SlotTable t = table;
+        int published = size;
+        int mask = t.slots.length - 1;
+        for (int i = hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+            int entry = t.slots[i];
+            if (entry == 0) {
+                return -1;
+            }
+            if (t.hashes[i] == hash) {
+                int slot = entry - 1;
+                if (slot >= published) {
+                    return RETRY;
+                }
+                if (arena.equalsString(getLong(slot, ID_REF), deviceId)) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 写锁内调用
+     */
+    private void insert(int hash, int slot) {
+        SlotTable t = table;
+        if ((size + 1) * 2L > t.slots.length) {
+            t = t.resize();
+            table = t;
+        }
+        t.put(hash, slot + 1);
+    }
+
+    /**
+     * 开放寻址表：slots保存槽位号+1（0表示空位），hashes保存对应的哈希值，扩容时无需读取记录
+     */
+    private static final class SlotTable {
+        final int[] slots;
+        final int[] hashes;
+
+        SlotTable(int capacity) {
+            slots = new int[capacity];
+            hashes = new int[capacity];
+        }
+
+        void put(int hash, int entry) {
+            int mask = slots.length - 1;
+            int i = hash & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            slots[i] = entry;
+        }
+
+        SlotTable resize() {
+            SlotTable resized = new SlotTable(slots.length * 2);
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != 0) {
+                    resized.put(hashes[i], slots[i]);
+                }
+            }
+            return resized;
+        }
+    }
+
+    // ---- 记录存取 ----
+
+    /**
+     * 写锁内调用，按需分配新块并初始化记录
+     */
+    private void initRecord(int slot, String deviceId, int hash) {
+        int chunkIndex = slot >>> CHUNK_SHIFT;
+        if (chunkIndex == chunks.length) {
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunkIndex + 1);
+            grown[chunkIndex] = ByteBuffer.allocateDirect(CHUNK_RECORDS * recordSize).order(ByteOrder.nativeOrder());
+            chunks = grown;
+        }
+        putLong(slot, STATUS, DeviceState.INITIAL);
+        putLong(slot, ID_REF, arena.append(deviceId.getBytes(StandardCharsets.UTF_8)));
+        putLong(slot, NAME_REF, NULL_REF);
+        putLong(slot, IP_REF, NULL_REF);
+        putInt(slot, ID_HASH, hash);
+        putInt(slot, TYPE_CODE, -1);
+        putInt(slot, READING_LENGTH, NULL_LENGTH);
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+
+    private int offset(int slot, int field) {
+        return (slot & (CHUNK_RECORDS - 1)) * recordSize + field;
+    }
+
+    long getLong(int slot, int field) {
+        return chunk(slot).getLong(offset(slot, field));
+    }
+
+    void putLong(int slot, int field, long value) {
+        chunk(slot).putLong(offset(slot, field), value);
+    }
+
+    long getLongVolatile(int slot, int field) {
+        return (long) LONGS.getVolatile(chunk(slot), offset(slot, field));
+    }
+
+    void putLongVolatile(int slot, int field, long value) {
+        LONGS.setVolatile(chunk(slot), offset(slot, field), value);
+    }
+
+    boolean compareAndSetLong(int slot, int field, long expected, long next) {
+        return LONGS.compareAndSet(chunk(slot), offset(slot, field), expected, next);
+    }
+
+    long getAndAddLong(int slot, int field, long delta) {
+        return (long) LONGS.getAndAdd(chunk(slot), offset(slot, field), delta);
+    }
+
+    int getInt(int slot, int field) {
+        return chunk(slot).getInt(offset(slot, field));
+    }
+
+    void putInt(int slot, int field, int value) {
+        chunk(slot).putInt(offset(slot, field), value);
+    }
+
+    DeviceStatus getStatus(int slot) {
+        return DeviceState.status(getLongVolatile(slot, STATUS));
+    }
+
+    void setStatus(int slot, DeviceStatus status) {
+        long current;
+        do {
+            current = getLongVolatile(slot, STATUS);
+        } while (!compareAndSetLong(slot, STATUS, current, DeviceState.pack(status, DeviceState.epoch(current))));
+    }
+
+    String getString(int slot, int field) {
+        long ref = getLongVolatile(slot, field);
+        return ref == NULL_REF ? null : arena.readString(ref);
+    }
+
+    /**
+     * 只有内容变化时才追加新字符串
+     */
+    void setString(int slot, int field, String value) {
+        long ref = getLongVolatile(slot, field);
+        if (value == null) {
+            putLongVolatile(slot, field, NULL_REF);
+        } else if (ref == NULL_REF || !arena.equalsString(ref, value)) {
+            putLongVolatile(slot, field, arena.append(value.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    String getType(int slot) {
+        int code = getInt(slot, TYPE_CODE);
+        return code < 0 ? null : typeNames[code];
+    }
+
+    void setType(int slot, String type) {
+        putInt(slot, TYPE_CODE, type == null ? -1 : typeCode(type));
+    }
+
+    private int typeCode(String type) {
+        Integer code = typeCodes.get(type);
+        if (code != null) {
+            return code;
+        }
+        synchronized (typeCodes) {
+            code = typeCodes.get(type);
+            if (code == null) {
+                String[] names = Arrays.copyOf(typeNames, typeNames.length + 1);
+                code = names.length - 1;
+                names[code] = type;
+                // 先发布名称表再发布编码，读到编码的线程一定能读到名称
+                typeNames = names;
+                typeCodes.put(type, code);
+            }
+            return code;
+        }
+    }
+
+    String getIpAddress(int slot) {
+        String text = getString(slot, IP_REF);
+        if (text != null) {
+            return text;
+        }
+        int ipv4 = getInt(slot, IPV4);
+        return ipv4 == 0 ? null : DeviceInfo.formatIpv4(ipv4);
+    }
+
+    void setIpAddress(int slot, String ipAddress) {
+        int packed = DeviceInfo.packIpv4(ipAddress);
+        putInt(slot, IPV4, packed);
+        setString(slot, IP_REF, packed != 0 ? null : ipAddress);
+    }
+
+    /**
+     * 读数槽位以版本号实现顺序锁：写入期间版本号为奇数，读取前后版本号一致才算读到完整数据
+     */
+    byte[] getReading(int slot) {
+        ByteBuffer chunk = chunk(slot);
+        int versionOffset = offset(slot, READING_VERSION);
+        while (true) {
+            int version = (int) INTS.getVolatile(chunk, versionOffset);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int length = getInt(slot, READING_LENGTH);
+            byte[] result;
+            if (length == NULL_LENGTH) {
+                result = null;
+            } else if (length == OVERFLOW_LENGTH) {
+                result = overflowReadings.get(slot);
+            } else {
+                result = new byte[Math.min(Math.max(length, 0), readingBytes)];
+                int base = offset(slot, READING);
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = chunk.get(base + i);
+                }
+            }
+            VarHandle.loadLoadFence();
+            if ((int) INTS.getVolatile(chunk, versionOffset) == version) {
+                return result;
+            }
+        }
+    }
+
+    void setReading(int slot, byte[] data) {
+        ByteBuffer chunk = chunk(slot);
+        int versionOffset = offset(slot, READING_VERSION);
+        int version = (int) INTS.getVolatile(chunk, versionOffset);
+        INTS.setVolatile(chunk, versionOffset, version + 1);
+        if (data == null) {
+            putInt(slot, READING_LENGTH, NULL_LENGTH);
+            overflowReadings.remove(slot);
+        } else if (data.length > readingBytes) {
+            overflowReadings.put(slot, data);
+            putInt(slot, READING_LENGTH, OVERFLOW_LENGTH);
+        } else {
+            int base = offset(slot, READING);
+            for (int i = 0; i < data.length; i++) {
+                chunk.put(base + i, data[i]);
+            }
+            putInt(slot, READING_LENGTH, data.length);
+            overflowReadings.remove(slot);
+        }
+        INTS.setVolatile(chunk, versionOffset, version + 2);
+    }
+
+    /**
+     * 堆外字符串区，只追加
+     * 引用打包为一个long：块号(24位) | 块内偏移(24位) | 长度(16位)
+     */
+    private static final class StringArena {
+        private static final int CHUNK_SIZE = 1 << 22;
+        private static final int MAX_LENGTH = 0xFFFF;
+
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+        private ByteBuffer current;
+
+        synchronized long append(byte[] bytes) {
+            if (bytes.length > MAX_LENGTH) {
+                throw new IllegalArgumentException("字符串过长: " + bytes.length + " 字节");
+            }
+            if (current == null || current.remaining() < bytes.length) {
+                current = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[grown.length - 1] = current;
+                chunks = grown;
+            }
+            int offset = current.position();
+            current.put(bytes);
+            return ((long) (chunks.length - 1) << 40) | ((long) offset << 16) | bytes.length;
+        }
+
+        String readString(long ref) {
+            ByteBuffer chunk = chunks[(int) (ref >>> 40)];
+            int offset = (int) (ref >>> 16) & 0xFFFFFF;
+            byte[] bytes = new byte[(int) ref & MAX_LENGTH];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = chunk.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 不解码比较，ASCII字符串逐字节比较，含非ASCII字符时编码后比较
+         */
+        boolean equalsString(long ref, String value) {
+            ByteBuffer chunk = chunks[(int) (ref >>> 40)];
+            int offset = (int) (ref >>> 16) & 0xFFFFFF;
+            int length = (int) ref & MAX_LENGTH;
+            if (length < value.length()) {
+                return false;
+            }
+            if (length == value.length()) {
+                int i = 0;
+                for (; i < length; i++) {
+                    char c = value.charAt(i);
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    if (chunk.get(offset + i) != (byte) c) {
+                        return false;
+                    }
+                }
+                if (i == length) {
+                    return true;
+                }
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chunk.get(offset + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long allocatedBytes() {
+            return (long) chunks.length * CHUNK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.michael.iot.server;
+
+/**
+ * 有界队列已满时的处理策略
+ */
+public enum OverflowPolicy {
+    BLOCK,        // 生产者等待队列出现空位
+    DROP,         // 丢弃新事件并计数
+    CALLER_RUNS;  // 由生产者线程同步执行；接入队列中会打破与队列中事件的先后顺序，监听器通道先按序回调已排队的事件
+
+    public static OverflowPolicy parse(String value, OverflowPolicy defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
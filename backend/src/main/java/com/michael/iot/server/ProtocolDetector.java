@@ -0,0 +1,49 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+
+import java.util.List;
+
+/**
+ * 协议识别器
+ * 根据连接上收到的第一个字节判断设备使用文本协议还是二进制协议，
+ * 安装对应的分帧、解码和编码处理器后把自己从pipeline中移除，
+ * 已缓存的字节会继续交给新安装的解码器。两种设备可以共用同一个端口。
+ */
+public class ProtocolDetector extends ByteToMessageDecoder {
+    // 单条文本消息的最大长度，需要容纳DATA_BATCH
+    static final int MAX_TEXT_FRAME_LENGTH = 65536;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (!in.isReadable()) {
+            return;
+        }
+
+        // 依次插入到本处理器之后，编码器最后插入以位于解码器之前，
+        // 这样解码器直接写出的错误响应也能被编码
+        ChannelPipeline pipeline = ctx.pipeline();
+        DeviceProtocol protocol;
+        if ((in.getUnsignedByte(in.readerIndex())) == BinaryProtocol.MAGIC) {
+            in.skipBytes(1);
+            protocol = DeviceProtocol.BINARY;
+            pipeline.addAfter(ctx.name(), "commandDecoder", new BinaryCommandDecoder());
+            pipeline.addAfter(ctx.name(), "frameDecoder", new VarintFrameDecoder(BinaryProtocol.MAX_FRAME_LENGTH));
+            pipeline.addAfter(ctx.name(), "responseEncoder", BinaryResponseEncoder.INSTANCE);
+        } else {
+            protocol = DeviceProtocol.TEXT;
+            pipeline.addAfter(ctx.name(), "commandDecoder", new TextCommandDecoder());
+            pipeline.addAfter(ctx.name(), "frameDecoder", new LineBasedFrameDecoder(MAX_TEXT_FRAME_LENGTH));
+            pipeline.addAfter(ctx.name(), "stringEncoder", new StringEncoder());
+            pipeline.addAfter(ctx.name(), "responseEncoder", TextResponseEncoder.INSTANCE);
+        }
+
+        ctx.fireUserEventTriggered(protocol);
+        pipeline.remove(this);
+    }
+}
@@ -0,0 +1,26 @@
+package com.michael.iot.server;
+
+/**
+ * 设备信息存储引擎类型
+ */
+public enum RegistryEngine {
+    HEAP,       // 堆内ConcurrentHashMap，默认
+    OFF_HEAP;   // 定长记录保存在堆外内存，适合千万级设备以缩短GC停顿
+
+    public static RegistryEngine parse(String value, RegistryEngine defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * 按配置创建存储引擎
+     */
+    public DeviceRegistry newRegistry(ServerConfig config) {
+        if (this == OFF_HEAP) {
+            return new OffHeapDeviceRegistry(config.getRegistryInitialCapacity(), config.getRegistryReadingBytes());
+        }
+        return new HeapDeviceRegistry();
+    }
+}
@@ -0,0 +1,68 @@
+package com.michael.iot.server;
+
+/**
+ * 一个时间窗口的聚合结果
+ */
+public class RollupCell {
+    private final long start;
+    private final long count;
+    private final double sum;
+    private final double min;
+    private final double max;
+    private final boolean open;
+
+    public RollupCell(long start, long count, double sum, double min, double max, boolean open) {
+        this.start = start;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.open = open;
+    }
+
+    /**
+     * 窗口开始时间（毫秒时间戳）
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAvg() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * 窗口是否尚未关闭，未关闭的窗口仍会继续累加
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public String toString() {
+        return "RollupCell{" +
+                "start=" + start +
+                ", count=" + count +
+                ", min=" + min +
+                ", max=" + max +
+                ", avg=" + getAvg() +
+                ", open=" + open +
+                '}';
+    }
+}
@@ -0,0 +1,387 @@
+package com.michael.iot.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备数据的流式预聚合
+ * 每个设备和每个设备类型的每个数值指标按分钟和小时累计 数量/总和/最小值/最大值，
+ * 数据到达时只更新当前窗口的累加器，窗口由定时任务关闭后追加到该序列的历史中，查询直接返回聚合后的窗口而不扫描原始数据。
+ * 累加器按序列编号存放在分页的基本类型数组中，按编号分段加锁；窗口关闭后到达的迟到数据合并进历史中对应的窗口。
+ */
+public class RollupEngine implements SensorReadingListener {
+    private static final RollupResolution[] RESOLUTIONS = RollupResolution.values();
+    private static final int STRIPES = 64;
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final long NO_WINDOW = Long.MIN_VALUE;
+
+    /**
+     * 聚合维度
+     */
+    public enum Scope {
+        DEVICE,     // 按设备ID
+        TYPE;       // 按设备类型
+
+        public static Scope parse(String value, Scope defaultValue) {
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final Object[] locks = new Object[STRIPES];
+    private final Map<String, Map<String, Series>> deviceSeries = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Series>> typeSeries = new ConcurrentHashMap<>();
+    private final StringDictionary metricNames = new StringDictionary(4096);
+    private final int[] retention = new int[RESOLUTIONS.length];
+    private final long graceMillis;
+    private volatile Page[] pages = new Page[16];
+    private int slots;
+    private final LongAdder points = new LongAdder();
+    private final LongAdder closedWindows = new LongAdder();
+    private final LongAdder lateMerged = new LongAdder();
+    private final LongAdder lateDropped = new LongAdder();
+
+    public RollupEngine(ServerConfig config) {
+        this(config.getRollupMinuteRetention(), config.getRollupHourRetention(), config.getRollupGraceSeconds() * 1000L);
+    }
+
+    /**
+     * @param minuteRetention 每个序列保留的分钟窗口数
+     * @param hourRetention 每个序列保留的小时窗口数
+     * @param graceMillis 窗口结束后再等待多久才关闭，期间到达的数据直接计入该窗口
+     */
+    public RollupEngine(int minuteRetention, int hourRetention, long graceMillis) {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        retention[RollupResolution.MINUTE.ordinal()] = Math.max(1, minuteRetention);
+        retention[RollupResolution.HOUR.ordinal()] = Math.max(1, hourRetention);
+        this.graceMillis = graceMillis;
+    }
+
+    @Override
+    public void onReading(DeviceInfo device, SensorReading reading) {
+        String deviceId = device.getDeviceId();
+        String deviceType = device.getDeviceType();
+        long timestamp = reading.getTimestamp();
+        for (int i = reading.nextField(0); i >= 0; i = reading.nextField(i + 1)) {
+            record(deviceId, deviceType, reading.getFieldName(i), timestamp, reading.getValue(i));
+        }
+    }
+
+    /**
+     * 计入一个点，同时更新设备和设备类型两个维度
+     */
+    public void record(String deviceId, String deviceType, String metric, long timestamp, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        add(series(deviceSeries, deviceId, metric), timestamp, value);
+        if (deviceType != null) {
+            add(series(typeSeries, deviceType, metric), timestamp, value);
+        }
+        points.increment();
+    }
+
+    private Series series(Map<String, Map<String, Series>> scope, String key, String metric) {
+        Map<String, Series> metrics = scope.get(key);
+        if (metrics == null) {
+            metrics = scope.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        Series series = metrics.get(metric);
+        if (series == null) {
+            series = metrics.computeIfAbsent(metricNames.intern(metric), m -> newSeries());
+        }
+        return series;
+    }
+
+    /**
+     * 分配序列编号，必要时扩充分页
+     */
+    private synchronized Series newSeries() {
+        int slot = slots++;
+        int pageIndex = slot >>> PAGE_BITS;
+        Page[] current = pages;
+        if (pageIndex == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[pageIndex] == null) {
+            current[pageIndex] = new Page();
+        }
+        Series series = new Series(slot, retention);
+        current[pageIndex].series[slot & (PAGE_SIZE - 1)] = series;
+        pages = current;
+        return series;
+    }
+
+    private void add(Series series, long timestamp, double value) {
+        int slot = series.slot;
+        Page page = pages[slot >>> PAGE_BITS];
+        int offset = slot & (PAGE_SIZE - 1);
+        synchronized (locks[slot & (STRIPES - 1)]) {
+            for (RollupResolution resolution : RESOLUTIONS) {
+                int i = resolution.ordinal() * PAGE_SIZE + offset;
+                long window = resolution.windowStart(timestamp);
+                long open = page.start[i];
+                if (open == window) {
+                    page.accumulate(i, value);
+                } else if (open == NO_WINDOW || window > open) {
+                    Ring ring = series.rings[resolution.ordinal()];
+                    if (open != NO_WINDOW) {
+                        closeWindow(page, i, ring);
+                    } else if (ring.size > 0 && window <= ring.lastStart()) {
+                        merge(ring, window, value);
+                        continue;
+                    }
+                    page.open(i, window, value);
+                } else {
+                    merge(series.rings[resolution.ordinal()], window, value);
+                }
+            }
+        }
+    }
+
+    private void merge(Ring ring, long window, double value) {
+        if (ring.merge(window, value)) {
+            lateMerged.increment();
+        } else {
+            lateDropped.increment();
+        }
+    }
+
+    private void closeWindow(Page page, int i, Ring ring) {
+        ring.append(page.start[i], page.count[i], page.sum[i], page.min[i], page.max[i]);
+        page.start[i] = NO_WINDOW;
+        closedWindows.increment();
+    }
+
+    /**
+     * 关闭结束时间加宽限期已过的窗口，由定时任务调用
+     */
+    public void closeWindows(long nowMillis) {
+        int total;
+        synchronized (this) {
+            total = slots;
+        }
+        Page[] current = pages;
+        for (int slot = 0; slot < total; slot++) {
+            Page page = current[slot >>> PAGE_BITS];
+            int offset = slot & (PAGE_SIZE - 1);
+            Series series = page.series[offset];
+            synchronized (locks[slot & (STRIPES - 1)]) {
+                for (RollupResolution resolution : RESOLUTIONS) {
+                    int i = resolution.ordinal() * PAGE_SIZE + offset;
+                    long open = page.start[i];
+                    if (open != NO_WINDOW && open + resolution.getMillis() + graceMillis <= nowMillis) {
+                        closeWindow(page, i, series.rings[resolution.ordinal()]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询一个序列在[from, to]内开始的窗口，按时间升序，包括尚未关闭的当前窗口
+     * @param key 设备ID或设备类型
+     */
+    public List<RollupCell> query(Scope scope, String key, String metric, RollupResolution resolution, long from, long to) {
+        Map<String, Series> metrics = (scope == Scope.TYPE ? typeSeries : deviceSeries).get(key);
+        Series series = metrics == null ? null : metrics.get(metric);
+        if (series == null || from > to) {
+            return Collections.emptyList();
+        }
+        long first = resolution.windowStart(from);
+        List<RollupCell> cells = new ArrayList<>();
+        int slot = series.slot;
+        Page page = pages[slot >>> PAGE_BITS];
+        int i = resolution.ordinal() * PAGE_SIZE + (slot & (PAGE_SIZE - 1));
+        synchronized (locks[slot & (STRIPES - 1)]) {
+            series.rings[resolution.ordinal()].collect(first, to, cells);
+            long open = page.start[i];
+            if (open != NO_WINDOW && open >= first && open <= to) {
+                cells.add(new RollupCell(open, page.count[i], page.sum[i], page.min[i], page.max[i], true));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * 设备或设备类型已有的指标名
+     */
+    public List<String> getMetrics(Scope scope, String key) {
+        Map<String, Series> metrics = (scope == Scope.TYPE ? typeSeries : deviceSeries).get(key);
+        return metrics == null ? Collections.emptyList() : new ArrayList<>(metrics.keySet());
+    }
+
+    public long getPoints() {
+        return points.sum();
+    }
+
+    @Override
+    public String toString() {
+        int total;
+        synchronized (this) {
+            total = slots;
+        }
+        return "RollupEngine{" +
+                "series=" + total +
+                ", points=" + points.sum() +
+                ", closedWindows=" + closedWindows.sum() +
+                ", lateMerged=" + lateMerged.sum() +
+                ", lateDropped=" + lateDropped.sum() +
+                '}';
+    }
+
+    /**
+     * 一页序列的当前窗口累加器，各粒度依次排列，下标为 粒度序号 * PAGE_SIZE + 页内编号
+     */
+    private static final class Page {
+        final Series[] series = new Series[PAGE_SIZE];
+        final long[] start = new long[RESOLUTIONS.length * PAGE_SIZE];
+        final long[] count = new long[RESOLUTIONS.length * PAGE_SIZE];
+        final double[] sum = new double[RESOLUTIONS.length * PAGE_SIZE];
+        final double[] min = new double[RESOLUTIONS.length * PAGE_SIZE];
+        final double[] max = new double[RESOLUTIONS.length * PAGE_SIZE];
+
+        Page() {
+            Arrays.fill(start, NO_WINDOW);
+        }
+
+        void open(int i, long window, double value) {
+            start[i] = window;
+            count[i] = 1;
+            sum[i] = value;
+            min[i] = value;
+            max[i] = value;
+        }
+
+        void accumulate(int i, double value) {
+            count[i]++;
+            sum[i] += value;
+            if (value < min[i]) {
+                min[i] = value;
+            }
+            if (value > max[i]) {
+                max[i] = value;
+            }
+        }
+    }
+
+    /**
+     * 一个序列：编号和各粒度已关闭窗口的历史
+     */
+    private static final class Series {
+        final int slot;
+        final Ring[] rings = new Ring[RESOLUTIONS.length];
+
+        Series(int slot, int[] retention) {
+            this.slot = slot;
+            for (int r = 0; r < rings.length; r++) {
+                rings[r] = new Ring(retention[r]);
+            }
+        }
+    }
+
+    /**
+     * 已关闭窗口的环形历史，按窗口开始时间递增，写满后覆盖最旧的窗口；数组按需增长到保留窗口数
+     */
+    private static final class Ring {
+        private final int capacity;
+        private long[] starts;
+        private long[] counts;
+        private double[] sums;
+        private double[] mins;
+        private double[] maxs;
+        private int head;
+        private int size;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            int length = Math.min(8, capacity);
+            starts = new long[length];
+            counts = new long[length];
+            sums = new double[length];
+            mins = new double[length];
+            maxs = new double[length];
+        }
+
+        void append(long start, long count, double sum, double min, double max) {
+            int index;
+            if (size < capacity) {
+                if (size == starts.length) {
+                    grow(Math.min(capacity, size * 2));
+                }
+                index = size++;
+            } else {
+                index = head;
+                head = (head + 1) % starts.length;
+            }
+            starts[index] = start;
+            counts[index] = count;
+            sums[index] = sum;
+            mins[index] = min;
+            maxs[index] = max;
+        }
+
+        long lastStart() {
+            return starts[physical(size - 1)];
+        }
+
+        /**
+         * 把迟到的点合并进已关闭的窗口，窗口不在历史中时返回false
+         */
+        boolean merge(long window, double value) {
+            for (int n = size - 1; n >= 0; n--) {
+                int index = physical(n);
+                if (starts[index] == window) {
+                    counts[index]++;
+                    sums[index] += value;
+                    mins[index] = Math.min(mins[index], value);
+                    maxs[index] = Math.max(maxs[index], value);
+                    return true;
+                }
+                if (starts[index] < window) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 按时间升序收集开始时间在[from, to]内的窗口，从最新的窗口向前找起点
+         */
+        void collect(long from, long to, List<RollupCell> cells) {
+            int first = size;
+            while (first > 0 && starts[physical(first - 1)] >= from) {
+                first--;
+            }
+            for (int n = first; n < size; n++) {
+                int index = physical(n);
+                if (starts[index] > to) {
+                    break;
+                }
+                cells.add(new RollupCell(starts[index], counts[index], sums[index], mins[index], maxs[index], false));
+            }
+        }
+
+        private int physical(int logical) {
+            return (head + logical) % starts.length;
+        }
+
+        private void grow(int length) {
+            starts = Arrays.copyOf(starts, length);
+            counts = Arrays.copyOf(counts, length);
+            sums = Arrays.copyOf(sums, length);
+            mins = Arrays.copyOf(mins, length);
+            maxs = Arrays.copyOf(maxs, length);
+        }
+    }
+}
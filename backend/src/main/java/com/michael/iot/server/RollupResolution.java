@@ -0,0 +1,33 @@
+package com.michael.iot.server;
+
+/**
+ * 预聚合的时间粒度
+ */
+public enum RollupResolution {
+    MINUTE(60_000L),
+    HOUR(3_600_000L);
+
+    private final long millis;
+
+    RollupResolution(long millis) {
+        this.millis = millis;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * 时间所在窗口的开始时间
+     */
+    public long windowStart(long timestamp) {
+        return Math.floorDiv(timestamp, millis) * millis;
+    }
+
+    public static RollupResolution parse(String value, RollupResolution defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
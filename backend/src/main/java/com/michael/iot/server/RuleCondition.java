@@ -0,0 +1,445 @@
+package com.michael.iot.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 告警规则的条件表达式
+ * 语法为字段与常量或字段之间的比较，用 && 、|| 、! 和括号组合，例如
+ * temperature > 28 && (humidity < 30 || !(pressure >= 1000))
+ * 比较运算符为 > >= < <= == !=；读数未携带比较中的字段时该比较为假。
+ * 表达式只解析一次，再按设备类型的数据模式编译为以字段下标访问读数的谓词树。
+ */
+public abstract class RuleCondition {
+
+    /**
+     * 编译后的谓词，直接按字段下标读取读数中的double值
+     */
+    public interface Predicate {
+        boolean test(SensorReading reading);
+    }
+
+    enum Operator {
+        GT(">"), GE(">="), LT("<"), LE("<="), EQ("=="), NE("!=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean apply(double left, double right) {
+            switch (this) {
+                case GT:
+                    return left > right;
+                case GE:
+                    return left >= right;
+                case LT:
+                    return left < right;
+                case LE:
+                    return left <= right;
+                case EQ:
+                    return left == right;
+                default:
+                    return left != right;
+            }
+        }
+    }
+
+    /**
+     * 解析表达式
+     * @throws IllegalArgumentException 表达式格式错误
+     */
+    public static RuleCondition parse(String expression) {
+        Parser parser = new Parser(expression);
+        RuleCondition condition = parser.parseOr();
+        parser.skipWhitespace();
+        if (parser.position < expression.length()) {
+            throw parser.error("多余的内容");
+        }
+        return condition;
+    }
+
+    /**
+     * 按数据模式编译为谓词，模式中不存在的字段视为读数中从不出现
+     */
+    public abstract Predicate compile(SensorSchema schema);
+
+    /**
+     * 收集表达式引用的字段名
+     */
+    abstract void collectFields(Set<String> fields);
+
+    /**
+     * 表达式是否为单个字段与常量的大小比较（> >= < <=），这类规则可以按阈值排序索引
+     * @return 统一为 字段 op 常量 形式的比较，不是时返回null
+     */
+    Comparison asThreshold() {
+        return null;
+    }
+
+    /**
+     * 表达式引用的字段名，按出现顺序
+     */
+    public List<String> getFields() {
+        Set<String> fields = new LinkedHashSet<>();
+        collectFields(fields);
+        return new ArrayList<>(fields);
+    }
+
+    /**
+     * 比较的一侧，字段或常量
+     */
+    static final class Operand {
+        final String field;
+        final double constant;
+
+        Operand(String field, double constant) {
+            this.field = field;
+            this.constant = constant;
+        }
+
+        @Override
+        public String toString() {
+            return field != null ? field : formatConstant(constant);
+        }
+
+        private static String formatConstant(double value) {
+            return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+        }
+    }
+
+    static final class Comparison extends RuleCondition {
+        final Operand left;
+        final Operator operator;
+        final Operand right;
+
+        Comparison(Operand left, Operator operator, Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        public Predicate compile(SensorSchema schema) {
+            if (left.field != null && right.field != null) {
+                int a = schema.indexOf(left.field);
+                int b = schema.indexOf(right.field);
+                if (a < 0 || b < 0) {
+                    return reading -> false;
+                }
+                Operator op = operator;
+                return reading -> reading.has(a) && reading.has(b) && op.apply(reading.getValue(a), reading.getValue(b));
+            }
+            if (left.field == null && right.field == null) {
+                boolean constant = operator.apply(left.constant, right.constant);
+                return reading -> constant;
+            }
+            // 统一为 字段 op 常量
+            boolean fieldOnLeft = left.field != null;
+            int index = schema.indexOf(fieldOnLeft ? left.field : right.field);
+            if (index < 0) {
+                return reading -> false;
+            }
+            double threshold = fieldOnLeft ? right.constant : left.constant;
+            switch (fieldOnLeft ? operator : mirror(operator)) {
+                case GT:
+                    return reading -> reading.has(index) && reading.getValue(index) > threshold;
+                case GE:
+                    return reading -> reading.has(index) && reading.getValue(index) >= threshold;
+                case LT:
+                    return reading -> reading.has(index) && reading.getValue(index) < threshold;
+                case LE:
+                    return reading -> reading.has(index) && reading.getValue(index) <= threshold;
+                case EQ:
+                    return reading -> reading.has(index) && reading.getValue(index) == threshold;
+                default:
+                    return reading -> reading.has(index) && reading.getValue(index) != threshold;
+            }
+        }
+
+        @Override
+        Comparison asThreshold() {
+            if ((left.field == null) == (right.field == null) || operator == Operator.EQ || operator == Operator.NE) {
+                return null;
+            }
+            return left.field != null ? this : new Comparison(right, mirror(operator), left);
+        }
+
+        private static Operator mirror(Operator operator) {
+            switch (operator) {
+                case GT:
+                    return Operator.LT;
+                case GE:
+                    return Operator.LE;
+                case LT:
+                    return Operator.GT;
+                case LE:
+                    return Operator.GE;
+                default:
+                    return operator;
+            }
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            if (left.field != null) {
+                fields.add(left.field);
+            }
+            if (right.field != null) {
+                fields.add(right.field);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return left + " " + operator.symbol + " " + right;
+        }
+    }
+
+    static final class And extends RuleCondition {
+        final RuleCondition[] terms;
+
+        And(List<RuleCondition> terms) {
+            this.terms = terms.toArray(new RuleCondition[0]);
+        }
+
+        @Override
+        public Predicate compile(SensorSchema schema) {
+            Predicate[] predicates = new Predicate[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                predicates[i] = terms[i].compile(schema);
+            }
+            if (predicates.length == 2) {
+                Predicate a = predicates[0];
+                Predicate b = predicates[1];
+                return reading -> a.test(reading) && b.test(reading);
+            }
+            return reading -> {
+                for (Predicate predicate : predicates) {
+                    if (!predicate.test(reading)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            for (RuleCondition term : terms) {
+                term.collectFields(fields);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(terms, " && ");
+        }
+    }
+
+    static final class Or extends RuleCondition {
+        final RuleCondition[] terms;
+
+        Or(List<RuleCondition> terms) {
+            this.terms = terms.toArray(new RuleCondition[0]);
+        }
+
+        @Override
+        public Predicate compile(SensorSchema schema) {
+            Predicate[] predicates = new Predicate[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                predicates[i] = terms[i].compile(schema);
+            }
+            if (predicates.length == 2) {
+                Predicate a = predicates[0];
+                Predicate b = predicates[1];
+                return reading -> a.test(reading) || b.test(reading);
+            }
+            return reading -> {
+                for (Predicate predicate : predicates) {
+                    if (predicate.test(reading)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            for (RuleCondition term : terms) {
+                term.collectFields(fields);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(terms, " || ");
+        }
+    }
+
+    static final class Not extends RuleCondition {
+        final RuleCondition term;
+
+        Not(RuleCondition term) {
+            this.term = term;
+        }
+
+        @Override
+        public Predicate compile(SensorSchema schema) {
+            Predicate predicate = term.compile(schema);
+            return reading -> !predicate.test(reading);
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            term.collectFields(fields);
+        }
+
+        @Override
+        public String toString() {
+            return "!(" + term + ")";
+        }
+    }
+
+    private static String join(RuleCondition[] terms, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < terms.length; i++) {
+            if (i > 0) {
+                text.append(separator);
+            }
+            boolean nested = terms[i] instanceof And || terms[i] instanceof Or;
+            text.append(nested ? "(" : "").append(terms[i]).append(nested ? ")" : "");
+        }
+        return text.toString();
+    }
+
+    /**
+     * 递归下降解析器
+     * or := and ('||' and)* ; and := unary ('&&' unary)* ; unary := '!' unary | '(' or ')' | operand op operand
+     */
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            if (text == null || text.trim().isEmpty()) {
+                throw new IllegalArgumentException("规则条件不能为空");
+            }
+            this.text = text;
+        }
+
+        RuleCondition parseOr() {
+            List<RuleCondition> terms = new ArrayList<>();
+            terms.add(parseAnd());
+            while (consume("||")) {
+                terms.add(parseAnd());
+            }
+            return terms.size() == 1 ? terms.get(0) : new Or(terms);
+        }
+
+        private RuleCondition parseAnd() {
+            List<RuleCondition> terms = new ArrayList<>();
+            terms.add(parseUnary());
+            while (consume("&&")) {
+                terms.add(parseUnary());
+            }
+            return terms.size() == 1 ? terms.get(0) : new And(terms);
+        }
+
+        private RuleCondition parseUnary() {
+            skipWhitespace();
+            if (peek() == '!' && !text.startsWith("!=", position)) {
+                position++;
+                return new Not(parseUnary());
+            }
+            if (consume("(")) {
+                RuleCondition inner = parseOr();
+                if (!consume(")")) {
+                    throw error("缺少右括号");
+                }
+                return inner;
+            }
+            Operand left = parseOperand();
+            Operator operator = parseOperator();
+            Operand right = parseOperand();
+            return new Comparison(left, operator, right);
+        }
+
+        private Operand parseOperand() {
+            skipWhitespace();
+            int start = position;
+            char c = peek();
+            if (Character.isLetter(c) || c == '_') {
+                while (position < text.length()
+                        && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_'
+                        || text.charAt(position) == '.')) {
+                    position++;
+                }
+                return new Operand(text.substring(start, position), Double.NaN);
+            }
+            if (c == '-' || c == '+' || c == '.' || Character.isDigit(c)) {
+                position++;
+                while (position < text.length()) {
+                    char ch = text.charAt(position);
+                    boolean exponentSign = (ch == '-' || ch == '+')
+                            && (text.charAt(position - 1) == 'e' || text.charAt(position - 1) == 'E');
+                    if (Character.isDigit(ch) || ch == '.' || ch == 'e' || ch == 'E' || exponentSign) {
+                        position++;
+                    } else {
+                        break;
+                    }
+                }
+                try {
+                    return new Operand(null, Double.parseDouble(text.substring(start, position)));
+                } catch (NumberFormatException e) {
+                    position = start;
+                    throw error("数字格式错误");
+                }
+            }
+            throw error("需要字段名或数字");
+        }
+
+        private Operator parseOperator() {
+            skipWhitespace();
+            // 先匹配两个字符的运算符
+            for (String symbol : new String[]{">=", "<=", "==", "!=", ">", "<"}) {
+                if (text.startsWith(symbol, position)) {
+                    position += symbol.length();
+                    for (Operator operator : Operator.values()) {
+                        if (operator.symbol.equals(symbol)) {
+                            return operator;
+                        }
+                    }
+                }
+            }
+            throw error("需要比较运算符");
+        }
+
+        private boolean consume(String token) {
+            skipWhitespace();
+            if (text.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : '\0';
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("规则条件格式错误（第" + (position + 1) + "个字符）: " + message + ": " + text);
+        }
+    }
+}
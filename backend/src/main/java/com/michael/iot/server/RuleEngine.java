@@ -0,0 +1,623 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 告警规则引擎
+ * 作为同步读数监听器在接入路径上求值：规则按设备类型建立索引，每种类型的规则按该类型的数据模式编译为谓词树，
+ * 并按引用的最小下标字段建立倒排表，一条读数只求值携带了全部引用字段的规则，不逐条扫描全部规则。
+ * 单字段与常量比较的阈值规则（最常见的规则）另按阈值排序：设备记住每个字段上一次的值，
+ * 新值到来时只有阈值落在新旧两值之间的规则结果会变化，二分查找出这一段求值即可，
+ * 结果未变但还没达到连续次数的规则记在设备的待定列表里逐条累加。
+ * 每个设备的规则状态是按槽位排列的int数组，记录条件连续满足的次数；规则槽位只追加不复用，
+ * 删除规则留下空槽位，保证设备状态与规则集对应。触发和恢复的告警经各自的回调通道交给告警监听器。
+ *
+ * 同一设备的读数总在同一线程上回调（同一I/O线程或接入队列的消费线程），设备状态不需要加锁。
+ */
+public class RuleEngine implements SensorReadingListener {
+    private static final Logger logger = LoggerFactory.getLogger(RuleEngine.class);
+    private static final int[] NO_SLOTS = new int[0];
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    // 规则ID -> 规则
+    private final Map<String, AlertRule> rules = new ConcurrentHashMap<>();
+    // 设备类型 -> 按槽位排列的规则，删除的规则为null，只在持有this锁时修改
+    private final Map<String, List<AlertRule>> slotsByType = new HashMap<>();
+    // 设备类型 -> 编译好的规则集
+    private final Map<String, RuleSet> ruleSets = new ConcurrentHashMap<>();
+    // 设备ID -> 规则状态
+    private final Map<String, RuleState> states = new ConcurrentHashMap<>();
+    private final List<ListenerEndpoint> alertEndpoints = new CopyOnWriteArrayList<>();
+
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder resolved = new LongAdder();
+
+    /**
+     * 从规则文件加载规则，每行一条（格式见AlertRule.parse），空行和#开头的行被忽略
+     * @return 加载的规则数
+     */
+    public int loadRules(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        int loaded = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                addRule(AlertRule.parse(line));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + " 第" + (i + 1) + "行: " + e.getMessage(), e);
+            }
+            loaded++;
+        }
+        logger.info("从 {} 加载了 {} 条告警规则", file, loaded);
+        return loaded;
+    }
+
+    /**
+     * 添加规则，已有同ID的规则时替换，被替换规则的计数不会延续
+     */
+    public synchronized void addRule(AlertRule rule) {
+        AlertRule old = rules.put(rule.getId(), rule);
+        if (old != null) {
+            clearSlot(old);
+        }
+        if (rule.appliesToAllTypes()) {
+            for (Map.Entry<String, List<AlertRule>> entry : slotsByType.entrySet()) {
+                entry.getValue().add(rule);
+                invalidate(entry.getKey());
+            }
+        } else {
+            slotsByType.computeIfAbsent(rule.getDeviceType(), this::newSlots).add(rule);
+            invalidate(rule.getDeviceType());
+        }
+    }
+
+    /**
+     * 删除规则，已触发的告警不会再发送恢复通知
+     * @return 规则是否存在
+     */
+    public synchronized boolean removeRule(String ruleId) {
+        AlertRule rule = rules.remove(ruleId);
+        if (rule == null) {
+            return false;
+        }
+        clearSlot(rule);
+        return true;
+    }
+
+    private void clearSlot(AlertRule rule) {
+        for (Map.Entry<String, List<AlertRule>> entry : slotsByType.entrySet()) {
+            List<AlertRule> slots = entry.getValue();
+            int slot = slots.indexOf(rule);
+            if (slot >= 0) {
+                slots.set(slot, null);
+                invalidate(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 新出现的设备类型的槽位从当前所有适用于全部类型的规则开始
+     */
+    private List<AlertRule> newSlots(String deviceType) {
+        List<AlertRule> slots = new ArrayList<>();
+        for (AlertRule rule : rules.values()) {
+            if (rule.appliesToAllTypes()) {
+                slots.add(rule);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * 规则变化后按原来的模式立即重新编译
+     */
+    private void invalidate(String deviceType) {
+        RuleSet current = ruleSets.get(deviceType);
+        ruleSets.put(deviceType, compile(slotsByType.get(deviceType), current != null ? current.schema : null));
+    }
+
+    /**
+     * 获取设备类型的规则集，读数的模式学习到新字段后重新编译
+     */
+    private RuleSet ruleSet(String deviceType, SensorSchema schema) {
+        RuleSet set = ruleSets.get(deviceType);
+        if (set != null && !set.isStale(schema)) {
+            return set;
+        }
+        synchronized (this) {
+            set = ruleSets.get(deviceType);
+            if (set == null || set.isStale(schema)) {
+                set = compile(slotsByType.computeIfAbsent(deviceType, this::newSlots), schema);
+                ruleSets.put(deviceType, set);
+            }
+            return set;
+        }
+    }
+
+    private static RuleSet compile(List<AlertRule> slots, SensorSchema schema) {
+        int size = slots == null ? 0 : slots.size();
+        AlertRule[] compiledRules = new AlertRule[size];
+        RuleCondition.Predicate[] predicates = new RuleCondition.Predicate[size];
+        long[] masks = new long[size];
+        RuleCondition.Operator[] operators = new RuleCondition.Operator[size];
+        double[] limits = new double[size];
+        int[] thresholdFields = new int[size];
+        Arrays.fill(thresholdFields, -1);
+        int[] fieldCounts = new int[SensorSchema.MAX_FIELDS];
+        int[] thresholdCounts = new int[SensorSchema.MAX_FIELDS];
+        int active = 0;
+        for (int slot = 0; slot < size && schema != null; slot++) {
+            AlertRule rule = slots.get(slot);
+            if (rule == null) {
+                continue;
+            }
+            long mask = 0;
+            for (String field : rule.getFields()) {
+                int index = schema.indexOf(field);
+                if (index < 0) {
+                    // 引用的字段还没有出现过，读数不可能携带全部字段
+                    mask = 0;
+                    break;
+                }
+                mask |= 1L << index;
+            }
+            if (mask == 0) {
+                continue;
+            }
+            compiledRules[slot] = rule;
+            predicates[slot] = rule.getCondition().compile(schema);
+            active++;
+            RuleCondition.Comparison threshold = rule.getCondition().asThreshold();
+            if (threshold != null) {
+                int field = Long.numberOfTrailingZeros(mask);
+                operators[slot] = threshold.operator;
+                limits[slot] = threshold.right.constant;
+                thresholdFields[slot] = field;
+                thresholdCounts[field]++;
+                continue;
+            }
+            masks[slot] = mask;
+            fieldCounts[Long.numberOfTrailingZeros(mask)]++;
+        }
+
+        int fields = schema == null ? 0 : schema.size();
+        int[][] byField = new int[fields][];
+        int[][] thresholdSlots = new int[fields][];
+        for (int field = 0; field < fields; field++) {
+            byField[field] = fieldCounts[field] == 0 ? NO_SLOTS : new int[fieldCounts[field]];
+            thresholdSlots[field] = thresholdCounts[field] == 0 ? NO_SLOTS : new int[thresholdCounts[field]];
+            fieldCounts[field] = 0;
+            thresholdCounts[field] = 0;
+        }
+        for (int slot = 0; slot < size; slot++) {
+            int thresholdField = thresholdFields[slot];
+            if (thresholdField >= 0) {
+                thresholdSlots[thresholdField][thresholdCounts[thresholdField]++] = slot;
+            }
+            if (masks[slot] != 0) {
+                int field = Long.numberOfTrailingZeros(masks[slot]);
+                byField[field][fieldCounts[field]++] = slot;
+            }
+        }
+        ThresholdIndex[] thresholds = new ThresholdIndex[fields];
+        for (int field = 0; field < fields; field++) {
+            if (thresholdSlots[field].length > 0) {
+                thresholds[field] = new ThresholdIndex(thresholdSlots[field], limits);
+            }
+        }
+        return new RuleSet(schema, compiledRules, predicates, masks, byField, operators, limits, thresholdFields,
+                thresholds, active);
+    }
+
+    @Override
+    public void onReading(DeviceInfo device, SensorReading reading) {
+        if (reading.isEmpty()) {
+            return;
+        }
+        readings.increment();
+        RuleSet set = ruleSet(device.getDeviceType(), reading.getSchema());
+        if (set.active == 0) {
+            return;
+        }
+        RuleState state = state(device, set);
+        long present = reading.getFieldMask();
+        int evaluated = 0;
+        for (int field = reading.nextField(0); field >= 0 && field < set.byField.length; field = reading.nextField(field + 1)) {
+            for (int slot : set.byField[field]) {
+                // 读数缺少规则引用的字段时不参与计数
+                if ((set.masks[slot] & present) != set.masks[slot]) {
+                    continue;
+                }
+                evaluate(set, slot, set.predicates[slot].test(reading), state, device, reading);
+                evaluated++;
+            }
+            ThresholdIndex index = set.thresholds[field];
+            double value = reading.getValue(field);
+            if (index != null) {
+                evaluated += evaluateThresholds(set, index, field, value, state, device, reading);
+            }
+            state.last[field] = value;
+        }
+        evaluations.add(evaluated);
+    }
+
+    /**
+     * 求值一个字段上的阈值规则
+     * 上一次的值未知时（设备的第一条读数或规则集刚变化）逐条求值，否则只求值待定的规则和结果发生变化的规则
+     * @return 求值的规则数
+     */
+    private int evaluateThresholds(RuleSet set, ThresholdIndex index, int field, double value, RuleState state,
+                                   DeviceInfo device, SensorReading reading) {
+        double previous = state.last[field];
+        if (Double.isNaN(previous) || Double.isNaN(value)) {
+            for (int slot : index.slots) {
+                evaluateThreshold(set, slot, set.operators[slot].apply(value, set.limits[slot]), state, device, reading);
+            }
+            return index.slots.length;
+        }
+        int evaluated = 0;
+        // 待定的规则上次为真，这次仍为真时累加；变为假的规则在下面的阈值区间里处理
+        for (int i = 0; i < state.pendingCount; ) {
+            int slot = state.pending[i];
+            if (set.thresholdFields[slot] == field && set.operators[slot].apply(value, set.limits[slot])) {
+                evaluateThreshold(set, slot, true, state, device, reading);
+                evaluated++;
+                if (state.pending[i] != slot) {
+                    // 已移出待定列表，当前位置换成了列表末尾的规则
+                    continue;
+                }
+            }
+            i++;
+        }
+        if (previous == value) {
+            return evaluated;
+        }
+        double low = Math.min(previous, value);
+        double high = Math.max(previous, value);
+        double[] limits = index.limits;
+        for (int i = index.lowerBound(low); i < limits.length && limits[i] <= high; i++) {
+            int slot = index.slots[i];
+            RuleCondition.Operator operator = set.operators[slot];
+            boolean hit = operator.apply(value, limits[i]);
+            if (hit != operator.apply(previous, limits[i])) {
+                evaluateThreshold(set, slot, hit, state, device, reading);
+                evaluated++;
+            }
+        }
+        return evaluated;
+    }
+
+    private void evaluateThreshold(RuleSet set, int slot, boolean hit, RuleState state, DeviceInfo device,
+                                   SensorReading reading) {
+        evaluate(set, slot, hit, state, device, reading);
+        int count = state.counts[slot];
+        state.setPending(slot, count > 0 && count < set.rules[slot].getConsecutive());
+    }
+
+    private void evaluate(RuleSet set, int slot, boolean hit, RuleState state, DeviceInfo device,
+                          SensorReading reading) {
+        AlertRule rule = set.rules[slot];
+        int count = state.counts[slot];
+        if (hit) {
+            if (count < rule.getConsecutive()) {
+                state.counts[slot] = ++count;
+                if (count == rule.getConsecutive()) {
+                    fired.increment();
+                    publish(rule, DeviceAlert.State.FIRING, device, reading);
+                }
+            }
+        } else if (count > 0) {
+            state.counts[slot] = 0;
+            if (count == rule.getConsecutive()) {
+                resolved.increment();
+                publish(rule, DeviceAlert.State.RESOLVED, device, reading);
+            }
+        }
+    }
+
+    /**
+     * 设备状态随规则集增长，设备类型变化时清零；规则集变化后忘掉各字段上一次的值，下一条读数逐条求值阈值规则
+     */
+    private RuleState state(DeviceInfo device, RuleSet set) {
+        RuleState state = states.get(device.getDeviceId());
+        if (state == null) {
+            state = states.computeIfAbsent(device.getDeviceId(), id -> new RuleState());
+        }
+        String deviceType = device.getDeviceType();
+        if (state.deviceType == null || !state.deviceType.equals(deviceType)) {
+            state.deviceType = deviceType;
+            Arrays.fill(state.counts, 0);
+            state.clearPending();
+        }
+        if (state.ruleSet != set) {
+            state.ruleSet = set;
+            int slots = set.rules.length;
+            if (state.counts.length < slots) {
+                state.counts = Arrays.copyOf(state.counts, slots);
+                state.pendingBits = Arrays.copyOf(state.pendingBits, (slots + 63) >>> 6);
+            }
+            if (state.last.length < set.byField.length) {
+                state.last = new double[set.byField.length];
+            }
+            Arrays.fill(state.last, Double.NaN);
+            // 删除的规则不再求值，移出待定列表
+            for (int i = state.pendingCount - 1; i >= 0; i--) {
+                int slot = state.pending[i];
+                if (set.rules[slot] == null) {
+                    state.setPending(slot, false);
+                }
+            }
+        }
+        return state;
+    }
+
+    private void publish(AlertRule rule, DeviceAlert.State alertState, DeviceInfo device, SensorReading reading) {
+        List<String> fields = rule.getFields();
+        double[] values = new double[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = reading.getValue(fields.get(i));
+        }
+        DeviceAlert alert = new DeviceAlert(rule, alertState, device, reading.getTimestamp(), values);
+        logger.debug("设备告警: {}", alert);
+        String deviceId = device.getDeviceId();
+        for (ListenerEndpoint endpoint : alertEndpoints) {
+            DeviceAlertListener listener = (DeviceAlertListener) endpoint.getListener();
+            endpoint.submit(deviceId, () -> listener.onAlert(alert));
+        }
+    }
+
+    /**
+     * 添加告警监听器，在求值线程上同步回调
+     */
+    public void addAlertListener(DeviceAlertListener listener) {
+        addAlertListener(listener, ListenerOptions.sync());
+    }
+
+    /**
+     * 添加告警监听器，按注册参数同步或异步回调
+     */
+    public void addAlertListener(DeviceAlertListener listener, ListenerOptions options) {
+        alertEndpoints.add(new ListenerEndpoint(listener, options));
+    }
+
+    /**
+     * 移除告警监听器
+     */
+    public void removeAlertListener(DeviceAlertListener listener) {
+        for (ListenerEndpoint endpoint : alertEndpoints) {
+            if (endpoint.getListener() == listener && alertEndpoints.remove(endpoint)) {
+                endpoint.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 告警监听器的回调统计
+     */
+    public List<ListenerEndpoint> getListenerStats() {
+        return new ArrayList<>(alertEndpoints);
+    }
+
+    /**
+     * 等待已排队的告警回调完成
+     */
+    public void shutdown() {
+        for (ListenerEndpoint endpoint : alertEndpoints) {
+            endpoint.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+    public Collection<AlertRule> getRules() {
+        return rules.values();
+    }
+
+    public AlertRule getRule(String ruleId) {
+        return rules.get(ruleId);
+    }
+
+    /**
+     * 设备当前处于触发状态的规则
+     */
+    public List<AlertRule> getFiringRules(String deviceId) {
+        List<AlertRule> firing = new ArrayList<>();
+        RuleState state = states.get(deviceId);
+        RuleSet set = state == null || state.deviceType == null ? null : ruleSets.get(state.deviceType);
+        if (set == null) {
+            return firing;
+        }
+        int[] counts = state.counts;
+        for (int slot = 0; slot < Math.min(counts.length, set.rules.length); slot++) {
+            AlertRule rule = set.rules[slot];
+            if (rule != null && counts[slot] == rule.getConsecutive()) {
+                firing.add(rule);
+            }
+        }
+        return firing;
+    }
+
+    public long getReadingCount() {
+        return readings.sum();
+    }
+
+    /**
+     * 累计求值的规则次数
+     */
+    public long getEvaluationCount() {
+        return evaluations.sum();
+    }
+
+    public long getFiredCount() {
+        return fired.sum();
+    }
+
+    public long getResolvedCount() {
+        return resolved.sum();
+    }
+
+    @Override
+    public String toString() {
+        long readingCount = readings.sum();
+        return "RuleEngine{" +
+                "rules=" + rules.size() +
+                ", deviceTypes=" + ruleSets.size() +
+                ", devices=" + states.size() +
+                ", readings=" + readingCount +
+                ", evaluationsPerReading=" + String.format("%.2f", evaluations.sum() / (double) Math.max(1, readingCount)) +
+                ", fired=" + fired.sum() +
+                ", resolved=" + resolved.sum() +
+                '}';
+    }
+
+    /**
+     * 一种设备类型编译好的规则，创建后不再修改
+     */
+    private static final class RuleSet {
+        final SensorSchema schema;
+        // 槽位 -> 规则，空槽位和尚不能求值的规则为null
+        final AlertRule[] rules;
+        final RuleCondition.Predicate[] predicates;
+        // 槽位 -> 引用字段的位图，阈值规则为0
+        final long[] masks;
+        // 字段下标 -> 以该字段为最小下标引用字段的槽位，不含阈值规则
+        final int[][] byField;
+        // 阈值规则的槽位 -> 运算符、阈值和字段下标，其他槽位的运算符为null、字段下标为-1
+        final RuleCondition.Operator[] operators;
+        final double[] limits;
+        final int[] thresholdFields;
+        // 字段下标 -> 该字段上的阈值规则，没有时为null
+        final ThresholdIndex[] thresholds;
+        final int active;
+
+        RuleSet(SensorSchema schema, AlertRule[] rules, RuleCondition.Predicate[] predicates, long[] masks,
+                int[][] byField, RuleCondition.Operator[] operators, double[] limits, int[] thresholdFields,
+                ThresholdIndex[] thresholds, int active) {
+            this.schema = schema;
+            this.rules = rules;
+            this.predicates = predicates;
+            this.masks = masks;
+            this.byField = byField;
+            this.operators = operators;
+            this.limits = limits;
+            this.thresholdFields = thresholdFields;
+            this.thresholds = thresholds;
+            this.active = active;
+        }
+
+        /**
+         * 模式只追加字段，旧模式下的读数仍可用新模式编译的规则求值，因此只在读数的模式更大时重新编译
+         */
+        boolean isStale(SensorSchema readingSchema) {
+            return schema == null || (readingSchema != schema && readingSchema.size() >= schema.size());
+        }
+    }
+
+    /**
+     * 一个字段上按阈值升序排列的阈值规则
+     */
+    private static final class ThresholdIndex {
+        final int[] slots;
+        final double[] limits;
+
+        ThresholdIndex(int[] slots, double[] slotLimits) {
+            Integer[] order = new Integer[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                order[i] = slots[i];
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(slotLimits[a], slotLimits[b]));
+            this.slots = new int[slots.length];
+            this.limits = new double[slots.length];
+            for (int i = 0; i < order.length; i++) {
+                this.slots[i] = order[i];
+                this.limits[i] = slotLimits[order[i]];
+            }
+        }
+
+        /**
+         * 第一个不小于value的阈值的位置
+         */
+        int lowerBound(double value) {
+            int low = 0;
+            int high = limits.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (limits[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * 一个设备的规则状态，只由该设备所在的回调线程访问
+     */
+    private static final class RuleState {
+        private static final double[] NO_VALUES = new double[0];
+        private static final long[] NO_BITS = new long[0];
+
+        String deviceType;
+        // 求值所用的规则集，变化时重置last
+        RuleSet ruleSet;
+        // 槽位 -> 条件连续满足的次数，达到规则的连续次数即为触发状态
+        int[] counts = NO_SLOTS;
+        // 字段下标 -> 上一次的值，未知为NaN
+        double[] last = NO_VALUES;
+        // 条件为真但还没达到连续次数的阈值规则槽位
+        int[] pending = NO_SLOTS;
+        int pendingCount;
+        long[] pendingBits = NO_BITS;
+
+        /**
+         * 加入或移出待定列表，移出时用列表末尾的槽位填补空位
+         */
+        void setPending(int slot, boolean value) {
+            long bit = 1L << slot;
+            boolean contained = (pendingBits[slot >>> 6] & bit) != 0;
+            if (value == contained) {
+                return;
+            }
+            pendingBits[slot >>> 6] ^= bit;
+            if (value) {
+                if (pendingCount == pending.length) {
+                    pending = Arrays.copyOf(pending, Math.max(4, pendingCount * 2));
+                }
+                pending[pendingCount++] = slot;
+                return;
+            }
+            for (int i = 0; i < pendingCount; i++) {
+                if (pending[i] == slot) {
+                    pending[i] = pending[--pendingCount];
+                    return;
+                }
+            }
+        }
+
+        void clearPending() {
+            pendingCount = 0;
+            Arrays.fill(pendingBits, 0);
+        }
+    }
+}
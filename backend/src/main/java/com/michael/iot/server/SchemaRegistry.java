@@ -0,0 +1,116 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按设备类型登记的数据模式
+ * 可以通过配置为设备类型指定固定的字段列表；未配置的类型在开启学习时从上报的数据中学习字段，
+ * 新字段总是追加在末尾，同一类型的字段下标在运行期间保持稳定。
+ */
+public class SchemaRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaRegistry.class);
+    private static final String[] NO_FIELDS = new String[0];
+
+    private final Map<String, SensorSchema> schemas = new ConcurrentHashMap<>();
+    private volatile boolean learning = true;
+
+    /**
+     * 登记固定模式，替换该类型原有的模式
+     */
+    public void register(String deviceType, String... fields) {
+        String type = key(deviceType);
+        SensorSchema schema = new SensorSchema(type, fields, true);
+        schemas.put(type, schema);
+        logger.info("登记设备数据模式: {}", schema);
+    }
+
+    /**
+     * 按配置登记固定模式，格式为 类型:字段,字段;类型:字段，例如 传感器:temperature,humidity
+     */
+    public void configure(String definitions) {
+        if (definitions == null || definitions.trim().isEmpty()) {
+            return;
+        }
+        for (String definition : definitions.split(";")) {
+            int colon = definition.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("设备数据模式格式错误: " + definition);
+            }
+            List<String> fields = new ArrayList<>();
+            for (String field : definition.substring(colon + 1).split(",")) {
+                if (!field.trim().isEmpty()) {
+                    fields.add(field.trim());
+                }
+            }
+            register(definition.substring(0, colon).trim(), fields.toArray(NO_FIELDS));
+        }
+    }
+
+    /**
+     * 获取设备类型当前的模式，未登记的类型开启学习时创建空模式，否则返回不含字段的固定模式
+     */
+    public SensorSchema getSchema(String deviceType) {
+        String type = key(deviceType);
+        SensorSchema schema = schemas.get(type);
+        if (schema != null) {
+            return schema;
+        }
+        boolean learnable = learning;
+        return schemas.computeIfAbsent(type, t -> new SensorSchema(t, NO_FIELDS, !learnable));
+    }
+
+    /**
+     * 为设备类型学习一个新字段
+     * @return 该类型最新的模式，字段已存在、模式固定或字段数已满时原样返回
+     */
+    SensorSchema learn(String deviceType, String field) {
+        return schemas.compute(key(deviceType), (type, schema) -> {
+            if (schema == null) {
+                schema = new SensorSchema(type, NO_FIELDS, false);
+            }
+            if (schema.indexOf(field) >= 0 || !schema.isLearnable()) {
+                return schema;
+            }
+            SensorSchema learned = schema.withField(field);
+            logger.info("设备类型 {} 学习到新字段: {}", type, field);
+            return learned;
+        });
+    }
+
+    /**
+     * 设备类型可能为空，统一登记在空字符串下
+     */
+    private static String key(String deviceType) {
+        return deviceType == null ? "" : deviceType;
+    }
+
+    public Collection<SensorSchema> getSchemas() {
+        return schemas.values();
+    }
+
+    public boolean isLearning() {
+        return learning;
+    }
+
+    /**
+     * 是否从上报数据中学习未登记类型的字段，只影响之后首次出现的设备类型
+     */
+    public void setLearning(boolean learning) {
+        this.learning = learning;
+    }
+
+    @Override
+    public String toString() {
+        return "SchemaRegistry{" +
+                "learning=" + learning +
+                ", schemas=" + schemas.values() +
+                '}';
+    }
+}
@@ -0,0 +1,287 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按数据模式从入站消息中提取读数
+ * 直接扫描ByteBuf中的扁平JSON，例如 {"temperature":28.64,"humidity":48.41}：字段名按字节在模式中查找，
+ * 数值原地解析为double写入读数，字符串、布尔值和嵌套结构被跳过；整条数据只是一个数字时作为字段"value"。
+ * 常见的数值格式不产生任何对象，只有学习新字段和超出快速路径精度的数字才需要解码字符串。
+ */
+public class SensorExtractor {
+    public static final String DEFAULT_FIELD = "value";
+
+    // 10^0 ~ 10^22都能用double精确表示，尾数不超过2^53时一次乘除即为正确舍入的结果
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final SchemaRegistry registry;
+
+    public SensorExtractor(SchemaRegistry registry) {
+        this.registry = registry;
+    }
+
+    public SchemaRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 开始填充一条读数，模式取设备类型当前的模式
+     */
+    public void reset(SensorReading reading, String deviceType, long timestamp) {
+        reading.reset(registry.getSchema(deviceType), timestamp);
+    }
+
+    /**
+     * 按字段名写入一个值，用于已经解码出字段名的二进制协议
+     * @return 字段是否属于模式（或已被学习）
+     */
+    public boolean put(SensorReading reading, String deviceType, String field, double value) {
+        SensorSchema schema = reading.getSchema();
+        int index = schema.indexOf(field);
+        if (index < 0 && schema.isLearnable()) {
+            schema = registry.learn(deviceType, field);
+            reading.setSchema(schema);
+            index = schema.indexOf(field);
+        }
+        if (index < 0) {
+            return false;
+        }
+        reading.set(index, value);
+        return true;
+    }
+
+    /**
+     * 从buf的[start, end)提取一条读数，不移动读写下标
+     * @return 提取出的字段数
+     */
+    public int extract(SensorReading reading, String deviceType, long timestamp, ByteBuf buf, int start, int end) {
+        reset(reading, deviceType, timestamp);
+        int i = skipWhitespace(buf, start, end);
+        if (i >= end) {
+            return 0;
+        }
+        if (buf.getByte(i) != '{') {
+            int numberEnd = numberEnd(buf, i, end);
+            if (numberEnd > i && skipWhitespace(buf, numberEnd, end) == end) {
+                double value = parseNumber(buf, i, numberEnd);
+                if (!Double.isNaN(value) && put(reading, deviceType, DEFAULT_FIELD, value)) {
+                    return 1;
+                }
+            }
+            return 0;
+        }
+
+        i++;
+        while (i < end) {
+            i = skipWhitespace(buf, i, end);
+            if (i >= end || buf.getByte(i) != '"') {
+                break;
+            }
+            int keyEnd = stringEnd(buf, i, end);
+            if (keyEnd < 0) {
+                break;
+            }
+            int keyStart = i + 1;
+            i = skipWhitespace(buf, keyEnd + 1, end);
+            if (i >= end || buf.getByte(i) != ':') {
+                break;
+            }
+            i = skipWhitespace(buf, i + 1, end);
+            int numberEnd = numberEnd(buf, i, end);
+            if (numberEnd > i) {
+                double value = parseNumber(buf, i, numberEnd);
+                if (!Double.isNaN(value)) {
+                    putField(reading, deviceType, buf, keyStart, keyEnd, value);
+                }
+                i = numberEnd;
+            } else {
+                i = skipValue(buf, i, end);
+                if (i < 0) {
+                    break;
+                }
+            }
+            i = skipWhitespace(buf, i, end);
+            if (i >= end || buf.getByte(i) != ',') {
+                break;
+            }
+            i++;
+        }
+        return reading.getFieldCount();
+    }
+
+    private void putField(SensorReading reading, String deviceType, ByteBuf buf, int keyStart, int keyEnd, double value) {
+        SensorSchema schema = reading.getSchema();
+        int index = schema.indexOf(buf, keyStart, keyEnd);
+        if (index >= 0) {
+            reading.set(index, value);
+        } else if (schema.isLearnable() && buf.indexOf(keyStart, keyEnd, (byte) '\\') < 0) {
+            // 只有首次出现的字段需要解码字段名，含转义字符的字段名不学习
+            put(reading, deviceType, buf.toString(keyStart, keyEnd - keyStart, StandardCharsets.UTF_8), value);
+        }
+    }
+
+    /**
+     * 解析[start, end)内的数字
+     * 不超过2^53的尾数配合不超过22的十进制指数走快速路径，其余交给Double.parseDouble
+     * @return 解析结果，格式错误时返回NaN
+     */
+    static double parseNumber(ByteBuf buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        byte b = buf.getByte(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            b = buf.getByte(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    return parseSlow(buf, start, end);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (dot) {
+                    scale--;
+                }
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < end) {
+            if (b != 'e' && b != 'E') {
+                return Double.NaN;
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buf.getByte(i) == '-' || buf.getByte(i) == '+')) {
+                negativeExponent = buf.getByte(i) == '-';
+                i++;
+            }
+            if (i == end || end - i > 3) {
+                return i == end ? Double.NaN : parseSlow(buf, start, end);
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                b = buf.getByte(i);
+                if (b < '0' || b > '9') {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + (b - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (scale < -22 || scale > 22) {
+            return parseSlow(buf, start, end);
+        }
+        double value = scale >= 0 ? mantissa * POWERS_OF_TEN[scale] : mantissa / POWERS_OF_TEN[-scale];
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(ByteBuf buf, int start, int end) {
+        try {
+            return Double.parseDouble(buf.toString(start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int skipWhitespace(ByteBuf buf, int i, int end) {
+        while (i < end) {
+            byte b = buf.getByte(i);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 数字的结束位置，不是数字时返回start
+     */
+    private static int numberEnd(ByteBuf buf, int start, int end) {
+        int i = start;
+        while (i < end) {
+            byte b = buf.getByte(i);
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 字符串结束引号的位置，start为开始引号
+     */
+    private static int stringEnd(ByteBuf buf, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            byte b = buf.getByte(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过一个非数字的值（字符串、字面量或嵌套结构），返回其后的位置，格式错误时返回-1
+     */
+    private static int skipValue(ByteBuf buf, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        byte first = buf.getByte(start);
+        if (first == '"') {
+            int stringEnd = stringEnd(buf, start, end);
+            return stringEnd < 0 ? -1 : stringEnd + 1;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            for (int i = start; i < end; i++) {
+                byte b = buf.getByte(i);
+                if (b == '"') {
+                    i = stringEnd(buf, i, end);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        int i = start;
+        while (i < end && ((buf.getByte(i) | 0x20) >= 'a' && (buf.getByte(i) | 0x20) <= 'z')) {
+            i++;
+        }
+        return i > start ? i : -1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.michael.iot.server;
+
+import java.util.Arrays;
+
+/**
+ * 一条按数据模式解析的设备读数（可复用）
+ * 字段值按模式中的下标存放在double数组中，另用位图记录本条数据实际携带了哪些字段；
+ * 对象会被解析线程反复填充，同步监听器只能在回调期间使用，需要保留时调用copy()。
+ */
+public final class SensorReading {
+    private static final int INITIAL_FIELDS = 8;
+
+    private SensorSchema schema;
+    private long timestamp;
+    private long present;
+    private double[] values = new double[INITIAL_FIELDS];
+
+    /**
+     * 开始填充一条新读数
+     */
+    void reset(SensorSchema schema, long timestamp) {
+        this.schema = schema;
+        this.timestamp = timestamp;
+        this.present = 0;
+    }
+
+    /**
+     * 模式学习到新字段后切换为新模式，已填充的字段下标不变
+     */
+    void setSchema(SensorSchema schema) {
+        this.schema = schema;
+    }
+
+    void set(int index, double value) {
+        if (index >= values.length) {
+            values = Arrays.copyOf(values, Math.max(index + 1, values.length * 2));
+        }
+        values[index] = value;
+        present |= 1L << index;
+    }
+
+    /**
+     * 复制另一条读数，数组容量足够时不产生新对象
+     */
+    void copyFrom(SensorReading other) {
+        schema = other.schema;
+        timestamp = other.timestamp;
+        present = other.present;
+        int length = 64 - Long.numberOfLeadingZeros(present);
+        if (length > values.length) {
+            values = new double[Math.max(length, values.length * 2)];
+        }
+        System.arraycopy(other.values, 0, values, 0, length);
+    }
+
+    public SensorReading copy() {
+        SensorReading copy = new SensorReading();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public SensorSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * 采集时间，单条数据为接收时间，批量数据为设备上报的采集时间
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 实际携带的字段数
+     */
+    public int getFieldCount() {
+        return Long.bitCount(present);
+    }
+
+    /**
+     * 携带字段的位图，第i位对应模式中下标为i的字段
+     */
+    public long getFieldMask() {
+        return present;
+    }
+
+    public boolean isEmpty() {
+        return present == 0;
+    }
+
+    public boolean has(int index) {
+        return index >= 0 && index < SensorSchema.MAX_FIELDS && (present & (1L << index)) != 0;
+    }
+
+    /**
+     * 从指定下标开始的下一个携带的字段，用于遍历:
+     * for (int i = reading.nextField(0); i >= 0; i = reading.nextField(i + 1))
+     * @return 字段下标，没有更多字段时返回-1
+     */
+    public int nextField(int from) {
+        if (from >= SensorSchema.MAX_FIELDS) {
+            return -1;
+        }
+        long remaining = present & (-1L << from);
+        return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * 获取字段值，未携带该字段时返回NaN
+     */
+    public double getValue(int index) {
+        return has(index) ? values[index] : Double.NaN;
+    }
+
+    /**
+     * 按字段名获取字段值，未携带该字段时返回NaN
+     */
+    public double getValue(String field) {
+        return schema == null ? Double.NaN : getValue(schema.indexOf(field));
+    }
+
+    public String getFieldName(int index) {
+        return schema.getField(index);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("SensorReading{timestamp=").append(timestamp);
+        for (int i = nextField(0); i >= 0; i = nextField(i + 1)) {
+            text.append(", ").append(getFieldName(i)).append('=').append(values[i]);
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.michael.iot.server;
+
+/**
+ * 设备读数监听器接口
+ * 数据在接入时按设备类型的模式解析一次，监听器直接拿到字段值，不需要各自再解析数据内容。
+ * 读数对象会被复用：同步回调的监听器只能在回调期间使用，异步回调的监听器收到的是独立副本。
+ */
+public interface SensorReadingListener {
+    /**
+     * 设备读数回调
+     * @param device 设备信息
+     * @param reading 解析出的读数
+     */
+    void onReading(DeviceInfo device, SensorReading reading);
+
+    /**
+     * 一条消息的全部读数，批量数据整批只回调一次
+     * 默认逐条转交给onReading
+     * @param device 设备信息
+     * @param readings 解析出的读数
+     */
+    default void onReadings(DeviceInfo device, SensorReadings readings) {
+        for (int i = 0; i < readings.size(); i++) {
+            onReading(device, readings.get(i));
+        }
+    }
+}
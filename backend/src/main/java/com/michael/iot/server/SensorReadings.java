@@ -0,0 +1,75 @@
+package com.michael.iot.server;
+
+import java.util.Arrays;
+
+/**
+ * 一条消息解析出的全部读数（可复用）
+ * 单条数据只有一条读数，批量数据每个条目一条；读数对象随容器复用，只在容量不足时分配。
+ */
+public final class SensorReadings {
+    private static final SensorReading[] EMPTY = new SensorReading[0];
+
+    private SensorReading[] rows = EMPTY;
+    private int size;
+
+    /**
+     * 追加一条读数并返回它，供解析器填充
+     */
+    SensorReading add() {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(1, size * 2));
+        }
+        SensorReading row = rows[size];
+        if (row == null) {
+            row = new SensorReading();
+            rows[size] = row;
+        }
+        size++;
+        return row;
+    }
+
+    /**
+     * 撤销最后追加的一条读数，用于丢弃没有解析出字段的条目
+     */
+    void removeLast() {
+        if (size > 0) {
+            size--;
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * 复制另一组读数，容量足够时不产生新对象
+     */
+    void copyFrom(SensorReadings other) {
+        clear();
+        for (int i = 0; i < other.size; i++) {
+            add().copyFrom(other.rows[i]);
+        }
+    }
+
+    public SensorReadings copy() {
+        SensorReadings copy = new SensorReadings();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SensorReading get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("读数下标越界: " + index + ", 读数条数: " + size);
+        }
+        return rows[index];
+    }
+
+    @Override
+    public String toString() {
+        return "SensorReadings{size=" + size + '}';
+    }
+}
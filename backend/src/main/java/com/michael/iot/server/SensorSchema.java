@@ -0,0 +1,149 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 一种设备类型的数据模式
+ * 按顺序列出该类型上报的数值字段，字段下标即读数中的槽位；创建后不再修改，
+ * 新增字段时生成追加了该字段的新模式，已有字段的下标保持不变。
+ * 字段名同时保存UTF-8字节并建立散列表，可以不解码直接按ByteBuf中的字段名查找下标。
+ */
+public final class SensorSchema {
+    // 读数用一个long作为字段存在位图，因此每种类型最多64个字段
+    public static final int MAX_FIELDS = 64;
+
+    private final String deviceType;
+    private final String[] fields;
+    private final byte[][] fieldBytes;
+    private final int[] fieldHashes;
+    // 开放寻址散列表，值为字段下标加1，0表示空位
+    private final int[] table;
+    private final int mask;
+    private final boolean fixed;
+
+    /**
+     * @param fixed 是否为配置的固定模式，固定模式不会学习新字段
+     */
+    SensorSchema(String deviceType, String[] fields, boolean fixed) {
+        if (fields.length > MAX_FIELDS) {
+            throw new IllegalArgumentException("设备类型 " + deviceType + " 的字段数超过上限: " + fields.length);
+        }
+        this.deviceType = deviceType;
+        this.fields = fields.clone();
+        this.fixed = fixed;
+        this.fieldBytes = new byte[fields.length][];
+        this.fieldHashes = new int[fields.length];
+        int size = Integer.highestOneBit(Math.max(8, fields.length * 4) - 1) << 1;
+        this.table = new int[size];
+        this.mask = size - 1;
+        for (int i = 0; i < fields.length; i++) {
+            byte[] bytes = fields[i].getBytes(StandardCharsets.UTF_8);
+            fieldBytes[i] = bytes;
+            fieldHashes[i] = hash(bytes);
+            int slot = fieldHashes[i] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * 生成追加了一个字段的新模式
+     */
+    SensorSchema withField(String field) {
+        String[] extended = Arrays.copyOf(fields, fields.length + 1);
+        extended[fields.length] = field;
+        return new SensorSchema(deviceType, extended, fixed);
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 0;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 按ByteBuf中[start, end)的字段名字节查找下标，不创建字符串
+     * @return 字段下标，未知字段返回-1
+     */
+    public int indexOf(ByteBuf buf, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buf.getByte(i);
+        }
+        h ^= h >>> 16;
+        int length = end - start;
+        for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int index = entry - 1;
+            if (fieldHashes[index] == h && bytesEqual(fieldBytes[index], buf, start, length)) {
+                return index;
+            }
+        }
+    }
+
+    private static boolean bytesEqual(byte[] bytes, ByteBuf buf, int start, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buf.getByte(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按字段名查找下标，字段数很少，直接顺序比较
+     * @return 字段下标，未知字段返回-1
+     */
+    public int indexOf(String field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    /**
+     * 字段数
+     */
+    public int size() {
+        return fields.length;
+    }
+
+    public String getField(int index) {
+        return fields[index];
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    /**
+     * 是否还能学习新字段
+     */
+    public boolean isLearnable() {
+        return !fixed && fields.length < MAX_FIELDS;
+    }
+
+    @Override
+    public String toString() {
+        return deviceType + (fixed ? "" : "~") + Arrays.toString(fields);
+    }
+}
@@ -0,0 +1,868 @@
+package com.michael.iot.server;
+
+/**
+ * 服务器运行参数
+ * 默认值可以通过JVM系统属性覆盖，例如 -Diot.transport=epoll -Diot.tcp.workerThreads=8
+ */
+public class ServerConfig {
+    private TransportType transport = TransportType.AUTO;   // 传输类型
+    private int tcpBossThreads = 1;                         // TCP接收线程数
+    private int tcpWorkerThreads = 0;                       // TCP工作线程数，0表示Netty默认值
+    private int wsBossThreads = 1;                          // WebSocket接收线程数
+    private int wsWorkerThreads = 0;                        // WebSocket工作线程数，0表示Netty默认值
+    private boolean sharedEventLoops = false;               // TCP与WebSocket是否共享事件循环组，共享时工作线程数取TCP配置
+    private int flushConsolidationLimit = 256;              // 读循环外最多合并多少次flush
+    private AckPolicies ackPolicies = new AckPolicies();    // 按设备类型的确认策略
+    private boolean ingestEnabled = true;                   // 是否通过接入队列异步回调监听器
+    private int ingestCapacity = 65536;                     // 接入队列容量，向上取整为2的幂
+    private boolean ingestSharded = true;                   // 数据事件是否按I/O线程分片进入各自的单生产者通道
+    private int ingestLaneCapacity = 8192;                  // 每个I/O线程数据通道的容量，向上取整为2的幂
+    private int ingestBatchSize = 256;                      // 接入队列每批最多消费的事件数
+    private WaitStrategy ingestWaitStrategy = WaitStrategy.SLEEPING;     // 接入队列为空时的等待策略
+    private OverflowPolicy ingestOverflowPolicy = OverflowPolicy.BLOCK;  // 接入队列满时数据事件的处理策略
+    private boolean backpressureEnabled = true;             // 是否按待处理事件数暂停设备读取
+    private int deviceHighWatermark = 1024;                 // 单设备待处理事件高水位，超过后暂停读取该设备
+    private int deviceLowWatermark = 256;                   // 单设备待处理事件低水位，降到此值后恢复读取
+    private int loopHighWatermark = 16384;                  // 单事件循环待处理事件高水位
+    private int loopLowWatermark = 4096;                    // 单事件循环待处理事件低水位
+    private int writeBufferHighWatermark = 64 * 1024;       // 连接出站缓冲高水位（字节），超过后暂停读取
+    private int writeBufferLowWatermark = 32 * 1024;        // 连接出站缓冲低水位（字节）
+    private LivenessPolicies livenessPolicies = new LivenessPolicies();  // 按设备类型的读超时和PING间隔
+    private long livenessTickMillis = 1000;                 // 存活检测时间轮刻度（毫秒）
+    private int tcpBacklog = 1024;                          // TCP监听队列长度
+    private int tcpReusePortAcceptors = 0;                  // 以SO_REUSEPORT绑定的TCP监听Channel数，0或1表示单个监听（仅epoll/io_uring）
+    private boolean admissionEnabled = true;                // 是否启用连接准入控制
+    private int acceptRate = 2000;                          // 全局每秒准入连接数
+    private int acceptBurst = 4000;                         // 全局准入突发上限
+    private int perIpAcceptRate = 50;                       // 单个来源IP每秒准入连接数
+    private int perIpAcceptBurst = 100;                     // 单个来源IP准入突发上限
+    private String trustedAddresses = "";                   // 不受单IP限制的来源地址，逗号分隔，回环地址始终不受限
+    private int maxPendingRegistrations = 10000;            // 已连接但尚未注册的连接数上限
+    private int retryBaseMillis = 1000;                     // 拒绝接入时建议的最短重试等待
+    private int retryMaxMillis = 30000;                     // 拒绝接入时建议的最长重试等待
+    private int sessionTtlMillis = 600000;                  // 断开的会话保留时间，超过后不能凭令牌恢复
+    private RegistryEngine registryEngine = RegistryEngine.HEAP;  // 设备信息存储引擎
+    private int registryInitialCapacity = 65536;            // 堆外存储预计设备数，决定索引初始大小
+    private int registryReadingBytes = 64;                  // 堆外存储每个设备的最新读数槽位字节数
+    private DeliveryMode wsListenerMode = DeliveryMode.EXECUTOR;  // WebSocket推送监听器的回调方式
+    private int wsListenerLanes = 1;                        // WebSocket推送监听器的串行通道数，1表示全局有序
+    private int wsListenerQueueCapacity = 65536;            // WebSocket推送监听器的排队事件上限
+    private OverflowPolicy wsListenerOverflowPolicy = OverflowPolicy.DROP;  // WebSocket推送排队满时的处理策略
+    private int wsListUpdateMillis = 1000;                  // 设备列表变化后合并推送计数和重新查询提示的间隔
+    private boolean persistenceEnabled = false;             // 是否持久化设备注册表（变更日志 + 快照）
+    private String persistenceDir = "data";                 // 变更日志和快照所在目录
+    private int persistenceSegmentBytes = 64 * 1024 * 1024; // 变更日志分段大小（字节），至少能放下一条最长的记录（约256KB）
+    private int snapshotIntervalSeconds = 300;              // 快照间隔（秒）
+    private int snapshotPartitions = 16;                    // 快照分区数，恢复时每个分区由一个线程读取
+    private int recoveryThreads = 0;                        // 恢复线程数，0表示CPU核数
+    private boolean tsdbEnabled = false;                    // 是否把设备上报的数值指标写入时序存储
+    private String tsdbDir = "data/tsdb";                   // 时序数据分段文件所在目录
+    private int tsdbChunkBytes = 1024;                      // 时序压缩数据块大小（字节）
+    private int tsdbSegmentBytes = 64 * 1024 * 1024;        // 时序分段文件大小（字节）
+    private int tsdbRetentionHours = 168;                   // 时序数据保留时长（小时），0表示不过期
+    private int tsdbListenerLanes = 4;                      // 时序写入监听器的串行通道数，同一设备总在同一通道
+    private boolean rollupEnabled = false;                  // 是否按分钟和小时预聚合设备上报的数值指标
+    private int rollupMinuteRetention = 1440;               // 每个序列保留的分钟窗口数
+    private int rollupHourRetention = 2160;                 // 每个序列保留的小时窗口数
+    private int rollupGraceSeconds = 10;                    // 窗口结束后等待迟到数据的时间（秒）
+    private int rollupCloseIntervalSeconds = 5;             // 检查并关闭到期窗口的间隔（秒）
+    private int rollupListenerLanes = 4;                    // 预聚合监听器的串行通道数
+    private String schemaDefinitions = "";                  // 设备类型的固定数据模式，格式为 类型:字段,字段;类型:字段
+    private boolean schemaLearning = true;                  // 是否从上报数据中学习未配置类型的字段
+    private boolean rulesEnabled = false;                   // 是否在接入路径上求值告警规则
+    private String rulesFile = "";                          // 告警规则文件，每行一条，为空表示不加载
+    private boolean clusterEnabled = false;                 // 是否以集群模式运行，按一致性哈希划分设备归属
+    private String clusterNodeId = "";                      // 本节点ID，必须出现在集群成员列表中
+    private String clusterMembers = "";                     // 集群成员，格式为 节点ID=主机:集群端口:设备端口,...
+    private int clusterVirtualNodes = 160;                  // 每个节点在哈希环上的虚拟节点数
+    private int clusterPresenceFlushMillis = 100;           // 合并发送在线状态增量的间隔（毫秒）
+    private int clusterQueryTimeoutMillis = 2000;           // 分发查询等待各节点回复的超时（毫秒）
+    private int clusterReconnectMillis = 1000;              // 与其他节点断开后重连的间隔（毫秒）
+    private boolean clusterRebalance = true;                // 成员变化后是否把不再归属本节点的设备重定向到新归属节点
+
+    /**
+     * 从系统属性读取配置
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.setTransport(TransportType.parse(System.getProperty("iot.transport")));
+        config.setTcpBossThreads(intProperty("iot.tcp.bossThreads", config.getTcpBossThreads()));
+        config.setTcpWorkerThreads(intProperty("iot.tcp.workerThreads", config.getTcpWorkerThreads()));
+        config.setWsBossThreads(intProperty("iot.ws.bossThreads", config.getWsBossThreads()));
+        config.setWsWorkerThreads(intProperty("iot.ws.workerThreads", config.getWsWorkerThreads()));
+        config.setSharedEventLoops(Boolean.parseBoolean(
+                System.getProperty("iot.eventLoop.shared", String.valueOf(config.isSharedEventLoops()))));
+        config.setFlushConsolidationLimit(intProperty("iot.flush.consolidationLimit", config.getFlushConsolidationLimit()));
+        config.setAckPolicies(AckPolicies.parse(System.getProperty("iot.ack.heartbeat"), System.getProperty("iot.ack.data")));
+        config.setIngestEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.ingest.enabled", String.valueOf(config.isIngestEnabled()))));
+        config.setIngestCapacity(intProperty("iot.ingest.capacity", config.getIngestCapacity()));
+        config.setIngestSharded(Boolean.parseBoolean(
+                System.getProperty("iot.ingest.sharded", String.valueOf(config.isIngestSharded()))));
+        config.setIngestLaneCapacity(intProperty("iot.ingest.laneCapacity", config.getIngestLaneCapacity()));
+        config.setIngestBatchSize(intProperty("iot.ingest.batchSize", config.getIngestBatchSize()));
+        config.setIngestWaitStrategy(WaitStrategy.parse(System.getProperty("iot.ingest.waitStrategy"), config.getIngestWaitStrategy()));
+        config.setIngestOverflowPolicy(OverflowPolicy.parse(System.getProperty("iot.ingest.overflow"), config.getIngestOverflowPolicy()));
+        config.setBackpressureEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.backpressure.enabled", String.valueOf(config.isBackpressureEnabled()))));
+        config.setDeviceHighWatermark(intProperty("iot.backpressure.device.high", config.getDeviceHighWatermark()));
+        config.setDeviceLowWatermark(intProperty("iot.backpressure.device.low", config.getDeviceLowWatermark()));
+        config.setLoopHighWatermark(intProperty("iot.backpressure.loop.high", config.getLoopHighWatermark()));
+        config.setLoopLowWatermark(intProperty("iot.backpressure.loop.low", config.getLoopLowWatermark()));
+        config.setWriteBufferHighWatermark(intProperty("iot.backpressure.write.high", config.getWriteBufferHighWatermark()));
+        config.setWriteBufferLowWatermark(intProperty("iot.backpressure.write.low", config.getWriteBufferLowWatermark()));
+        config.setLivenessPolicies(LivenessPolicies.parse(System.getProperty("iot.liveness.timeouts")));
+        config.setLivenessTickMillis(intProperty("iot.liveness.tickMillis", (int) config.getLivenessTickMillis()));
+        config.setTcpBacklog(intProperty("iot.tcp.backlog", config.getTcpBacklog()));
+        config.setTcpReusePortAcceptors(intProperty("iot.tcp.reusePortAcceptors", config.getTcpReusePortAcceptors()));
+        config.setAdmissionEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.admission.enabled", String.valueOf(config.isAdmissionEnabled()))));
+        config.setAcceptRate(intProperty("iot.admission.acceptRate", config.getAcceptRate()));
+        config.setAcceptBurst(intProperty("iot.admission.acceptBurst", config.getAcceptBurst()));
+        config.setPerIpAcceptRate(intProperty("iot.admission.perIpRate", config.getPerIpAcceptRate()));
+        config.setPerIpAcceptBurst(intProperty("iot.admission.perIpBurst", config.getPerIpAcceptBurst()));
+        config.setTrustedAddresses(System.getProperty("iot.admission.trustedIps", config.getTrustedAddresses()));
+        config.setMaxPendingRegistrations(intProperty("iot.admission.maxPending", config.getMaxPendingRegistrations()));
+        config.setRetryBaseMillis(intProperty("iot.admission.retryBaseMillis", config.getRetryBaseMillis()));
+        config.setRetryMaxMillis(intProperty("iot.admission.retryMaxMillis", config.getRetryMaxMillis()));
+        config.setSessionTtlMillis(intProperty("iot.session.ttlMillis", config.getSessionTtlMillis()));
+        config.setRegistryEngine(RegistryEngine.parse(System.getProperty("iot.registry.engine"), config.getRegistryEngine()));
+        config.setRegistryInitialCapacity(intProperty("iot.registry.initialCapacity", config.getRegistryInitialCapacity()));
+        config.setRegistryReadingBytes(intProperty("iot.registry.readingBytes", config.getRegistryReadingBytes()));
+        config.setWsListenerMode(DeliveryMode.parse(System.getProperty("iot.listener.ws.mode"), config.getWsListenerMode()));
+        config.setWsListenerLanes(intProperty("iot.listener.ws.lanes", config.getWsListenerLanes()));
+        config.setWsListenerQueueCapacity(intProperty("iot.listener.ws.queueCapacity", config.getWsListenerQueueCapacity()));
+        config.setWsListenerOverflowPolicy(OverflowPolicy.parse(System.getProperty("iot.listener.ws.overflow"), config.getWsListenerOverflowPolicy()));
+        config.setWsListUpdateMillis(intProperty("iot.ws.listUpdateMillis", config.getWsListUpdateMillis()));
+        config.setPersistenceEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.persistence.enabled", String.valueOf(config.isPersistenceEnabled()))));
+        config.setPersistenceDir(System.getProperty("iot.persistence.dir", config.getPersistenceDir()));
+        config.setPersistenceSegmentBytes(intProperty("iot.persistence.segmentBytes", config.getPersistenceSegmentBytes()));
+        config.setSnapshotIntervalSeconds(intProperty("iot.persistence.snapshotIntervalSeconds", config.getSnapshotIntervalSeconds()));
+        config.setSnapshotPartitions(intProperty("iot.persistence.snapshotPartitions", config.getSnapshotPartitions()));
+        config.setRecoveryThreads(intProperty("iot.persistence.recoveryThreads", config.getRecoveryThreads()));
+        config.setTsdbEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.tsdb.enabled", String.valueOf(config.isTsdbEnabled()))));
+        config.setTsdbDir(System.getProperty("iot.tsdb.dir", config.getTsdbDir()));
+        config.setTsdbChunkBytes(intProperty("iot.tsdb.chunkBytes", config.getTsdbChunkBytes()));
+        config.setTsdbSegmentBytes(intProperty("iot.tsdb.segmentBytes", config.getTsdbSegmentBytes()));
+        config.setTsdbRetentionHours(intProperty("iot.tsdb.retentionHours", config.getTsdbRetentionHours()));
+        config.setTsdbListenerLanes(intProperty("iot.tsdb.lanes", config.getTsdbListenerLanes()));
+        config.setRollupEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.rollup.enabled", String.valueOf(config.isRollupEnabled()))));
+        config.setRollupMinuteRetention(intProperty("iot.rollup.minuteRetention", config.getRollupMinuteRetention()));
+        config.setRollupHourRetention(intProperty("iot.rollup.hourRetention", config.getRollupHourRetention()));
+        config.setRollupGraceSeconds(intProperty("iot.rollup.graceSeconds", config.getRollupGraceSeconds()));
+        config.setRollupCloseIntervalSeconds(intProperty("iot.rollup.closeIntervalSeconds", config.getRollupCloseIntervalSeconds()));
+        config.setRollupListenerLanes(intProperty("iot.rollup.lanes", config.getRollupListenerLanes()));
+        config.setSchemaDefinitions(System.getProperty("iot.schema.definitions", config.getSchemaDefinitions()));
+        config.setSchemaLearning(Boolean.parseBoolean(
+                System.getProperty("iot.schema.learning", String.valueOf(config.isSchemaLearning()))));
+        config.setRulesEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.rules.enabled", String.valueOf(config.isRulesEnabled()))));
+        config.setRulesFile(System.getProperty("iot.rules.file", config.getRulesFile()));
+        config.setClusterEnabled(Boolean.parseBoolean(
+                System.getProperty("iot.cluster.enabled", String.valueOf(config.isClusterEnabled()))));
+        config.setClusterNodeId(System.getProperty("iot.cluster.nodeId", config.getClusterNodeId()));
+        config.setClusterMembers(System.getProperty("iot.cluster.members", config.getClusterMembers()));
+        config.setClusterVirtualNodes(intProperty("iot.cluster.virtualNodes", config.getClusterVirtualNodes()));
+        config.setClusterPresenceFlushMillis(intProperty("iot.cluster.presenceFlushMillis", config.getClusterPresenceFlushMillis()));
+        config.setClusterQueryTimeoutMillis(intProperty("iot.cluster.queryTimeoutMillis", config.getClusterQueryTimeoutMillis()));
+        config.setClusterReconnectMillis(intProperty("iot.cluster.reconnectMillis", config.getClusterReconnectMillis()));
+        config.setClusterRebalance(Boolean.parseBoolean(
+                System.getProperty("iot.cluster.rebalance", String.valueOf(config.isClusterRebalance()))));
+        return config;
+    }
+
+    static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("配置项 " + key + " 不是有效的整数: " + value, e);
+        }
+    }
+
+    // Getters and Setters
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    /**
+     * 设置传输类型，设置时即解析为当前平台实际可用的类型
+     */
+    public void setTransport(TransportType transport) {
+        this.transport = transport.resolve();
+    }
+
+    public int getTcpBossThreads() {
+        return tcpBossThreads;
+    }
+
+    public void setTcpBossThreads(int tcpBossThreads) {
+        this.tcpBossThreads = tcpBossThreads;
+    }
+
+    /**
+     * TCP接收线程数，多监听绑定时至少为监听Channel数，保证每个监听Channel独占一个线程
+     */
+    public int getEffectiveTcpBossThreads() {
+        if (tcpReusePortAcceptors > 1 && transport.supportsReusePort()) {
+            return Math.max(tcpBossThreads, tcpReusePortAcceptors);
+        }
+        return tcpBossThreads;
+    }
+
+    public int getTcpWorkerThreads() {
+        return tcpWorkerThreads;
+    }
+
+    public void setTcpWorkerThreads(int tcpWorkerThreads) {
+        this.tcpWorkerThreads = tcpWorkerThreads;
+    }
+
+    public int getWsBossThreads() {
+        return wsBossThreads;
+    }
+
+    public void setWsBossThreads(int wsBossThreads) {
+        this.wsBossThreads = wsBossThreads;
+    }
+
+    public int getWsWorkerThreads() {
+        return wsWorkerThreads;
+    }
+
+    public void setWsWorkerThreads(int wsWorkerThreads) {
+        this.wsWorkerThreads = wsWorkerThreads;
+    }
+
+    public boolean isSharedEventLoops() {
+        return sharedEventLoops;
+    }
+
+    public void setSharedEventLoops(boolean sharedEventLoops) {
+        this.sharedEventLoops = sharedEventLoops;
+    }
+
+    public int getFlushConsolidationLimit() {
+        return flushConsolidationLimit;
+    }
+
+    public void setFlushConsolidationLimit(int flushConsolidationLimit) {
+        this.flushConsolidationLimit = flushConsolidationLimit;
+    }
+
+    public AckPolicies getAckPolicies() {
+        return ackPolicies;
+    }
+
+    public void setAckPolicies(AckPolicies ackPolicies) {
+        this.ackPolicies = ackPolicies;
+    }
+
+    public boolean isIngestEnabled() {
+        return ingestEnabled;
+    }
+
+    public void setIngestEnabled(boolean ingestEnabled) {
+        this.ingestEnabled = ingestEnabled;
+    }
+
+    public int getIngestCapacity() {
+        return ingestCapacity;
+    }
+
+    public void setIngestCapacity(int ingestCapacity) {
+        this.ingestCapacity = ingestCapacity;
+    }
+
+    public boolean isIngestSharded() {
+        return ingestSharded;
+    }
+
+    public void setIngestSharded(boolean ingestSharded) {
+        this.ingestSharded = ingestSharded;
+    }
+
+    public int getIngestLaneCapacity() {
+        return ingestLaneCapacity;
+    }
+
+    public void setIngestLaneCapacity(int ingestLaneCapacity) {
+        this.ingestLaneCapacity = ingestLaneCapacity;
+    }
+
+    public int getIngestBatchSize() {
+        return ingestBatchSize;
+    }
+
+    public void setIngestBatchSize(int ingestBatchSize) {
+        this.ingestBatchSize = ingestBatchSize;
+    }
+
+    public WaitStrategy getIngestWaitStrategy() {
+        return ingestWaitStrategy;
+    }
+
+    public void setIngestWaitStrategy(WaitStrategy ingestWaitStrategy) {
+        this.ingestWaitStrategy = ingestWaitStrategy;
+    }
+
+    public OverflowPolicy getIngestOverflowPolicy() {
+        return ingestOverflowPolicy;
+    }
+
+    public void setIngestOverflowPolicy(OverflowPolicy ingestOverflowPolicy) {
+        this.ingestOverflowPolicy = ingestOverflowPolicy;
+    }
+
+    public boolean isBackpressureEnabled() {
+        return backpressureEnabled;
+    }
+
+    public void setBackpressureEnabled(boolean backpressureEnabled) {
+        this.backpressureEnabled = backpressureEnabled;
+    }
+
+    public int getDeviceHighWatermark() {
+        return deviceHighWatermark;
+    }
+
+    public void setDeviceHighWatermark(int deviceHighWatermark) {
+        this.deviceHighWatermark = deviceHighWatermark;
+    }
+
+    public int getDeviceLowWatermark() {
+        return deviceLowWatermark;
+    }
+
+    public void setDeviceLowWatermark(int deviceLowWatermark) {
+        this.deviceLowWatermark = deviceLowWatermark;
+    }
+
+    public int getLoopHighWatermark() {
+        return loopHighWatermark;
+    }
+
+    public void setLoopHighWatermark(int loopHighWatermark) {
+        this.loopHighWatermark = loopHighWatermark;
+    }
+
+    public int getLoopLowWatermark() {
+        return loopLowWatermark;
+    }
+
+    public void setLoopLowWatermark(int loopLowWatermark) {
+        this.loopLowWatermark = loopLowWatermark;
+    }
+
+    public int getWriteBufferHighWatermark() {
+        return writeBufferHighWatermark;
+    }
+
+    public void setWriteBufferHighWatermark(int writeBufferHighWatermark) {
+        this.writeBufferHighWatermark = writeBufferHighWatermark;
+    }
+
+    public int getWriteBufferLowWatermark() {
+        return writeBufferLowWatermark;
+    }
+
+    public void setWriteBufferLowWatermark(int writeBufferLowWatermark) {
+        this.writeBufferLowWatermark = writeBufferLowWatermark;
+    }
+
+    public LivenessPolicies getLivenessPolicies() {
+        return livenessPolicies;
+    }
+
+    public void setLivenessPolicies(LivenessPolicies livenessPolicies) {
+        this.livenessPolicies = livenessPolicies;
+    }
+
+    public long getLivenessTickMillis() {
+        return livenessTickMillis;
+    }
+
+    public void setLivenessTickMillis(long livenessTickMillis) {
+        this.livenessTickMillis = livenessTickMillis;
+    }
+
+    public int getTcpBacklog() {
+        return tcpBacklog;
+    }
+
+    public void setTcpBacklog(int tcpBacklog) {
+        this.tcpBacklog = tcpBacklog;
+    }
+
+    public int getTcpReusePortAcceptors() {
+        return tcpReusePortAcceptors;
+    }
+
+    public void setTcpReusePortAcceptors(int tcpReusePortAcceptors) {
+        this.tcpReusePortAcceptors = tcpReusePortAcceptors;
+    }
+
+    public boolean isAdmissionEnabled() {
+        return admissionEnabled;
+    }
+
+    public void setAdmissionEnabled(boolean admissionEnabled) {
+        this.admissionEnabled = admissionEnabled;
+    }
+
+    public int getAcceptRate() {
+        return acceptRate;
+    }
+
+    public void setAcceptRate(int acceptRate) {
+        this.acceptRate = acceptRate;
+    }
+
+    public int getAcceptBurst() {
+        return acceptBurst;
+    }
+
+    public void setAcceptBurst(int acceptBurst) {
+        this.acceptBurst = acceptBurst;
+    }
+
+    public int getPerIpAcceptRate() {
+        return perIpAcceptRate;
+    }
+
+    public void setPerIpAcceptRate(int perIpAcceptRate) {
+        this.perIpAcceptRate = perIpAcceptRate;
+    }
+
+    public int getPerIpAcceptBurst() {
+        return perIpAcceptBurst;
+    }
+
+    public void setPerIpAcceptBurst(int perIpAcceptBurst) {
+        this.perIpAcceptBurst = perIpAcceptBurst;
+    }
+
+    public String getTrustedAddresses() {
+        return trustedAddresses;
+    }
+
+    public void setTrustedAddresses(String trustedAddresses) {
+        this.trustedAddresses = trustedAddresses;
+    }
+
+    public int getMaxPendingRegistrations() {
+        return maxPendingRegistrations;
+    }
+
+    public void setMaxPendingRegistrations(int maxPendingRegistrations) {
+        this.maxPendingRegistrations = maxPendingRegistrations;
+    }
+
+    public int getRetryBaseMillis() {
+        return retryBaseMillis;
+    }
+
+    public void setRetryBaseMillis(int retryBaseMillis) {
+        this.retryBaseMillis = retryBaseMillis;
+    }
+
+    public int getRetryMaxMillis() {
+        return retryMaxMillis;
+    }
+
+    public void setRetryMaxMillis(int retryMaxMillis) {
+        this.retryMaxMillis = retryMaxMillis;
+    }
+
+    public int getSessionTtlMillis() {
+        return sessionTtlMillis;
+    }
+
+    public void setSessionTtlMillis(int sessionTtlMillis) {
+        this.sessionTtlMillis = sessionTtlMillis;
+    }
+
+    public RegistryEngine getRegistryEngine() {
+        return registryEngine;
+    }
+
+    public void setRegistryEngine(RegistryEngine registryEngine) {
+        this.registryEngine = registryEngine;
+    }
+
+    public int getRegistryInitialCapacity() {
+        return registryInitialCapacity;
+    }
+
+    public void setRegistryInitialCapacity(int registryInitialCapacity) {
+        this.registryInitialCapacity = registryInitialCapacity;
+    }
+
+    public int getRegistryReadingBytes() {
+        return registryReadingBytes;
+    }
+
+    public void setRegistryReadingBytes(int registryReadingBytes) {
+        this.registryReadingBytes = registryReadingBytes;
+    }
+
+    public DeliveryMode getWsListenerMode() {
+        return wsListenerMode;
+    }
+
+    public void setWsListenerMode(DeliveryMode wsListenerMode) {
+        this.wsListenerMode = wsListenerMode;
+    }
+
+    public int getWsListenerLanes() {
+        return wsListenerLanes;
+    }
+
+    public void setWsListenerLanes(int wsListenerLanes) {
+        this.wsListenerLanes = wsListenerLanes;
+    }
+
+    public int getWsListenerQueueCapacity() {
+        return wsListenerQueueCapacity;
+    }
+
+    public void setWsListenerQueueCapacity(int wsListenerQueueCapacity) {
+        this.wsListenerQueueCapacity = wsListenerQueueCapacity;
+    }
+
+    public OverflowPolicy getWsListenerOverflowPolicy() {
+        return wsListenerOverflowPolicy;
+    }
+
+    public void setWsListenerOverflowPolicy(OverflowPolicy wsListenerOverflowPolicy) {
+        this.wsListenerOverflowPolicy = wsListenerOverflowPolicy;
+    }
+
+    public int getWsListUpdateMillis() {
+        return wsListUpdateMillis;
+    }
+
+    public void setWsListUpdateMillis(int wsListUpdateMillis) {
+        this.wsListUpdateMillis = wsListUpdateMillis;
+    }
+
+    public boolean isPersistenceEnabled() {
+        return persistenceEnabled;
+    }
+
+    public void setPersistenceEnabled(boolean persistenceEnabled) {
+        this.persistenceEnabled = persistenceEnabled;
+    }
+
+    public String getPersistenceDir() {
+        return persistenceDir;
+    }
+
+    public void setPersistenceDir(String persistenceDir) {
+        this.persistenceDir = persistenceDir;
+    }
+
+    public int getPersistenceSegmentBytes() {
+        return persistenceSegmentBytes;
+    }
+
+    public void setPersistenceSegmentBytes(int persistenceSegmentBytes) {
+        this.persistenceSegmentBytes = persistenceSegmentBytes;
+    }
+
+    public int getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public void setSnapshotIntervalSeconds(int snapshotIntervalSeconds) {
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    public int getSnapshotPartitions() {
+        return snapshotPartitions;
+    }
+
+    public void setSnapshotPartitions(int snapshotPartitions) {
+        this.snapshotPartitions = snapshotPartitions;
+    }
+
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    public void setRecoveryThreads(int recoveryThreads) {
+        this.recoveryThreads = recoveryThreads;
+    }
+
+    public boolean isTsdbEnabled() {
+        return tsdbEnabled;
+    }
+
+    public void setTsdbEnabled(boolean tsdbEnabled) {
+        this.tsdbEnabled = tsdbEnabled;
+    }
+
+    public String getTsdbDir() {
+        return tsdbDir;
+    }
+
+    public void setTsdbDir(String tsdbDir) {
+        this.tsdbDir = tsdbDir;
+    }
+
+    public int getTsdbChunkBytes() {
+        return tsdbChunkBytes;
+    }
+
+    public void setTsdbChunkBytes(int tsdbChunkBytes) {
+        this.tsdbChunkBytes = tsdbChunkBytes;
+    }
+
+    public int getTsdbSegmentBytes() {
+        return tsdbSegmentBytes;
+    }
+
+    public void setTsdbSegmentBytes(int tsdbSegmentBytes) {
+        this.tsdbSegmentBytes = tsdbSegmentBytes;
+    }
+
+    public int getTsdbRetentionHours() {
+        return tsdbRetentionHours;
+    }
+
+    public void setTsdbRetentionHours(int tsdbRetentionHours) {
+        this.tsdbRetentionHours = tsdbRetentionHours;
+    }
+
+    public int getTsdbListenerLanes() {
+        return tsdbListenerLanes;
+    }
+
+    public void setTsdbListenerLanes(int tsdbListenerLanes) {
+        this.tsdbListenerLanes = tsdbListenerLanes;
+    }
+
+    public boolean isRollupEnabled() {
+        return rollupEnabled;
+    }
+
+    public void setRollupEnabled(boolean rollupEnabled) {
+        this.rollupEnabled = rollupEnabled;
+    }
+
+    public int getRollupMinuteRetention() {
+        return rollupMinuteRetention;
+    }
+
+    public void setRollupMinuteRetention(int rollupMinuteRetention) {
+        this.rollupMinuteRetention = rollupMinuteRetention;
+    }
+
+    public int getRollupHourRetention() {
+        return rollupHourRetention;
+    }
+
+    public void setRollupHourRetention(int rollupHourRetention) {
+        this.rollupHourRetention = rollupHourRetention;
+    }
+
+    public int getRollupGraceSeconds() {
+        return rollupGraceSeconds;
+    }
+
+    public void setRollupGraceSeconds(int rollupGraceSeconds) {
+        this.rollupGraceSeconds = rollupGraceSeconds;
+    }
+
+    public int getRollupCloseIntervalSeconds() {
+        return rollupCloseIntervalSeconds;
+    }
+
+    public void setRollupCloseIntervalSeconds(int rollupCloseIntervalSeconds) {
+        this.rollupCloseIntervalSeconds = rollupCloseIntervalSeconds;
+    }
+
+    public int getRollupListenerLanes() {
+        return rollupListenerLanes;
+    }
+
+    public void setRollupListenerLanes(int rollupListenerLanes) {
+        this.rollupListenerLanes = rollupListenerLanes;
+    }
+
+    public String getSchemaDefinitions() {
+        return schemaDefinitions;
+    }
+
+    public void setSchemaDefinitions(String schemaDefinitions) {
+        this.schemaDefinitions = schemaDefinitions;
+    }
+
+    public boolean isSchemaLearning() {
+        return schemaLearning;
+    }
+
+    public void setSchemaLearning(boolean schemaLearning) {
+        this.schemaLearning = schemaLearning;
+    }
+
+    public boolean isRulesEnabled() {
+        return rulesEnabled;
+    }
+
+    public void setRulesEnabled(boolean rulesEnabled) {
+        this.rulesEnabled = rulesEnabled;
+    }
+
+    public String getRulesFile() {
+        return rulesFile;
+    }
+
+    public void setRulesFile(String rulesFile) {
+        this.rulesFile = rulesFile;
+    }
+
+    public boolean isClusterEnabled() {
+        return clusterEnabled;
+    }
+
+    public void setClusterEnabled(boolean clusterEnabled) {
+        this.clusterEnabled = clusterEnabled;
+    }
+
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    public void setClusterNodeId(String clusterNodeId) {
+        this.clusterNodeId = clusterNodeId;
+    }
+
+    public String getClusterMembers() {
+        return clusterMembers;
+    }
+
+    public void setClusterMembers(String clusterMembers) {
+        this.clusterMembers = clusterMembers;
+    }
+
+    public int getClusterVirtualNodes() {
+        return clusterVirtualNodes;
+    }
+
+    public void setClusterVirtualNodes(int clusterVirtualNodes) {
+        this.clusterVirtualNodes = clusterVirtualNodes;
+    }
+
+    public int getClusterPresenceFlushMillis() {
+        return clusterPresenceFlushMillis;
+    }
+
+    public void setClusterPresenceFlushMillis(int clusterPresenceFlushMillis) {
+        this.clusterPresenceFlushMillis = clusterPresenceFlushMillis;
+    }
+
+    public int getClusterQueryTimeoutMillis() {
+        return clusterQueryTimeoutMillis;
+    }
+
+    public void setClusterQueryTimeoutMillis(int clusterQueryTimeoutMillis) {
+        this.clusterQueryTimeoutMillis = clusterQueryTimeoutMillis;
+    }
+
+    public int getClusterReconnectMillis() {
+        return clusterReconnectMillis;
+    }
+
+    public void setClusterReconnectMillis(int clusterReconnectMillis) {
+        this.clusterReconnectMillis = clusterReconnectMillis;
+    }
+
+    public boolean isClusterRebalance() {
+        return clusterRebalance;
+    }
+
+    public void setClusterRebalance(boolean clusterRebalance) {
+        this.clusterRebalance = clusterRebalance;
+    }
+
+    /**
+     * WebSocket推送监听器的注册参数
+     */
+    public ListenerOptions wsListenerOptions(String name) {
+        ListenerOptions options = new ListenerOptions();
+        options.setName(name);
+        options.setMode(wsListenerMode);
+        options.setLanes(wsListenerLanes);
+        options.setQueueCapacity(wsListenerQueueCapacity);
+        options.setOverflowPolicy(wsListenerOverflowPolicy);
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig{" +
+                "transport=" + transport +
+                ", tcpBossThreads=" + tcpBossThreads +
+                ", tcpWorkerThreads=" + tcpWorkerThreads +
+                ", wsBossThreads=" + wsBossThreads +
+                ", wsWorkerThreads=" + wsWorkerThreads +
+                ", sharedEventLoops=" + sharedEventLoops +
+                ", flushConsolidationLimit=" + flushConsolidationLimit +
+                ", ackPolicies=" + ackPolicies +
+                ", ingestEnabled=" + ingestEnabled +
+                ", ingestCapacity=" + ingestCapacity +
+                ", ingestSharded=" + ingestSharded +
+                ", ingestLaneCapacity=" + ingestLaneCapacity +
+                ", ingestBatchSize=" + ingestBatchSize +
+                ", ingestWaitStrategy=" + ingestWaitStrategy +
+                ", ingestOverflowPolicy=" + ingestOverflowPolicy +
+                ", backpressureEnabled=" + backpressureEnabled +
+                ", deviceWatermark=" + deviceLowWatermark + "/" + deviceHighWatermark +
+                ", loopWatermark=" + loopLowWatermark + "/" + loopHighWatermark +
+                ", writeBufferWatermark=" + writeBufferLowWatermark + "/" + writeBufferHighWatermark +
+                ", livenessPolicies=" + livenessPolicies +
+                ", livenessTickMillis=" + livenessTickMillis +
+                ", tcpBacklog=" + tcpBacklog +
+                ", tcpReusePortAcceptors=" + tcpReusePortAcceptors +
+                ", admissionEnabled=" + admissionEnabled +
+                ", acceptRate=" + acceptRate + "/" + acceptBurst +
+                ", perIpAcceptRate=" + perIpAcceptRate + "/" + perIpAcceptBurst +
+                ", trustedAddresses=" + trustedAddresses +
+                ", maxPendingRegistrations=" + maxPendingRegistrations +
+                ", retryMillis=" + retryBaseMillis + "-" + retryMaxMillis +
+                ", sessionTtlMillis=" + sessionTtlMillis +
+                ", registryEngine=" + registryEngine +
+                ", wsListener=" + wsListenerMode + "/" + wsListenerLanes + "lanes/" + wsListenerQueueCapacity +
+                "/" + wsListenerOverflowPolicy +
+                ", wsListUpdateMillis=" + wsListUpdateMillis +
+                ", persistenceEnabled=" + persistenceEnabled +
+                ", persistenceDir=" + persistenceDir +
+                ", snapshotIntervalSeconds=" + snapshotIntervalSeconds +
+                ", tsdbEnabled=" + tsdbEnabled +
+                ", tsdbDir=" + tsdbDir +
+                ", tsdbChunkBytes=" + tsdbChunkBytes +
+                ", tsdbRetentionHours=" + tsdbRetentionHours +
+                ", rollupEnabled=" + rollupEnabled +
+                ", rollupRetention=" + rollupMinuteRetention + "min/" + rollupHourRetention + "h" +
+                ", schemaDefinitions=" + schemaDefinitions +
+                ", schemaLearning=" + schemaLearning +
+                ", rulesEnabled=" + rulesEnabled +
+                ", rulesFile=" + rulesFile +
+                ", clusterEnabled=" + clusterEnabled +
+                ", clusterNodeId=" + clusterNodeId +
+                ", clusterMembers=" + clusterMembers +
+                ", clusterVirtualNodes=" + clusterVirtualNodes +
+                ", clusterPresenceFlushMillis=" + clusterPresenceFlushMillis +
+                ", clusterQueryTimeoutMillis=" + clusterQueryTimeoutMillis +
+                ", clusterReconnectMillis=" + clusterReconnectMillis +
+                ", clusterRebalance=" + clusterRebalance +
+                '}';
+    }
+}
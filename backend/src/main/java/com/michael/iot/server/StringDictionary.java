@@ -0,0 +1,66 @@
+package com.michael.iot.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 字符串字典
+ * 大量设备共用的取值（设备类型、设备名称）只保留一份实例。
+ * 字典达到容量上限后不再收录新值，直接返回原字符串，避免唯一值过多时字典本身占用内存。
+ * 设备类型最多收录1024个，设备名称最多收录65536个，且只增不减：设备名称各不相同的大规模部署中，
+ * 前65536个名称之后的设备各自保留一份名称，未能收录的次数见getMisses。
+ */
+public class StringDictionary {
+    public static final StringDictionary DEVICE_TYPES = new StringDictionary(1024);
+    public static final StringDictionary DEVICE_NAMES = new StringDictionary(65536);
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final LongAdder misses = new LongAdder();
+
+    public StringDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 返回字典中与value相等的实例
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = values.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (values.size() >= maxSize) {
+            misses.increment();
+            return value;
+        }
+        existing = values.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 字典已满、未能收录而直接返回原字符串的次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StringDictionary{" +
+                "size=" + values.size() + "/" + maxSize +
+                ", misses=" + misses.sum() +
+                '}';
+    }
+}
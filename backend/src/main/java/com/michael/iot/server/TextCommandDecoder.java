@@ -0,0 +1,32 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * 文本协议命令解码器
+ * 位于行分帧解码器之后，把每一帧原地解析为可复用的TextDeviceCommand交给业务处理器。
+ * 消息帧在业务处理器返回后立即释放，整个过程不产生新的字符串或数组。
+ * 每个连接需要一个独立的实例。
+ */
+public class TextCommandDecoder extends ChannelInboundHandlerAdapter {
+    private final TextDeviceCommand command = new TextDeviceCommand();
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        ByteBuf frame = (ByteBuf) msg;
+        try {
+            command.parse(frame);
+            ctx.fireChannelRead(command);
+        } finally {
+            command.clear();
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 文本协议设备命令（享元对象）
+ * 直接引用入站消息帧，记录命令动词和各个'|'分隔字段在ByteBuf中的位置，
+ * 只有在真正需要字符串时才进行解码。
+ */
+public class TextDeviceCommand extends DeviceCommand {
+    private static final byte SEPARATOR = '|';
+    private static final int INITIAL_FIELDS = 16;
+    // 最多字段数，足够容纳2048条读数的DATA_BATCH
+    static final int MAX_FIELDS = 4097;
+
+    private int[] fieldStarts = new int[INITIAL_FIELDS];
+    private int[] fieldEnds = new int[INITIAL_FIELDS];
+    private ByteBuf frame;
+    private int fieldCount;
+    private CommandType type = CommandType.UNKNOWN;
+
+    /**
+     * 解析一帧文本消息（不含换行符）
+     * 前后空白会被忽略，超过MAX_FIELDS的内容全部归入最后一个字段
+     * @param frame 消息帧，调用方负责释放
+     * @return 是否至少解析出一个字段
+     */
+    public boolean parse(ByteBuf frame) {
+        this.frame = frame;
+        this.fieldCount = 0;
+        this.type = CommandType.UNKNOWN;
+
+        int start = frame.readerIndex();
+        int end = frame.writerIndex();
+        while (start < end && isWhitespace(frame.getByte(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(frame.getByte(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return false;
+        }
+
+        int fieldStart = start;
+        for (int i = start; i < end && fieldCount < MAX_FIELDS - 1; i++) {
+            if (frame.getByte(i) == SEPARATOR) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(fieldStart, end);
+
+        type = CommandType.match(frame, fieldStarts[0], fieldEnds[0] - fieldStarts[0]);
+        return true;
+    }
+
+    /**
+     * 按无符号比较，UTF-8多字节字符的后续字节为负值，不能当作空白
+     */
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    @Override
+    public void clear() {
+        frame = null;
+        fieldCount = 0;
+        type = CommandType.UNKNOWN;
+    }
+
+    @Override
+    public CommandType getType() {
+        return type;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String getVerb() {
+        return field(0);
+    }
+
+    @Override
+    public String field(int index) {
+        checkIndex(index);
+        return frame.toString(fieldStarts[index], fieldEnds[index] - fieldStarts[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解码从指定字段开始直到消息末尾的全部内容（包含其中的'|'）
+     * @param index 起始字段下标
+     */
+    public String remainder(int index) {
+        checkIndex(index);
+        int end = fieldEnds[fieldCount - 1];
+        return frame.toString(fieldStarts[index], end - fieldStarts[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 数据内容为第一个分隔符之后的全部内容
+     */
+    @Override
+    public String getPayload() {
+        return fieldCount < 2 ? null : remainder(1);
+    }
+
+    /**
+     * 批量数据格式为 DATA_BATCH|时间戳|数据|时间戳|数据...
+     */
+    @Override
+    public DeviceDataBatch getBatch() {
+        if (type != CommandType.DATA_BATCH || fieldCount < 3 || (fieldCount - 1) % 2 != 0) {
+            return null;
+        }
+        DeviceDataBatch batch = new DeviceDataBatch((fieldCount - 1) / 2);
+        for (int i = 1; i < fieldCount; i += 2) {
+            long timestamp = fieldAsLong(i);
+            if (timestamp < 0) {
+                return null;
+            }
+            batch.add(timestamp, field(i + 1));
+        }
+        return batch;
+    }
+
+    /**
+     * 直接扫描消息帧中的数据内容，不创建字符串
+     */
+    @Override
+    public int extractReading(SensorExtractor extractor, String deviceType, long timestamp, SensorReading reading) {
+        if (type != CommandType.DATA || fieldCount < 2) {
+            return 0;
+        }
+        return extractor.extract(reading, deviceType, timestamp, frame, fieldStarts[1], fieldEnds[fieldCount - 1]);
+    }
+
+    @Override
+    public int extractBatchReading(SensorExtractor extractor, String deviceType, int entry, long timestamp,
+                                   SensorReading reading) {
+        int index = 2 + entry * 2;
+        if (type != CommandType.DATA_BATCH || index >= fieldCount) {
+            return 0;
+        }
+        return extractor.extract(reading, deviceType, timestamp, frame, fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * 不解码直接把字段解析为非负整数
+     * @return 解析结果，字段不是合法的非负整数时返回-1
+     */
+    public long fieldAsLong(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = frame.getByte(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 不解码的情况下比较字段内容
+     */
+    @Override
+    public boolean fieldEquals(int index, String value) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int length = fieldEnds[index] - start;
+        if (length != value.length()) {
+            // UTF-8下非ASCII字符的字节数与字符数不同，交给解码后比较
+            return !isAscii(value) && value.equals(field(index));
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                return value.equals(field(index));
+            }
+            if (frame.getByte(start + i) != (byte) c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (frame == null || index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("字段下标越界: " + index + ", 字段数: " + fieldCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (frame == null || fieldCount == 0) {
+            return "TextDeviceCommand{}";
+        }
+        return "TextDeviceCommand{" +
+                "type=" + type +
+                ", fields=" + fieldCount +
+                ", text='" + remainder(0) + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,47 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文本协议响应编码器
+ * 每条响应编码为一行UTF-8文本，固定响应复用预编码的缓冲区。
+ * 预编码缓冲区来自池化分配器且永不释放，每次写出取retainedDuplicate()，
+ * 派生视图由Netty的对象池回收，写固定响应不产生新对象。
+ */
+@ChannelHandler.Sharable
+public class TextResponseEncoder extends MessageToMessageEncoder<DeviceResponse> {
+    public static final TextResponseEncoder INSTANCE = new TextResponseEncoder();
+
+    private final Map<DeviceResponse.Code, ByteBuf> encoded = new EnumMap<>(DeviceResponse.Code.class);
+
+    private TextResponseEncoder() {
+        for (DeviceResponse response : new DeviceResponse[]{
+                DeviceResponse.WELCOME, DeviceResponse.HEARTBEAT_OK, DeviceResponse.DATA_RECEIVED, DeviceResponse.PING}) {
+            byte[] bytes = (response.getText() + "\n").getBytes(StandardCharsets.UTF_8);
+            encoded.put(response.getCode(), PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes));
+        }
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, DeviceResponse response, List<Object> out) throws Exception {
+        if (response.isShared()) {
+            out.add(encoded.get(response.getCode()).retainedDuplicate());
+            return;
+        }
+        String text = response.getText();
+        ByteBuf buf = ctx.alloc().buffer(ByteBufUtil.utf8MaxBytes(text) + 1);
+        buf.writeCharSequence(text, StandardCharsets.UTF_8);
+        buf.writeByte('\n');
+        out.add(buf);
+    }
+}
@@ -0,0 +1,269 @@
+package com.michael.iot.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 定长的压缩时序数据块
+ * 时间戳按二阶差分编码，数值按与前一个值的异或编码（Gorilla压缩），数据按位写入固定大小的long数组，
+ * 写满后由TimeSeriesStore封存到内存映射文件，封存后的字节与内存中的编码完全相同。
+ * <pre>
+ * 第一个点: 时间戳(64位) 数值(64位)
+ * 时间戳二阶差分 d: 0 -> '0'；[-64,63] -> '10'+7位；[-256,255] -> '110'+9位；[-2048,2047] -> '1110'+12位；其他 -> '1111'+64位
+ * 数值异或 x: 0 -> '0'；前导零和末尾零都不少于上一次 -> '10'+有效位；否则 '11'+前导零(6位)+有效位数-1(6位)+有效位
+ * </pre>
+ * 非线程安全，由所属时间序列加锁访问。
+ */
+public class TimeSeriesChunk {
+    // 单个点编码的最大位数: 4 + 64 + 2 + 6 + 6 + 64
+    private static final int MAX_POINT_BITS = 146;
+
+    private final long[] words;
+    private final int capacityBits;
+    private int bitPosition;
+    private int count;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private long previousTime;
+    private long previousDelta;
+    private long previousValue;
+    private int previousLeading = -1;
+    private int previousTrailing;
+
+    /**
+     * @param capacityBytes 数据块大小（字节），向上取整为8的倍数
+     */
+    public TimeSeriesChunk(int capacityBytes) {
+        int wordCount = maxByteLength(capacityBytes) / 8;
+        this.words = new long[wordCount];
+        this.capacityBits = wordCount * 64;
+    }
+
+    /**
+     * 追加一个点
+     * @return 数据块剩余空间不足时返回false，需要封存后换新的数据块
+     */
+    public boolean append(long timestamp, double value) {
+        if (capacityBits - bitPosition < MAX_POINT_BITS) {
+            return false;
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            writeBits(timestamp, 64);
+            writeBits(bits, 64);
+        } else {
+            long delta = timestamp - previousTime;
+            writeTimestamp(delta - previousDelta);
+            writeValue(bits ^ previousValue);
+            previousDelta = delta;
+        }
+        previousTime = timestamp;
+        previousValue = bits;
+        minTime = Math.min(minTime, timestamp);
+        maxTime = Math.max(maxTime, timestamp);
+        count++;
+        return true;
+    }
+
+    private void writeTimestamp(long dod) {
+        if (dod == 0) {
+            writeBits(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            writeBits(0b10, 2);
+            writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            writeBits(0b110, 3);
+            writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(dod, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(long xor) {
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        int leading = Long.numberOfLeadingZeros(xor);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            int significant = 64 - leading - trailing;
+            writeBits(0b11, 2);
+            writeBits(leading, 6);
+            writeBits(significant - 1, 6);
+            writeBits(xor >>> trailing, significant);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    /**
+     * 写入value的低bits位，高位在前
+     */
+    private void writeBits(long value, int bits) {
+        if (bits < 64) {
+            value &= (1L << bits) - 1;
+        }
+        int index = bitPosition >>> 6;
+        int offset = bitPosition & 63;
+        int free = 64 - offset;
+        if (bits <= free) {
+            words[index] |= value << (free - bits);
+        } else {
+            words[index] |= value >>> (bits - free);
+            words[index + 1] |= value << (64 - (bits - free));
+        }
+        bitPosition += bits;
+    }
+
+    /**
+     * 已编码数据的位数
+     */
+    int bitLength() {
+        return bitPosition;
+    }
+
+    /**
+     * 已编码数据的字节数
+     */
+    public int byteLength() {
+        return ((bitPosition + 63) >>> 6) * 8;
+    }
+
+    /**
+     * 按给定容量创建的数据块写满时的编码字节数
+     */
+    static int maxByteLength(int capacityBytes) {
+        return Math.max(4, (capacityBytes + 7) / 8) * 8;
+    }
+
+    /**
+     * 把已编码数据写入缓冲区，字节序为大端
+     */
+    public void writeTo(ByteBuffer buffer) {
+        int wordCount = (bitPosition + 63) >>> 6;
+        for (int i = 0; i < wordCount; i++) {
+            buffer.putLong(words[i]);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getMinTime() {
+        return minTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * 解码数据块中时间在[from, to]内的点
+     * @param data 已编码数据，从当前位置开始
+     * @param count 数据块中的点数
+     * @return 交给consumer的点数
+     */
+    public static int decode(ByteBuffer data, int count, long from, long to, PointConsumer consumer) {
+        BitReader reader = new BitReader(data);
+        long timestamp = 0;
+        long delta = 0;
+        long value = 0;
+        int leading = 0;
+        int trailing = 0;
+        int accepted = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                timestamp = reader.read(64);
+                value = reader.read(64);
+            } else {
+                delta += readTimestamp(reader);
+                timestamp += delta;
+                if (reader.read(1) != 0) {
+                    if (reader.read(1) != 0) {
+                        leading = (int) reader.read(6);
+                        int significant = (int) reader.read(6) + 1;
+                        trailing = 64 - leading - significant;
+                    }
+                    value ^= reader.read(64 - leading - trailing) << trailing;
+                }
+            }
+            if (timestamp >= from && timestamp <= to) {
+                consumer.accept(timestamp, Double.longBitsToDouble(value));
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    private static long readTimestamp(BitReader reader) {
+        if (reader.read(1) == 0) {
+            return 0;
+        }
+        if (reader.read(1) == 0) {
+            return reader.readSigned(7);
+        }
+        if (reader.read(1) == 0) {
+            return reader.readSigned(9);
+        }
+        if (reader.read(1) == 0) {
+            return reader.readSigned(12);
+        }
+        return reader.read(64);
+    }
+
+    /**
+     * 解码后的点
+     */
+    public interface PointConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    /**
+     * 按位读取大端long序列
+     */
+    private static final class BitReader {
+        private final ByteBuffer data;
+        private long current;
+        private int available;
+
+        BitReader(ByteBuffer data) {
+            this.data = data;
+        }
+
+        long read(int bits) {
+            if (bits == 0) {
+                return 0;
+            }
+            if (available == 0) {
+                current = data.getLong();
+                available = 64;
+            }
+            if (bits <= available) {
+                available -= bits;
+                long value = current >>> available;
+                return bits == 64 ? value : value & ((1L << bits) - 1);
+            }
+            int rest = bits - available;
+            long high = available == 64 ? current : current & ((1L << available) - 1);
+            current = data.getLong();
+            available = 64 - rest;
+            return (high << rest) | (current >>> available);
+        }
+
+        /**
+         * 读取bits位并按补码解释为有符号数
+         */
+        long readSigned(int bits) {
+            long value = read(bits);
+            return (value << (64 - bits)) >> (64 - bits);
+        }
+    }
+}
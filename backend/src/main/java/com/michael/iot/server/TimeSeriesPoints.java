@@ -0,0 +1,85 @@
+package com.michael.iot.server;
+
+import java.util.Arrays;
+
+/**
+ * 时序查询结果，按时间升序的点
+ */
+public class TimeSeriesPoints implements TimeSeriesChunk.PointConsumer {
+    private long[] timestamps = new long[64];
+    private double[] values = new double[64];
+    private int size;
+    private boolean truncated;
+
+    @Override
+    public void accept(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * 按时间排序并只保留最早的limit个点，数据块按写入顺序解码，乱序上报的批量数据可能使结果无序
+     */
+    void sortAndLimit(int limit) {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = timestamps[i - 1] <= timestamps[i];
+        }
+        if (!sorted) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            long[] sortedTimestamps = new long[size];
+            double[] sortedValues = new double[size];
+            for (int i = 0; i < size; i++) {
+                sortedTimestamps[i] = timestamps[order[i]];
+                sortedValues[i] = values[order[i]];
+            }
+            timestamps = sortedTimestamps;
+            values = sortedValues;
+        }
+        if (limit > 0 && size > limit) {
+            size = limit;
+            truncated = true;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * 结果是否因点数上限被截断
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("数据下标越界: " + index + ", 点数: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeriesPoints{size=" + size + ", truncated=" + truncated + '}';
+    }
+}
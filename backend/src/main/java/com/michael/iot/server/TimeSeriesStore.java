@@ -0,0 +1,487 @@
+package com.michael.iot.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 嵌入式设备时序数据存储
+ * 每个设备的每个数值指标是一条时间序列，新数据写入内存中的压缩数据块（见TimeSeriesChunk），
+ * 数据块写满后封存到内存映射的定长分段文件，内存中只保留各数据块的位置和时间范围，范围查询只解码时间窗口重叠的数据块。
+ * 作为读数监听器注册到设备管理器，启动时从已有分段文件重建索引；未写满的数据块只在内存中，正常关闭时封存。
+ * 分段文件中每个数据块为 长度(4) 设备ID 指标名(各为 2字节长度 + UTF-8) 最早时间(8) 最晚时间(8) 点数(4) 数据长度(4) 数据，长度为0表示分段结束。
+ */
+public class TimeSeriesStore implements SensorReadingListener {
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    static final String PREFIX = "chunks-";
+    static final String SUFFIX = ".dat";
+    private static final int MAGIC = 0x494F5454;        // "IOTT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_STRING_BYTES = 0xFFFF;  // 设备ID和指标名以2字节长度写入
+
+    private final Path directory;
+    private final int chunkBytes;
+    private final int segmentBytes;
+    private final long retentionMillis;
+    private final Map<String, Map<String, Series>> devices = new ConcurrentHashMap<>();
+    private final StringDictionary metricNames = new StringDictionary(4096);
+    private final List<Segment> segments = new ArrayList<>();
+    private final LongAdder points = new LongAdder();
+    private final LongAdder sealedChunks = new LongAdder();
+    private final LongAdder sealedBytes = new LongAdder();
+    private final LongAdder sealedPoints = new LongAdder();
+    private final LongAdder sealFailures = new LongAdder();
+    private final LongAdder rejectedPoints = new LongAdder();
+    private Segment current;
+    private boolean closed;
+
+    public TimeSeriesStore(ServerConfig config) throws IOException {
+        this(Path.of(config.getTsdbDir()), config.getTsdbChunkBytes(), config.getTsdbSegmentBytes(),
+                TimeUnit.HOURS.toMillis(config.getTsdbRetentionHours()));
+    }
+
+    /**
+     * @param retentionMillis 数据保留时长，0表示不过期
+     */
+    public TimeSeriesStore(Path directory, int chunkBytes, int segmentBytes, long retentionMillis) throws IOException {
+        if (segmentBytes < chunkBytes * 2 + 1024) {
+            throw new IllegalArgumentException("时序分段过小: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.chunkBytes = chunkBytes;
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(directory);
+        long lastSequence = 0;
+        for (Path file : DeviceJournal.list(directory, PREFIX, SUFFIX)) {
+            lastSequence = DeviceJournal.sequenceOf(file, PREFIX, SUFFIX);
+            load(file, lastSequence);
+        }
+        current = openSegment(lastSequence + 1);
+    }
+
+    /**
+     * 写入一个点
+     * 设备ID或指标名过长、写满的数据块放不进一个空分段时丢弃并计数，见getRejectedPoints
+     */
+    public void append(String deviceId, String metric, long timestamp, double value) {
+        Map<String, Series> metrics = devices.get(deviceId);
+        if (metrics == null) {
+            if (!fits(deviceId, metric)) {
+                rejectedPoints.increment();
+                return;
+            }
+            metrics = devices.computeIfAbsent(deviceId, id -> new ConcurrentHashMap<>());
+        }
+        Series series = metrics.get(metric);
+        if (series == null) {
+            if (!fits(deviceId, metric)) {
+                rejectedPoints.increment();
+                return;
+            }
+            String name = metricNames.intern(metric);
+            series = metrics.computeIfAbsent(name, m -> new Series(deviceId, name));
+        }
+        series.append(timestamp, value);
+        points.increment();
+    }
+
+    /**
+     * 该序列写满的数据块能否作为一条记录写入空分段
+     */
+    private boolean fits(String deviceId, String metric) {
+        int idLength = deviceId.getBytes(StandardCharsets.UTF_8).length;
+        int nameLength = metric.getBytes(StandardCharsets.UTF_8).length;
+        return idLength <= MAX_STRING_BYTES && nameLength <= MAX_STRING_BYTES
+                && fitsSegment(recordLength(idLength, nameLength, TimeSeriesChunk.maxByteLength(chunkBytes)));
+    }
+
+    private static int recordLength(int idLength, int nameLength, int dataLength) {
+        return 2 + idLength + 2 + nameLength + 8 + 8 + 4 + 4 + dataLength;
+    }
+
+    /**
+     * 记录长度(4) + 记录 + 分段结束标记(4) 不超过分段头之后的空间
+     */
+    private boolean fitsSegment(int recordLength) {
+        return 4L + recordLength + 4 <= segmentBytes - HEADER_BYTES;
+    }
+
+    /**
+     * 读数的每个字段写入一条序列
+     */
+    @Override
+    public void onReading(DeviceInfo device, SensorReading reading) {
+        String deviceId = device.getDeviceId();
+        long timestamp = reading.getTimestamp();
+        for (int i = reading.nextField(0); i >= 0; i = reading.nextField(i + 1)) {
+            append(deviceId, reading.getFieldName(i), timestamp, reading.getValue(i));
+        }
+    }
+
+    /**
+     * 查询设备某个指标在[from, to]内的点，按时间升序
+     * @param limit 最多返回的点数，超过时保留最早的部分
+     */
+    public TimeSeriesPoints query(String deviceId, String metric, long from, long to, int limit) {
+        TimeSeriesPoints result = new TimeSeriesPoints();
+        Map<String, Series> metrics = devices.get(deviceId);
+        Series series = metrics == null ? null : metrics.get(metric);
+        if (series == null || from > to) {
+            return result;
+        }
+        List<ChunkRef> refs = new ArrayList<>();
+        ByteBuffer active = series.collect(from, to, refs);
+        for (ChunkRef ref : refs) {
+            TimeSeriesChunk.decode(ref.data(), ref.count, from, to, result);
+        }
+        if (active != null) {
+            TimeSeriesChunk.decode(active, active.getInt(), from, to, result);
+        }
+        result.sortAndLimit(limit);
+        return result;
+    }
+
+    /**
+     * 设备已有的指标名
+     */
+    public List<String> getMetrics(String deviceId) {
+        Map<String, Series> metrics = devices.get(deviceId);
+        return metrics == null ? Collections.emptyList() : new ArrayList<>(metrics.keySet());
+    }
+
+    /**
+     * 删除超过保留时长的分段文件，分段中所有数据块都过期时才删除
+     */
+    public void expire(long nowMillis) {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        long cutoff = nowMillis - retentionMillis;
+        int removed = 0;
+        synchronized (this) {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Segment segment = segments.get(i);
+                if (segment != current && segment.maxTime < cutoff) {
+                    segment.release();
+                    segments.remove(i);
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            for (Map<String, Series> metrics : devices.values()) {
+                for (Series series : metrics.values()) {
+                    series.pruneReleased();
+                }
+            }
+            logger.info("删除过期时序分段 {} 个", removed);
+        }
+    }
+
+    /**
+     * 封存所有未写满的数据块并关闭分段文件，须在设备管理器的监听器停止之后调用
+     */
+    public void close() {
+        for (Map<String, Series> metrics : devices.values()) {
+            for (Series series : metrics.values()) {
+                series.sealActive();
+            }
+        }
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            closed = true;
+        }
+    }
+
+    /**
+     * 把写满的数据块写入当前分段，分段空间不足时换新分段
+     */
+    private synchronized ChunkRef seal(String deviceId, String metric, TimeSeriesChunk chunk) throws IOException {
+        if (closed) {
+            throw new IOException("时序存储已关闭");
+        }
+        byte[] id = deviceId.getBytes(StandardCharsets.UTF_8);
+        byte[] name = metric.getBytes(StandardCharsets.UTF_8);
+        int dataLength = chunk.byteLength();
+        int recordLength = recordLength(id.length, name.length, dataLength);
+        if (id.length > MAX_STRING_BYTES || name.length > MAX_STRING_BYTES || !fitsSegment(recordLength)) {
+            throw new IOException("数据块记录超过分段大小: " + recordLength + " 字节");
+        }
+        MappedByteBuffer buffer = current.buffer;
+        if (buffer.remaining() < 4 + recordLength + 4) {
+            current.close();
+            current = openSegment(current.sequence + 1);
+            buffer = current.buffer;
+        }
+        buffer.putInt(recordLength);
+        buffer.putShort((short) id.length).put(id);
+        buffer.putShort((short) name.length).put(name);
+        buffer.putLong(chunk.getMinTime()).putLong(chunk.getMaxTime());
+        buffer.putInt(chunk.getCount()).putInt(dataLength);
+        int offset = buffer.position();
+        chunk.writeTo(buffer);
+        current.include(chunk.getMaxTime());
+        sealedChunks.increment();
+        sealedBytes.add(dataLength);
+        sealedPoints.add(chunk.getCount());
+        return new ChunkRef(current, offset, dataLength, chunk.getCount(), chunk.getMinTime(), chunk.getMaxTime());
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        Segment segment = new Segment(sequence, file, channel, buffer);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 读取已有分段，重建各序列的数据块索引
+     */
+    private void load(Path file, long sequence) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            channel.close();
+            logger.warn("忽略无法识别的时序分段: {}", file);
+            return;
+        }
+        channel.close();
+        Segment segment = new Segment(sequence, file, null, buffer);
+        int chunks = 0;
+        while (buffer.remaining() >= 4) {
+            int recordLength = buffer.getInt();
+            if (recordLength <= 0 || recordLength > buffer.remaining()) {
+                break;
+            }
+            int end = buffer.position() + recordLength;
+            String deviceId = readString(buffer);
+            String metric = metricNames.intern(readString(buffer));
+            long minTime = buffer.getLong();
+            long maxTime = buffer.getLong();
+            int count = buffer.getInt();
+            int dataLength = buffer.getInt();
+            ChunkRef ref = new ChunkRef(segment, buffer.position(), dataLength, count, minTime, maxTime);
+            devices.computeIfAbsent(deviceId, id -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(metric, m -> new Series(deviceId, m))
+                    .addSealed(ref);
+            segment.include(maxTime);
+            buffer.position(end);
+            chunks++;
+        }
+        segments.add(segment);
+        logger.info("加载时序分段 {}: {} 个数据块", file.getFileName(), chunks);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public long getPoints() {
+        return points.sum();
+    }
+
+    public long getSealedChunks() {
+        return sealedChunks.sum();
+    }
+
+    public long getSealedBytes() {
+        return sealedBytes.sum();
+    }
+
+    public long getSealedPoints() {
+        return sealedPoints.sum();
+    }
+
+    /**
+     * 因设备ID或指标名过长而丢弃的点数
+     */
+    public long getRejectedPoints() {
+        return rejectedPoints.sum();
+    }
+
+    @Override
+    public String toString() {
+        int series = 0;
+        for (Map<String, Series> metrics : devices.values()) {
+            series += metrics.size();
+        }
+        return "TimeSeriesStore{" +
+                "devices=" + devices.size() +
+                ", series=" + series +
+                ", points=" + points.sum() +
+                ", sealedChunks=" + sealedChunks.sum() +
+                ", sealedPoints=" + sealedPoints.sum() +
+                ", sealedBytes=" + sealedBytes.sum() +
+                ", sealFailures=" + sealFailures.sum() +
+                ", rejectedPoints=" + rejectedPoints.sum() +
+                '}';
+    }
+
+    /**
+     * 一条时间序列：当前数据块和已封存数据块的索引
+     */
+    private final class Series {
+        private final String deviceId;
+        private final String metric;
+        private final List<ChunkRef> sealed = new ArrayList<>();
+        private TimeSeriesChunk active;
+
+        Series(String deviceId, String metric) {
+            this.deviceId = deviceId;
+            this.metric = metric;
+        }
+
+        synchronized void append(long timestamp, double value) {
+            if (active == null) {
+                active = new TimeSeriesChunk(chunkBytes);
+            }
+            if (!active.append(timestamp, value)) {
+                sealActive();
+                active = new TimeSeriesChunk(chunkBytes);
+                active.append(timestamp, value);
+            }
+        }
+
+        synchronized void addSealed(ChunkRef ref) {
+            sealed.add(ref);
+        }
+
+        synchronized void sealActive() {
+            if (active == null || active.getCount() == 0) {
+                return;
+            }
+            try {
+                sealed.add(seal(deviceId, metric, active));
+            } catch (IOException e) {
+                sealFailures.increment();
+                logger.error("封存时序数据块失败: {}/{}", deviceId, metric, e);
+            }
+            active = null;
+        }
+
+        synchronized void pruneReleased() {
+            sealed.removeIf(ref -> ref.segment.released);
+        }
+
+        /**
+         * 收集与时间窗口重叠的已封存数据块，并复制当前数据块的编码数据
+         * @return 当前数据块的点数(4) + 编码数据，不重叠或为空时返回null
+         */
+        synchronized ByteBuffer collect(long from, long to, List<ChunkRef> refs) {
+            for (ChunkRef ref : sealed) {
+                if (ref.maxTime >= from && ref.minTime <= to && !ref.segment.released) {
+                    refs.add(ref);
+                }
+            }
+            if (active == null || active.getCount() == 0 || active.getMaxTime() < from || active.getMinTime() > to) {
+                return null;
+            }
+            ByteBuffer data = ByteBuffer.allocate(4 + active.byteLength());
+            data.putInt(active.getCount());
+            active.writeTo(data);
+            data.flip();
+            return data;
+        }
+    }
+
+    /**
+     * 已封存数据块在分段文件中的位置
+     */
+    private static final class ChunkRef {
+        final Segment segment;
+        final int offset;
+        final int length;
+        final int count;
+        final long minTime;
+        final long maxTime;
+
+        ChunkRef(Segment segment, int offset, int length, int count, long minTime, long maxTime) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+
+        ByteBuffer data() {
+            ByteBuffer data = segment.buffer.duplicate();
+            data.position(offset).limit(offset + length);
+            return data;
+        }
+    }
+
+    /**
+     * 分段文件，映射在关闭文件通道后依然有效；启动时加载的只读分段没有文件通道
+     */
+    private static final class Segment {
+        final long sequence;
+        final Path file;
+        final MappedByteBuffer buffer;
+        private FileChannel channel;
+        volatile long maxTime = Long.MIN_VALUE;
+        volatile boolean released;
+
+        Segment(long sequence, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void include(long time) {
+            if (time > maxTime) {
+                maxTime = time;
+            }
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭时序分段失败: {}", file, e);
+            }
+            channel = null;
+        }
+
+        void release() {
+            released = true;
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("删除时序分段失败: {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.michael.iot.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，最多积累burst个，用于限制连接接入速率
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param burst 桶容量
+     */
+    public TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("令牌桶参数非法: rate=" + ratePerSecond + ", burst=" + burst);
+        }
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = nowNanos;
+    }
+
+    /**
+     * 尝试取一个令牌
+     * @return 0表示成功，否则为下一个令牌可用前需要等待的纳秒数
+     */
+    public synchronized long tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * 桶是否已满，满桶说明近期没有使用，可以回收
+     */
+    public synchronized boolean isFull(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= burst;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+            lastRefill = nowNanos;
+        }
+    }
+}
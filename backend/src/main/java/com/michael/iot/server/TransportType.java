@@ -0,0 +1,129 @@
+package com.michael.iot.server;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Netty传输类型
+ * AUTO 在Linux上优先使用原生epoll，否则回退到NIO；IO_URING需要显式开启
+ */
+public enum TransportType {
+    AUTO,
+    NIO,
+    EPOLL,
+    IO_URING;
+
+    private static final Logger logger = LoggerFactory.getLogger(TransportType.class);
+
+    /**
+     * 根据当前平台解析出实际可用的传输类型
+     * @return NIO、EPOLL或IO_URING之一
+     */
+    public TransportType resolve() {
+        switch (this) {
+            case IO_URING:
+                if (IOUring.isAvailable()) {
+                    return IO_URING;
+                }
+                logger.warn("io_uring不可用，回退到其他传输: {}", IOUring.unavailabilityCause().toString());
+                return AUTO.resolve();
+            case EPOLL:
+                if (Epoll.isAvailable()) {
+                    return EPOLL;
+                }
+                logger.warn("epoll不可用，回退到NIO: {}", Epoll.unavailabilityCause().toString());
+                return NIO;
+            case AUTO:
+                return Epoll.isAvailable() ? EPOLL : NIO;
+            default:
+                return NIO;
+        }
+    }
+
+    /**
+     * 创建事件循环组，调用前应先通过resolve()确认传输可用
+     * @param threads 线程数，0表示使用Netty默认值
+     * @param name 线程名前缀
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, String name) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name);
+        switch (this == AUTO ? resolve() : this) {
+            case IO_URING:
+                return new IOUringEventLoopGroup(threads, threadFactory);
+            case EPOLL:
+                return new EpollEventLoopGroup(threads, threadFactory);
+            default:
+                return new NioEventLoopGroup(threads, threadFactory);
+        }
+    }
+
+    /**
+     * 获取与事件循环组匹配的服务端Channel类型
+     */
+    public Class<? extends ServerChannel> serverChannelClass() {
+        switch (this == AUTO ? resolve() : this) {
+            case IO_URING:
+                return IOUringServerSocketChannel.class;
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    /**
+     * 获取与事件循环组匹配的客户端Channel类型，用于主动发起连接
+     */
+    public Class<? extends SocketChannel> socketChannelClass() {
+        switch (this == AUTO ? resolve() : this) {
+            case IO_URING:
+                return IOUringSocketChannel.class;
+            case EPOLL:
+                return EpollSocketChannel.class;
+            default:
+                return NioSocketChannel.class;
+        }
+    }
+
+    /**
+     * 是否支持SO_REUSEPORT多监听绑定，仅Linux原生传输支持
+     */
+    public boolean supportsReusePort() {
+        TransportType resolved = this == AUTO ? resolve() : this;
+        return resolved == EPOLL || resolved == IO_URING;
+    }
+
+    /**
+     * 解析配置值，忽略大小写，无法识别时使用AUTO
+     */
+    public static TransportType parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return AUTO;
+        }
+        String normalized = value.trim().toUpperCase().replace('-', '_');
+        if ("IOURING".equals(normalized) || "URING".equals(normalized)) {
+            return IO_URING;
+        }
+        try {
+            return valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            logger.warn("未知的传输类型: {}，使用AUTO", value);
+            return AUTO;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.michael.iot.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * varint长度前缀分帧解码器
+ * 输出不含长度前缀的帧（ByteBuf切片），并限制单帧最大长度
+ */
+public class VarintFrameDecoder extends ByteToMessageDecoder {
+    private final int maxFrameLength;
+
+    public VarintFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.isReadable()) {
+            int start = in.readerIndex();
+            int length = 0;
+            int shift = 0;
+            int index = start;
+            boolean complete = false;
+            while (index < in.writerIndex()) {
+                byte b = in.getByte(index++);
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    complete = true;
+                    break;
+                }
+                shift += 7;
+                if (shift >= 35) {
+                    throw new CorruptedFrameException("帧长度varint过长");
+                }
+            }
+            if (!complete) {
+                return;
+            }
+            if (length <= 0) {
+                in.skipBytes(in.readableBytes());
+                throw new CorruptedFrameException("帧长度非法: " + length);
+            }
+            if (length > maxFrameLength) {
+                in.skipBytes(in.readableBytes());
+                throw new TooLongFrameException("帧长度超过上限: " + length);
+            }
+            if (in.writerIndex() - index < length) {
+                return;
+            }
+            in.readerIndex(index);
+            out.add(in.readRetainedSlice(length));
+        }
+    }
+}
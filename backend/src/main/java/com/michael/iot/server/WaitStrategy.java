@@ -0,0 +1,19 @@
+package com.michael.iot.server;
+
+/**
+ * 消费线程在队列为空时的等待策略
+ * 越靠前延迟越低、CPU占用越高
+ */
+public enum WaitStrategy {
+    BUSY_SPIN,   // 持续自旋，独占一个CPU核
+    YIELDING,    // 短暂自旋后让出CPU
+    SLEEPING,    // 自旋、让出后再短暂休眠，延迟与CPU占用折中
+    BLOCKING;    // 在条件变量上阻塞，由生产者唤醒，CPU占用最低
+
+    public static WaitStrategy parse(String value, WaitStrategy defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
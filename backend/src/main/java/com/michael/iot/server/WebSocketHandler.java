@@ -8,6 +8,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * WebSocket处理器
@@ -15,6 +17,12 @@ import java.util.UUID;
 public class WebSocketHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketHandler.class);
     
+    private static final long TELEMETRY_DEFAULT_WINDOW_MILLIS = 3600_000L;
+    private static final int TELEMETRY_DEFAULT_POINTS = 10_000;
+    private static final int TELEMETRY_MAX_POINTS = 100_000;
+    private static final long ROLLUP_MINUTE_WINDOW_MILLIS = 24 * 3600_000L;
+    private static final long ROLLUP_HOUR_WINDOW_MILLIS = 7 * 24 * 3600_000L;
+
     private final WebSocketServer webSocketServer;
     private String clientId;
 
@@ -63,10 +71,30 @@ public class WebSocketHandler extends SimpleChannelInboundHandler<WebSocketFrame
             // 尝试解析JSON消息
             if (message.startsWith("{")) {
                 // 简单的JSON解析
-                if (message.contains("\"type\":\"REQUEST_DEVICE_LIST\"")) {
-                    // 请求设备列表
-                    webSocketServer.broadcastDeviceListUpdate();
-                    logger.info("收到设备列表请求，已广播设备列表");
+                String type = jsonField(message, "type");
+                if ("REQUEST_DEVICE_LIST".equals(type) || "QUERY_DEVICES".equals(type)) {
+                    // 分页查询设备，只回复给当前客户端；REQUEST_DEVICE_LIST按同样的条件和游标分页，
+                    // 以DEVICE_LIST_UPDATE回复一页，不再整表广播
+                    String requestId = jsonField(message, "requestId");
+                    DeviceQuery query;
+                    try {
+                        query = parseQuery(message);
+                    } catch (IllegalArgumentException e) {
+                        webSocketServer.sendDeviceQueryError(ctx.channel(), requestId, "查询参数无效: " + e.getMessage());
+                        return;
+                    }
+                    if ("REQUEST_DEVICE_LIST".equals(type)) {
+                        webSocketServer.sendDeviceList(ctx.channel(), requestId, query);
+                    } else {
+                        webSocketServer.sendDeviceQueryResult(ctx.channel(), requestId, query);
+                    }
+                } else if ("QUERY_COUNTS".equals(type)) {
+                    // 设备计数，集群模式下统计全部节点
+                    webSocketServer.sendDeviceCounts(ctx.channel(), jsonField(message, "requestId"));
+                } else if ("QUERY_TELEMETRY".equals(type)) {
+                    handleTelemetryQuery(ctx, message);
+                } else if ("QUERY_ROLLUP".equals(type)) {
+                    handleRollupQuery(ctx, message);
                 }
             } else {
                 logger.info("处理WebSocket消息: {}", message);
@@ -77,4 +105,97 @@ public class WebSocketHandler extends SimpleChannelInboundHandler<WebSocketFrame
             logger.error("处理WebSocket消息失败", e);
         }
     }
+
+    /**
+     * 查询设备指标的历史数据，例如
+     * {"type":"QUERY_TELEMETRY","requestId":"1","deviceId":"device001","metric":"temperature","from":1700000000000,"to":1700003600000,"limit":1000}
+     * from、to为毫秒时间戳，缺省时查询最近一小时；limit缺省为10000，最大100000
+     */
+    private void handleTelemetryQuery(ChannelHandlerContext ctx, String message) {
+        String deviceId = jsonField(message, "deviceId");
+        String metric = jsonField(message, "metric");
+        if (deviceId == null || metric == null) {
+            return;
+        }
+        String to = jsonField(message, "to");
+        String from = jsonField(message, "from");
+        String limit = jsonField(message, "limit");
+        try {
+            long toMillis = to != null ? Long.parseLong(to) : System.currentTimeMillis();
+            long fromMillis = from != null ? Long.parseLong(from) : toMillis - TELEMETRY_DEFAULT_WINDOW_MILLIS;
+            int maxPoints = limit != null ? Math.min(Integer.parseInt(limit), TELEMETRY_MAX_POINTS) : TELEMETRY_DEFAULT_POINTS;
+            webSocketServer.sendTelemetryResult(ctx.channel(), jsonField(message, "requestId"), deviceId, metric,
+                    fromMillis, toMillis, maxPoints);
+        } catch (NumberFormatException e) {
+            logger.warn("时序查询参数无效: {}", message);
+        }
+    }
+
+    /**
+     * 查询预聚合窗口，例如
+     * {"type":"QUERY_ROLLUP","requestId":"1","scope":"TYPE","key":"传感器","metric":"temperature","resolution":"HOUR","from":1700000000000}
+     * scope为DEVICE（key为设备ID，缺省）或TYPE（key为设备类型）；resolution为MINUTE或HOUR（缺省），
+     * 缺省时间窗口为分钟粒度最近一天、小时粒度最近一周
+     */
+    private void handleRollupQuery(ChannelHandlerContext ctx, String message) {
+        String key = jsonField(message, "key");
+        String metric = jsonField(message, "metric");
+        if (key == null || metric == null) {
+            return;
+        }
+        String requestId = jsonField(message, "requestId");
+        try {
+            RollupEngine.Scope scope = RollupEngine.Scope.parse(jsonField(message, "scope"), RollupEngine.Scope.DEVICE);
+            RollupResolution resolution = RollupResolution.parse(jsonField(message, "resolution"), RollupResolution.HOUR);
+            String to = jsonField(message, "to");
+            String from = jsonField(message, "from");
+            long toMillis = to != null ? Long.parseLong(to) : System.currentTimeMillis();
+            long window = resolution == RollupResolution.MINUTE ? ROLLUP_MINUTE_WINDOW_MILLIS : ROLLUP_HOUR_WINDOW_MILLIS;
+            long fromMillis = from != null ? Long.parseLong(from) : toMillis - window;
+            webSocketServer.sendRollupResult(ctx.channel(), requestId, scope, key, metric, resolution, fromMillis, toMillis);
+        } catch (IllegalArgumentException e) {
+            logger.warn("预聚合查询参数无效: {}", message);
+        }
+    }
+
+    /**
+     * 解析设备查询请求，例如
+     * {"type":"QUERY_DEVICES","requestId":"1","status":"ONLINE","deviceType":"传感器","namePrefix":"温度",
+     *  "ipAddress":"10.0.0.8","sortBy":"DEVICE_NAME","descending":false,"limit":50,"cursor":"..."}
+     * 未出现的字段不作为条件
+     */
+    private static DeviceQuery parseQuery(String message) {
+        DeviceQuery query = new DeviceQuery();
+        String status = jsonField(message, "status");
+        if (status != null) {
+            query.setStatus(DeviceStatus.valueOf(status.toUpperCase()));
+        }
+        query.setDeviceType(jsonField(message, "deviceType"));
+        query.setNamePrefix(jsonField(message, "namePrefix"));
+        query.setIpAddress(jsonField(message, "ipAddress"));
+        query.setSortBy(DeviceQuery.SortKey.parse(jsonField(message, "sortBy")));
+        query.setDescending(Boolean.parseBoolean(jsonField(message, "descending")));
+        String limit = jsonField(message, "limit");
+        if (limit != null) {
+            query.setLimit(Integer.parseInt(limit));
+        }
+        query.setCursor(jsonField(message, "cursor"));
+        return query;
+    }
+
+    /**
+     * 简单的JSON字段提取，支持字符串、数字和布尔值，值为null或字段不存在时返回null
+     */
+    static String jsonField(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + Pattern.quote(name) + "\"\\s*:\\s*(\"((?:[^\"\\\\]|\\\\.)*)\"|[^,}\\s]+)")
+                .matcher(json);
+        if (!matcher.find()) {
+            return null;
+        }
+        if (matcher.group(2) != null) {
+            return matcher.group(2).replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+        String value = matcher.group(1);
+        return "null".equals(value) ? null : value;
+    }
 }
@@ -2,9 +2,7 @@ package com.michael.iot.server;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
@@ -13,11 +11,18 @@ import io.netty.handler.stream.ChunkedWriteHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * WebSocket服务器，用于向前端推送设备状态变更
+ * 状态变化逐条推送；设备列表不整表推送，列表变化后每个间隔最多推送一次设备计数和重新查询提示，
+ * 客户端按需分页查询。
  */
 public class WebSocketServer {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServer.class);
@@ -27,23 +32,47 @@ public class WebSocketServer {
 
     private final Map<String, Channel> webSocketClients = new ConcurrentHashMap<>();
     
+    private final ServerConfig config;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    private boolean ownsEventLoops = true;
     private Channel serverChannel;
+    private volatile TimeSeriesStore timeSeriesStore;
+    private volatile RollupEngine rollupEngine;
+    private volatile ClusterNode cluster;
+    // 上次推送后设备列表是否有变化
+    private final AtomicBoolean deviceListChanged = new AtomicBoolean();
+    private ScheduledFuture<?> listUpdateTask;
+    // 执行定时推送和集群状态变化推送的WebSocket事件循环，启动前为null
+    private volatile EventLoop pushLoop;
 
     public WebSocketServer(int port, DeviceManager deviceManager) {
+        this(port, deviceManager, new ServerConfig());
+    }
+
+    public WebSocketServer(int port, DeviceManager deviceManager, ServerConfig config) {
         this.port = port;
         this.deviceManager = deviceManager;
+        this.config = config;
         
-        // 添加设备状态监听器
+        // 添加设备状态监听器，广播在独立线程上进行，不占用事件分发线程
         deviceManager.addStatusListener(new DeviceStatusListener() {
             @Override
             public void onStatusChange(DeviceInfo device, DeviceStatus oldStatus, DeviceStatus newStatus) {
-                broadcastDeviceStatusChange(device, oldStatus, newStatus);
-                // 同时广播设备列表更新
-                broadcastDeviceListUpdate();
+                // 前端只区分在线和离线，CONNECTING、DISCONNECTING这类过渡状态不推送
+                if (newStatus.isTransient()) {
+                    return;
+                }
+                // 集群模式下设备迁移到其他节点后，原节点上的离线不推送
+                ClusterNode clusterNode = cluster;
+                if (clusterNode == null || newStatus == DeviceStatus.ONLINE
+                        || !clusterNode.isOnlineElsewhere(device.getDeviceId())) {
+                    broadcastDeviceStatusChange(device, oldStatus, newStatus);
+                }
+                // 列表变化合并到下一次计数推送
+                deviceListChanged.set(true);
             }
-        });
+        }, config.wsListenerOptions("ws-status"));
         
         // 添加设备数据监听器
         deviceManager.addDataListener(new DeviceDataListener() {
@@ -51,20 +80,30 @@ public class WebSocketServer {
             public void onDataUpdate(DeviceInfo device, String data) {
                 broadcastDeviceDataUpdate(device, data);
             }
-        });
+
+            @Override
+            public void onDataBatch(DeviceInfo device, DeviceDataBatch batch) {
+                // 批量数据只推送最新的一条，避免前端被大量历史数据刷屏
+                broadcastDeviceDataUpdate(device, batch.getPayload(batch.getLatestIndex()));
+            }
+        }, config.wsListenerOptions("ws-data"));
     }
 
     /**
      * 启动WebSocket服务器
      */
     public void start() throws Exception {
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        if (bossGroup == null) {
+            TransportType transport = config.getTransport();
+            bossGroup = transport.newEventLoopGroup(config.getWsBossThreads(), "iot-ws-boss");
+            workerGroup = transport.newEventLoopGroup(config.getWsWorkerThreads(), "iot-ws-worker");
+            ownsEventLoops = true;
+        }
 
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(config.getTransport().serverChannelClass())
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) throws Exception {
@@ -85,8 +124,13 @@ public class WebSocketServer {
 
             ChannelFuture future = bootstrap.bind(port).sync();
             serverChannel = future.channel();
+            long interval = config.getWsListUpdateMillis();
+            EventLoop loop = workerGroup.next();
+            pushLoop = loop;
+            listUpdateTask = loop.scheduleAtFixedRate(this::flushDeviceListUpdate,
+                    interval, interval, TimeUnit.MILLISECONDS);
             
-            logger.info("WebSocket服务器启动成功，监听端口: {}", port);
+            logger.info("WebSocket服务器启动成功，监听端口: {}，传输: {}", port, config.getTransport());
             
             serverChannel.closeFuture().sync();
         } finally {
@@ -94,18 +138,77 @@ public class WebSocketServer {
         }
     }
 
+    /**
+     * 使用外部创建的事件循环组（共享模式），关闭服务器时不会关闭这些事件循环组
+     */
+    public void useEventLoopGroups(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+        this.ownsEventLoops = false;
+    }
+
+    /**
+     * 启用时序数据查询
+     */
+    public void useTimeSeriesStore(TimeSeriesStore timeSeriesStore) {
+        this.timeSeriesStore = timeSeriesStore;
+    }
+
+    /**
+     * 启用预聚合查询
+     */
+    public void useRollupEngine(RollupEngine rollupEngine) {
+        this.rollupEngine = rollupEngine;
+    }
+
+    /**
+     * 向前端推送告警规则的触发和恢复，广播在独立线程上进行，不占用规则求值线程
+     */
+    public void useRuleEngine(RuleEngine ruleEngine) {
+        ruleEngine.addAlertListener(this::broadcastDeviceAlert, config.wsListenerOptions("ws-alert"));
+    }
+
+    /**
+     * 集群模式下推送其他节点的状态变化，设备查询和计数分发到所有节点
+     * 集群通信线程上只转交合并后已算出的状态变化，推送在WebSocket事件循环上进行；
+     * 副本变化只标记列表有变化，与本地变化一起在下一次定时推送中合并为一次计数推送。
+     */
+    public void useCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+        cluster.addPresenceListener(new ClusterPresenceListener() {
+            @Override
+            public void onRemoteStatusChange(String nodeId, DeviceInfo device, DeviceStatus oldStatus,
+                                             DeviceStatus newStatus) {
+                EventLoop loop = pushLoop;
+                if (loop != null) {
+                    loop.execute(() -> broadcastDeviceStatusChange(device, oldStatus, newStatus));
+                }
+            }
+
+            @Override
+            public void onViewChange(String nodeId) {
+                deviceListChanged.set(true);
+            }
+        });
+    }
+
     /**
      * 关闭WebSocket服务器
      */
     public void shutdown() {
+        if (listUpdateTask != null) {
+            listUpdateTask.cancel(false);
+        }
         if (serverChannel != null) {
             serverChannel.close();
         }
-        if (bossGroup != null) {
-            bossGroup.shutdownGracefully();
-        }
-        if (workerGroup != null) {
-            workerGroup.shutdownGracefully();
+        if (ownsEventLoops) {
+            if (bossGroup != null) {
+                bossGroup.shutdownGracefully();
+            }
+            if (workerGroup != null) {
+                workerGroup.shutdownGracefully();
+            }
         }
         logger.info("WebSocket服务器已关闭");
     }
@@ -187,6 +290,42 @@ public class WebSocketServer {
 
 
 
+    /**
+     * 广播设备告警
+     */
+    private void broadcastDeviceAlert(DeviceAlert alert) {
+        try {
+            AlertRule rule = alert.getRule();
+            DeviceInfo device = alert.getDevice();
+            StringBuilder jsonBuilder = new StringBuilder();
+            jsonBuilder.append("{\"type\":\"DEVICE_ALERT\",\"ruleId\":\"").append(escape(rule.getId()))
+                    .append("\",\"ruleName\":\"").append(escape(rule.getName()))
+                    .append("\",\"state\":\"").append(alert.getState().name())
+                    .append("\",\"deviceId\":\"").append(escape(device.getDeviceId()))
+                    .append("\",\"deviceName\":\"").append(escape(String.valueOf(device.getDeviceName())))
+                    .append("\",\"deviceType\":\"").append(escape(String.valueOf(device.getDeviceType())))
+                    .append("\",\"condition\":\"").append(escape(rule.getCondition().toString()))
+                    .append("\",\"consecutive\":").append(rule.getConsecutive())
+                    .append(",\"values\":{");
+            for (int i = 0; i < alert.getFields().size(); i++) {
+                if (i > 0) jsonBuilder.append(',');
+                jsonBuilder.append('"').append(escape(alert.getFields().get(i))).append("\":")
+                        .append(jsonNumber(alert.getValue(i)));
+            }
+            jsonBuilder.append("},\"readingTime\":").append(alert.getReadingTime())
+                    .append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+
+            TextWebSocketFrame frame = new TextWebSocketFrame(jsonBuilder.toString());
+            for (Channel clientChannel : webSocketClients.values()) {
+                if (clientChannel.isActive()) {
+                    clientChannel.writeAndFlush(frame.retain());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("广播设备告警失败", e);
+        }
+    }
+
     /**
      * 获取当前连接的客户端数量
      * @return 客户端数量
@@ -196,46 +335,275 @@ public class WebSocketServer {
     }
 
     /**
-     * 广播设备列表更新
+     * 设备列表有变化时推送设备计数和重新查询提示，在WebSocket事件循环上定时执行
+     * 计数直接取自索引，与设备数无关；需要列表的客户端收到提示后自行分页查询。
      */
-    public void broadcastDeviceListUpdate() {
-        try {
-            // 构建简单的设备列表JSON消息
-            StringBuilder jsonBuilder = new StringBuilder();
-            jsonBuilder.append("{\"type\":\"DEVICE_LIST_UPDATE\",\"devices\":[");
-            
-            java.util.List<DeviceInfo> devices = deviceManager.getAllDevices();
-            for (int i = 0; i < devices.size(); i++) {
-                DeviceInfo device = devices.get(i);
-                if (i > 0) jsonBuilder.append(",");
-                jsonBuilder.append(String.format(
-                    "{\"deviceId\":\"%s\",\"deviceName\":\"%s\",\"deviceType\":\"%s\",\"status\":\"%s\",\"ipAddress\":\"%s\",\"port\":%d,\"connectTime\":\"%s\",\"lastHeartbeat\":\"%s\",\"disconnectTime\":\"%s\",\"lastData\":\"%s\",\"lastDataTime\":\"%s\"}",
-                    device.getDeviceId(),
-                    device.getDeviceName(),
-                    device.getDeviceType(),
-                    device.getStatus().name(),
-                    device.getIpAddress() != null ? device.getIpAddress() : "",
-                    device.getPort(),
-                    device.getConnectTime() != null ? device.getConnectTime().toString() : "",
-                    device.getLastHeartbeat() != null ? device.getLastHeartbeat().toString() : "",
-                    device.getDisconnectTime() != null ? device.getDisconnectTime().toString() : "",
-                    device.getLastData() != null ? device.getLastData().replace("\"", "\\\"") : "",
-                    device.getLastDataTime() != null ? device.getLastDataTime().toString() : ""
-                ));
+    private void flushDeviceListUpdate() {
+        if (!deviceListChanged.getAndSet(false) || webSocketClients.isEmpty()) {
+            return;
+        }
+        ClusterNode clusterNode = cluster;
+        CompletableFuture<DeviceCounts> future = clusterNode != null
+                ? clusterNode.countDevices()
+                : CompletableFuture.completedFuture(DeviceCounts.of(deviceManager));
+        future.whenComplete((counts, error) -> {
+            if (error != null) {
+                logger.error("设备计数失败", error);
+                return;
             }
-            
-            jsonBuilder.append("],\"timestamp\":").append(System.currentTimeMillis()).append("}");
-            
+            StringBuilder jsonBuilder = new StringBuilder();
+            jsonBuilder.append("{\"type\":\"DEVICE_COUNTS_UPDATE\",\"listChanged\":true");
+            appendCounts(jsonBuilder, counts);
+            jsonBuilder.append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+
             TextWebSocketFrame frame = new TextWebSocketFrame(jsonBuilder.toString());
+            try {
+                for (Channel clientChannel : webSocketClients.values()) {
+                    if (clientChannel.isActive()) {
+                        clientChannel.writeAndFlush(frame.retain());
+                    }
+                }
+            } finally {
+                frame.release();
+            }
+        });
+    }
 
-            for (Channel clientChannel : webSocketClients.values()) {
-                if (clientChannel.isActive()) {
-                    clientChannel.writeAndFlush(frame.retain());
+    /**
+     * 回复设备列表的一页，消息类型为DEVICE_LIST_UPDATE，客户端凭nextCursor继续请求下一页
+     */
+    public void sendDeviceList(Channel clientChannel, String requestId, DeviceQuery query) {
+        sendDeviceQueryResult(clientChannel, "DEVICE_LIST_UPDATE", requestId, query);
+    }
+
+    /**
+     * 分页查询设备，只把请求的一页回复给发起查询的客户端
+     */
+    public void sendDeviceQueryResult(Channel clientChannel, String requestId, DeviceQuery query) {
+        sendDeviceQueryResult(clientChannel, "DEVICE_QUERY_RESULT", requestId, query);
+    }
+
+    private void sendDeviceQueryResult(Channel clientChannel, String type, String requestId, DeviceQuery query) {
+        ClusterNode clusterNode = cluster;
+        if (clusterNode != null) {
+            CompletableFuture<DeviceQueryResult> future;
+            try {
+                future = clusterNode.queryDevices(query);
+            } catch (IllegalArgumentException e) {
+                sendDeviceQueryError(clientChannel, type, requestId, e.getMessage());
+                return;
+            }
+            future.whenComplete((result, error) -> {
+                if (error != null) {
+                    logger.error("集群设备查询失败", error);
+                    sendDeviceQueryError(clientChannel, type, requestId, "集群查询失败");
+                } else {
+                    writeDeviceQueryResult(clientChannel, type, requestId, result);
                 }
+            });
+            return;
+        }
+
+        DeviceQueryResult result;
+        try {
+            result = deviceManager.queryDevices(query);
+        } catch (IllegalArgumentException e) {
+            sendDeviceQueryError(clientChannel, type, requestId, e.getMessage());
+            return;
+        }
+        writeDeviceQueryResult(clientChannel, type, requestId, result);
+    }
+
+    private void writeDeviceQueryResult(Channel clientChannel, String type, String requestId, DeviceQueryResult result) {
+        StringBuilder jsonBuilder = new StringBuilder();
+        appendQueryHeader(jsonBuilder, type, requestId);
+        jsonBuilder.append(",\"devices\":[");
+        java.util.List<DeviceInfo> devices = result.getDevices();
+        for (int i = 0; i < devices.size(); i++) {
+            if (i > 0) jsonBuilder.append(",");
+            appendDeviceJson(jsonBuilder, devices.get(i));
+        }
+        jsonBuilder.append("],\"nextCursor\":")
+                .append(result.getNextCursor() != null ? "\"" + result.getNextCursor() + "\"" : "null")
+                .append(",\"total\":").append(result.getTotal());
+        if (result.isPartial()) {
+            jsonBuilder.append(",\"unavailableNodes\":");
+            appendStringArray(jsonBuilder, result.getUnavailableNodes());
+        }
+        jsonBuilder.append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+
+        if (clientChannel.isActive()) {
+            clientChannel.writeAndFlush(new TextWebSocketFrame(jsonBuilder.toString()));
+        }
+    }
+
+    /**
+     * 回复设备计数（总数、各状态、各类型），集群模式下为各节点计数之和
+     */
+    public void sendDeviceCounts(Channel clientChannel, String requestId) {
+        ClusterNode clusterNode = cluster;
+        CompletableFuture<DeviceCounts> future = clusterNode != null
+                ? clusterNode.countDevices()
+                : CompletableFuture.completedFuture(DeviceCounts.of(deviceManager));
+        future.whenComplete((counts, error) -> {
+            StringBuilder jsonBuilder = new StringBuilder();
+            jsonBuilder.append("{\"type\":\"DEVICE_COUNTS\",\"requestId\":\"")
+                    .append(requestId != null ? escape(requestId) : "").append('"');
+            if (error != null) {
+                logger.error("设备计数失败", error);
+                jsonBuilder.append(",\"error\":\"设备计数失败\"");
+            } else {
+                appendCounts(jsonBuilder, counts);
             }
-        } catch (Exception e) {
-            logger.error("广播设备列表更新失败", e);
+            jsonBuilder.append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+            if (clientChannel.isActive()) {
+                clientChannel.writeAndFlush(new TextWebSocketFrame(jsonBuilder.toString()));
+            }
+        });
+    }
+
+    /**
+     * 回复设备查询失败
+     */
+    public void sendDeviceQueryError(Channel clientChannel, String requestId, String error) {
+        sendDeviceQueryError(clientChannel, "DEVICE_QUERY_RESULT", requestId, error);
+    }
+
+    private void sendDeviceQueryError(Channel clientChannel, String type, String requestId, String error) {
+        StringBuilder jsonBuilder = new StringBuilder();
+        appendQueryHeader(jsonBuilder, type, requestId);
+        jsonBuilder.append(",\"error\":\"").append(escape(error != null ? error : "")).append('"')
+                .append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+        if (clientChannel.isActive()) {
+            clientChannel.writeAndFlush(new TextWebSocketFrame(jsonBuilder.toString()));
+        }
+    }
+
+    /**
+     * 回复设备指标在时间窗口内的原始数据点，只回复给发起查询的客户端
+     */
+    public void sendTelemetryResult(Channel clientChannel, String requestId, String deviceId, String metric,
+                                    long from, long to, int limit) {
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append("{\"type\":\"TELEMETRY_RESULT\",\"requestId\":\"")
+                .append(requestId != null ? escape(requestId) : "").append('"');
+        TimeSeriesStore store = timeSeriesStore;
+        if (store == null) {
+            jsonBuilder.append(",\"error\":\"时序存储未启用\"");
+        } else {
+            TimeSeriesPoints points = store.query(deviceId, metric, from, to, limit);
+            jsonBuilder.append(",\"deviceId\":\"").append(escape(deviceId))
+                    .append("\",\"metric\":\"").append(escape(metric))
+                    .append("\",\"from\":").append(from)
+                    .append(",\"to\":").append(to)
+                    .append(",\"points\":[");
+            for (int i = 0; i < points.size(); i++) {
+                if (i > 0) jsonBuilder.append(',');
+                double value = points.getValue(i);
+                jsonBuilder.append('[').append(points.getTimestamp(i)).append(',')
+                        .append(jsonNumber(value)).append(']');
+            }
+            jsonBuilder.append("],\"truncated\":").append(points.isTruncated());
+        }
+        jsonBuilder.append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+        if (clientChannel.isActive()) {
+            clientChannel.writeAndFlush(new TextWebSocketFrame(jsonBuilder.toString()));
+        }
+    }
+
+    /**
+     * 回复设备或设备类型某个指标的预聚合窗口，只回复给发起查询的客户端
+     */
+    public void sendRollupResult(Channel clientChannel, String requestId, RollupEngine.Scope scope, String key,
+                                 String metric, RollupResolution resolution, long from, long to) {
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append("{\"type\":\"ROLLUP_RESULT\",\"requestId\":\"")
+                .append(requestId != null ? escape(requestId) : "").append('"');
+        RollupEngine engine = rollupEngine;
+        if (engine == null) {
+            jsonBuilder.append(",\"error\":\"预聚合未启用\"");
+        } else {
+            java.util.List<RollupCell> cells = engine.query(scope, key, metric, resolution, from, to);
+            jsonBuilder.append(",\"scope\":\"").append(scope.name())
+                    .append("\",\"key\":\"").append(escape(key))
+                    .append("\",\"metric\":\"").append(escape(metric))
+                    .append("\",\"resolution\":\"").append(resolution.name())
+                    .append("\",\"cells\":[");
+            for (int i = 0; i < cells.size(); i++) {
+                if (i > 0) jsonBuilder.append(',');
+                RollupCell cell = cells.get(i);
+                jsonBuilder.append("{\"start\":").append(cell.getStart())
+                        .append(",\"count\":").append(cell.getCount())
+                        .append(",\"min\":").append(jsonNumber(cell.getMin()))
+                        .append(",\"max\":").append(jsonNumber(cell.getMax()))
+                        .append(",\"avg\":").append(jsonNumber(cell.getAvg()))
+                        .append(",\"open\":").append(cell.isOpen()).append('}');
+            }
+            jsonBuilder.append(']');
         }
+        jsonBuilder.append(",\"timestamp\":").append(System.currentTimeMillis()).append("}");
+        if (clientChannel.isActive()) {
+            clientChannel.writeAndFlush(new TextWebSocketFrame(jsonBuilder.toString()));
+        }
+    }
+
+    private static String jsonNumber(double value) {
+        return Double.isFinite(value) ? String.valueOf(value) : "null";
+    }
+
+    private static void appendQueryHeader(StringBuilder jsonBuilder, String type, String requestId) {
+        jsonBuilder.append("{\"type\":\"").append(type).append("\",\"requestId\":\"")
+                .append(requestId != null ? escape(requestId) : "").append('"');
+    }
+
+    private static void appendCounts(StringBuilder jsonBuilder, DeviceCounts counts) {
+        jsonBuilder.append(",\"total\":").append(counts.getTotal()).append(",\"statusCounts\":{");
+        DeviceStatus[] statuses = DeviceStatus.values();
+        for (int i = 0; i < statuses.length; i++) {
+            if (i > 0) jsonBuilder.append(',');
+            jsonBuilder.append('"').append(statuses[i].name()).append("\":").append(counts.getCount(statuses[i]));
+        }
+        jsonBuilder.append("},\"typeCounts\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : counts.getTypeCounts().entrySet()) {
+            if (!first) jsonBuilder.append(',');
+            first = false;
+            jsonBuilder.append('"').append(escape(entry.getKey())).append("\":").append(entry.getValue());
+        }
+        jsonBuilder.append("},\"nodes\":");
+        appendStringArray(jsonBuilder, counts.getNodes());
+        jsonBuilder.append(",\"unavailableNodes\":");
+        appendStringArray(jsonBuilder, counts.getUnavailableNodes());
+    }
+
+    private static void appendDeviceJson(StringBuilder jsonBuilder, DeviceInfo device) {
+        jsonBuilder.append(String.format(
+            "{\"deviceId\":\"%s\",\"deviceName\":\"%s\",\"deviceType\":\"%s\",\"status\":\"%s\",\"ipAddress\":\"%s\",\"port\":%d,\"connectTime\":\"%s\",\"lastHeartbeat\":\"%s\",\"disconnectTime\":\"%s\",\"lastData\":\"%s\",\"lastDataTime\":\"%s\"}",
+            device.getDeviceId(),
+            device.getDeviceName(),
+            device.getDeviceType(),
+            device.getStatus().name(),
+            device.getIpAddress() != null ? device.getIpAddress() : "",
+            device.getPort(),
+            device.getConnectTime() != null ? device.getConnectTime().toString() : "",
+            device.getLastHeartbeat() != null ? device.getLastHeartbeat().toString() : "",
+            device.getDisconnectTime() != null ? device.getDisconnectTime().toString() : "",
+            device.getLastData() != null ? device.getLastData().replace("\"", "\\\"") : "",
+            device.getLastDataTime() != null ? device.getLastDataTime().toString() : ""
+        ));
+    }
+
+    private static void appendStringArray(StringBuilder jsonBuilder, List<String> values) {
+        jsonBuilder.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) jsonBuilder.append(',');
+            jsonBuilder.append('"').append(escape(values.get(i))).append('"');
+        }
+        jsonBuilder.append(']');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
     /**
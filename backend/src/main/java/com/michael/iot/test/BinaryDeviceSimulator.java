@@ -0,0 +1,242 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.BinaryProtocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 二进制协议设备模拟器
+ * 与IoTDeviceSimulator行为一致，但使用BinaryProtocol定义的紧凑二进制帧通信
+ */
+public class BinaryDeviceSimulator {
+    private final String serverHost;
+    private final int serverPort;
+    private final String deviceId;
+    private final String deviceName;
+    private final String deviceType;
+    // 本连接已经发送过的字段名 -> 字段表下标
+    private final Map<String, Integer> keyTable = new HashMap<>();
+
+    private Socket socket;
+    private OutputStream out;
+    private volatile boolean running = false;
+
+    public BinaryDeviceSimulator(String serverHost, int serverPort, String deviceName, String deviceType) {
+        this.serverHost = serverHost;
+        this.serverPort = serverPort;
+        this.deviceId = UUID.randomUUID().toString().substring(0, 8);
+        this.deviceName = deviceName;
+        this.deviceType = deviceType;
+    }
+
+    /**
+     * 连接服务器
+     */
+    public void connect() {
+        try {
+            socket = new Socket(serverHost, serverPort);
+            out = socket.getOutputStream();
+            running = true;
+            System.out.println("二进制设备连接成功: " + deviceId);
+
+            // 前导码 + 注册帧
+            out.write(BinaryProtocol.MAGIC);
+            ByteBuf body = Unpooled.buffer();
+            body.writeByte(BinaryProtocol.REGISTER);
+            BinaryProtocol.writeString(body, deviceId);
+            BinaryProtocol.writeString(body, deviceName);
+            BinaryProtocol.writeString(body, deviceType);
+            send(body);
+
+            startHeartbeat();
+            startDataReporting();
+            listenToServer();
+        } catch (Exception e) {
+            System.err.println("连接服务器失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 编码DATA帧，首次出现的字段名随帧发送，之后只发送字段表下标
+     */
+    ByteBuf encodeData(String[] keys, double[] values) {
+        ByteBuf body = Unpooled.buffer();
+        body.writeByte(BinaryProtocol.DATA);
+        BinaryProtocol.writeVarint(body, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Integer index = keyTable.get(keys[i]);
+            if (index != null) {
+                BinaryProtocol.writeVarint(body, index << 1);
+            } else {
+                byte[] name = keys[i].getBytes(StandardCharsets.UTF_8);
+                BinaryProtocol.writeVarint(body, (name.length << 1) | 1);
+                body.writeBytes(name);
+                keyTable.put(keys[i], keyTable.size());
+            }
+            body.writeDouble(values[i]);
+        }
+        return body;
+    }
+
+    private synchronized void send(ByteBuf body) throws IOException {
+        ByteBuf frame = Unpooled.buffer();
+        BinaryProtocol.writeFrame(frame, body);
+        byte[] bytes = new byte[frame.readableBytes()];
+        frame.readBytes(bytes);
+        body.release();
+        frame.release();
+        out.write(bytes);
+        out.flush();
+    }
+
+    private void startHeartbeat() {
+        Thread heartbeatThread = new Thread(() -> {
+            while (running && !socket.isClosed()) {
+                try {
+                    Thread.sleep(30000);
+                    send(Unpooled.buffer(1).writeByte(BinaryProtocol.HEARTBEAT));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (IOException e) {
+                    System.err.println("发送心跳失败: " + e.getMessage());
+                    break;
+                }
+            }
+        });
+        heartbeatThread.setDaemon(true);
+        heartbeatThread.start();
+    }
+
+    private void startDataReporting() {
+        Thread dataThread = new Thread(() -> {
+            Random random = new Random();
+            String[] keys = {"temperature", "humidity"};
+            while (running && !socket.isClosed()) {
+                try {
+                    Thread.sleep(10 * 1000);
+                    double[] values = {20 + random.nextDouble() * 10, 40 + random.nextDouble() * 30};
+                    ByteBuf body;
+                    synchronized (this) {
+                        body = encodeData(keys, values);
+                    }
+                    send(body);
+                    System.out.printf("%s(%s) 上报数据: temperature=%.2f, humidity=%.2f%n",
+                            deviceName, deviceId, values[0], values[1]);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (IOException e) {
+                    System.err.println(deviceName + "(" + deviceId + ") 上报数据失败: " + e.getMessage());
+                    break;
+                }
+            }
+        });
+        dataThread.setDaemon(true);
+        dataThread.start();
+    }
+
+    /**
+     * 读取服务器响应帧
+     */
+    private void listenToServer() {
+        try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            while (running) {
+                int length = readVarint(in);
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                ByteBuf buf = Unpooled.wrappedBuffer(frame);
+                byte type = buf.readByte();
+                switch (type) {
+                    case BinaryProtocol.REGISTERED:
+                        System.out.println("注册成功！设备ID: " + BinaryProtocol.readString(buf));
+                        break;
+                    case BinaryProtocol.HEARTBEAT_OK:
+                        System.out.println("收到心跳响应: " + deviceId);
+                        break;
+                    case BinaryProtocol.DATA_RECEIVED:
+                        break;
+                    case BinaryProtocol.PING:
+                        ByteBuf pong = Unpooled.buffer();
+                        pong.writeByte(BinaryProtocol.PONG);
+                        BinaryProtocol.writeString(pong, deviceId);
+                        send(pong);
+                        break;
+                    case BinaryProtocol.ERROR:
+                        System.err.println("服务器错误: " + BinaryProtocol.readString(buf));
+                        break;
+                    default:
+                        System.err.println("未知响应类型: " + (type & 0xFF));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("读取服务器消息失败: " + e.getMessage());
+        } finally {
+            disconnect();
+        }
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("varint过长");
+    }
+
+    /**
+     * 断开连接
+     */
+    public void disconnect() {
+        running = false;
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+            System.out.println("设备断开连接: " + deviceId);
+        } catch (IOException e) {
+            System.err.println("断开连接失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 主方法，用于测试
+     */
+    public static void main(String[] args) {
+        String serverHost = "localhost";
+        int serverPort = 8888;
+        String deviceName = "二进制测试设备";
+        String deviceType = "传感器";
+
+        if (args.length >= 1) {
+            serverHost = args[0];
+        }
+        if (args.length >= 2) {
+            serverPort = Integer.parseInt(args[1]);
+        }
+        if (args.length >= 3) {
+            deviceName = args[2];
+        }
+        if (args.length >= 4) {
+            deviceType = args[3];
+        }
+
+        BinaryDeviceSimulator simulator = new BinaryDeviceSimulator(serverHost, serverPort, deviceName, deviceType);
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::disconnect));
+        simulator.connect();
+    }
+}
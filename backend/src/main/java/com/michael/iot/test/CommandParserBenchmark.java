@@ -0,0 +1,219 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.BinaryCommandDecoder;
+import com.michael.iot.server.BinaryDeviceCommand;
+import com.michael.iot.server.BinaryProtocol;
+import com.michael.iot.server.CommandType;
+import com.michael.iot.server.TextDeviceCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 命令解析基准测试
+ * 对比旧的 StringDecoder + trim().split("\\|") 路径、新的ByteBuf原地解析路径和二进制协议路径，
+ * 输出每条消息的耗时、堆内存分配字节数以及两种协议的线上字节数。
+ * 用法: CommandParserBenchmark [每轮消息数] [轮数]
+ */
+public class CommandParserBenchmark {
+
+    private static final String[] MESSAGES = {
+            "HEARTBEAT|29e5fc6c",
+            "HEARTBEAT|7a1b3c4d",
+            "DATA|{\"temperature\":23.51,\"humidity\":55.20}",
+            "HEARTBEAT|0f0e0d0c",
+            "PONG|29e5fc6c",
+    };
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int messagesPerRound = 1_000_000;
+        int rounds = 5;
+        if (args.length >= 1) {
+            messagesPerRound = Integer.parseInt(args[0]);
+        }
+        if (args.length >= 2) {
+            rounds = Integer.parseInt(args[1]);
+        }
+
+        ByteBuf[] frames = new ByteBuf[MESSAGES.length];
+        for (int i = 0; i < MESSAGES.length; i++) {
+            frames[i] = Unpooled.directBuffer().writeBytes(MESSAGES[i].getBytes(StandardCharsets.UTF_8));
+        }
+
+        ByteBuf[] binaryFrames = binaryFrames();
+        BinaryCommandDecoder binaryDecoder = new BinaryCommandDecoder();
+        // 先解析一遍，让字段名进入解码器的字段表，与长连接上的稳定状态一致
+        for (ByteBuf frame : binaryFrames) {
+            binaryDecoder.decode(frame);
+            frame.readerIndex(0);
+        }
+
+        System.out.println("=== 命令解析基准测试 ===");
+        System.out.println("每轮消息数: " + messagesPerRound + ", 轮数: " + rounds);
+        System.out.printf("线上字节数/消息: 文本 %.1f B, 二进制 %.1f B%n",
+                wireBytes(frames, true), wireBytes(binaryFrames, false));
+
+        // 预热
+        runLegacy(frames, messagesPerRound);
+        runFlyweight(frames, messagesPerRound);
+        runBinary(binaryDecoder, binaryFrames, messagesPerRound);
+
+        final int messages = messagesPerRound;
+        for (int round = 1; round <= rounds; round++) {
+            report("旧路径(split)", round, messages, () -> runLegacy(frames, messages));
+            report("新路径(原地解析)", round, messages, () -> runFlyweight(frames, messages));
+            report("二进制协议", round, messages, () -> runBinary(binaryDecoder, binaryFrames, messages));
+        }
+
+        for (ByteBuf frame : frames) {
+            frame.release();
+        }
+        for (ByteBuf frame : binaryFrames) {
+            frame.release();
+        }
+    }
+
+    /**
+     * 构造与MESSAGES对应的二进制帧（不含长度前缀）
+     */
+    private static ByteBuf[] binaryFrames() {
+        BinaryDeviceSimulator encoder = new BinaryDeviceSimulator("localhost", 0, "bench", "bench");
+        ByteBuf heartbeat = Unpooled.directBuffer().writeByte(BinaryProtocol.HEARTBEAT);
+        // 第一次编码会携带字段名，取第二次编码的结果作为稳定状态下的DATA帧
+        encoder.encodeData(new String[]{"temperature", "humidity"}, new double[]{23.51, 55.20}).release();
+        ByteBuf data = Unpooled.directBuffer().writeBytes(
+                encoder.encodeData(new String[]{"temperature", "humidity"}, new double[]{23.51, 55.20}));
+        ByteBuf pong = Unpooled.directBuffer().writeByte(BinaryProtocol.PONG);
+        BinaryProtocol.writeString(pong, "29e5fc6c");
+        ByteBuf firstData = Unpooled.directBuffer().writeByte(BinaryProtocol.DATA);
+        BinaryProtocol.writeVarint(firstData, 2);
+        for (String key : new String[]{"temperature", "humidity"}) {
+            byte[] name = key.getBytes(StandardCharsets.UTF_8);
+            BinaryProtocol.writeVarint(firstData, (name.length << 1) | 1);
+            firstData.writeBytes(name);
+            firstData.writeDouble(0);
+        }
+        return new ByteBuf[]{firstData, heartbeat, heartbeat.retainedDuplicate(), data, pong};
+    }
+
+    private static double wireBytes(ByteBuf[] frames, boolean text) {
+        long total = 0;
+        // 二进制协议第一帧只用于建立字段表，不计入统计
+        for (int i = text ? 0 : 1; i < frames.length; i++) {
+            int length = frames[i].readableBytes();
+            total += text ? length + 1 : BinaryProtocol.varintSize(length) + length;
+        }
+        return (double) total / (text ? frames.length : frames.length - 1);
+    }
+
+    private static void report(String name, int round, int messages, Runnable task) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        task.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("第%d轮 %-12s %8.1f ns/msg %12.0f msgs/s %8.1f B/msg%n",
+                round, name,
+                (double) elapsed / messages,
+                messages * 1_000_000_000.0 / elapsed,
+                (double) allocated / messages);
+    }
+
+    /**
+     * 旧路径：每帧解码为String，再trim和正则split
+     */
+    private static void runLegacy(ByteBuf[] frames, int messages) {
+        int matched = 0;
+        for (int i = 0; i < messages; i++) {
+            ByteBuf frame = frames[i % frames.length];
+            String message = frame.toString(StandardCharsets.UTF_8);
+            String[] parts = message.trim().split("\\|");
+            switch (parts[0]) {
+                case "HEARTBEAT":
+                case "PONG":
+                    matched += parts[1].length();
+                    break;
+                case "DATA":
+                    sink = parts[1];
+                    matched++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        sink = matched;
+    }
+
+    /**
+     * 新路径：原地解析，只在DATA时解码数据内容
+     */
+    private static void runFlyweight(ByteBuf[] frames, int messages) {
+        TextDeviceCommand command = new TextDeviceCommand();
+        int matched = 0;
+        for (int i = 0; i < messages; i++) {
+            ByteBuf frame = frames[i % frames.length];
+            command.parse(frame);
+            CommandType type = command.getType();
+            switch (type) {
+                case HEARTBEAT:
+                case PONG:
+                    if (command.fieldEquals(1, "29e5fc6c")) {
+                        matched++;
+                    }
+                    break;
+                case DATA:
+                    sink = command.remainder(1);
+                    matched++;
+                    break;
+                default:
+                    break;
+            }
+            command.clear();
+        }
+        sink = matched;
+    }
+
+    /**
+     * 二进制协议路径：字段引用查表，数值直接读为double
+     */
+    private static void runBinary(BinaryCommandDecoder decoder, ByteBuf[] frames, int messages) {
+        int matched = 0;
+        double sum = 0;
+        for (int i = 0; i < messages; i++) {
+            // 跳过仅用于建立字段表的第一帧
+            ByteBuf frame = frames[1 + i % (frames.length - 1)];
+            frame.markReaderIndex();
+            BinaryDeviceCommand command = decoder.decode(frame);
+            frame.resetReaderIndex();
+            switch (command.getType()) {
+                case HEARTBEAT:
+                    matched++;
+                    break;
+                case PONG:
+                    if (command.fieldEquals(1, "29e5fc6c")) {
+                        matched++;
+                    }
+                    break;
+                case DATA:
+                    for (int r = 0; r < command.getReadingCount(); r++) {
+                        sum += command.getReadingValue(r);
+                    }
+                    matched++;
+                    break;
+                default:
+                    break;
+            }
+            command.clear();
+        }
+        sink = matched + sum;
+    }
+}
@@ -0,0 +1,136 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.AcceptorMetrics;
+import com.michael.iot.server.DeviceManager;
+import com.michael.iot.server.IoTNettyServer;
+import com.michael.iot.server.ServerConfig;
+import com.michael.iot.server.TransportType;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 重连风暴接入压测
+ * 依次以不同的SO_REUSEPORT监听数在本进程内启动TCP服务器，多个客户端线程尽快建立并关闭连接，
+ * 以服务端各接入线程统计到的接入总数计算每秒接入连接数，并输出各接入线程的分布。
+ * 需要Linux原生传输（epoll或io_uring），压测期间关闭了连接准入控制。
+ * 用法: ConnectionStormBenchmark [每轮连接数] [客户端线程数] [监听数列表，如1,2,4]
+ */
+public class ConnectionStormBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int connections = 20000;
+        int clientThreads = 16;
+        String acceptorList = "1,2,4";
+        if (args.length >= 1) {
+            connections = Integer.parseInt(args[0]);
+        }
+        if (args.length >= 2) {
+            clientThreads = Integer.parseInt(args[1]);
+        }
+        if (args.length >= 3) {
+            acceptorList = args[2];
+        }
+
+        System.out.println("=== 重连风暴接入压测 ===");
+        System.out.println("每轮连接数: " + connections + ", 客户端线程数: " + clientThreads
+                + ", CPU核数: " + Runtime.getRuntime().availableProcessors());
+
+        int port = 19888;
+        for (String value : acceptorList.split(",")) {
+            int acceptors = Integer.parseInt(value.trim());
+            run(port++, acceptors, connections, clientThreads);
+        }
+        System.exit(0);
+    }
+
+    private static void run(int port, int acceptors, int connections, int clientThreads) throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setTransport(TransportType.AUTO);
+        config.setTcpReusePortAcceptors(acceptors);
+        config.setAdmissionEnabled(false);
+        config.setIngestEnabled(false);
+        config.setTcpBacklog(4096);
+
+        IoTNettyServer server = new IoTNettyServer(port, new DeviceManager(), config);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                System.err.println("服务器启动失败: " + e.getMessage());
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (server.getAcceptorMetrics().isEmpty()) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(500);
+
+        // 预热
+        connectMany(port, Math.min(2000, connections), clientThreads);
+        waitAccepted(server, Math.min(2000, connections));
+        long base = accepted(server);
+
+        long start = System.nanoTime();
+        connectMany(port, connections, clientThreads);
+        boolean complete = waitAccepted(server, base + connections);
+        double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        long total = accepted(server) - base;
+        System.out.printf("监听数 %d: %d 个连接, %.2f s, %.0f 连接/秒%s%n",
+                server.getAcceptorMetrics().size(), total, seconds, total / seconds, complete ? "" : "（超时，未全部接入）");
+        for (AcceptorMetrics acceptor : server.getAcceptorMetrics()) {
+            System.out.println("  " + acceptor);
+        }
+
+        server.shutdown();
+        serverThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static void connectMany(int port, int connections, int clientThreads) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(connections);
+        CountDownLatch done = new CountDownLatch(clientThreads);
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        for (int t = 0; t < clientThreads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (remaining.getAndDecrement() > 0) {
+                        try (Socket socket = new Socket()) {
+                            socket.connect(address, 5000);
+                        } catch (Exception e) {
+                            // 监听队列溢出时连接失败，不计入接入数
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+    }
+
+    private static boolean waitAccepted(IoTNettyServer server, long target) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (accepted(server) < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private static long accepted(IoTNettyServer server) {
+        long total = 0;
+        for (AcceptorMetrics acceptor : server.getAcceptorMetrics()) {
+            total += acceptor.getAccepted();
+        }
+        return total;
+    }
+}
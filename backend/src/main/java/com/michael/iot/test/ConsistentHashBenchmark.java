@@ -0,0 +1,81 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.ClusterMember;
+import com.michael.iot.server.ConsistentHashRing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一致性哈希环的设备分布测试
+ * 对不同节点数和虚拟节点数，统计设备在各节点上的分布（最多/最少与平均值之比），
+ * 再加入一个节点、移除一个节点，统计改变归属的设备比例（理想值约为1/节点数），以及单次查找耗时。
+ * 用法: ConsistentHashBenchmark [设备数] [节点数列表，如3,5,10] [虚拟节点数列表，如40,160,640]
+ */
+public class ConsistentHashBenchmark {
+
+    public static void main(String[] args) {
+        int devices = args.length >= 1 ? Integer.parseInt(args[0]) : 1_000_000;
+        String nodeList = args.length >= 2 ? args[1] : "3,5,10";
+        String replicaList = args.length >= 3 ? args[2] : "40,160,640";
+
+        String[] deviceIds = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            deviceIds[i] = "device" + i;
+        }
+
+        System.out.println("=== 一致性哈希分布测试 ===");
+        System.out.println("设备数: " + devices);
+        for (String nodeValue : nodeList.split(",")) {
+            int nodes = Integer.parseInt(nodeValue.trim());
+            for (String replicaValue : replicaList.split(",")) {
+                int replicas = Integer.parseInt(replicaValue.trim());
+                run(deviceIds, nodes, replicas);
+            }
+        }
+    }
+
+    private static void run(String[] deviceIds, int nodes, int replicas) {
+        List<ClusterMember> members = members(nodes + 1);
+        ConsistentHashRing ring = new ConsistentHashRing(members.subList(0, nodes), replicas);
+        ConsistentHashRing joined = new ConsistentHashRing(members, replicas);
+        ConsistentHashRing left = new ConsistentHashRing(members.subList(1, nodes), replicas);
+
+        Map<String, Integer> load = new HashMap<>();
+        long movedOnJoin = 0;
+        long movedOnLeave = 0;
+        long start = System.nanoTime();
+        for (String deviceId : deviceIds) {
+            load.merge(ring.owner(deviceId).getId(), 1, Integer::sum);
+        }
+        double lookupNanos = (System.nanoTime() - start) / (double) deviceIds.length;
+        for (String deviceId : deviceIds) {
+            String owner = ring.owner(deviceId).getId();
+            if (!owner.equals(joined.owner(deviceId).getId())) {
+                movedOnJoin++;
+            }
+            if (!owner.equals(left.owner(deviceId).getId())) {
+                movedOnLeave++;
+            }
+        }
+
+        double average = deviceIds.length / (double) nodes;
+        int max = load.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        int min = load.size() < nodes ? 0 : load.values().stream().mapToInt(Integer::intValue).min().orElse(0);
+        System.out.printf("节点 %2d, 虚拟节点 %4d: 最多 %.3fx 平均, 最少 %.3fx 平均, 加入节点迁移 %.2f%%（理想 %.2f%%）, "
+                        + "移除节点迁移 %.2f%%（理想 %.2f%%）, 查找 %.0f ns%n",
+                nodes, replicas, max / average, min / average,
+                movedOnJoin * 100.0 / deviceIds.length, 100.0 / (nodes + 1),
+                movedOnLeave * 100.0 / deviceIds.length, 100.0 / nodes, lookupNanos);
+    }
+
+    private static List<ClusterMember> members(int count) {
+        List<ClusterMember> members = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            members.add(new ClusterMember("node" + i, "10.0.0." + i, 7000, 8888));
+        }
+        return members;
+    }
+}
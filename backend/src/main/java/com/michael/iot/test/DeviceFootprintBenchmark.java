@@ -0,0 +1,128 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.DeviceInfo;
+import com.michael.iot.server.DeviceStatus;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+
+/**
+ * 设备信息内存占用基准测试
+ * 按真实字段内容（设备ID、名称、类型、IP、四个时间、最新数据）创建指定数量的设备，
+ * 对比旧的LocalDateTime/String布局与当前紧凑布局，输出每个设备占用的堆内存字节数（含设备ID字符串和数组引用）。
+ * 1000万设备需要较大的堆，例如 -Xmx8g；堆不足的规模会跳过。
+ * 用法: DeviceFootprintBenchmark [设备数列表，如1000000,10000000]
+ */
+public class DeviceFootprintBenchmark {
+
+    private static final String[] TYPES = {"传感器", "控制器", "网关", "摄像头", "电表"};
+    private static final String[] NAMES = {"温度传感器", "湿度传感器", "智能开关", "边缘网关", "监控摄像头", "智能电表"};
+
+    public static void main(String[] args) throws Exception {
+        String countList = args.length >= 1 ? args[0] : "1000000,10000000";
+
+        System.out.println("=== 设备信息内存占用基准测试 ===");
+        System.out.println("最大堆: " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+
+        for (String value : countList.split(",")) {
+            int count = Integer.parseInt(value.trim());
+            measure("旧布局", count, DeviceFootprintBenchmark::legacyDevice);
+            measure("紧凑布局", count, DeviceFootprintBenchmark::compactDevice);
+        }
+    }
+
+    private interface DeviceFactory {
+        Object create(int i, LocalDateTime now, long nowMillis);
+    }
+
+    private static void measure(String label, int count, DeviceFactory factory) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeap(memory);
+        Object[] devices;
+        try {
+            devices = new Object[count];
+            LocalDateTime now = LocalDateTime.now();
+            long nowMillis = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                devices[i] = factory.create(i, now.plusNanos(i * 1_000_000L), nowMillis + i);
+            }
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%s %,d 个设备: 堆内存不足，已跳过%n", label, count);
+            return;
+        }
+        long after = usedHeap(memory);
+        System.out.printf("%s %,d 个设备: 共 %,d MB, 每个设备 %.1f 字节%n",
+                label, count, (after - before) / (1024 * 1024), (after - before) / (double) count);
+        // 测量完成前保持引用
+        Reference.reachabilityFence(devices);
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static Object compactDevice(int i, LocalDateTime now, long nowMillis) {
+        DeviceInfo device = new DeviceInfo(deviceId(i), NAMES[i % NAMES.length], TYPES[i % TYPES.length]);
+        device.setIpAddress(ipAddress(i));
+        device.setPort(10000 + (i & 0x7FFF));
+        device.setStatus(DeviceStatus.ONLINE);
+        device.setConnectTimeMillis(nowMillis);
+        device.setLastHeartbeatMillis(nowMillis);
+        device.setDisconnectTimeMillis(nowMillis);
+        device.setLastData(lastData(i));
+        device.setLastDataTimeMillis(nowMillis);
+        return device;
+    }
+
+    private static Object legacyDevice(int i, LocalDateTime now, long nowMillis) {
+        LegacyDeviceInfo device = new LegacyDeviceInfo();
+        device.deviceId = deviceId(i);
+        // 旧实现直接保存协议解析出的字符串，每个设备各持有一份
+        device.deviceName = new String(NAMES[i % NAMES.length]);
+        device.deviceType = new String(TYPES[i % TYPES.length]);
+        device.ipAddress = ipAddress(i);
+        device.port = 10000 + (i & 0x7FFF);
+        device.status = DeviceStatus.ONLINE;
+        device.connectTime = now;
+        // 旧实现每次心跳、上报都会创建新的LocalDateTime
+        device.lastHeartbeat = now.plusSeconds(1);
+        device.disconnectTime = now.plusSeconds(2);
+        device.lastData = lastData(i);
+        device.lastDataTime = now.plusSeconds(3);
+        return device;
+    }
+
+    private static String deviceId(int i) {
+        return "device-" + i;
+    }
+
+    private static String ipAddress(int i) {
+        return "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+    }
+
+    private static String lastData(int i) {
+        return "{\"temperature\":" + (i % 40) + ".5}";
+    }
+
+    /**
+     * 旧版DeviceInfo的字段布局
+     */
+    private static class LegacyDeviceInfo {
+        String deviceId;
+        String deviceName;
+        String deviceType;
+        String ipAddress;
+        int port;
+        DeviceStatus status;
+        LocalDateTime lastHeartbeat;
+        LocalDateTime connectTime;
+        LocalDateTime disconnectTime;
+        String lastData;
+        LocalDateTime lastDataTime;
+    }
+}
@@ -0,0 +1,161 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.DeviceManager;
+import com.michael.iot.server.IoTNettyServer;
+import com.michael.iot.server.ServerConfig;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 心跳路径内存分配测试
+ * 在本进程内启动TCP服务器（单个工作线程），一个文本协议设备注册后连续发送心跳，
+ * 统计服务端工作线程在心跳期间的堆内存分配量，包括读取、分帧、解析、更新设备信息和写出确认的全过程。
+ * 用法: HeartbeatAllocationBenchmark [每轮心跳数] [轮数]
+ */
+public class HeartbeatAllocationBenchmark {
+
+    private static final int PORT = 19890;
+    private static final int CHUNK = 1000;
+    private static final byte[] ACK = "HEARTBEAT_OK\n".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int heartbeats = args.length >= 1 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+
+        ServerConfig config = new ServerConfig();
+        config.setTcpWorkerThreads(1);
+        config.setAdmissionEnabled(false);
+        config.setIngestEnabled(false);
+        IoTNettyServer server = new IoTNettyServer(PORT, new DeviceManager(), config);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (Exception e) {
+                System.err.println("服务器启动失败: " + e.getMessage());
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (server.getAcceptorMetrics().isEmpty()) {
+            Thread.sleep(50);
+        }
+
+        System.out.println("=== 心跳路径内存分配测试 ===");
+        System.out.println("每轮心跳数: " + heartbeats + ", 轮数: " + rounds);
+
+        try (Socket socket = new Socket("127.0.0.1", PORT)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("REGISTER|hb-device|心跳测试|传感器\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // 欢迎、注册成功和会话令牌三行
+            readLines(in, 3);
+
+            AtomicLong acked = new AtomicLong();
+            Thread reader = new Thread(() -> countAcks(in, acked), "ack-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            StringBuilder chunk = new StringBuilder();
+            for (int i = 0; i < CHUNK; i++) {
+                chunk.append("HEARTBEAT|hb-device\n");
+            }
+            byte[] chunkBytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+
+            // 预热
+            send(out, chunkBytes, heartbeats, acked);
+
+            com.sun.management.ThreadMXBean threadBean =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long[] workers = workerThreadIds();
+            for (int round = 1; round <= rounds; round++) {
+                long allocatedBefore = sum(threadBean.getThreadAllocatedBytes(workers));
+                long start = System.nanoTime();
+                send(out, chunkBytes, heartbeats, acked);
+                long nanos = System.nanoTime() - start;
+                long allocated = sum(threadBean.getThreadAllocatedBytes(workers)) - allocatedBefore;
+                System.out.printf("第%d轮: %.0f 心跳/秒, 工作线程分配 %,d 字节, %.3f 字节/心跳%n",
+                        round, heartbeats / (nanos / 1e9), allocated, allocated / (double) heartbeats);
+            }
+        }
+
+        server.shutdown();
+        serverThread.join(TimeUnit.SECONDS.toMillis(5));
+        System.exit(0);
+    }
+
+    /**
+     * 发送指定数量的心跳，并等待全部确认，避免客户端发送过快把数据积压在套接字缓冲中
+     */
+    private static void send(OutputStream out, byte[] chunk, int heartbeats, AtomicLong acked) throws Exception {
+        long base = acked.get();
+        for (int sent = 0; sent < heartbeats; sent += CHUNK) {
+            out.write(chunk);
+            // 最多允许50批心跳尚未确认
+            while (acked.get() < base + sent - 50 * CHUNK) {
+                Thread.onSpinWait();
+            }
+        }
+        out.flush();
+        while (acked.get() < base + heartbeats) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void countAcks(InputStream in, AtomicLong acked) {
+        byte[] buffer = new byte[64 * 1024];
+        long bytes = 0;
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes += n;
+                acked.set(bytes / ACK.length);
+            }
+        } catch (Exception e) {
+            // 连接关闭
+        }
+    }
+
+    private static void readLines(InputStream in, int lines) throws Exception {
+        while (lines > 0) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IllegalStateException("连接已关闭");
+            }
+            if (b == '\n') {
+                lines--;
+            }
+        }
+    }
+
+    private static long[] workerThreadIds() {
+        List<Long> ids = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("iot-tcp-worker")) {
+                ids.add(thread.getId());
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
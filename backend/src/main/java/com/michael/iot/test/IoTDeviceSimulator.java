@@ -58,14 +58,8 @@ public class IoTDeviceSimulator {
      */
     public void connect() {
         try {
-            socket = new Socket(serverHost, serverPort);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            
-            System.out.println("设备连接成功: " + deviceId);
-            
-            // 注册设备
-            registerDevice();
+            // 连接并注册设备，被服务器限流时按建议时间等待后重连
+            connectAndRegister();
             
             // 启动心跳线程
             startHeartbeat();
@@ -81,19 +75,48 @@ public class IoTDeviceSimulator {
         }
     }
 
+    /**
+     * 建立连接并注册设备
+     * 服务器准入控制拒绝时会回复 RETRY_AFTER|毫秒数 并关闭连接，此时等待建议的时间后重新连接
+     */
+    private void connectAndRegister() throws IOException, InterruptedException {
+        while (true) {
+            socket = new Socket(serverHost, serverPort);
+            out = new PrintWriter(socket.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            System.out.println("设备连接成功: " + deviceId);
+
+            long retryAfter = registerDevice();
+            if (retryAfter < 0) {
+                return;
+            }
+            socket.close();
+            System.out.println("服务器繁忙，" + retryAfter + "ms后重新连接: " + deviceId);
+            Thread.sleep(retryAfter);
+        }
+    }
+
     /**
      * 注册设备
+     * @return 服务器要求的重试等待毫秒数，-1表示已收到注册响应
      */
-    private void registerDevice() {
+    private long registerDevice() throws IOException {
         String registerMessage = String.format("REGISTER|%s|%s|%s", deviceId, deviceName, deviceType);
         out.println(registerMessage);
-        
-        try {
-            String response = in.readLine();
+
+        String response;
+        while ((response = in.readLine()) != null) {
+            if (response.startsWith("RETRY_AFTER|")) {
+                return Long.parseLong(response.substring("RETRY_AFTER|".length()).trim());
+            }
             System.out.println("注册响应: " + response);
-        } catch (IOException e) {
-            System.err.println("读取注册响应失败: " + e.getMessage());
+            // 文本设备连接后先收到欢迎消息，之后才是注册结果
+            if (!response.startsWith("欢迎")) {
+                return -1;
+            }
         }
+        throw new IOException("服务器在注册完成前关闭了连接");
     }
 
     /**
@@ -243,15 +266,8 @@ public class IoTDeviceSimulator {
         try {
             System.out.println("设备正在重新连接: " + deviceId);
             
-            // 重新建立连接
-            socket = new Socket(serverHost, serverPort);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            
-            System.out.println("设备连接成功: " + deviceId);
-            
-            // 注册设备
-            registerDevice();
+            // 重新建立连接并注册设备
+            connectAndRegister();
             
             // 设置运行状态为true，确保心跳和数据上报线程正常工作
             running = true;
@@ -0,0 +1,134 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.DeviceInfo;
+import com.michael.iot.server.DeviceManager;
+import com.michael.iot.server.DevicePersistence;
+import com.michael.iot.server.DeviceStatus;
+import com.michael.iot.server.ServerConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 设备注册表恢复时间测试
+ * 在临时目录中注册指定数量的设备并写快照，快照之后再产生一批上下线变更留在日志尾部，
+ * 然后用新的设备管理器从快照和日志恢复，统计恢复耗时并抽样校验恢复结果。
+ * 用法: RecoveryBenchmark [设备数] [快照后变更的设备数] [恢复线程数]
+ */
+public class RecoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length >= 1 ? Integer.parseInt(args[0]) : 1_000_000;
+        int tail = args.length >= 2 ? Integer.parseInt(args[1]) : 100_000;
+        int threads = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+
+        Path directory = Files.createTempDirectory("iot-recovery");
+        ServerConfig config = new ServerConfig();
+        config.setPersistenceDir(directory.toString());
+        config.setRecoveryThreads(threads);
+
+        System.out.println("=== 设备注册表恢复时间测试 ===");
+        System.out.println("设备数: " + devices + ", 快照后变更: " + tail + ", 目录: " + directory);
+
+        // 所有设备共用一个模拟连接，下线只要求会话绑定了连接
+        Channel channel = new EmbeddedChannel();
+        DeviceManager source = new DeviceManager();
+        DevicePersistence writer = new DevicePersistence(source, config);
+        writer.recover();
+        writer.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < devices; i++) {
+            String id = "device-" + i;
+            source.deviceOnline(id, "设备" + i, "type-" + (i % 16), "10.0." + (i >> 8 & 0xFF) + "." + (i & 0xFF), 10000 + (i % 50000), channel);
+            if (i % 2 == 0) {
+                source.deviceOffline(id);
+            }
+        }
+        System.out.printf("注册耗时: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        writer.snapshot();
+        System.out.printf("快照耗时: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        // 快照之后的变更：偶数设备重新上线，奇数设备下线
+        for (int i = 0; i < tail; i++) {
+            String id = "device-" + i;
+            if (i % 2 == 0) {
+                source.deviceOnline(id, "设备" + i + "-新", "type-" + (i % 16), "10.1.0.1", 20000, channel);
+            } else {
+                source.deviceOffline(id);
+            }
+        }
+        // 停止监听器等待日志写完，模拟进程崩溃：不写最终快照
+        source.shutdown();
+        System.out.printf("持久化: %s, 文件数: %d, 目录大小: %,d 字节%n", writer, countFiles(directory), size(directory));
+
+        for (int round = 1; round <= 3; round++) {
+            DeviceManager target = new DeviceManager();
+            DevicePersistence reader = new DevicePersistence(target, config);
+            start = System.nanoTime();
+            int restored = reader.recover();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("第%d轮: 恢复 %d 个设备, 耗时 %d ms, %.0f 设备/秒%n",
+                    round, restored, millis, restored / Math.max(millis / 1000.0, 0.001));
+            verify(source, target, devices);
+            // 恢复会新建日志分段，下一轮只读同样的快照和日志
+            deleteNewest(directory);
+            target.shutdown();
+        }
+
+        deleteRecursively(directory);
+        System.exit(0);
+    }
+
+    private static void verify(DeviceManager source, DeviceManager target, int devices) {
+        int checked = 0;
+        for (int i = 0; i < devices; i += Math.max(1, devices / 1000)) {
+            String id = "device-" + i;
+            DeviceInfo expected = source.getDevice(id);
+            DeviceInfo actual = target.getDevice(id);
+            if (actual == null || actual.getStatus() != DeviceStatus.OFFLINE
+                    || !expected.getDeviceName().equals(actual.getDeviceName())
+                    || !String.valueOf(expected.getIpAddress()).equals(String.valueOf(actual.getIpAddress()))
+                    || expected.getConnectTimeMillis() != actual.getConnectTimeMillis()) {
+                throw new IllegalStateException("设备恢复结果不一致: " + expected + " / " + actual);
+            }
+            checked++;
+        }
+        if (target.getAllDevices().size() != devices || target.getOfflineDevices().size() != devices) {
+            throw new IllegalStateException("恢复的设备数不一致: " + target.getAllDevices().size()
+                    + "，离线: " + target.getOfflineDevices().size());
+        }
+        System.out.println("抽样校验通过: " + checked + " 个设备");
+    }
+
+    private static long countFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static long size(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteNewest(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            Path newest = files.filter(file -> file.getFileName().toString().startsWith("journal-"))
+                    .max(Comparator.comparing(Path::toString)).orElseThrow();
+            Files.delete(newest);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
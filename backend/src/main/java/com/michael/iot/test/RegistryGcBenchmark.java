@@ -0,0 +1,163 @@
+package com.michael.iot.test;
+
+import ch.qos.logback.classic.Level;
+import com.michael.iot.server.DeviceInfo;
+import com.michael.iot.server.DeviceManager;
+import com.michael.iot.server.DeviceRegistry;
+import com.michael.iot.server.HeapDeviceRegistry;
+import com.michael.iot.server.OffHeapDeviceRegistry;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备存储引擎GC停顿对比
+ * 先经DeviceManager.deviceOnline注册指定数量的设备，再模拟心跳和数据上报持续更新随机设备（每次操作都会产生少量临时对象），
+ * 统计期间每次GC的停顿时间，并测量一次完整GC的耗时。
+ * 与服务器一样，每个设备除了存储引擎中的记录外还有DeviceManager中的会话和索引条目，
+ * 这部分在两种引擎下都在堆上，结果反映的是整个设备管理器而不只是存储引擎。
+ * 两种引擎最好分别在独立的JVM中运行，例如:
+ *   java -Xmx6g -XX:+UseG1GC ... RegistryGcBenchmark 10000000 60 heap
+ *   java -Xmx1g -XX:MaxDirectMemorySize=4g ... RegistryGcBenchmark 10000000 60 offheap
+ * 用法: RegistryGcBenchmark [设备数] [秒数] [引擎列表，heap,offheap]
+ */
+public class RegistryGcBenchmark {
+
+    private static final String[] TYPES = {"传感器", "控制器", "网关", "摄像头", "电表"};
+
+    private static final List<Long> pauses = Collections.synchronizedList(new ArrayList<>());
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length >= 1 ? Integer.parseInt(args[0]) : 10_000_000;
+        int seconds = args.length >= 2 ? Integer.parseInt(args[1]) : 60;
+        String engines = args.length >= 3 ? args[2] : "heap,offheap";
+
+        System.out.println("=== 设备存储引擎GC停顿对比 ===");
+        System.out.println("设备数: " + devices + ", 时长: " + seconds + "s, 最大堆: "
+                + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB, GC: " + collectorNames());
+        installGcListener();
+        // 每个设备上线都会输出一行日志，注册阶段关闭以免日志本身成为瓶颈
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(DeviceManager.class)).setLevel(Level.WARN);
+
+        for (String engine : engines.split(",")) {
+            DeviceRegistry registry = "offheap".equalsIgnoreCase(engine.trim())
+                    ? new OffHeapDeviceRegistry(devices, 64)
+                    : new HeapDeviceRegistry();
+            DeviceManager manager = new DeviceManager(registry);
+            run(engine.trim(), manager, registry, devices, seconds);
+            manager.shutdown();
+            manager = null;
+            registry = null;
+            System.gc();
+        }
+    }
+
+    private static void run(String engine, DeviceManager manager, DeviceRegistry registry, int devices, int seconds) {
+        // 所有设备共用一个模拟连接，会话只要求绑定了连接
+        Channel channel = new EmbeddedChannel();
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < devices; i++) {
+            DeviceInfo device = manager.deviceOnline(deviceId(i), "设备" + (i % 1000), TYPES[i % TYPES.length],
+                    "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF),
+                    10000 + (i & 0x7FFF), channel).getDevice();
+            device.setLastData("{\"temperature\":" + (i % 40) + ".5}");
+            device.setLastDataTimeMillis(now);
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+
+        long fullGcStart = System.nanoTime();
+        System.gc();
+        long fullGcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fullGcStart);
+        long heapUsed = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+        pauses.clear();
+        long operations = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            for (int k = 0; k < 10_000; k++) {
+                // 与协议解析一样，每条消息都会解码出新的设备ID字符串
+                String deviceId = deviceId(random.nextInt(devices));
+                if ((k & 1) == 0) {
+                    manager.updateHeartbeat(deviceId);
+                } else {
+                    DeviceInfo device = manager.getDevice(deviceId);
+                    device.setLastData("{\"temperature\":" + random.nextInt(40) + ".5}");
+                    device.setLastDataTimeMillis(System.currentTimeMillis());
+                    device.incrementMessageCount();
+                }
+            }
+            operations += 10_000;
+        }
+
+        List<Long> sorted;
+        synchronized (pauses) {
+            sorted = new ArrayList<>(pauses);
+        }
+        Collections.sort(sorted);
+        long total = 0;
+        for (long pause : sorted) {
+            total += pause;
+        }
+        System.out.printf("[%s] 写入 %.1fs, 写入后堆占用 %,d MB (每设备 %d 字节，含会话和索引), 完整GC %d ms%n",
+                engine, loadSeconds, heapUsed / (1024 * 1024), heapUsed / devices, fullGcMillis);
+        if (registry instanceof OffHeapDeviceRegistry) {
+            System.out.printf("[%s] 堆外内存 %,d MB, 每条记录 %d 字节%n", engine,
+                    ((OffHeapDeviceRegistry) registry).getOffHeapBytes() / (1024 * 1024),
+                    ((OffHeapDeviceRegistry) registry).getRecordSize());
+        }
+        System.out.printf("[%s] 更新 %,d 次 (%.0f 次/秒), GC %d 次, 总停顿 %d ms, 平均 %.1f ms, p99 %d ms, 最大 %d ms%n",
+                engine, operations, operations / (double) seconds, sorted.size(), total,
+                sorted.isEmpty() ? 0.0 : total / (double) sorted.size(),
+                percentile(sorted, 0.99), sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1));
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p * sorted.size()) - 1));
+    }
+
+    private static String deviceId(int i) {
+        return "device-" + i;
+    }
+
+    private static void installGcListener() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    // 并发周期（如G1 Concurrent GC）不暂停应用线程，不计入停顿
+                    if (!info.getGcName().contains("Concurrent") && !"System.gc()".equals(info.getGcCause())) {
+                        pauses.add(info.getGcInfo().getDuration());
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    private static String collectorNames() {
+        StringBuilder names = new StringBuilder();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(gc.getName());
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.RollupCell;
+import com.michael.iot.server.RollupEngine;
+import com.michael.iot.server.RollupResolution;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 预聚合写入和查询测试
+ * 模拟若干设备按固定间隔上报一周的数据，统计聚合写入速率；随后按小时粒度查询一周的设备序列和设备类型序列，
+ * 对比查询涉及的窗口数和这些窗口覆盖的原始点数，并用逐点累计的结果校验一个设备的小时聚合。
+ * 用法: RollupBenchmark [设备数] [上报间隔秒数] [天数] [设备类型数]
+ */
+public class RollupBenchmark {
+    private static final long START = 1_700_000_000_000L / 3_600_000L * 3_600_000L;
+
+    public static void main(String[] args) {
+        int devices = args.length >= 1 ? Integer.parseInt(args[0]) : 200;
+        int intervalSeconds = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+        int days = args.length >= 3 ? Integer.parseInt(args[2]) : 7;
+        int types = args.length >= 4 ? Integer.parseInt(args[3]) : 4;
+
+        long end = START + days * 24 * 3600_000L;
+        long samples = (end - START) / (intervalSeconds * 1000L);
+        int hours = days * 24;
+        RollupEngine engine = new RollupEngine(days * 1440, hours, 10_000);
+        String[] ids = new String[devices];
+        String[] deviceTypes = new String[devices];
+        for (int d = 0; d < devices; d++) {
+            ids[d] = "device-" + d;
+            deviceTypes[d] = "type-" + (d % types);
+        }
+
+        System.out.println("=== 预聚合写入和查询测试 ===");
+        System.out.printf("设备数: %d, 上报间隔: %d 秒, 天数: %d, 总点数: %,d%n", devices, intervalSeconds, days, samples * devices);
+
+        // 对一个设备逐点累计每小时的结果，用于校验
+        int checked = devices / 2;
+        long[] counts = new long[hours];
+        double[] sums = new double[hours];
+        double[] mins = new double[hours];
+        double[] maxs = new double[hours];
+        Arrays.fill(mins, Double.MAX_VALUE);
+        Arrays.fill(maxs, -Double.MAX_VALUE);
+
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (long s = 0; s < samples; s++) {
+            long timestamp = START + s * intervalSeconds * 1000L;
+            for (int d = 0; d < devices; d++) {
+                double value = 20 + random.nextInt(1000) / 100.0;
+                engine.record(ids[d], deviceTypes[d], "temperature", timestamp, value);
+                if (d == checked) {
+                    int hour = (int) ((timestamp - START) / 3_600_000L);
+                    counts[hour]++;
+                    sums[hour] += value;
+                    mins[hour] = Math.min(mins[hour], value);
+                    maxs[hour] = Math.max(maxs[hour], value);
+                }
+            }
+            // 模拟定时任务，每分钟关闭一次到期窗口
+            if (timestamp % 60_000L == 0) {
+                engine.closeWindows(timestamp);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long points = samples * devices;
+        System.out.printf("写入: %,d 点, %d ms, %.0f 点/秒%n", points, nanos / 1_000_000, points / (nanos / 1e9));
+        engine.closeWindows(end + 3600_000L);
+        System.out.println(engine);
+
+        // 一周的小时序列查询
+        int queries = 10_000;
+        long cells = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            cells += engine.query(RollupEngine.Scope.DEVICE, ids[q % devices], "temperature",
+                    RollupResolution.HOUR, START, end - 1).size();
+        }
+        nanos = System.nanoTime() - start;
+        System.out.printf("设备一周小时序列: %.0f 次/秒, 每次 %d 个窗口, 覆盖 %,d 个原始点%n",
+                queries / (nanos / 1e9), cells / queries, samples);
+
+        cells = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            cells += engine.query(RollupEngine.Scope.TYPE, deviceTypes[q % types], "temperature",
+                    RollupResolution.HOUR, START, end - 1).size();
+        }
+        nanos = System.nanoTime() - start;
+        System.out.printf("设备类型一周小时序列: %.0f 次/秒, 每次 %d 个窗口, 覆盖 %,d 个原始点%n",
+                queries / (nanos / 1e9), cells / queries, samples * devices / types);
+
+        List<RollupCell> minutes = engine.query(RollupEngine.Scope.TYPE, deviceTypes[0], "temperature",
+                RollupResolution.MINUTE, START, end - 1);
+        System.out.printf("设备类型一周分钟序列: %,d 个窗口%n", minutes.size());
+
+        List<RollupCell> result = engine.query(RollupEngine.Scope.DEVICE, ids[checked], "temperature",
+                RollupResolution.HOUR, START, end - 1);
+        if (result.size() != hours) {
+            throw new IllegalStateException("小时窗口数不一致: " + result.size() + " / " + hours);
+        }
+        for (int h = 0; h < hours; h++) {
+            RollupCell cell = result.get(h);
+            if (cell.getStart() != START + h * 3_600_000L || cell.getCount() != counts[h]
+                    || cell.getMin() != mins[h] || cell.getMax() != maxs[h]
+                    || Math.abs(cell.getSum() - sums[h]) > 1e-6) {
+                throw new IllegalStateException("第" + h + "小时聚合不一致: " + cell);
+            }
+        }
+        System.out.println("校验通过: " + ids[checked] + " " + hours + " 个小时窗口");
+    }
+}
@@ -0,0 +1,173 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.AlertRule;
+import com.michael.iot.server.DeviceAlert;
+import com.michael.iot.server.DeviceInfo;
+import com.michael.iot.server.RuleCondition;
+import com.michael.iot.server.RuleEngine;
+import com.michael.iot.server.SchemaRegistry;
+import com.michael.iot.server.SensorExtractor;
+import com.michael.iot.server.SensorReading;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 告警规则引擎求值测试
+ * 若干设备类型各有一批阈值规则、组合规则和字段间比较规则，另有少量适用于全部类型的规则；
+ * 每个设备的各字段值围绕基准值随机波动（缓慢的均值回归，标准差约为三分之一个波动范围），读数随机携带部分字段，阈值分布在正常范围的两侧；
+ * 统计每秒求值的读数、每条读数实际求值的规则数（对比逐条扫描的规则总数）和堆内存分配，
+ * 最后用一个固定序列校验连续次数的触发和恢复。
+ * 用法: RuleEngineBenchmark [设备类型数] [每种类型的规则数] [设备数] [读数条数]
+ */
+public class RuleEngineBenchmark {
+    private static final String[] FIELDS = {"temperature", "humidity", "pressure", "voltage", "current", "rssi"};
+    private static final double[] BASE = {25, 50, 1000, 220, 5, -60};
+    private static final double[] SPREAD = {10, 30, 50, 20, 4, 30};
+
+    public static void main(String[] args) {
+        int types = args.length >= 1 ? Integer.parseInt(args[0]) : 50;
+        int rulesPerType = args.length >= 2 ? Integer.parseInt(args[1]) : 100;
+        int devices = args.length >= 3 ? Integer.parseInt(args[2]) : 10_000;
+        int messages = args.length >= 4 ? Integer.parseInt(args[3]) : 2_000_000;
+
+        Random random = new Random(42);
+        SchemaRegistry registry = new SchemaRegistry();
+        RuleEngine engine = new RuleEngine();
+        int ruleCount = 0;
+        for (int t = 0; t < types; t++) {
+            String type = "type-" + t;
+            registry.register(type, FIELDS);
+            for (int r = 0; r < rulesPerType; r++) {
+                engine.addRule(new AlertRule(type + "-" + r, null, type, RuleCondition.parse(randomCondition(random)),
+                        1 + random.nextInt(5)));
+                ruleCount++;
+            }
+        }
+        for (int r = 0; r < 10; r++) {
+            engine.addRule(new AlertRule("any-" + r, null, AlertRule.ANY_TYPE, RuleCondition.parse(randomCondition(random)),
+                    1 + random.nextInt(5)));
+            ruleCount++;
+        }
+        long[] alerts = new long[2];
+        engine.addAlertListener(alert -> alerts[alert.getState().ordinal()]++);
+
+        DeviceInfo[] infos = new DeviceInfo[devices];
+        double[][] values = new double[devices][FIELDS.length];
+        for (int d = 0; d < devices; d++) {
+            infos[d] = new DeviceInfo("device-" + d, "设备" + d, "type-" + (d % types));
+            for (int f = 0; f < FIELDS.length; f++) {
+                values[d][f] = BASE[f] + (random.nextDouble() - 0.5) * SPREAD[f];
+            }
+        }
+        // 预先生成读数，测试只包含规则求值
+        SensorExtractor extractor = new SensorExtractor(registry);
+        SensorReading[] readings = new SensorReading[4096];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = new SensorReading();
+        }
+
+        System.out.println("=== 告警规则引擎求值测试 ===");
+        System.out.printf("设备类型: %d, 规则: %d, 设备: %d, 读数: %,d%n", types, ruleCount, devices, messages);
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 1; round <= 3; round++) {
+            long evaluationsBefore = engine.getEvaluationCount();
+            long elapsed = 0;
+            long allocated = 0;
+            for (int done = 0; done < messages; done += readings.length) {
+                int batch = Math.min(readings.length, messages - done);
+                for (int i = 0; i < batch; i++) {
+                    int d = (done + i) % devices;
+                    fill(extractor, readings[i], infos[d].getDeviceType(), values[d], done + i, random);
+                }
+                long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                for (int i = 0; i < batch; i++) {
+                    engine.onReading(infos[(done + i) % devices], readings[i]);
+                }
+                elapsed += System.nanoTime() - start;
+                allocated += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+            long evaluations = engine.getEvaluationCount() - evaluationsBefore;
+            System.out.printf("第%d轮 %,.0f 读数/秒, %.1f ns/读数, 每条读数求值 %.1f 条规则（该类型共 %d 条）, %.1f B/读数%n",
+                    round, messages / (elapsed / 1e9), elapsed / (double) messages,
+                    evaluations / (double) messages, rulesPerType + 10, allocated / (double) messages);
+        }
+        System.out.printf("触发: %,d, 恢复: %,d%n", alerts[0], alerts[1]);
+        System.out.println(engine);
+
+        verify();
+    }
+
+    /**
+     * 随机生成规则条件：七成单字段阈值，两成双字段组合，一成带取反和字段间比较的组合
+     */
+    private static String randomCondition(Random random) {
+        int kind = random.nextInt(10);
+        int a = random.nextInt(FIELDS.length);
+        int b = (a + 1 + random.nextInt(FIELDS.length - 1)) % FIELDS.length;
+        if (kind < 7) {
+            return FIELDS[a] + (random.nextBoolean() ? " > " : " < ") + threshold(random, a);
+        }
+        if (kind < 9) {
+            return FIELDS[a] + " > " + threshold(random, a) + " && " + FIELDS[b] + " < " + threshold(random, b);
+        }
+        return "!(" + FIELDS[a] + " <= " + threshold(random, a) + ") && (" + FIELDS[a] + " >= " + FIELDS[b]
+                + " || " + FIELDS[b] + " < " + threshold(random, b) + ")";
+    }
+
+    /**
+     * 阈值在基准值两侧0.9到1.4倍波动范围处，少数设备游走越过时产生告警
+     */
+    private static String threshold(Random random, int field) {
+        double offset = (0.9 + random.nextDouble() * 0.5) * SPREAD[field];
+        return String.format("%.1f", BASE[field] + (random.nextBoolean() ? offset : -offset));
+    }
+
+    /**
+     * 各字段值向基准值回归并叠加随机波动；温湿度总是携带，其余字段各有三分之一的概率携带
+     */
+    private static void fill(SensorExtractor extractor, SensorReading reading, String deviceType, double[] values,
+                             long timestamp, Random random) {
+        extractor.reset(reading, deviceType, timestamp);
+        for (int f = 0; f < FIELDS.length; f++) {
+            values[f] = BASE[f] + 0.998 * (values[f] - BASE[f]) + random.nextGaussian() * 0.02 * SPREAD[f];
+            if (f < 2 || random.nextInt(3) == 0) {
+                extractor.put(reading, deviceType, FIELDS[f], values[f]);
+            }
+        }
+    }
+
+    /**
+     * temperature > 28 连续3次触发：第7条读数触发，第8条恢复；不携带温度的第6条读数不影响计数
+     */
+    private static void verify() {
+        SchemaRegistry registry = new SchemaRegistry();
+        SensorExtractor extractor = new SensorExtractor(registry);
+        RuleEngine engine = new RuleEngine();
+        engine.addRule(AlertRule.parse("high-temp|传感器|temperature > 28|3|温度过高"));
+        List<String> events = new ArrayList<>();
+        engine.addAlertListener(alert -> events.add(alert.getState() + "@" + alert.getReadingTime()));
+        DeviceInfo device = new DeviceInfo("verify", "校验设备", "传感器");
+        double[] temperatures = {29, 29, 27, 29, 29, Double.NaN, 29, 20, 29};
+        SensorReading reading = new SensorReading();
+        for (int i = 0; i < temperatures.length; i++) {
+            extractor.reset(reading, device.getDeviceType(), i + 1);
+            extractor.put(reading, device.getDeviceType(), "humidity", 50);
+            if (!Double.isNaN(temperatures[i])) {
+                extractor.put(reading, device.getDeviceType(), "temperature", temperatures[i]);
+            }
+            engine.onReading(device, reading);
+        }
+        List<String> expected = List.of(DeviceAlert.State.FIRING + "@7", DeviceAlert.State.RESOLVED + "@8");
+        if (!events.equals(expected)) {
+            throw new IllegalStateException("告警序列不一致: " + events + "，期望 " + expected);
+        }
+        System.out.println("校验通过: " + events);
+    }
+}
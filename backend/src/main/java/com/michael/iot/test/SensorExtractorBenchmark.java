@@ -0,0 +1,155 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.SchemaRegistry;
+import com.michael.iot.server.SensorExtractor;
+import com.michael.iot.server.SensorReading;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 读数提取基准测试
+ * 对比旧路径（数据内容解码为String，每个消费者各自截取字段并Double.parseDouble）和
+ * 按数据模式直接从ByteBuf提取读数的新路径，输出每条消息的耗时和堆内存分配字节数，
+ * 最后用随机数值校验提取结果与Double.parseDouble逐位一致。
+ * 用法: SensorExtractorBenchmark [每轮消息数] [轮数] [消费者数]
+ */
+public class SensorExtractorBenchmark {
+    private static final String DEVICE_TYPE = "传感器";
+
+    private static volatile double sink;
+
+    public static void main(String[] args) {
+        int messagesPerRound = args.length >= 1 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        int consumers = args.length >= 3 ? Integer.parseInt(args[2]) : 3;
+
+        Random random = new Random(42);
+        ByteBuf[] payloads = new ByteBuf[1024];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = Unpooled.directBuffer().writeBytes(String.format(
+                    "{\"temperature\":%.2f,\"humidity\":%.2f,\"status\":\"ok\"}",
+                    20 + random.nextDouble() * 10, 40 + random.nextDouble() * 20).getBytes(StandardCharsets.UTF_8));
+        }
+        SchemaRegistry registry = new SchemaRegistry();
+        registry.register(DEVICE_TYPE, "temperature", "humidity");
+        SensorExtractor extractor = new SensorExtractor(registry);
+        SensorReading reading = new SensorReading();
+
+        System.out.println("=== 读数提取基准测试 ===");
+        System.out.println("每轮消息数: " + messagesPerRound + ", 轮数: " + rounds + ", 消费者数: " + consumers);
+
+        // 预热
+        runLegacy(payloads, messagesPerRound, consumers);
+        runExtractor(extractor, reading, payloads, messagesPerRound);
+
+        for (int round = 1; round <= rounds; round++) {
+            report("旧路径(逐消费者解析)", round, messagesPerRound, () -> runLegacy(payloads, messagesPerRound, consumers));
+            report("新路径(按模式提取)", round, messagesPerRound, () -> runExtractor(extractor, reading, payloads, messagesPerRound));
+        }
+
+        verify(extractor, reading);
+        for (ByteBuf payload : payloads) {
+            payload.release();
+        }
+    }
+
+    private static void report(String name, int round, int messages, Runnable task) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        task.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("第%d轮 %-16s %8.1f ns/msg %12.0f msgs/s %8.1f B/msg%n",
+                round, name,
+                (double) elapsed / messages,
+                messages * 1_000_000_000.0 / elapsed,
+                (double) allocated / messages);
+    }
+
+    /**
+     * 旧路径：数据内容解码为String，每个消费者各自按字段名截取数值再解析
+     */
+    private static void runLegacy(ByteBuf[] payloads, int messages, int consumers) {
+        double total = 0;
+        for (int i = 0; i < messages; i++) {
+            String data = payloads[i & (payloads.length - 1)].toString(StandardCharsets.UTF_8);
+            for (int c = 0; c < consumers; c++) {
+                total += field(data, "\"temperature\":") + field(data, "\"humidity\":");
+            }
+        }
+        sink = total;
+    }
+
+    private static double field(String data, String key) {
+        int start = data.indexOf(key) + key.length();
+        int end = start;
+        while (end < data.length() && data.charAt(end) != ',' && data.charAt(end) != '}') {
+            end++;
+        }
+        return Double.parseDouble(data.substring(start, end));
+    }
+
+    /**
+     * 新路径：每条消息提取一次，所有消费者共用同一个读数
+     */
+    private static void runExtractor(SensorExtractor extractor, SensorReading reading, ByteBuf[] payloads, int messages) {
+        double total = 0;
+        for (int i = 0; i < messages; i++) {
+            ByteBuf payload = payloads[i & (payloads.length - 1)];
+            extractor.extract(reading, DEVICE_TYPE, i, payload, payload.readerIndex(), payload.writerIndex());
+            total += reading.getValue(0) + reading.getValue(1);
+        }
+        sink = total;
+    }
+
+    /**
+     * 随机生成各种格式的数值，提取结果必须与Double.parseDouble完全一致
+     */
+    private static void verify(SensorExtractor extractor, SensorReading reading) {
+        Random random = new Random(7);
+        ByteBuf buf = Unpooled.buffer();
+        int checked = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            String text;
+            switch (i % 5) {
+                case 0:
+                    text = String.format("%.2f", (random.nextDouble() - 0.5) * 200);
+                    break;
+                case 1:
+                    text = Long.toString(random.nextLong() >> random.nextInt(64));
+                    break;
+                case 2:
+                    text = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+                    break;
+                case 3:
+                    text = (random.nextInt(2000) - 1000) + "e" + (random.nextInt(60) - 30);
+                    break;
+                default:
+                    text = Double.toString(Double.longBitsToDouble(random.nextLong()));
+                    break;
+            }
+            double expected = Double.parseDouble(text);
+            if (Double.isNaN(expected) || Double.isInfinite(expected)) {
+                continue;
+            }
+            buf.clear().writeBytes(("{\"temperature\":" + text + "}").getBytes(StandardCharsets.US_ASCII));
+            extractor.extract(reading, DEVICE_TYPE, 0, buf, buf.readerIndex(), buf.writerIndex());
+            double actual = reading.getValue(0);
+            if (Double.doubleToLongBits(actual) != Double.doubleToLongBits(expected)) {
+                throw new IllegalStateException("数值提取不一致: " + text + " -> " + actual + "，期望 " + expected);
+            }
+            checked++;
+        }
+        buf.release();
+        System.out.println("校验通过: " + checked + " 个随机数值");
+    }
+}
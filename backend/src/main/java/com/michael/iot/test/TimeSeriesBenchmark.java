@@ -0,0 +1,147 @@
+package com.michael.iot.test;
+
+import com.michael.iot.server.DeviceInfo;
+import com.michael.iot.server.SchemaRegistry;
+import com.michael.iot.server.SensorExtractor;
+import com.michael.iot.server.SensorReading;
+import com.michael.iot.server.TimeSeriesPoints;
+import com.michael.iot.server.TimeSeriesStore;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 时序存储写入和查询测试
+ * 第一阶段直接写入点（每个设备两个指标，采样间隔1秒带少量抖动），统计写入速率和已封存数据每点的字节数；
+ * 第二阶段从消息帧中提取JSON格式设备数据的读数并经读数监听器写入，包含读数提取的开销；
+ * 随后随机查询一小时窗口，最后关闭并重新打开存储，校验一个设备的全部数据。
+ * 用法: TimeSeriesBenchmark [设备数] [每个设备的采样数] [查询次数]
+ */
+public class TimeSeriesBenchmark {
+    private static final long START = 1_700_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length >= 1 ? Integer.parseInt(args[0]) : 1000;
+        int samples = args.length >= 2 ? Integer.parseInt(args[1]) : 3600;
+        int queries = args.length >= 3 ? Integer.parseInt(args[2]) : 10_000;
+
+        Path directory = Files.createTempDirectory("iot-tsdb");
+        System.out.println("=== 时序存储写入和查询测试 ===");
+        System.out.println("设备数: " + devices + ", 每设备采样: " + samples + ", 目录: " + directory);
+
+        TimeSeriesStore store = new TimeSeriesStore(directory, 1024, 64 * 1024 * 1024, 0);
+        String[] ids = new String[devices];
+        for (int d = 0; d < devices; d++) {
+            ids[d] = "device-" + d;
+        }
+
+        // 按时间推进，每一秒所有设备各上报一次，与真实的接入顺序一致
+        long start = System.nanoTime();
+        Random random = new Random(42);
+        double[] temperature = new double[devices];
+        double[] humidity = new double[devices];
+        for (int s = 0; s < samples; s++) {
+            for (int d = 0; d < devices; d++) {
+                temperature[d] = nextValue(random, temperature[d], 25);
+                humidity[d] = nextValue(random, humidity[d], 50);
+                long timestamp = timestamp(s, d);
+                store.append(ids[d], "temperature", timestamp, temperature[d]);
+                store.append(ids[d], "humidity", timestamp, humidity[d]);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long points = 2L * devices * samples;
+        System.out.printf("直接写入: %,d 点, %d ms, %.0f 点/秒, 封存 %,d 个数据块, %.2f 字节/点%n",
+                points, nanos / 1_000_000, points / (nanos / 1e9), store.getSealedChunks(),
+                store.getSealedBytes() / (double) Math.max(1, store.getSealedPoints()));
+
+        // 提取读数后经监听器写入
+        DeviceInfo[] infos = new DeviceInfo[Math.min(devices, 1000)];
+        for (int d = 0; d < infos.length; d++) {
+            infos[d] = new DeviceInfo("json-" + d, "设备" + d, "传感器");
+        }
+        ByteBuf[] payloads = new ByteBuf[1024];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = Unpooled.copiedBuffer(String.format("{\"temperature\":%.2f,\"humidity\":%.2f,\"status\":\"ok\"}",
+                    20 + random.nextDouble() * 10, 40 + random.nextDouble() * 20), StandardCharsets.UTF_8);
+        }
+        SensorExtractor extractor = new SensorExtractor(new SchemaRegistry());
+        SensorReading reading = new SensorReading();
+        int messages = Math.max(1_000_000, infos.length);
+        start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            DeviceInfo info = infos[i % infos.length];
+            ByteBuf payload = payloads[i & (payloads.length - 1)];
+            extractor.extract(reading, info.getDeviceType(), START + i, payload, payload.readerIndex(), payload.writerIndex());
+            store.onReading(info, reading);
+        }
+        nanos = System.nanoTime() - start;
+        System.out.printf("监听器写入: %,d 条数据 (%,d 点), %d ms, %.0f 点/秒%n",
+                messages, 2L * messages, nanos / 1_000_000, 2L * messages / (nanos / 1e9));
+
+        // 随机查询一小时窗口
+        long returned = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            String id = ids[random.nextInt(devices)];
+            long from = START + (long) random.nextInt(Math.max(1, samples - 3600)) * 1000;
+            returned += store.query(id, "temperature", from, from + 3600_000L, 0).size();
+        }
+        nanos = System.nanoTime() - start;
+        System.out.printf("一小时窗口查询: %d 次, %.0f 次/秒, 平均 %.0f 点/次, %.0f 点/秒%n",
+                queries, queries / (nanos / 1e9), returned / (double) queries, returned / (nanos / 1e9));
+
+        store.close();
+        TimeSeriesStore reopened = new TimeSeriesStore(directory, 1024, 64 * 1024 * 1024, 0);
+        verify(reopened, ids[devices / 2], devices / 2, devices, samples);
+        reopened.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 重新生成同样的随机序列，逐点比对
+     */
+    private static void verify(TimeSeriesStore store, String id, int device, int devices, int samples) {
+        Random random = new Random(42);
+        double[] temperature = new double[devices];
+        double[] humidity = new double[devices];
+        TimeSeriesPoints points = store.query(id, "temperature", Long.MIN_VALUE, Long.MAX_VALUE, 0);
+        if (points.size() != samples) {
+            throw new IllegalStateException("点数不一致: " + points.size() + " / " + samples);
+        }
+        for (int s = 0; s < samples; s++) {
+            for (int d = 0; d < devices; d++) {
+                temperature[d] = nextValue(random, temperature[d], 25);
+                humidity[d] = nextValue(random, humidity[d], 50);
+            }
+            if (points.getTimestamp(s) != timestamp(s, device) || points.getValue(s) != temperature[device]) {
+                throw new IllegalStateException("第" + s + "个点不一致: " + points.getTimestamp(s) + "=" + points.getValue(s)
+                        + "，期望 " + timestamp(s, device) + "=" + temperature[device]);
+            }
+        }
+        System.out.println("重新打开后校验通过: " + id + " " + samples + " 个点");
+    }
+
+    private static long timestamp(int sample, int device) {
+        // 采样间隔1秒，偶尔有几毫秒的抖动
+        return START + sample * 1000L + ((sample * 31 + device) % 17 == 0 ? 3 : 0);
+    }
+
+    /**
+     * 在基准值附近随机游走，保留两位小数，与设备上报的数据精度相同
+     */
+    private static double nextValue(Random random, double previous, double base) {
+        double value = previous == 0 ? base : previous + (random.nextDouble() - 0.5) * 0.2;
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,198 @@
+package com.michael.iot.server;
+
+import ch.qos.logback.classic.Level;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DeviceManager.queryDevices与暴力过滤排序比较
+ * 每个查询沿游标取完全部页，拼接结果必须与对全部设备过滤、排序后的结果完全一致；
+ * 设备在两轮查询之间上下线、重新注册（名称、类型、IP变化）和更新心跳。
+ */
+public class DeviceQueryTest {
+    private static final String[] TYPES = {"传感器", "控制器", "摄像头"};
+    private static final String[] NAMES = {"温度", "温湿度", "湿度", "烟感", "门磁"};
+    private static final DeviceStatus[] STATUSES = {DeviceStatus.ONLINE, DeviceStatus.OFFLINE};
+
+    private final Channel channel = new EmbeddedChannel();
+    private final Random random = new Random(42);
+    private final List<String> deviceIds = new ArrayList<>();
+    private DeviceManager manager;
+
+    @BeforeClass
+    public static void quietLogs() {
+        // 每次上下线都有一行日志
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(DeviceManager.class)).setLevel(Level.WARN);
+    }
+
+    @Before
+    public void setUp() {
+        manager = new DeviceManager();
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void randomQueriesMatchBruteForce() {
+        for (int i = 0; i < 3000; i++) {
+            String deviceId = String.format("dev-%05d", random.nextInt(100_000));
+            if (!deviceIds.contains(deviceId)) {
+                deviceIds.add(deviceId);
+                register(deviceId);
+            }
+        }
+        for (int round = 0; round < 10; round++) {
+            mutate(200);
+            for (int q = 0; q < 40; q++) {
+                check(randomQuery());
+            }
+        }
+    }
+
+    @Test
+    public void smallCandidateSetUsesTopK() {
+        for (int i = 0; i < 2000; i++) {
+            String deviceId = String.format("dev-%05d", i);
+            deviceIds.add(deviceId);
+            register(deviceId);
+        }
+        // 唯一的IP对应的候选集合远小于sqrt(limit·N)，任意排序都从候选集合中选出一页
+        manager.deviceOnline("dev-00007", "门磁7", "摄像头", "192.168.9.9", 9000, channel);
+        manager.deviceOnline("dev-01500", "门磁1500", "摄像头", "192.168.9.9", 9000, channel);
+        for (DeviceQuery.SortKey sortKey : DeviceQuery.SortKey.values()) {
+            DeviceQuery query = new DeviceQuery();
+            query.setIpAddress("192.168.9.9");
+            query.setSortBy(sortKey);
+            query.setLimit(1);
+            check(query);
+        }
+        assertEquals(0, manager.getQueryScanFallbacks());
+    }
+
+    @Test
+    public void clusteredMatchesFallBackToTopK() {
+        // 类型为网关的设备都排在设备ID索引的末尾，按设备ID扫描要越过前面的全部设备才能取到第一条
+        for (int i = 0; i < 4000; i++) {
+            String deviceId = String.format("dev-%05d", i);
+            deviceIds.add(deviceId);
+            manager.deviceOnline(deviceId, "设备" + i, i >= 3600 ? "网关" : TYPES[i % TYPES.length],
+                    "10.0.0." + (i % 200), 10000 + i, channel);
+        }
+        for (boolean descending : new boolean[]{false, true}) {
+            DeviceQuery query = new DeviceQuery();
+            query.setDeviceType("网关");
+            query.setDescending(descending);
+            query.setLimit(10);
+            check(query);
+        }
+        // 升序时匹配集中在末端，扫描超过候选集合大小后改为Top-K；降序时扫描很快取满
+        assertTrue(manager.getQueryScanFallbacks() > 0);
+    }
+
+    private void register(String deviceId) {
+        manager.deviceOnline(deviceId, NAMES[random.nextInt(NAMES.length)] + random.nextInt(500),
+                TYPES[random.nextInt(TYPES.length)], "10.0.0." + random.nextInt(20), 10000 + random.nextInt(1000),
+                channel);
+    }
+
+    /**
+     * 随机让设备下线、重新注册或更新心跳
+     */
+    private void mutate(int changes) {
+        for (int i = 0; i < changes; i++) {
+            String deviceId = deviceIds.get(random.nextInt(deviceIds.size()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    manager.deviceOffline(deviceId);
+                    break;
+                case 1:
+                    register(deviceId);
+                    break;
+                default:
+                    manager.updateHeartbeat(deviceId);
+                    break;
+            }
+        }
+    }
+
+    private DeviceQuery randomQuery() {
+        DeviceQuery query = new DeviceQuery();
+        if (random.nextInt(3) == 0) {
+            query.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+        }
+        if (random.nextInt(3) == 0) {
+            query.setDeviceType(TYPES[random.nextInt(TYPES.length)]);
+        }
+        if (random.nextInt(4) == 0) {
+            query.setIpAddress("10.0.0." + random.nextInt(22));
+        }
+        if (random.nextInt(4) == 0) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            query.setNamePrefix(random.nextBoolean() ? name : name.substring(0, 1));
+        }
+        DeviceQuery.SortKey[] sortKeys = DeviceQuery.SortKey.values();
+        query.setSortBy(sortKeys[random.nextInt(sortKeys.length)]);
+        query.setDescending(random.nextBoolean());
+        query.setLimit(1 + random.nextInt(random.nextBoolean() ? 10 : 300));
+        return query;
+    }
+
+    /**
+     * 沿游标取完全部页，与暴力过滤排序的结果逐条比较
+     */
+    private void check(DeviceQuery query) {
+        List<DeviceInfo> expected = new ArrayList<>();
+        for (String deviceId : deviceIds) {
+            DeviceInfo device = manager.getDevice(deviceId);
+            if (query.matches(device)) {
+                expected.add(device);
+            }
+        }
+        expected.sort(query.comparator());
+
+        List<String> actual = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            query.setCursor(cursor);
+            DeviceQueryResult result = manager.queryDevices(query);
+            assertTrue(query + " 每页不超过limit", result.getDevices().size() <= query.getLimit());
+            if (result.getTotal() >= 0) {
+                assertEquals(query + " 总数", expected.size(), result.getTotal());
+            }
+            for (DeviceInfo device : result.getDevices()) {
+                assertTrue(query + " 重复的设备: " + device.getDeviceId(), seen.add(device.getDeviceId()));
+                actual.add(device.getDeviceId());
+            }
+            cursor = result.getNextCursor();
+            if (cursor != null) {
+                assertEquals(query + " 有下一页时本页是满的", query.getLimit(), result.getDevices().size());
+            }
+            assertTrue(query + " 页数", ++pages <= expected.size() / query.getLimit() + 1);
+        } while (cursor != null);
+
+        List<String> expectedIds = new ArrayList<>();
+        for (DeviceInfo device : expected) {
+            expectedIds.add(device.getDeviceId());
+        }
+        assertEquals(query.toString(), expectedIds, actual);
+    }
+}
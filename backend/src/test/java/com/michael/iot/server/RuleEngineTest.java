@@ -0,0 +1,342 @@
+package com.michael.iot.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * RuleEngine与逐条规则、逐条读数的暴力求值比较
+ * 暴力求值直接遍历条件树，不使用编译后的谓词、倒排表和阈值索引；
+ * 每条读数之后比较两边发出的告警和各设备处于触发状态的规则。
+ */
+public class RuleEngineTest {
+    private static final String SENSOR = "传感器";
+    private static final String METER = "电表";
+    private static final String[][] DEVICES = {{"d1", SENSOR}, {"d2", SENSOR}, {"d3", METER}};
+    private static final String[] OPERATORS = {">", ">=", "<", "<=", "==", "!="};
+
+    private final SchemaRegistry schemas = new SchemaRegistry();
+    private final Map<String, DeviceInfo> devices = new LinkedHashMap<>();
+    private final RuleEngine engine = new RuleEngine();
+    private final List<String> alerts = new ArrayList<>();
+
+    // 暴力求值: 当前规则，以及每个设备上每个规则对象的连续满足次数，替换后的规则是新对象，计数从0开始
+    private final Map<String, AlertRule> rules = new LinkedHashMap<>();
+    private final Map<String, Map<AlertRule, Integer>> counts = new HashMap<>();
+
+    private Random random;
+    private long timestamp = 1_700_000_000_000L;
+
+    @Before
+    public void setUp() {
+        for (String[] device : DEVICES) {
+            devices.put(device[0], new DeviceInfo(device[0], device[0], device[1]));
+            counts.put(device[0], new IdentityHashMap<>());
+        }
+        engine.addAlertListener(alert -> alerts.add(alert.getDevice().getDeviceId() + ":"
+                + alert.getRule().getId() + ":" + alert.getState()));
+    }
+
+    @Test
+    public void consecutiveCounts() {
+        learn("a", "b");
+        addRule("r1|" + SENSOR + "|a > 5|3");
+        addRule("r2|*|a <= 2|2");
+        addRule("r3|*|b > 1 && a < 8|2");
+        // 满足两次后中断，计数清零，再连续满足三次才触发，第一次不满足时恢复
+        double[] values = {6, 7, 1, 6, 7, 9, 9, 4, 6, 6, 6, 6};
+        for (double value : values) {
+            read("d1", "a", value, "b", 2);
+        }
+        // 未携带字段的读数不参与计数，不会打断连续满足
+        read("d1", "a", 1);
+        read("d1", "b", 5);
+        read("d1", "a", 1);
+        read("d3", "a", 0);
+        read("d3", "b", 3);
+        read("d3", "a", 0, "b", 3);
+        read("d3", "a", 1);
+    }
+
+    @Test
+    public void multiThresholdCrossing() {
+        learn("a");
+        random = new Random(11);
+        // 同一字段上大量阈值相同或相邻的规则，读数在阈值网格上大幅跳动，一次跨过多个阈值
+        int id = 0;
+        for (int limit = 0; limit <= 20; limit += 2) {
+            for (String operator : new String[]{">", ">=", "<", "<="}) {
+                addRule("t" + id++ + "|*|a " + operator + " " + limit + "|" + (1 + random.nextInt(3)));
+            }
+            addRule("t" + id++ + "|" + SENSOR + "|" + limit + " < a|" + (1 + random.nextInt(3)));
+        }
+        for (int i = 0; i < 3000; i++) {
+            String device = "d" + (1 + random.nextInt(DEVICES.length));
+            double value = random.nextInt(10) == 0 ? random.nextInt(5) * 10 - 5 : random.nextInt(45) / 2.0 - 1;
+            read(device, "a", value);
+        }
+    }
+
+    @Test
+    public void equalityAndInequality() {
+        learn("a", "b");
+        random = new Random(12);
+        addRule("e1|*|a == 3|2");
+        addRule("e2|*|a != 3|2");
+        addRule("e3|*|3 == a|1");
+        addRule("e4|" + SENSOR + "|a != b|2");
+        addRule("e5|*|a == b|1");
+        addRule("e6|*|!(a != 4)|1");
+        // 同一字段上的阈值规则与相等规则交替满足
+        addRule("e7|*|a >= 3|2");
+        addRule("e8|*|a > 3|1");
+        for (int i = 0; i < 3000; i++) {
+            String device = "d" + (1 + random.nextInt(DEVICES.length));
+            double a = random.nextInt(20) == 0 ? Double.NaN : random.nextInt(6);
+            if (random.nextInt(4) == 0) {
+                read(device, "a", a);
+            } else {
+                read(device, "a", a, "b", random.nextInt(6));
+            }
+        }
+    }
+
+    @Test
+    public void ruleReplacement() {
+        learn("a", "b", "c");
+        random = new Random(13);
+        for (int i = 0; i < 30; i++) {
+            addRule(randomRule("r" + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            int action = random.nextInt(100);
+            String ruleId = "r" + random.nextInt(40);
+            if (action < 3) {
+                // 同ID替换，可能从阈值规则换成复合条件或反过来
+                addRule(randomRule(ruleId));
+            } else if (action < 4) {
+                removeRule(ruleId);
+            } else {
+                randomReading(new String[]{"a", "b", "c"});
+            }
+        }
+    }
+
+    @Test
+    public void schemaGrowthMidStream() {
+        learn("a");
+        random = new Random(14);
+        // 规则从一开始就引用还没出现的字段，字段学习到之后才开始计数
+        for (int i = 0; i < 30; i++) {
+            addRule(randomRule("r" + i));
+        }
+        String[][] stages = {{"a"}, {"a", "b"}, {"a", "b", "c"}, {"a", "b", "c", "d"}};
+        for (String[] fields : stages) {
+            learn(fields);
+            for (int i = 0; i < 1500; i++) {
+                if (random.nextInt(50) == 0) {
+                    addRule(randomRule("r" + random.nextInt(40)));
+                }
+                randomReading(fields);
+            }
+        }
+    }
+
+    private String randomRule(String id) {
+        String type = random.nextBoolean() ? AlertRule.ANY_TYPE : SENSOR;
+        String condition;
+        switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                condition = comparison();
+                break;
+            case 2:
+                condition = comparison() + (random.nextBoolean() ? " && " : " || ") + comparison();
+                break;
+            default:
+                condition = "!(" + comparison() + ") && " + field() + " " + operator() + " " + field();
+                break;
+        }
+        return id + "|" + type + "|" + condition + "|" + (1 + random.nextInt(4));
+    }
+
+    private String comparison() {
+        String constant = String.valueOf(random.nextInt(8) - 1);
+        return random.nextInt(4) == 0 ? constant + " " + operator() + " " + field()
+                : field() + " " + operator() + " " + constant;
+    }
+
+    private String field() {
+        return String.valueOf((char) ('a' + random.nextInt(4)));
+    }
+
+    private String operator() {
+        return OPERATORS[random.nextInt(OPERATORS.length)];
+    }
+
+    private void randomReading(String[] fields) {
+        String device = "d" + (1 + random.nextInt(DEVICES.length));
+        List<Object> values = new ArrayList<>();
+        for (String field : fields) {
+            if (random.nextInt(4) != 0) {
+                values.add(field);
+                values.add((double) (random.nextInt(8) - 1));
+            }
+        }
+        read(device, values.toArray());
+    }
+
+    private void learn(String... fields) {
+        for (String[] device : DEVICES) {
+            for (String field : fields) {
+                schemas.learn(device[1], field);
+            }
+        }
+    }
+
+    private void addRule(String line) {
+        AlertRule rule = AlertRule.parse(line);
+        engine.addRule(rule);
+        rules.put(rule.getId(), rule);
+    }
+
+    private void removeRule(String ruleId) {
+        assertEquals(rules.remove(ruleId) != null, engine.removeRule(ruleId));
+    }
+
+    /**
+     * 交给引擎一条读数，参数为交替的字段名和值，并与暴力求值比较
+     */
+    private void read(String deviceId, Object... fieldValues) {
+        DeviceInfo device = devices.get(deviceId);
+        SensorSchema schema = schemas.getSchema(device.getDeviceType());
+        SensorReading reading = new SensorReading();
+        reading.reset(schema, timestamp++);
+        Map<String, Double> values = new HashMap<>();
+        for (int i = 0; i < fieldValues.length; i += 2) {
+            String field = (String) fieldValues[i];
+            double value = ((Number) fieldValues[i + 1]).doubleValue();
+            reading.set(schema.indexOf(field), value);
+            values.put(field, value);
+        }
+
+        alerts.clear();
+        engine.onReading(device, reading);
+        List<String> expected = evaluate(device, values);
+        String context = deviceId + " " + values;
+        Collections.sort(expected);
+        Collections.sort(alerts);
+        assertEquals(context, expected, alerts);
+
+        for (DeviceInfo each : devices.values()) {
+            List<String> firing = new ArrayList<>();
+            for (AlertRule rule : engine.getFiringRules(each.getDeviceId())) {
+                firing.add(rule.getId());
+            }
+            Collections.sort(firing);
+            assertEquals(context + " 触发中的规则: " + each.getDeviceId(), firing(each), firing);
+        }
+    }
+
+    /**
+     * 暴力求值: 适用于设备类型且读数携带了全部引用字段的规则逐条求值
+     */
+    private List<String> evaluate(DeviceInfo device, Map<String, Double> values) {
+        List<String> events = new ArrayList<>();
+        Map<AlertRule, Integer> deviceCounts = counts.get(device.getDeviceId());
+        for (AlertRule rule : rules.values()) {
+            if (!applies(rule, device) || !values.keySet().containsAll(rule.getFields())) {
+                continue;
+            }
+            int count = deviceCounts.getOrDefault(rule, 0);
+            if (test(rule.getCondition(), values)) {
+                if (count < rule.getConsecutive()) {
+                    deviceCounts.put(rule, ++count);
+                    if (count == rule.getConsecutive()) {
+                        events.add(device.getDeviceId() + ":" + rule.getId() + ":" + DeviceAlert.State.FIRING);
+                    }
+                }
+            } else if (count > 0) {
+                deviceCounts.put(rule, 0);
+                if (count == rule.getConsecutive()) {
+                    events.add(device.getDeviceId() + ":" + rule.getId() + ":" + DeviceAlert.State.RESOLVED);
+                }
+            }
+        }
+        return events;
+    }
+
+    private List<String> firing(DeviceInfo device) {
+        List<String> firing = new ArrayList<>();
+        Map<AlertRule, Integer> deviceCounts = counts.get(device.getDeviceId());
+        for (AlertRule rule : rules.values()) {
+            if (applies(rule, device) && deviceCounts.getOrDefault(rule, 0) == rule.getConsecutive()) {
+                firing.add(rule.getId());
+            }
+        }
+        Collections.sort(firing);
+        return firing;
+    }
+
+    private static boolean applies(AlertRule rule, DeviceInfo device) {
+        return rule.appliesToAllTypes() || rule.getDeviceType().equals(device.getDeviceType());
+    }
+
+    private static boolean test(RuleCondition condition, Map<String, Double> values) {
+        if (condition instanceof RuleCondition.Not) {
+            return !test(((RuleCondition.Not) condition).term, values);
+        }
+        if (condition instanceof RuleCondition.And) {
+            for (RuleCondition term : ((RuleCondition.And) condition).terms) {
+                if (!test(term, values)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (condition instanceof RuleCondition.Or) {
+            for (RuleCondition term : ((RuleCondition.Or) condition).terms) {
+                if (test(term, values)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        RuleCondition.Comparison comparison = (RuleCondition.Comparison) condition;
+        Double left = operand(comparison.left, values);
+        Double right = operand(comparison.right, values);
+        if (left == null || right == null) {
+            return false;
+        }
+        double l = left;
+        double r = right;
+        switch (comparison.operator) {
+            case GT:
+                return l > r;
+            case GE:
+                return l >= r;
+            case LT:
+                return l < r;
+            case LE:
+                return l <= r;
+            case EQ:
+                return l == r;
+            default:
+                return l != r;
+        }
+    }
+
+    private static Double operand(RuleCondition.Operand operand, Map<String, Double> values) {
+        return operand.field == null ? Double.valueOf(operand.constant) : values.get(operand.field);
+    }
+}
@@ -0,0 +1,205 @@
+package com.michael.iot.server;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TimeSeriesChunk编解码测试：逐点比较解码结果与写入的时间戳和数值原始位，
+ * 并按编码格式核对各分支写入的位数
+ */
+public class TimeSeriesChunkTest {
+
+    @Test
+    public void firstPointIsWrittenRaw() {
+        TimeSeriesChunk chunk = roundTrip(new long[]{123456789L}, new double[]{-1.5});
+        assertEquals(128, chunk.bitLength());
+        assertEquals(123456789L, chunk.getMinTime());
+        assertEquals(123456789L, chunk.getMaxTime());
+    }
+
+    @Test
+    public void timestampBucketBoundaries() {
+        long[] dods = {0, 63, -64, 64, -65, 255, -256, 256, -257, 2047, -2048, 2048, -2049};
+        int[] bits = {1, 9, 9, 12, 12, 12, 12, 16, 16, 16, 16, 68, 68};
+        for (int i = 0; i < dods.length; i++) {
+            // 第二个点确定上一次差值，第三个点的二阶差分即为dods[i]
+            long[] timestamps = {1_000_000, 1_001_000, 1_002_000 + dods[i]};
+            TimeSeriesChunk chunk = roundTrip(timestamps, new double[]{1, 1, 1});
+            int second = 128 + 16 + 1;
+            assertEquals("二阶差分 " + dods[i], second + bits[i] + 1, chunk.bitLength());
+        }
+    }
+
+    @Test
+    public void sixtyFourBitDeltaOfDeltaEscape() {
+        long[] timestamps = {0, 1, Long.MAX_VALUE / 2, Long.MIN_VALUE / 2, Long.MAX_VALUE, Long.MIN_VALUE, 0};
+        double[] values = new double[timestamps.length];
+        TimeSeriesChunk chunk = roundTrip(timestamps, values);
+        assertEquals(Long.MIN_VALUE, chunk.getMinTime());
+        assertEquals(Long.MAX_VALUE, chunk.getMaxTime());
+    }
+
+    @Test
+    public void negativeDeltas() {
+        long[] timestamps = {10_000, 9_000, 7_000, 6_999, 6_999, 1_000, -5_000_000};
+        double[] values = {1, 2, 3, 4, 5, 6, 7};
+        TimeSeriesChunk chunk = roundTrip(timestamps, values);
+        assertEquals(-5_000_000, chunk.getMinTime());
+        assertEquals(10_000, chunk.getMaxTime());
+    }
+
+    @Test
+    public void outOfOrderTimestampsDecodeInWriteOrder() {
+        long[] timestamps = {500, 100, 900, 300, 300, 700, 200};
+        double[] values = {5, 1, 9, 3, 3.5, 7, 2};
+        TimeSeriesChunk chunk = roundTrip(timestamps, values);
+        assertEquals(100, chunk.getMinTime());
+        assertEquals(900, chunk.getMaxTime());
+
+        // 按时间范围过滤时仍按写入顺序返回
+        TimeSeriesPoints points = new TimeSeriesPoints();
+        int accepted = TimeSeriesChunk.decode(encoded(chunk), timestamps.length, 200, 500, points);
+        assertEquals(4, accepted);
+        long[] expected = {500, 300, 300, 200};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], points.getTimestamp(i));
+        }
+        assertEquals(3.5, points.getValue(2), 0);
+    }
+
+    @Test
+    public void reusedAndNewValueWindows() {
+        long[] bits = {
+                0L,
+                0x00FF_0000_0000_0000L,   // 前导8、末尾48，新窗口: '11'+6+6+8
+                0x00E7_0000_0000_0000L,   // 异或0x0018...在上一个窗口内: '10'+8
+                0x00E6_0000_0000_0000L,   // 异或0x0001...前导15、末尾48，仍在窗口内: '10'+8
+                0x00E6_0000_0000_0001L,   // 异或1，末尾零变少，新窗口: '11'+6+6+1
+                0x80E6_0000_0000_0001L,   // 异或0x8000...，前导零变少，新窗口: '11'+6+6+1
+                0x80E6_0000_0000_0001L,   // 数值不变: '0'
+                0x00E6_0000_0000_0001L    // 异或0x8000...，前导0、末尾63，在窗口内: '10'+1
+        };
+        int[] valueBits = {0, 22, 10, 10, 15, 15, 1, 3};
+        long[] timestamps = new long[bits.length];
+        double[] values = new double[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            timestamps[i] = 1000L * i;
+            values[i] = Double.longBitsToDouble(bits[i]);
+        }
+        TimeSeriesChunk chunk = roundTrip(timestamps, values);
+        // 时间戳: 第二个点二阶差分1000，之后都为0
+        int expected = 128 + 16;
+        for (int i = 1; i < bits.length; i++) {
+            expected += valueBits[i] + (i > 1 ? 1 : 0);
+        }
+        assertEquals(expected, chunk.bitLength());
+    }
+
+    @Test
+    public void nanAndSignedZeroKeepTheirBits() {
+        double[] values = {0.0, -0.0, 0.0, Double.NaN, Double.longBitsToDouble(0x7FF0_0000_0000_0001L),
+                Double.longBitsToDouble(0xFFF8_0000_0000_1234L), Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                -0.0, -0.0, Double.MIN_VALUE, -Double.MAX_VALUE, Double.NaN};
+        long[] timestamps = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            timestamps[i] = 60_000L * i;
+        }
+        roundTrip(timestamps, values);
+    }
+
+    @Test
+    public void fieldsStraddlingWordBoundaries() {
+        // 第一个点128位，第二个点二阶差分10: 9+1位，之后每个相同的点2位，
+        // 再接一个64位二阶差分的转义，使转义前缀和64位字段依次落在字边界的各个位置
+        for (int padding = 0; padding <= 40; padding++) {
+            int n = padding + 3;
+            long[] timestamps = new long[n];
+            double[] values = new double[n];
+            timestamps[0] = 1_000;
+            timestamps[1] = 1_010;
+            for (int i = 2; i < n - 1; i++) {
+                timestamps[i] = timestamps[i - 1] + 10;
+            }
+            timestamps[n - 1] = timestamps[n - 2] + 1_000_000_000_000L;
+            for (int i = 0; i < n; i++) {
+                values[i] = 42.25;
+            }
+            values[n - 1] = Double.longBitsToDouble(~Double.doubleToRawLongBits(42.25));
+            TimeSeriesChunk chunk = roundTrip(timestamps, values);
+            int expected = 128 + 10 + 2 * padding + 68 + 78;
+            assertEquals("填充 " + padding, expected, chunk.bitLength());
+            assertEquals((expected + 63) / 64 * 8, chunk.byteLength());
+        }
+    }
+
+    @Test
+    public void randomSeriesRoundTrip() {
+        Random random = new Random(20240601);
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(300);
+            long[] timestamps = new long[n];
+            double[] values = new double[n];
+            long t = random.nextLong();
+            for (int i = 0; i < n; i++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        t += 1000;
+                        break;
+                    case 1:
+                        t += random.nextInt(5000) - 2500;
+                        break;
+                    case 2:
+                        t += random.nextLong();
+                        break;
+                    default:
+                        break;
+                }
+                timestamps[i] = t;
+                values[i] = random.nextInt(3) == 0 ? Double.longBitsToDouble(random.nextLong())
+                        : Math.round(random.nextGaussian() * 100) / 10.0;
+            }
+            roundTrip(timestamps, values);
+        }
+    }
+
+    @Test
+    public void appendFailsWhenChunkIsFull() {
+        TimeSeriesChunk chunk = new TimeSeriesChunk(32);
+        assertTrue(chunk.append(0, 1));
+        assertFalse(chunk.append(1, 2));
+        assertEquals(1, chunk.getCount());
+    }
+
+    /**
+     * 写入一个足够大的数据块，解码全部点并逐点比较原始位
+     */
+    private static TimeSeriesChunk roundTrip(long[] timestamps, double[] values) {
+        TimeSeriesChunk chunk = new TimeSeriesChunk(64 * 1024);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertTrue(chunk.append(timestamps[i], values[i]));
+        }
+        assertEquals(timestamps.length, chunk.getCount());
+        TimeSeriesPoints points = new TimeSeriesPoints();
+        int accepted = TimeSeriesChunk.decode(encoded(chunk), timestamps.length, Long.MIN_VALUE, Long.MAX_VALUE, points);
+        assertEquals(timestamps.length, accepted);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals("时间戳 " + i, timestamps[i], points.getTimestamp(i));
+            assertEquals("数值 " + i, Double.doubleToRawLongBits(values[i]),
+                    Double.doubleToRawLongBits(points.getValue(i)));
+        }
+        return chunk;
+    }
+
+    private static ByteBuffer encoded(TimeSeriesChunk chunk) {
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.byteLength());
+        chunk.writeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+}
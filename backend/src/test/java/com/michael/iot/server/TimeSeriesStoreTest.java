@@ -0,0 +1,189 @@
+package com.michael.iot.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TimeSeriesStore封存和重新加载测试：用很小的数据块和分段让数据跨越多个封存数据块和分段文件，
+ * 关闭后用新实例从分段文件重建索引，查询结果与写入的点逐一比较
+ */
+public class TimeSeriesStoreTest {
+    private static final int CHUNK_BYTES = 64;
+    private static final int SEGMENT_BYTES = CHUNK_BYTES * 2 + 1024;
+    private static final String[] DEVICES = {"device-1", "设备-2"};
+    private static final String[] METRICS = {"temperature", "humidity"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 每条序列写入过的点: 时间戳和数值原始位
+    private final Map<String, List<long[]>> written = new HashMap<>();
+    private final Random random = new Random(7);
+
+    @Test
+    public void sealedChunksSurviveReload() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TimeSeriesStore store = open(directory);
+        write(store, 0, 1500);
+        assertTrue(store.getSealedChunks() > 0);
+        // 封存的数据块和内存中未写满的数据块一起查询
+        verify(store);
+
+        store.close();
+        assertTrue(segmentFiles(directory) > 1);
+
+        TimeSeriesStore reloaded = open(directory);
+        assertEquals(Arrays.asList(METRICS).size(), reloaded.getMetrics(DEVICES[0]).size());
+        verify(reloaded);
+
+        // 重新加载后继续写入新分段，再次关闭和加载
+        write(reloaded, 1500, 500);
+        verify(reloaded);
+        reloaded.close();
+
+        TimeSeriesStore again = open(directory);
+        verify(again);
+        again.close();
+    }
+
+    @Test
+    public void closeSealsPartialChunks() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TimeSeriesStore store = open(directory);
+        write(store, 0, 3);
+        assertEquals(0, store.getSealedChunks());
+        store.close();
+
+        TimeSeriesStore reloaded = open(directory);
+        verify(reloaded);
+        reloaded.close();
+    }
+
+    @Test
+    public void longNamesUpToSegmentCapacity() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TimeSeriesStore store = open(directory);
+        // 分段1152字节，记录头和写满的数据块之外，设备ID和指标名合计最多1044字节
+        String longest = "m".repeat(1044 - DEVICES[0].length());
+        String tooLong = longest + "m";
+        String wrapped = "w".repeat(0x10000 + 8);
+        for (int i = 0; i < 200; i++) {
+            long timestamp = 1_700_000_000_000L + i * 1000L;
+            store.append(DEVICES[0], longest, timestamp, i);
+            store.append(DEVICES[0], tooLong, timestamp, i);
+            // 2字节长度按short截断后只剩8字节，不能因此写入
+            store.append(DEVICES[0], wrapped, timestamp, i);
+            store.append(wrapped, METRICS[0], timestamp, i);
+        }
+        assertTrue(store.getSealedChunks() > 1);
+        assertEquals(600, store.getRejectedPoints());
+        assertEquals(Arrays.asList(longest), store.getMetrics(DEVICES[0]));
+        store.close();
+
+        TimeSeriesStore reloaded = open(directory);
+        assertEquals(Arrays.asList(longest), reloaded.getMetrics(DEVICES[0]));
+        assertEquals(0, reloaded.getMetrics(wrapped).size());
+        TimeSeriesPoints points = reloaded.query(DEVICES[0], longest, Long.MIN_VALUE, Long.MAX_VALUE, 0);
+        assertEquals(200, points.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, points.getValue(i), 0);
+        }
+        reloaded.close();
+    }
+
+    private TimeSeriesStore open(Path directory) throws IOException {
+        return new TimeSeriesStore(directory, CHUNK_BYTES, SEGMENT_BYTES, 0);
+    }
+
+    /**
+     * 每条序列写入count个点，时间戳大体递增但带有乱序抖动，数值含NaN和±0
+     */
+    private void write(TimeSeriesStore store, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            for (String deviceId : DEVICES) {
+                for (String metric : METRICS) {
+                    long timestamp = 1_700_000_000_000L + i * 1000L + random.nextInt(801) - 400;
+                    double value;
+                    switch (random.nextInt(8)) {
+                        case 0:
+                            value = Double.NaN;
+                            break;
+                        case 1:
+                            value = random.nextBoolean() ? 0.0 : -0.0;
+                            break;
+                        default:
+                            value = Math.round(random.nextGaussian() * 1000) / 100.0;
+                            break;
+                    }
+                    store.append(deviceId, metric, timestamp, value);
+                    written.computeIfAbsent(deviceId + "/" + metric, k -> new ArrayList<>())
+                            .add(new long[]{timestamp, Double.doubleToRawLongBits(value)});
+                }
+            }
+        }
+    }
+
+    /**
+     * 全范围和若干随机窗口的查询结果与按时间排序、过滤后的写入点一致
+     */
+    private void verify(TimeSeriesStore store) {
+        for (String deviceId : DEVICES) {
+            for (String metric : METRICS) {
+                List<long[]> points = new ArrayList<>(written.get(deviceId + "/" + metric));
+                points.sort(Comparator.comparingLong(point -> point[0]));
+                long first = points.get(0)[0];
+                long last = points.get(points.size() - 1)[0];
+                check(store, deviceId, metric, points, Long.MIN_VALUE, Long.MAX_VALUE, 0);
+                for (int round = 0; round < 20; round++) {
+                    long a = first + (long) (random.nextDouble() * (last - first));
+                    long b = first + (long) (random.nextDouble() * (last - first));
+                    check(store, deviceId, metric, points, Math.min(a, b), Math.max(a, b), random.nextInt(3) * 50);
+                }
+            }
+        }
+    }
+
+    private static void check(TimeSeriesStore store, String deviceId, String metric, List<long[]> sorted,
+                              long from, long to, int limit) {
+        List<long[]> expected = new ArrayList<>();
+        for (long[] point : sorted) {
+            if (point[0] >= from && point[0] <= to) {
+                expected.add(point);
+            }
+        }
+        boolean truncated = limit > 0 && expected.size() > limit;
+        if (truncated) {
+            expected = expected.subList(0, limit);
+        }
+        TimeSeriesPoints result = store.query(deviceId, metric, from, to, limit);
+        String series = deviceId + "/" + metric + " [" + from + ", " + to + "]";
+        assertEquals(series, expected.size(), result.size());
+        assertEquals(series, truncated, result.isTruncated());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(series, expected.get(i)[0], result.getTimestamp(i));
+            assertEquals(series, expected.get(i)[1], Double.doubleToRawLongBits(result.getValue(i)));
+        }
+    }
+
+    private static long segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(TimeSeriesStore.PREFIX)).count();
+        }
+    }
+}